@@ -63,10 +63,21 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
   private final ForUtil forUtil;
   private int version;
 
+  // true if skip data records the max freq of each block
+  private final boolean blockMaxFreq;
+
   // public static boolean DEBUG = false;
 
   /** Sole constructor. */
   public Lucene41PostingsReader(Directory dir, FieldInfos fieldInfos, SegmentInfo segmentInfo, IOContext ioContext, String segmentSuffix) throws IOException {
+    this(dir, fieldInfos, segmentInfo, ioContext, segmentSuffix, false);
+  }
+
+  /** Creates a reader for postings written with
+   *  {@link Lucene41PostingsWriter#Lucene41PostingsWriter(org.apache.lucene.index.SegmentWriteState, float, boolean)}. */
+  Lucene41PostingsReader(Directory dir, FieldInfos fieldInfos, SegmentInfo segmentInfo, IOContext ioContext, String segmentSuffix,
+                         boolean blockMaxFreq) throws IOException {
+    this.blockMaxFreq = blockMaxFreq;
     boolean success = false;
     IndexInput docIn = null;
     IndexInput posIn = null;
@@ -75,7 +86,7 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
       docIn = dir.openInput(IndexFileNames.segmentFileName(segmentInfo.name, segmentSuffix, Lucene41PostingsFormat.DOC_EXTENSION),
                             ioContext);
       version = CodecUtil.checkHeader(docIn,
-                            Lucene41PostingsWriter.DOC_CODEC,
+                            Lucene41PostingsWriter.codecName(Lucene41PostingsWriter.DOC_CODEC, blockMaxFreq),
                             Lucene41PostingsWriter.VERSION_START,
                             Lucene41PostingsWriter.VERSION_CURRENT);
       forUtil = new ForUtil(docIn);
@@ -91,7 +102,7 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
       if (fieldInfos.hasProx()) {
         posIn = dir.openInput(IndexFileNames.segmentFileName(segmentInfo.name, segmentSuffix, Lucene41PostingsFormat.POS_EXTENSION),
                               ioContext);
-        CodecUtil.checkHeader(posIn, Lucene41PostingsWriter.POS_CODEC, version, version);
+        CodecUtil.checkHeader(posIn, Lucene41PostingsWriter.codecName(Lucene41PostingsWriter.POS_CODEC, blockMaxFreq), version, version);
         
         if (version >= Lucene41PostingsWriter.VERSION_CHECKSUM) {
           // NOTE: data file is too costly to verify checksum against all the bytes on open,
@@ -104,7 +115,7 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
         if (fieldInfos.hasPayloads() || fieldInfos.hasOffsets()) {
           payIn = dir.openInput(IndexFileNames.segmentFileName(segmentInfo.name, segmentSuffix, Lucene41PostingsFormat.PAY_EXTENSION),
                                 ioContext);
-          CodecUtil.checkHeader(payIn, Lucene41PostingsWriter.PAY_CODEC, version, version);
+          CodecUtil.checkHeader(payIn, Lucene41PostingsWriter.codecName(Lucene41PostingsWriter.PAY_CODEC, blockMaxFreq), version, version);
           
           if (version >= Lucene41PostingsWriter.VERSION_CHECKSUM) {
             // NOTE: data file is too costly to verify checksum against all the bytes on open,
@@ -131,7 +142,7 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
   public void init(IndexInput termsIn) throws IOException {
     // Make sure we are talking to the matching postings writer
     CodecUtil.checkHeader(termsIn,
-                          Lucene41PostingsWriter.TERMS_CODEC,
+                          Lucene41PostingsWriter.codecName(Lucene41PostingsWriter.TERMS_CODEC, blockMaxFreq),
                           Lucene41PostingsWriter.VERSION_START,
                           Lucene41PostingsWriter.VERSION_CURRENT);
     final int indexBlockSize = termsIn.readVInt();
@@ -335,10 +346,14 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
     private boolean needsFreq; // true if the caller actually needs frequencies
     private int singletonDocID; // docid when there is a single pulsed posting, otherwise -1
 
+    // true if the skip data records the max freq of each block
+    final boolean hasBlockMaxFreq;
+
     public BlockDocsEnum(FieldInfo fieldInfo) throws IOException {
       this.startDocIn = Lucene41PostingsReader.this.docIn;
       this.docIn = null;
       indexHasFreq = fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS) >= 0;
+      hasBlockMaxFreq = indexHasFreq && blockMaxFreq;
       indexHasPos = fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) >= 0;
       indexHasOffsets = fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0;
       indexHasPayloads = fieldInfo.hasPayloads();
@@ -468,59 +483,91 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
       }
     }
 
-    @Override
-    public int advance(int target) throws IOException {
-      // TODO: make frq block load lazy/skippable
+    private void skipTo(int target) throws IOException {
       // if (DEBUG) {
-      //   System.out.println("  FPR.advance target=" + target);
+      //   System.out.println("load skipper");
       // }
 
-      // current skip docID < docIDs generated from current buffer <= next skip docID
-      // we don't need to skip if target is buffered already
-      if (docFreq > BLOCK_SIZE && target > nextSkipDoc) {
+      if (skipper == null) {
+        // Lazy init: first time this enum has ever been used for skipping
+        skipper = new Lucene41SkipReader(docIn.clone(),
+                                      Lucene41PostingsWriter.maxSkipLevels,
+                                      BLOCK_SIZE,
+                                      hasBlockMaxFreq,
+                                      indexHasPos,
+                                      indexHasOffsets,
+                                      indexHasPayloads);
+      }
 
+      if (!skipped) {
+        assert skipOffset != -1;
+        // This is the first time this enum has skipped
+        // since reset() was called; load the skip data:
+        skipper.init(docTermStartFP+skipOffset, docTermStartFP, 0, 0, docFreq);
+        skipped = true;
+      }
+
+      // always plus one to fix the result, since skip position in Lucene41SkipReader 
+      // is a little different from MultiLevelSkipListReader
+      final int newDocUpto = skipper.skipTo(target) + 1; 
+
+      if (newDocUpto > docUpto) {
+        // Skipper moved
         // if (DEBUG) {
-        //   System.out.println("load skipper");
+        //   System.out.println("skipper moved to docUpto=" + newDocUpto + " vs current=" + docUpto + "; docID=" + skipper.getDoc() + " fp=" + skipper.getDocPointer());
         // }
+        assert newDocUpto % BLOCK_SIZE == 0 : "got " + newDocUpto;
+        docUpto = newDocUpto;
 
-        if (skipper == null) {
-          // Lazy init: first time this enum has ever been used for skipping
-          skipper = new Lucene41SkipReader(docIn.clone(),
-                                        Lucene41PostingsWriter.maxSkipLevels,
-                                        BLOCK_SIZE,
-                                        indexHasPos,
-                                        indexHasOffsets,
-                                        indexHasPayloads);
-        }
+        // Force to read next block
+        docBufferUpto = BLOCK_SIZE;
+        accum = skipper.getDoc();               // actually, this is just lastSkipEntry
+        docIn.seek(skipper.getDocPointer());    // now point to the block we want to search
+      }
+      // next time we call advance, this is used to 
+      // foresee whether skipper is necessary.
+      nextSkipDoc = skipper.getNextSkipDoc();
+    }
 
-        if (!skipped) {
-          assert skipOffset != -1;
-          // This is the first time this enum has skipped
-          // since reset() was called; load the skip data:
-          skipper.init(docTermStartFP+skipOffset, docTermStartFP, 0, 0, docFreq);
-          skipped = true;
-        }
+    @Override
+    public int advanceShallow(int target) throws IOException {
+      if (!hasBlockMaxFreq || docFreq <= BLOCK_SIZE) {
+        // no skip data (or no max freqs in it): a single block up to the end
+        return NO_MORE_DOCS;
+      }
+      if (!skipped || target > nextSkipDoc) {
+        // the first block has no skip entry of its own before the skipper
+        // is loaded, so always load it; target 0 would not read any entry
+        skipTo(Math.max(target, 1));
+      }
+      return nextSkipDoc;
+    }
 
-        // always plus one to fix the result, since skip position in Lucene41SkipReader 
-        // is a little different from MultiLevelSkipListReader
-        final int newDocUpto = skipper.skipTo(target) + 1; 
+    @Override
+    public int maxFreq() {
+      // every doc has freq >= 1, so no single doc can exceed this:
+      return (int) Math.min(Integer.MAX_VALUE, totalTermFreq - docFreq + 1);
+    }
 
-        if (newDocUpto > docUpto) {
-          // Skipper moved
-          // if (DEBUG) {
-          //   System.out.println("skipper moved to docUpto=" + newDocUpto + " vs current=" + docUpto + "; docID=" + skipper.getDoc() + " fp=" + skipper.getDocPointer());
-          // }
-          assert newDocUpto % BLOCK_SIZE == 0 : "got " + newDocUpto;
-          docUpto = newDocUpto;
+    @Override
+    public int blockMaxFreq() {
+      if (skipped && nextSkipDoc != NO_MORE_DOCS) {
+        return Math.min(skipper.getNextSkipMaxFreq(), maxFreq());
+      }
+      return maxFreq();
+    }
 
-          // Force to read next block
-          docBufferUpto = BLOCK_SIZE;
-          accum = skipper.getDoc();               // actually, this is just lastSkipEntry
-          docIn.seek(skipper.getDocPointer());    // now point to the block we want to search
-        }
-        // next time we call advance, this is used to 
-        // foresee whether skipper is necessary.
-        nextSkipDoc = skipper.getNextSkipDoc();
+    @Override
+    public int advance(int target) throws IOException {
+      // TODO: make frq block load lazy/skippable
+      // if (DEBUG) {
+      //   System.out.println("  FPR.advance target=" + target);
+      // }
+
+      // current skip docID < docIDs generated from current buffer <= next skip docID
+      // we don't need to skip if target is buffered already
+      if (docFreq > BLOCK_SIZE && target > nextSkipDoc) {
+        skipTo(target);
       }
       if (docUpto == docFreq) {
         return doc = NO_MORE_DOCS;
@@ -821,6 +868,7 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
           skipper = new Lucene41SkipReader(docIn.clone(),
                                         Lucene41PostingsWriter.maxSkipLevels,
                                         BLOCK_SIZE,
+                                        blockMaxFreq,
                                         true,
                                         indexHasOffsets,
                                         indexHasPayloads);
@@ -1347,6 +1395,7 @@ public final class Lucene41PostingsReader extends PostingsReaderBase {
           skipper = new Lucene41SkipReader(docIn.clone(),
                                         Lucene41PostingsWriter.maxSkipLevels,
                                         BLOCK_SIZE,
+                                        blockMaxFreq,
                                         true,
                                         indexHasOffsets,
                                         indexHasPayloads);
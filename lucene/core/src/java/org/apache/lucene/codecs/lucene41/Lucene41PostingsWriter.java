@@ -71,6 +71,16 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
   final static int VERSION_CHECKSUM = 2;
   final static int VERSION_CURRENT = VERSION_CHECKSUM;
 
+  // Appended to the codec names of files whose skip data records
+  // the max freq of each block, see Lucene41BlockMaxPostingsFormat
+  final static String BLOCK_MAX_SUFFIX = "BlockMax";
+
+  /** Returns the codec name to write in headers, depending on whether
+   *  the skip data records block max freqs. */
+  static String codecName(String codec, boolean blockMaxFreq) {
+    return blockMaxFreq ? codec + BLOCK_MAX_SUFFIX : codec;
+  }
+
   IndexOutput docOut;
   IndexOutput posOut;
   IndexOutput payOut;
@@ -107,6 +117,10 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
   private long lastBlockPayFP;
   private int lastBlockPosBufferUpto;
   private int lastBlockPayloadByteUpto;
+  private int lastBlockMaxFreq;
+
+  // Max freq of the docs buffered in the current block:
+  private int blockMaxFreq;
 
   private int lastDocID;
   private int lastPosition;
@@ -117,11 +131,22 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
 
   private final ForUtil forUtil;
   private final Lucene41SkipWriter skipWriter;
+
+  // true if skip entries record the max freq of the blocks they cover
+  private final boolean writeBlockMaxFreq;
   
   /** Creates a postings writer with the specified PackedInts overhead ratio */
   // TODO: does this ctor even make sense?
   public Lucene41PostingsWriter(SegmentWriteState state, float acceptableOverheadRatio) throws IOException {
+    this(state, acceptableOverheadRatio, false);
+  }
+
+  /** Creates a postings writer with the specified PackedInts overhead ratio,
+   *  that also records block max freqs in skip data if
+   *  <code>writeBlockMaxFreq</code> is true. */
+  Lucene41PostingsWriter(SegmentWriteState state, float acceptableOverheadRatio, boolean writeBlockMaxFreq) throws IOException {
     super();
+    this.writeBlockMaxFreq = writeBlockMaxFreq;
 
     docOut = state.directory.createOutput(IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, Lucene41PostingsFormat.DOC_EXTENSION),
                                                   state.context);
@@ -129,13 +154,13 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
     IndexOutput payOut = null;
     boolean success = false;
     try {
-      CodecUtil.writeHeader(docOut, DOC_CODEC, VERSION_CURRENT);
+      CodecUtil.writeHeader(docOut, codecName(DOC_CODEC, writeBlockMaxFreq), VERSION_CURRENT);
       forUtil = new ForUtil(acceptableOverheadRatio, docOut);
       if (state.fieldInfos.hasProx()) {
         posDeltaBuffer = new int[MAX_DATA_SIZE];
         posOut = state.directory.createOutput(IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, Lucene41PostingsFormat.POS_EXTENSION),
                                                       state.context);
-        CodecUtil.writeHeader(posOut, POS_CODEC, VERSION_CURRENT);
+        CodecUtil.writeHeader(posOut, codecName(POS_CODEC, writeBlockMaxFreq), VERSION_CURRENT);
 
         if (state.fieldInfos.hasPayloads()) {
           payloadBytes = new byte[128];
@@ -156,7 +181,7 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
         if (state.fieldInfos.hasPayloads() || state.fieldInfos.hasOffsets()) {
           payOut = state.directory.createOutput(IndexFileNames.segmentFileName(state.segmentInfo.name, state.segmentSuffix, Lucene41PostingsFormat.PAY_EXTENSION),
                                                         state.context);
-          CodecUtil.writeHeader(payOut, PAY_CODEC, VERSION_CURRENT);
+          CodecUtil.writeHeader(payOut, codecName(PAY_CODEC, writeBlockMaxFreq), VERSION_CURRENT);
         }
       } else {
         posDeltaBuffer = null;
@@ -236,7 +261,7 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
 
   @Override
   public void init(IndexOutput termsOut) throws IOException {
-    CodecUtil.writeHeader(termsOut, TERMS_CODEC, VERSION_CURRENT);
+    CodecUtil.writeHeader(termsOut, codecName(TERMS_CODEC, writeBlockMaxFreq), VERSION_CURRENT);
     termsOut.writeVInt(BLOCK_SIZE);
   }
 
@@ -247,7 +272,7 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
     fieldHasPositions = indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS) >= 0;
     fieldHasOffsets = indexOptions.compareTo(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) >= 0;
     fieldHasPayloads = fieldInfo.hasPayloads();
-    skipWriter.setField(fieldHasPositions, fieldHasOffsets, fieldHasPayloads);
+    skipWriter.setField(fieldHasFreqs && writeBlockMaxFreq, fieldHasPositions, fieldHasOffsets, fieldHasPayloads);
     lastState = emptyState;
     if (fieldHasPositions) {
       if (fieldHasPayloads || fieldHasOffsets) {
@@ -271,6 +296,7 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
     }
     lastDocID = 0;
     lastBlockDocID = -1;
+    blockMaxFreq = 0;
     // if (DEBUG) {
     //   System.out.println("FPW.startTerm startFP=" + docStartFP);
     // }
@@ -289,7 +315,7 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
       // if (DEBUG) {
       //   System.out.println("  bufferSkip at writeBlock: lastDocID=" + lastBlockDocID + " docCount=" + (docCount-1));
       // }
-      skipWriter.bufferSkip(lastBlockDocID, docCount, lastBlockPosFP, lastBlockPayFP, lastBlockPosBufferUpto, lastBlockPayloadByteUpto);
+      skipWriter.bufferSkip(lastBlockDocID, docCount, lastBlockPosFP, lastBlockPayFP, lastBlockPosBufferUpto, lastBlockPayloadByteUpto, lastBlockMaxFreq);
     }
 
     final int docDelta = docID - lastDocID;
@@ -304,6 +330,7 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
     // }
     if (fieldHasFreqs) {
       freqBuffer[docBufferUpto] = termDocFreq;
+      blockMaxFreq = Math.max(blockMaxFreq, termDocFreq);
     }
     docBufferUpto++;
     docCount++;
@@ -388,6 +415,8 @@ public final class Lucene41PostingsWriter extends PostingsWriterBase {
     // write them to skip file.
     if (docBufferUpto == BLOCK_SIZE) {
       lastBlockDocID = lastDocID;
+      lastBlockMaxFreq = blockMaxFreq;
+      blockMaxFreq = 0;
       if (posOut != null) {
         if (payOut != null) {
           lastBlockPayFP = payOut.getFilePointer();
@@ -59,6 +59,7 @@ final class Lucene41SkipReader extends MultiLevelSkipListReader {
   private long payPointer[];
   private int posBufferUpto[];
   private int payloadByteUpto[];
+  private int maxFreq[];
 
   private long lastPosPointer;
   private long lastPayPointer;
@@ -66,10 +67,15 @@ final class Lucene41SkipReader extends MultiLevelSkipListReader {
   private long lastDocPointer;
   private int lastPosBufferUpto;
 
-  public Lucene41SkipReader(IndexInput skipStream, int maxSkipLevels, int blockSize, boolean hasPos, boolean hasOffsets, boolean hasPayloads) {
+  public Lucene41SkipReader(IndexInput skipStream, int maxSkipLevels, int blockSize, boolean hasMaxFreq, boolean hasPos, boolean hasOffsets, boolean hasPayloads) {
     super(skipStream, maxSkipLevels, blockSize, 8);
     this.blockSize = blockSize;
     docPointer = new long[maxSkipLevels];
+    if (hasMaxFreq) {
+      maxFreq = new int[maxSkipLevels];
+    } else {
+      maxFreq = null;
+    }
     if (hasPos) {
       posPointer = new long[maxSkipLevels];
       posBufferUpto = new int[maxSkipLevels];
@@ -108,6 +114,9 @@ final class Lucene41SkipReader extends MultiLevelSkipListReader {
     lastPayPointer = payBasePointer;
 
     Arrays.fill(docPointer, docBasePointer);
+    if (maxFreq != null) {
+      Arrays.fill(maxFreq, Integer.MAX_VALUE);
+    }
     if (posPointer != null) {
       Arrays.fill(posPointer, posBasePointer);
       if (payPointer != null) {
@@ -144,6 +153,12 @@ final class Lucene41SkipReader extends MultiLevelSkipListReader {
     return skipDoc[0];
   }
 
+  /** Returns the max freq of the block that ends at {@link #getNextSkipDoc()},
+   *  or {@link Integer#MAX_VALUE} if the skip data doesn't record it. */
+  public int getNextSkipMaxFreq() {
+    return maxFreq == null ? Integer.MAX_VALUE : maxFreq[0];
+  }
+
   @Override
   protected void seekChild(int level) throws IOException {
     super.seekChild(level);
@@ -200,6 +215,10 @@ final class Lucene41SkipReader extends MultiLevelSkipListReader {
     //   System.out.println("  docFP=" + docPointer[level]);
     // }
 
+    if (maxFreq != null) {
+      maxFreq[level] = skipStream.readVInt();
+    }
+
     if (posPointer != null) {
       posPointer[level] += skipStream.readVLong();
       // if (DEBUG) {
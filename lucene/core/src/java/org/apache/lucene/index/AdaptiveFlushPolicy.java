@@ -0,0 +1,171 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.index.DocumentsWriterPerThreadPool.ThreadState;
+
+/**
+ * {@link FlushPolicy} that tunes its flush thresholds at runtime, based on
+ * the observed flush bandwidth, the merge backlog of the {@link IndexWriter}
+ * and how often indexing threads got stalled.
+ * <p>
+ * Like {@link FlushByRamOrCountsPolicy}, which it extends, it flushes the
+ * largest {@link DocumentsWriterPerThread} once the global active RAM exceeds
+ * a limit, but that limit floats around
+ * {@link IndexWriterConfig#getRAMBufferSizeMB()}:
+ * <ul>
+ * <li>every stall shrinks it, down to a quarter of the RAM buffer, so flushes
+ * start earlier and free memory before the flushing threads fall behind,</li>
+ * <li>while merges are behind it grows, up to twice the RAM buffer but never
+ * beyond {@link IndexWriterConfig#getRAMPerThreadHardLimitMB()}, so flushes
+ * are larger and produce fewer small segments to merge,</li>
+ * <li>otherwise it slowly drifts back to the configured RAM buffer.</li>
+ * </ul>
+ * Since indexing stalls once twice the RAM buffer is buffered or flushing,
+ * growing the limit trades a higher risk of stalls for fewer segments; the
+ * first stall shrinks it again.
+ * If a target flush latency is given, each DWPT is additionally flushed once
+ * it holds more bytes than the measured flush bandwidth can write within that
+ * latency, which keeps full flushes done on NRT reopen or commit short. That
+ * cap is lifted while merges are behind.
+ * <p>
+ * Doc count and delete term triggers are applied unchanged.
+ */
+class AdaptiveFlushPolicy extends FlushByRamOrCountsPolicy {
+
+  /** Smallest fraction of the configured RAM buffer used as flush trigger. */
+  static final double MIN_BUFFER_FRACTION = 0.25;
+
+  /** Largest fraction of the configured RAM buffer used as flush trigger,
+   *  reached only while merges are behind. */
+  static final double MAX_BUFFER_FRACTION = 2.0;
+
+  /** Smallest per DWPT flush threshold derived from the latency target. */
+  static final long MIN_WRITER_BYTES = 1024 * 1024;
+
+  private final long targetFlushNanos;
+
+  // written by flushing threads in onFlushed, read under the flush control lock:
+  private volatile double bufferFraction = 1.0;
+  private volatile long writerLimitBytes = Long.MAX_VALUE;
+
+  // guarded by this:
+  private double flushBytesPerNano;
+  private long lastStallCount;
+
+  /**
+   * Creates a new policy.
+   *
+   * @param targetFlushMillis the longest a single DWPT flush should take, or
+   *        <code>0</code> to not cap the size of a DWPT by flush latency
+   */
+  AdaptiveFlushPolicy(long targetFlushMillis) {
+    if (targetFlushMillis < 0) {
+      throw new IllegalArgumentException("targetFlushMillis must be >= 0, got " + targetFlushMillis);
+    }
+    this.targetFlushNanos = targetFlushMillis * 1000000L;
+  }
+
+  @Override
+  public void onInsert(DocumentsWriterFlushControl control, ThreadState state) {
+    super.onInsert(control, state);
+    if (!state.flushPending && flushOnRAM() && state.bytesUsed >= writerLimitBytes) {
+      if (infoStream.isEnabled("FP")) {
+        infoStream.message("FP", "trigger flush: dwpt bytesUsed=" + state.bytesUsed + " vs writer limit=" + writerLimitBytes);
+      }
+      control.setFlushPending(state);
+    }
+  }
+
+  @Override
+  protected long ramBufferBytes() {
+    return (long) (super.ramBufferBytes() * bufferFraction);
+  }
+
+  @Override
+  public void onFlushed(DocumentsWriterFlushControl control, long bytes, long nanos) {
+    onFlushed(bytes, nanos, control.getStallCount(), control.getMergeBacklog());
+  }
+
+  /** Adapts the thresholds to a flush of <code>bytes</code> that took
+   *  <code>nanos</code>, given how many times indexing was stalled so far
+   *  and how many merges are pending or running. */
+  synchronized void onFlushed(long bytes, long nanos, long stallCount, int mergeBacklog) {
+    if (bytes > 0 && nanos > 0) {
+      final double rate = (double) bytes / nanos;
+      flushBytesPerNano = flushBytesPerNano == 0 ? rate : 0.75 * flushBytesPerNano + 0.25 * rate;
+    }
+
+    final boolean stalled = stallCount != lastStallCount;
+    lastStallCount = stallCount;
+    final boolean mergesBehind = mergeBacklog > maxMergeCount();
+
+    double fraction = bufferFraction;
+    if (stalled) {
+      fraction *= 0.75;
+    } else if (mergesBehind) {
+      fraction = Math.min(maxBufferFraction(), fraction * 1.25);
+    } else if (fraction < 1.0) {
+      fraction = Math.min(1.0, fraction * 1.05);
+    } else {
+      // drift back down from a backlog, but not below the RAM buffer
+      fraction = Math.max(1.0, fraction * 0.95);
+    }
+    bufferFraction = Math.max(MIN_BUFFER_FRACTION, fraction);
+
+    if (targetFlushNanos == 0 || mergesBehind || flushBytesPerNano == 0) {
+      writerLimitBytes = Long.MAX_VALUE;
+    } else {
+      writerLimitBytes = Math.max(MIN_WRITER_BYTES, (long) (flushBytesPerNano * targetFlushNanos));
+    }
+
+    if (infoStream.isEnabled("FP")) {
+      infoStream.message("FP", "flushed " + bytes + " bytes in " + (nanos / 1000000) + " msec; stalled=" + stalled
+          + " mergesBehind=" + mergesBehind + " -> bufferFraction=" + bufferFraction + " writerLimitBytes=" + writerLimitBytes);
+    }
+  }
+
+  /** Returns how far beyond the RAM buffer the flush trigger may grow:
+   *  {@link #MAX_BUFFER_FRACTION}, unless the per thread hard limit is
+   *  lower, since a single DWPT is force-flushed at that limit anyway. */
+  private double maxBufferFraction() {
+    final double ramBufferSizeMB = indexWriterConfig.getRAMBufferSizeMB();
+    final double hardLimitFraction = indexWriterConfig.getRAMPerThreadHardLimitMB() / ramBufferSizeMB;
+    return Math.max(1.0, Math.min(MAX_BUFFER_FRACTION, hardLimitFraction));
+  }
+
+  /** Returns the current fraction of the RAM buffer that triggers a flush. */
+  double getBufferFraction() {
+    return bufferFraction;
+  }
+
+  /** Returns the current per DWPT flush threshold, in bytes. */
+  long getWriterLimitBytes() {
+    return writerLimitBytes;
+  }
+
+  /** Merges beyond this many are considered a backlog: the merge
+   *  scheduler's limit if it is a {@link ConcurrentMergeScheduler}, else one. */
+  private int maxMergeCount() {
+    final MergeScheduler mergeScheduler = indexWriterConfig.getMergeScheduler();
+    if (mergeScheduler instanceof ConcurrentMergeScheduler) {
+      return ((ConcurrentMergeScheduler) mergeScheduler).getMaxMergeCount();
+    }
+    return 1;
+  }
+}
@@ -20,9 +20,20 @@ package org.apache.lucene.index;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
 import org.apache.lucene.codecs.DocValuesConsumer;
 import org.apache.lucene.codecs.DocValuesFormat;
 import org.apache.lucene.codecs.FieldInfosWriter;
@@ -34,11 +45,14 @@ import org.apache.lucene.index.FieldInfo.IndexOptions;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.AttributeFactory;
+import org.apache.lucene.util.AttributeImpl;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefHash.MaxBytesLengthExceededException;
 import org.apache.lucene.util.Counter;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /** Default general purpose indexing chain, which handles
  *  indexing all types of fields. */
@@ -67,6 +81,10 @@ final class DefaultIndexingChain extends DocConsumer {
   // Holds fields seen in each document
   private PerField[] fields = new PerField[1];
 
+  // Token streams of the large fields of the current document,
+  // being analyzed on the field inversion executor; lazy init:
+  private Map<IndexableField,FutureTask<BufferedTokenStream>> preAnalyzed;
+
   public DefaultIndexingChain(DocumentsWriterPerThread docWriter) throws IOException {
     this.docWriter = docWriter;
     this.fieldInfos = docWriter.getFieldInfosBuilder();
@@ -314,10 +332,14 @@ final class DefaultIndexingChain extends DocConsumer {
     startStoredFields();
 
     try {
+      startParallelAnalysis();
       for (IndexableField field : docState.doc) {
         fieldCount = processField(field, fieldGen, fieldCount);
       }
     } finally {
+      if (preAnalyzed != null && preAnalyzed.isEmpty() == false) {
+        awaitParallelAnalysis();
+      }
       if (docWriter.aborting == false) {
         // Finish each indexed field name seen in the document:
         for (int i=0;i<fieldCount;i++) {
@@ -340,6 +362,111 @@ final class DefaultIndexingChain extends DocConsumer {
     }
   }
   
+  /** Submits the large tokenized fields of the current
+   *  document to the field inversion executor, if one is
+   *  configured, so that their analysis overlaps with the
+   *  inversion of the other fields. */
+  private void startParallelAnalysis() {
+    final LiveIndexWriterConfig config = docWriter.getIndexWriterConfig();
+    final Executor executor = config.getFieldInversionExecutor();
+    final Analyzer analyzer = docState.analyzer;
+    if (executor == null || analyzer == null) {
+      return;
+    }
+    final int minChars = config.getParallelInversionMinChars();
+    // buffered tokens are not charged to the DWPT, so bound what a single
+    // document may buffer at once:
+    long remainingChars = maxParallelInversionChars(config);
+    for (final IndexableField field : docState.doc) {
+      final IndexableFieldType fieldType = field.fieldType();
+      if (fieldType.indexed() == false || fieldType.tokenized() == false) {
+        continue;
+      }
+      // Reader values are never buffered: their size is unknown up-front
+      final String value = field.stringValue();
+      if (value == null || value.length() < minChars || value.length() > remainingChars) {
+        continue;
+      }
+      if (preAnalyzed == null) {
+        preAnalyzed = new IdentityHashMap<>();
+      } else if (preAnalyzed.containsKey(field)) {
+        continue;
+      }
+      final FutureTask<BufferedTokenStream> task = new FutureTask<>(new Callable<BufferedTokenStream>() {
+        @Override
+        public BufferedTokenStream call() throws IOException {
+          return BufferedTokenStream.consume(field, analyzer);
+        }
+      });
+      preAnalyzed.put(field, task);
+      remainingChars -= value.length();
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException ree) {
+        task.run();
+      }
+    }
+  }
+
+  /** Returns how many chars of one document may be analyzed on the field
+   *  inversion executor at once: 1/64th of the per thread hard limit, which
+   *  bounds the buffered tokens to a small fraction of that limit. */
+  private static long maxParallelInversionChars(LiveIndexWriterConfig config) {
+    return ((long) config.getRAMPerThreadHardLimitMB() * 1024 * 1024) >>> 6;
+  }
+
+  /** Returns the buffered tokens of the given field if it was
+   *  analyzed on the field inversion executor, else null. */
+  private TokenStream takePreAnalyzed(IndexableField field) throws IOException {
+    if (preAnalyzed == null || preAnalyzed.isEmpty()) {
+      return null;
+    }
+    final FutureTask<BufferedTokenStream> task = preAnalyzed.remove(field);
+    if (task == null) {
+      return null;
+    }
+    try {
+      return task.get();
+    } catch (InterruptedException ie) {
+      throw new ThreadInterruptedException(ie);
+    } catch (ExecutionException ee) {
+      final Throwable cause = ee.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /** Waits for the analysis tasks the document did not
+   *  consume (because it hit an exception), since they may
+   *  still read field values the caller is free to reuse
+   *  once we return. */
+  private void awaitParallelAnalysis() {
+    boolean interrupted = false;
+    for (FutureTask<BufferedTokenStream> task : preAnalyzed.values()) {
+      while (true) {
+        try {
+          task.get();
+          break;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        } catch (ExecutionException ee) {
+          // ignore: the document already failed
+          break;
+        }
+      }
+    }
+    preAnalyzed.clear();
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   private int processField(IndexableField field, long fieldGen, int fieldCount) throws IOException {
     String fieldName = field.name();
     IndexableFieldType fieldType = field.fieldType();
@@ -356,7 +483,7 @@ final class DefaultIndexingChain extends DocConsumer {
       
       fp = getOrAddField(fieldName, fieldType, true);
       boolean first = fp.fieldGen != fieldGen;
-      fp.invert(field, first);
+      fp.invert(field, first, takePreAnalyzed(field));
 
       if (first) {
         fields[fieldCount++] = fp;
@@ -585,8 +712,10 @@ final class DefaultIndexingChain extends DocConsumer {
 
     /** Inverts one field for one document; first is true
      *  if this is the first time we are seeing this field
-     *  name in this document. */
-    public void invert(IndexableField field, boolean first) throws IOException {
+     *  name in this document. preAnalyzed, if not null,
+     *  holds the field's tokens buffered by the field
+     *  inversion executor. */
+    public void invert(IndexableField field, boolean first, TokenStream preAnalyzed) throws IOException {
       if (first) {
         // First time we're seeing this field (indexed) in
         // this document:
@@ -608,7 +737,7 @@ final class DefaultIndexingChain extends DocConsumer {
        */
       boolean aborting = false;
       boolean succeededInProcessingField = false;
-      try (TokenStream stream = tokenStream = field.tokenStream(docState.analyzer, tokenStream)) {
+      try (TokenStream stream = preAnalyzed != null ? preAnalyzed : (tokenStream = field.tokenStream(docState.analyzer, tokenStream))) {
         // reset the TokenStream to the first token
         stream.reset();
         invertState.setAttributeSource(stream);
@@ -703,4 +832,178 @@ final class DefaultIndexingChain extends DocConsumer {
       invertState.boost *= field.boost();
     }
   }
+
+  /** Tokens of one field value, consumed and buffered on the
+   *  field inversion executor and replayed on the indexing
+   *  thread. Only the attributes that inversion reads are kept:
+   *  term and payload bytes share one byte[], position increments
+   *  and offsets are stored in parallel int[]s. */
+  private static final class BufferedTokenStream extends TokenStream {
+    private final BufferedTermAttributeImpl termAtt;
+    private final PositionIncrementAttribute posIncAtt;
+    private final OffsetAttribute offsetAtt;
+    private final PayloadAttribute payloadAtt; // null if the analyzer has none
+    private final BytesRef payload = new BytesRef();
+
+    private byte[] bytes = new byte[ArrayUtil.oversize(256, 1)];
+    private int bytesUpto;
+    // per token: end of its term bytes and, if payloads are buffered, of its payload
+    private int[] termEnds = new int[ArrayUtil.oversize(16, RamUsageEstimator.NUM_BYTES_INT)];
+    private int[] payloadEnds;
+    private int[] posIncs = new int[termEnds.length];
+    private int[] startOffsets = new int[termEnds.length];
+    private int[] endOffsets = new int[termEnds.length];
+    private int numTokens;
+    private int finalPosInc, finalStartOffset, finalEndOffset;
+    private int upto;
+
+    private BufferedTokenStream(boolean hasPayloads) {
+      super(AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY);
+      // must be registered before any other attribute, so that no other
+      // implementation claims TermToBytesRefAttribute:
+      termAtt = new BufferedTermAttributeImpl();
+      addAttributeImpl(termAtt);
+      posIncAtt = addAttribute(PositionIncrementAttribute.class);
+      offsetAtt = addAttribute(OffsetAttribute.class);
+      if (hasPayloads) {
+        payloadAtt = addAttribute(PayloadAttribute.class);
+        payloadEnds = new int[termEnds.length];
+      } else {
+        payloadAtt = null;
+      }
+    }
+
+    /** Consumes the field's token stream, or returns null without
+     *  consuming it if it has no term attribute. */
+    static BufferedTokenStream consume(IndexableField field, Analyzer analyzer) throws IOException {
+      try (TokenStream stream = field.tokenStream(analyzer, null)) {
+        final TermToBytesRefAttribute streamTermAtt = stream.getAttribute(TermToBytesRefAttribute.class);
+        if (streamTermAtt == null) {
+          // let the indexing thread fail on it as usual
+          return null;
+        }
+        final BytesRef streamTerm = streamTermAtt.getBytesRef();
+        final PositionIncrementAttribute streamPosIncAtt = stream.addAttribute(PositionIncrementAttribute.class);
+        final OffsetAttribute streamOffsetAtt = stream.addAttribute(OffsetAttribute.class);
+        final PayloadAttribute streamPayloadAtt = stream.getAttribute(PayloadAttribute.class);
+
+        final BufferedTokenStream buffered = new BufferedTokenStream(streamPayloadAtt != null);
+        stream.reset();
+        while (stream.incrementToken()) {
+          streamTermAtt.fillBytesRef();
+          buffered.add(streamTerm, streamPosIncAtt.getPositionIncrement(),
+                       streamOffsetAtt.startOffset(), streamOffsetAtt.endOffset(),
+                       streamPayloadAtt == null ? null : streamPayloadAtt.getPayload());
+        }
+        stream.end();
+        buffered.finalPosInc = streamPosIncAtt.getPositionIncrement();
+        buffered.finalStartOffset = streamOffsetAtt.startOffset();
+        buffered.finalEndOffset = streamOffsetAtt.endOffset();
+        return buffered;
+      }
+    }
+
+    private void add(BytesRef term, int posInc, int startOffset, int endOffset, BytesRef payload) {
+      if (numTokens == termEnds.length) {
+        termEnds = ArrayUtil.grow(termEnds, numTokens + 1);
+        posIncs = Arrays.copyOf(posIncs, termEnds.length);
+        startOffsets = Arrays.copyOf(startOffsets, termEnds.length);
+        endOffsets = Arrays.copyOf(endOffsets, termEnds.length);
+        if (payloadEnds != null) {
+          payloadEnds = Arrays.copyOf(payloadEnds, termEnds.length);
+        }
+      }
+      append(term);
+      termEnds[numTokens] = bytesUpto;
+      if (payloadEnds != null) {
+        if (payload != null) {
+          append(payload);
+        }
+        payloadEnds[numTokens] = bytesUpto;
+      }
+      posIncs[numTokens] = posInc;
+      startOffsets[numTokens] = startOffset;
+      endOffsets[numTokens] = endOffset;
+      numTokens++;
+    }
+
+    private void append(BytesRef ref) {
+      bytes = ArrayUtil.grow(bytes, bytesUpto + ref.length);
+      System.arraycopy(ref.bytes, ref.offset, bytes, bytesUpto, ref.length);
+      bytesUpto += ref.length;
+    }
+
+    @Override
+    public boolean incrementToken() {
+      if (upto == numTokens) {
+        return false;
+      }
+      clearAttributes();
+      final int termStart = upto == 0 ? 0 : (payloadEnds != null ? payloadEnds[upto-1] : termEnds[upto-1]);
+      final BytesRef term = termAtt.getBytesRef();
+      term.bytes = bytes;
+      term.offset = termStart;
+      term.length = termEnds[upto] - termStart;
+      posIncAtt.setPositionIncrement(posIncs[upto]);
+      offsetAtt.setOffset(startOffsets[upto], endOffsets[upto]);
+      if (payloadAtt != null) {
+        final int payloadLength = payloadEnds[upto] - termEnds[upto];
+        if (payloadLength == 0) {
+          payloadAtt.setPayload(null);
+        } else {
+          payload.bytes = bytes;
+          payload.offset = termEnds[upto];
+          payload.length = payloadLength;
+          payloadAtt.setPayload(payload);
+        }
+      }
+      upto++;
+      return true;
+    }
+
+    @Override
+    public void end() {
+      clearAttributes();
+      posIncAtt.setPositionIncrement(finalPosInc);
+      offsetAtt.setOffset(finalStartOffset, finalEndOffset);
+    }
+
+    @Override
+    public void reset() {
+      upto = 0;
+    }
+  }
+
+  /** Term attribute of a {@link BufferedTokenStream}, whose bytes
+   *  point into the stream's buffer. */
+  private static final class BufferedTermAttributeImpl extends AttributeImpl implements TermToBytesRefAttribute {
+    private final BytesRef bytes = new BytesRef();
+
+    @Override
+    public void fillBytesRef() {
+      // the bytes are set by BufferedTokenStream.incrementToken
+    }
+
+    @Override
+    public BytesRef getBytesRef() {
+      return bytes;
+    }
+
+    @Override
+    public void clear() {
+      bytes.length = 0;
+    }
+
+    @Override
+    public void copyTo(AttributeImpl target) {
+      ((BufferedTermAttributeImpl) target).bytes.copyBytes(bytes);
+    }
+
+    @Override
+    public BufferedTermAttributeImpl clone() {
+      final BufferedTermAttributeImpl clone = new BufferedTermAttributeImpl();
+      clone.bytes.copyBytes(bytes);
+      return clone;
+    }
+  }
 }
@@ -59,6 +59,43 @@ public abstract class DocsEnum extends DocIdSetIterator {
    * the result of this method is undefined.
    */
   public abstract int freq() throws IOException;
+
+  /**
+   * Expert: returns an upper bound of {@link #freq()} over all documents of
+   * this enum, or {@link Integer#MAX_VALUE} if no bound is known.
+   * @lucene.experimental
+   */
+  public int maxFreq() {
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * Expert: moves the skip data, but not necessarily the enum, to the block
+   * of postings that contains <code>target</code>, and returns the last
+   * document ID of that block, or {@link DocIdSetIterator#NO_MORE_DOCS} if
+   * the block runs to the end of the postings. {@link #blockMaxFreq()}
+   * then bounds the freq of all documents up to the returned document.
+   * <p>
+   * <code>target</code> must not be less than {@link #docID()}; after this
+   * call {@link #advance(int)} must only be called with targets greater
+   * than or equal to <code>target</code>, and {@link #nextDoc()} only if the
+   * current document is at least <code>target - 1</code>.
+   * The default implementation treats the postings as a single block.
+   * @lucene.experimental
+   */
+  public int advanceShallow(int target) throws IOException {
+    return NO_MORE_DOCS;
+  }
+
+  /**
+   * Expert: returns an upper bound of {@link #freq()} over the documents of
+   * the block selected by the last call to {@link #advanceShallow(int)}.
+   * The default implementation returns {@link #maxFreq()}.
+   * @lucene.experimental
+   */
+  public int blockMaxFreq() {
+    return maxFreq();
+  }
   
   /** Returns the related attributes. */
   public AttributeSource attributes() {
@@ -21,6 +21,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -120,7 +121,9 @@ final class DocumentsWriter implements Closeable, Accountable {
   final DocumentsWriterPerThreadPool perThreadPool;
   final FlushPolicy flushPolicy;
   final DocumentsWriterFlushControl flushControl;
-  private final IndexWriter writer;
+  // null unless IndexWriterConfig#setRecycledBlocksMB is set:
+  private final DocumentsWriterBlockRecycler blockRecycler;
+  final IndexWriter writer;
   private final Queue<Event> events;
 
   
@@ -133,6 +136,8 @@ final class DocumentsWriter implements Closeable, Accountable {
     this.writer = writer;
     this.events = new ConcurrentLinkedQueue<>();
     flushControl = new DocumentsWriterFlushControl(this, config, writer.bufferedUpdatesStream);
+    final int recycledBlocksMB = config.getRecycledBlocksMB();
+    blockRecycler = recycledBlocksMB > 0 ? new DocumentsWriterBlockRecycler(recycledBlocksMB * 1024L * 1024L) : null;
   }
   
   synchronized boolean deleteQueries(final Query... queries) throws IOException {
@@ -370,6 +375,7 @@ final class DocumentsWriter implements Closeable, Accountable {
           }
         }
         
+        flushControl.notifyStallListener();
         flushControl.waitIfStalled(); // block if stalled
       } while (flushControl.numQueuedFlushes() != 0); // still queued DWPTs try help flushing
 
@@ -390,6 +396,8 @@ final class DocumentsWriter implements Closeable, Accountable {
         hasEvents |= doFlush(nextPendingFlush);
       }
     }
+    // the DWPT is released: report the stall transitions we caused
+    flushControl.notifyStallListener();
 
     return hasEvents;
   }
@@ -400,7 +408,7 @@ final class DocumentsWriter implements Closeable, Accountable {
           writer.globalFieldNumberMap);
       state.dwpt = new DocumentsWriterPerThread(writer.newSegmentName(),
                                                 directory, config, infoStream, deleteQueue, infos,
-                                                writer.pendingNumDocs);
+                                                writer.pendingNumDocs, blockRecycler);
     }
   }
 
@@ -444,6 +452,96 @@ final class DocumentsWriter implements Closeable, Accountable {
     return postUpdate(flushingDWPT, hasEvents);
   }
 
+  /** Returns the current stall and flush statistics. */
+  IndexingStallStats getStallStats() {
+    return flushControl.getStallStats(ticketQueue.getTicketCount());
+  }
+
+  /** Upper bound on the number of documents a bulk add indexes between two
+   *  flush control checks. */
+  static final int BULK_CHUNK_DOCS = 256;
+
+  /**
+   * Non-atomic bulk add: binds a single {@link DocumentsWriterPerThread} and
+   * keeps it locked across chunks of documents, consulting the flush control
+   * once per chunk rather than once per document. The DWPT is handed back
+   * whenever it needs to be flushed, a full flush swapped the delete queue or
+   * indexing threads are stalled; the remaining documents then continue on
+   * the next DWPT the pool hands out. Returns the number of documents added;
+   * events are left on the queue for the caller to process.
+   */
+  int addDocumentsBulk(final Iterable<? extends Iterable<? extends IndexableField>> docs,
+                       final Analyzer analyzer) throws IOException {
+    final Iterator<? extends Iterable<? extends IndexableField>> iterator = docs.iterator();
+    int docCount = 0;
+    if (!iterator.hasNext()) {
+      // nothing to add: don't lock and initialize a DWPT for it
+      return docCount;
+    }
+    do {
+      preUpdate();
+
+      final ThreadState perThread = flushControl.obtainAndLock();
+      DocumentsWriterPerThread flushingDWPT = null;
+      try {
+        if (!perThread.isActive()) {
+          ensureOpen();
+          assert false: "perThread is not active but we are still open";
+        }
+        ensureInitialized(perThread);
+        assert perThread.isInitialized();
+        final DocumentsWriterPerThread dwpt = perThread.dwpt;
+        final int dwptNumDocs = dwpt.getNumDocsInRAM();
+        try {
+          do {
+            docCount += dwpt.addDocumentsChunk(iterator, analyzer, maxBulkChunkDocs(dwpt), maxBulkChunkBytes());
+            flushingDWPT = flushControl.doAfterDocument(perThread, false);
+          } while (flushingDWPT == null && !perThread.flushPending
+              && dwpt.deleteQueue == deleteQueue && !flushControl.anyStalledThreads()
+              && iterator.hasNext());
+        } finally {
+          // We don't know how many documents were actually
+          // counted as indexed, so we must subtract here to
+          // accumulate our separate counter:
+          numDocsInRAM.addAndGet(dwpt.getNumDocsInRAM() - dwptNumDocs);
+          if (dwpt.checkAndResetHasAborted()) {
+            if (!dwpt.pendingFilesToDelete().isEmpty()) {
+              putEvent(new DeleteNewFilesEvent(dwpt.pendingFilesToDelete()));
+            }
+            subtractFlushedNumDocs(dwptNumDocs);
+            flushControl.doOnAbort(perThread);
+          }
+        }
+      } finally {
+        perThreadPool.release(perThread);
+      }
+
+      postUpdate(flushingDWPT, false);
+    } while (iterator.hasNext());
+
+    return docCount;
+  }
+
+  /** Caps a bulk chunk so that a doc count triggered flush does not overshoot
+   *  {@link IndexWriterConfig#getMaxBufferedDocs()}. */
+  private int maxBulkChunkDocs(DocumentsWriterPerThread dwpt) {
+    final int maxBufferedDocs = config.getMaxBufferedDocs();
+    if (maxBufferedDocs == IndexWriterConfig.DISABLE_AUTO_FLUSH) {
+      return BULK_CHUNK_DOCS;
+    }
+    return Math.max(1, Math.min(BULK_CHUNK_DOCS, maxBufferedDocs - dwpt.getNumDocsInRAM()));
+  }
+
+  /** A bulk chunk may grow its DWPT by at most 1/16th of the RAM buffer (or
+   *  of the per thread hard limit if flushing by RAM is disabled) before the
+   *  flush control is consulted again. */
+  private long maxBulkChunkBytes() {
+    final double ramBufferSizeMB = config.getRAMBufferSizeMB();
+    final double limitMB = ramBufferSizeMB != IndexWriterConfig.DISABLE_AUTO_FLUSH
+        ? ramBufferSizeMB : config.getRAMPerThreadHardLimitMB();
+    return Math.max(1L, (long) (limitMB * 1024 * 1024) >>> 4);
+  }
+
   boolean updateDocument(final Iterable<? extends IndexableField> doc, final Analyzer analyzer,
       final Term delTerm) throws IOException {
 
@@ -515,12 +613,16 @@ final class DocumentsWriter implements Closeable, Accountable {
           ticket = ticketQueue.addFlushTicket(flushingDWPT);
   
           final int flushingDocsInRam = flushingDWPT.getNumDocsInRAM();
+          final long flushingBytes = flushingDWPT.bytesUsed();
           boolean dwptSuccess = false;
           try {
             // flush concurrently without locking
+            final long flushStart = System.nanoTime();
             final FlushedSegment newSegment = flushingDWPT.flush();
+            final long flushNanos = System.nanoTime() - flushStart;
             ticketQueue.addSegment(ticket, newSegment);
             dwptSuccess = true;
+            flushPolicy.onFlushed(flushControl, flushingBytes, flushNanos);
           } finally {
             subtractFlushedNumDocs(flushingDocsInRam);
             if (!flushingDWPT.pendingFilesToDelete().isEmpty()) {
@@ -666,7 +768,7 @@ final class DocumentsWriter implements Closeable, Accountable {
     } finally {
       pendingChangesInCurrentFullFlush = false;
     }
-    
+    flushControl.notifyStallListener();
   }
 
   public LiveIndexWriterConfig getIndexWriterConfig() {
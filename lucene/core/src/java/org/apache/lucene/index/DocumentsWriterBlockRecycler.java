@@ -0,0 +1,133 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayDeque;
+
+import org.apache.lucene.util.ByteBlockPool;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.IntBlockPool;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Keeps the byte and int blocks of the in-memory term hashes alive across
+ * {@link DocumentsWriterPerThread} flushes, so that the next DWPT reuses them
+ * instead of allocating new ones. Without it every flush turns a whole RAM
+ * buffer worth of long-lived blocks into garbage, which mostly has been
+ * promoted already and so has to be collected from the old generation.
+ * <p>
+ * Blocks are handed back when the {@link TermsHash} pools are reset, which
+ * zero fills them first since slices rely on zeroed blocks. At most
+ * <code>maxBytes</code> of free blocks are kept; the others are left to the
+ * garbage collector. This class is thread-safe and shared by all DWPTs of a
+ * {@link DocumentsWriter}.
+ *
+ * @see IndexWriterConfig#setRecycledBlocksMB(int)
+ */
+final class DocumentsWriterBlockRecycler {
+
+  private static final int BYTE_BLOCK_BYTES = ByteBlockPool.BYTE_BLOCK_SIZE;
+  private static final int INT_BLOCK_BYTES = IntBlockPool.INT_BLOCK_SIZE * RamUsageEstimator.NUM_BYTES_INT;
+
+  private final long maxBytes;
+  private final ArrayDeque<byte[]> freeByteBlocks = new ArrayDeque<>();
+  private final ArrayDeque<int[]> freeIntBlocks = new ArrayDeque<>();
+  private long freeBytes;
+
+  DocumentsWriterBlockRecycler(long maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes must be > 0, got " + maxBytes);
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  /** Returns a new byte block allocator for a DWPT that accounts
+   *  the blocks it hands out in the given counter. */
+  ByteBlockPool.Allocator newByteBlockAllocator(final Counter bytesUsed) {
+    return new ByteBlockPool.Allocator(ByteBlockPool.BYTE_BLOCK_SIZE) {
+      @Override
+      public byte[] getByteBlock() {
+        bytesUsed.addAndGet(blockSize);
+        final byte[] block = takeByteBlock();
+        return block != null ? block : new byte[blockSize];
+      }
+
+      @Override
+      public void recycleByteBlocks(byte[][] blocks, int start, int end) {
+        bytesUsed.addAndGet(-((end - start) * blockSize));
+        offerByteBlocks(blocks, start, end);
+      }
+    };
+  }
+
+  /** Returns a new int block allocator for a DWPT that accounts
+   *  the blocks it hands out in the given counter. */
+  IntBlockPool.Allocator newIntBlockAllocator(final Counter bytesUsed) {
+    return new IntBlockPool.Allocator(IntBlockPool.INT_BLOCK_SIZE) {
+      @Override
+      public int[] getIntBlock() {
+        bytesUsed.addAndGet(INT_BLOCK_BYTES);
+        final int[] block = takeIntBlock();
+        return block != null ? block : new int[blockSize];
+      }
+
+      @Override
+      public void recycleIntBlocks(int[][] blocks, int start, int end) {
+        bytesUsed.addAndGet(-((end - start) * INT_BLOCK_BYTES));
+        offerIntBlocks(blocks, start, end);
+      }
+    };
+  }
+
+  private synchronized byte[] takeByteBlock() {
+    final byte[] block = freeByteBlocks.pollLast();
+    if (block != null) {
+      freeBytes -= BYTE_BLOCK_BYTES;
+    }
+    return block;
+  }
+
+  private synchronized int[] takeIntBlock() {
+    final int[] block = freeIntBlocks.pollLast();
+    if (block != null) {
+      freeBytes -= INT_BLOCK_BYTES;
+    }
+    return block;
+  }
+
+  private synchronized void offerByteBlocks(byte[][] blocks, int start, int end) {
+    for (int i = start; i < end && freeBytes + BYTE_BLOCK_BYTES <= maxBytes; i++) {
+      assert blocks[i].length == BYTE_BLOCK_BYTES;
+      freeByteBlocks.add(blocks[i]);
+      freeBytes += BYTE_BLOCK_BYTES;
+    }
+  }
+
+  private synchronized void offerIntBlocks(int[][] blocks, int start, int end) {
+    for (int i = start; i < end && freeBytes + INT_BLOCK_BYTES <= maxBytes; i++) {
+      assert blocks[i].length == IntBlockPool.INT_BLOCK_SIZE;
+      freeIntBlocks.add(blocks[i]);
+      freeBytes += INT_BLOCK_BYTES;
+    }
+  }
+
+  /** Returns the bytes held by free blocks waiting to be reused. */
+  synchronized long freeBytes() {
+    return freeBytes;
+  }
+}
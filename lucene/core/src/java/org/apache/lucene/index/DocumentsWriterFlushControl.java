@@ -75,7 +75,7 @@ final class DocumentsWriterFlushControl implements Accountable {
 
   DocumentsWriterFlushControl(DocumentsWriter documentsWriter, LiveIndexWriterConfig config, BufferedUpdatesStream bufferedUpdatesStream) {
     this.infoStream = config.getInfoStream();
-    this.stallControl = new DocumentsWriterStallControl();
+    this.stallControl = new DocumentsWriterStallControl(config);
     this.perThreadPool = documentsWriter.perThreadPool;
     this.flushPolicy = documentsWriter.flushPolicy;
     this.config = config;
@@ -697,12 +697,36 @@ final class DocumentsWriterFlushControl implements Accountable {
     stallControl.waitIfStalled();
   }
 
+  /** Reports stall transitions to the {@link IndexingStallListener}; must
+   *  be called without holding this monitor. */
+  void notifyStallListener() {
+    assert Thread.holdsLock(this) == false;
+    stallControl.notifyListener();
+  }
+
   /**
    * Returns <code>true</code> iff stalled
    */
   boolean anyStalledThreads() {
     return stallControl.anyStalledThreads();
   }
+
+  /** Returns how many times indexing threads were stalled so far. */
+  long getStallCount() {
+    return stallControl.getStallCount();
+  }
+
+  /** Returns a snapshot of the stall and flush state; the flush
+   *  queue depth is tracked by the {@link DocumentsWriter}. */
+  synchronized IndexingStallStats getStallStats(int flushQueueDepth) {
+    return stallControl.getStats(activeBytes, flushBytes, stallLimitBytes(),
+        flushQueue.size(), flushingWriters.size(), flushQueueDepth);
+  }
+
+  /** Returns the number of pending and running merges of the writer. */
+  int getMergeBacklog() {
+    return documentsWriter.writer.getMergeBacklog();
+  }
   
   /**
    * Returns the {@link IndexWriter} {@link InfoStream}
@@ -20,6 +20,7 @@ package org.apache.lucene.index;
 import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Locale;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
@@ -155,11 +156,19 @@ class DocumentsWriterPerThread {
   private final NumberFormat nf = NumberFormat.getInstance(Locale.ROOT);
   final Allocator byteBlockAllocator;
   final IntBlockPool.Allocator intBlockAllocator;
+  // true if the allocators hand out recycled blocks, which
+  // then must be zero filled when handed back:
+  final boolean recyclesBlocks;
   private final AtomicLong pendingNumDocs;
   private final LiveIndexWriterConfig indexWriterConfig;
   
   public DocumentsWriterPerThread(String segmentName, Directory directory, LiveIndexWriterConfig indexWriterConfig, InfoStream infoStream, DocumentsWriterDeleteQueue deleteQueue,
                                   FieldInfos.Builder fieldInfos, AtomicLong pendingNumDocs) throws IOException {
+    this(segmentName, directory, indexWriterConfig, infoStream, deleteQueue, fieldInfos, pendingNumDocs, null);
+  }
+
+  DocumentsWriterPerThread(String segmentName, Directory directory, LiveIndexWriterConfig indexWriterConfig, InfoStream infoStream, DocumentsWriterDeleteQueue deleteQueue,
+                           FieldInfos.Builder fieldInfos, AtomicLong pendingNumDocs, DocumentsWriterBlockRecycler blockRecycler) throws IOException {
     this.directoryOrig = directory;
     this.directory = new TrackingDirectoryWrapper(directory);
     this.fieldInfos = fieldInfos;
@@ -170,9 +179,15 @@ class DocumentsWriterPerThread {
     this.docState.similarity = indexWriterConfig.getSimilarity();
     this.pendingNumDocs = pendingNumDocs;
     bytesUsed = Counter.newCounter();
-    byteBlockAllocator = new DirectTrackingAllocator(bytesUsed);
+    if (blockRecycler != null) {
+      byteBlockAllocator = blockRecycler.newByteBlockAllocator(bytesUsed);
+      intBlockAllocator = blockRecycler.newIntBlockAllocator(bytesUsed);
+    } else {
+      byteBlockAllocator = new DirectTrackingAllocator(bytesUsed);
+      intBlockAllocator = new IntBlockAllocator(bytesUsed);
+    }
+    recyclesBlocks = blockRecycler != null;
     pendingUpdates = new BufferedUpdates();
-    intBlockAllocator = new IntBlockAllocator(bytesUsed);
     this.deleteQueue = deleteQueue;
     assert numDocsInRAM == 0 : "num docs " + numDocsInRAM;
     pendingUpdates.clear();
@@ -219,6 +234,16 @@ class DocumentsWriterPerThread {
     }
   }
 
+  /** Reserves room for up to {@code count} docs at once; unused
+   *  reservations must be handed back by the caller. */
+  private void reserveDocs(int count) {
+    if (pendingNumDocs.addAndGet(count) > IndexWriter.getActualMaxDocs()) {
+      // Reserve failed: put the docs back and throw exc:
+      pendingNumDocs.addAndGet(-count);
+      throw new IllegalArgumentException("number of documents in the index cannot exceed " + IndexWriter.getActualMaxDocs());
+    }
+  }
+
   public void updateDocument(Iterable<? extends IndexableField> doc, Analyzer analyzer, Term delTerm) throws IOException {
     assert testPoint("DocumentsWriterPerThread addDocument start");
     assert deleteQueue != null;
@@ -325,6 +350,82 @@ class DocumentsWriterPerThread {
     return docCount;
   }
   
+  /**
+   * Indexes documents pulled from the given iterator until it is exhausted,
+   * {@code maxDocs} documents have been consumed or this DWPT grew by at
+   * least {@code maxBytes}. Unlike {@link #updateDocuments} the chunk is not
+   * atomic: a document hitting a non-aborting exception is marked deleted on
+   * its own while the documents before it stay live. Doc reservation and the
+   * delete slice update are done once per chunk instead of once per document.
+   *
+   * @return the number of documents consumed from the iterator
+   */
+  int addDocumentsChunk(Iterator<? extends Iterable<? extends IndexableField>> docs, Analyzer analyzer,
+                        int maxDocs, long maxBytes) throws IOException {
+    assert testPoint("DocumentsWriterPerThread addDocumentsChunk start");
+    assert deleteQueue != null;
+    assert maxDocs > 0 && maxBytes > 0;
+    reserveDocs(maxDocs);
+    final int startDocID = numDocsInRAM;
+    final long maxBytesUsed = bytesUsed() + maxBytes;
+    if (INFO_VERBOSE && infoStream.isEnabled("DWPT")) {
+      infoStream.message("DWPT", Thread.currentThread().getName() + " add chunk docID=" + startDocID + " seg=" + segmentInfo.name);
+    }
+    int docCount = 0;
+    try {
+      while (docCount < maxDocs && docs.hasNext()) {
+        // same accounting as updateDocument: on exception the
+        // document is still added, but marked deleted
+        docState.doc = docs.next();
+        docState.analyzer = analyzer;
+        docState.docID = numDocsInRAM;
+        docCount++;
+        boolean success = false;
+        try {
+          consumer.processDocument();
+          success = true;
+        } finally {
+          if (!success) {
+            if (!aborting) {
+              deleteDocID(docState.docID);
+              numDocsInRAM++;
+            } else {
+              abort(filesToDelete);
+            }
+          }
+        }
+        numDocsInRAM++;
+        if (bytesUsed() >= maxBytesUsed) {
+          break;
+        }
+      }
+    } finally {
+      docState.clear();
+      // give back the reservations we did not use:
+      pendingNumDocs.addAndGet(docCount - maxDocs);
+      if (hasAborted == false) {
+        // also after a non-aborting exception, so that the deletes that
+        // arrived meanwhile are ordered before the whole chunk either way
+        finishDocuments(startDocID);
+      }
+    }
+    return docCount;
+  }
+
+  /** Like {@link #finishDocument(Term)} for a whole chunk without a delete
+   *  term: deletes that arrived while the chunk was indexed are applied to
+   *  the documents before the chunk only, as if they had completed before
+   *  the chunk started. */
+  private void finishDocuments(int startDocID) {
+    boolean applySlice = startDocID != 0;
+    applySlice &= deleteQueue.updateSlice(deleteSlice);
+    if (applySlice) {
+      deleteSlice.apply(pendingUpdates, startDocID);
+    } else { // if we don't need to apply we must reset!
+      deleteSlice.reset();
+    }
+  }
+
   private void finishDocument(Term delTerm) {
     /*
      * here we actually finish the document in two steps 1. push the delete into
@@ -558,6 +659,11 @@ class DocumentsWriterPerThread {
     }
   }
 
+  /** Returns the config this DWPT was created with. */
+  LiveIndexWriterConfig getIndexWriterConfig() {
+    return indexWriterConfig;
+  }
+
   /** Get current segment info we are writing. */
   SegmentInfo getSegmentInfo() {
     return segmentInfo;
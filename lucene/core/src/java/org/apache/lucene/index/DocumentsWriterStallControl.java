@@ -16,8 +16,12 @@ package org.apache.lucene.index;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.apache.lucene.index.DocumentsWriterPerThreadPool.ThreadState;
 import org.apache.lucene.util.ThreadInterruptedException;
@@ -40,9 +44,30 @@ import org.apache.lucene.util.ThreadInterruptedException;
 final class DocumentsWriterStallControl {
   
   private volatile boolean stalled;
-  private int numWaiting; // only with assert
+  private long stallCount;
+  private long stallStartNanos;
+  private long stalledNanos;
+  private int numWaiting;
+  private long blockedNanos;
+  private final Map<Thread, long[]> blockedNanosPerThread = new WeakHashMap<>();
   private boolean wasStalled; // only with assert
   private final Map<Thread, Boolean> waiting = new IdentityHashMap<>(); // only with assert
+  private final LiveIndexWriterConfig config; // may be null
+  // stall transitions not reported to the listener yet, oldest first: either
+  // STALL_START or, for the end of a stall, how long it lasted in nanos
+  private final ArrayDeque<Long> pendingEvents = new ArrayDeque<>();
+  private volatile boolean hasPendingEvents;
+  // serializes listener calls, so that they are reported in order
+  private final Object listenerLock = new Object();
+  private static final long STALL_START = -1;
+
+  DocumentsWriterStallControl() {
+    this(null);
+  }
+
+  DocumentsWriterStallControl(LiveIndexWriterConfig config) {
+    this.config = config;
+  }
   
   /**
    * Update the stalled flag status. This method will set the stalled flag to
@@ -50,9 +75,27 @@ final class DocumentsWriterStallControl {
    * {@link DocumentsWriterPerThread} is greater than the number of active
    * {@link DocumentsWriterPerThread}. Otherwise it will reset the
    * {@link DocumentsWriterStallControl} to healthy and release all threads
-   * waiting on {@link #waitIfStalled()}
+   * waiting on {@link #waitIfStalled()}. The transition is only recorded for
+   * the listener, see {@link #notifyListener()}.
    */
   synchronized void updateStalled(boolean stalled) {
+    if (stalled != this.stalled) {
+      final boolean hasListener = listener() != null;
+      if (stalled) {
+        stallCount++;
+        stallStartNanos = System.nanoTime();
+        if (hasListener) {
+          pendingEvents.add(STALL_START);
+        }
+      } else {
+        final long stallNanos = System.nanoTime() - stallStartNanos;
+        stalledNanos += stallNanos;
+        if (hasListener) {
+          pendingEvents.add(stallNanos);
+        }
+      }
+      hasPendingEvents = pendingEvents.isEmpty() == false;
+    }
     this.stalled = stalled;
     if (stalled) {
       wasStalled = true;
@@ -66,37 +109,118 @@ final class DocumentsWriterStallControl {
    */
   void waitIfStalled() {
     if (stalled) {
+      final long threadBlockedNanos;
       synchronized (this) {
         if (stalled) { // react on the first wakeup call!
           // don't loop here, higher level logic will re-stall!
+          final long start = System.nanoTime();
+          incWaiters();
           try {
-            assert incWaiters();
             wait();
-            assert  decrWaiters();
           } catch (InterruptedException e) {
             throw new ThreadInterruptedException(e);
+          } finally {
+            decrWaiters();
+            threadBlockedNanos = System.nanoTime() - start;
+            recordBlocked(threadBlockedNanos);
           }
+        } else {
+          return;
         }
       }
+      final IndexingStallListener listener = listener();
+      if (listener != null) {
+        listener.onThreadResumed(Thread.currentThread(), threadBlockedNanos);
+      }
     }
   }
+
+  /**
+   * Reports the stall transitions recorded by {@link #updateStalled(boolean)}
+   * to the listener, in order. Callers must not hold this monitor nor the
+   * one of {@link DocumentsWriterFlushControl}, which
+   * {@link #updateStalled(boolean)} is called under, so that the listener
+   * never runs while indexing or flushing threads are locked out.
+   */
+  void notifyListener() {
+    assert Thread.holdsLock(this) == false;
+    if (hasPendingEvents == false) {
+      return;
+    }
+    synchronized (listenerLock) {
+      while (true) {
+        final long event;
+        synchronized (this) {
+          final Long next = pendingEvents.poll();
+          hasPendingEvents = pendingEvents.isEmpty() == false;
+          if (next == null) {
+            return;
+          }
+          event = next;
+        }
+        final IndexingStallListener listener = listener();
+        if (listener == null) {
+          continue;
+        }
+        if (event == STALL_START) {
+          listener.onStallStart();
+        } else {
+          listener.onStallEnd(event);
+        }
+      }
+    }
+  }
+
+  private void recordBlocked(long nanos) {
+    assert Thread.holdsLock(this);
+    blockedNanos += nanos;
+    long[] perThread = blockedNanosPerThread.get(Thread.currentThread());
+    if (perThread == null) {
+      perThread = new long[1];
+      blockedNanosPerThread.put(Thread.currentThread(), perThread);
+    }
+    perThread[0] += nanos;
+  }
+
+  private IndexingStallListener listener() {
+    return config == null ? null : config.getIndexingStallListener();
+  }
   
   boolean anyStalledThreads() {
     return stalled;
   }
+
+  /** Returns how many times indexing went from healthy to
+   *  stalled since this session started. */
+  synchronized long getStallCount() {
+    return stallCount;
+  }
   
   
-  private boolean incWaiters() {
+  private void incWaiters() {
     numWaiting++;
     assert waiting.put(Thread.currentThread(), Boolean.TRUE) == null;
-    
-    return numWaiting > 0;
+    assert numWaiting > 0;
   }
   
-  private boolean decrWaiters() {
+  private void decrWaiters() {
     numWaiting--;
     assert waiting.remove(Thread.currentThread()) != null;
-    return numWaiting >= 0;
+    assert numWaiting >= 0;
+  }
+
+  /** Returns a snapshot of the stall state merged with the
+   *  given flush state, see {@link DocumentsWriterFlushControl#getStallStats}. */
+  synchronized IndexingStallStats getStats(long activeBytes, long flushBytes, long stallLimitBytes,
+      int numQueuedFlushes, int numFlushing, int flushQueueDepth) {
+    final long currentStallNanos = stalled ? System.nanoTime() - stallStartNanos : 0;
+    final Map<Thread, Long> perThread = new HashMap<>();
+    for (Map.Entry<Thread, long[]> entry : blockedNanosPerThread.entrySet()) {
+      perThread.put(entry.getKey(), entry.getValue()[0]);
+    }
+    return new IndexingStallStats(stalled, stallCount, stalledNanos + currentStallNanos, numWaiting,
+        blockedNanos, Collections.unmodifiableMap(perThread), activeBytes, flushBytes, stallLimitBytes,
+        numQueuedFlushes, numFlushing, flushQueueDepth);
   }
   
   synchronized boolean hasBlocked() { // for tests
@@ -85,7 +85,7 @@ class FlushByRamOrCountsPolicy extends FlushPolicy {
       // Flush this state by num docs
       control.setFlushPending(state);
     } else if (flushOnRAM()) {// flush by RAM
-      final long limit = (long) (indexWriterConfig.getRAMBufferSizeMB() * 1024.d * 1024.d);
+      final long limit = ramBufferBytes();
       final long totalRam = control.activeBytes() + control.getDeleteBytesUsed();
       if (totalRam >= limit) {
         if (infoStream.isEnabled("FP")) {
@@ -96,6 +96,15 @@ class FlushByRamOrCountsPolicy extends FlushPolicy {
     }
   }
   
+  /**
+   * Returns the global active RAM, in bytes, above which the largest
+   * {@link DocumentsWriterPerThread} is marked flush pending. This is
+   * {@link IndexWriterConfig#getRAMBufferSizeMB()} converted to bytes.
+   */
+  protected long ramBufferBytes() {
+    return (long) (indexWriterConfig.getRAMBufferSizeMB() * 1024.d * 1024.d);
+  }
+
   /**
    * Marks the most ram consuming active {@link DocumentsWriterPerThread} flush
    * pending
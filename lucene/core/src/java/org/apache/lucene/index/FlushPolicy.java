@@ -90,6 +90,19 @@ abstract class FlushPolicy {
   public abstract void onInsert(DocumentsWriterFlushControl control,
       ThreadState state);
 
+  /**
+   * Called after a {@link DocumentsWriterPerThread} that used
+   * <code>bytes</code> of RAM was successfully flushed in
+   * <code>nanos</code> nanoseconds. The default implementation
+   * does nothing.
+   * <p>
+   * Note: Unlike the other callbacks this method is not synchronized on
+   * {@link DocumentsWriterFlushControl}; it may be called by several
+   * flushing threads concurrently.
+   */
+  public void onFlushed(DocumentsWriterFlushControl control, long bytes, long nanos) {
+  }
+
   /**
    * Called by DocumentsWriter to initialize the FlushPolicy
    */
@@ -274,6 +274,9 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
   private final MergeScheduler mergeScheduler;
   private LinkedList<MergePolicy.OneMerge> pendingMerges = new LinkedList<>();
   private Set<MergePolicy.OneMerge> runningMerges = new HashSet<>();
+  // pending + running merges; written under the IW lock but
+  // read without it, by the flush policy:
+  private volatile int mergeBacklog;
   private List<MergePolicy.OneMerge> mergeExceptions = new ArrayList<>();
   private long mergeGen;
   private boolean stopMerges;
@@ -455,6 +458,17 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     return docWriter.ramBytesUsed();
   }
 
+  /** Returns a snapshot of how close indexing is to being
+   *  stalled by flushes falling behind, and how much it was
+   *  stalled so far.
+   *
+   * @see IndexWriterConfig#setIndexingStallListener(IndexingStallListener)
+   * @lucene.experimental */
+  public IndexingStallStats getIndexingStallStats() {
+    ensureOpen();
+    return docWriter.getStallStats();
+  }
+
   /** Holds shared SegmentReader instances. IndexWriter uses
    *  SegmentReaders for 1) applying deletes, 2) doing
    *  merges, 3) handing out a real-time reader.  This pool
@@ -1304,6 +1318,78 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     updateDocuments(null, docs, analyzer);
   }
 
+  /**
+   * Adds a batch of documents, like calling {@link
+   * #addDocument(Iterable)} for each of them, but with the
+   * per-document overhead amortized over the batch. Unlike
+   * {@link #addDocuments(Iterable)} the batch is <b>not</b>
+   * atomic and its documents are not guaranteed to receive
+   * adjacent document IDs: the batch stays bound to one
+   * indexing thread state (and so keeps reusing its
+   * per-field token streams) until that state needs to be
+   * flushed, after which indexing continues on another one.
+   *
+   * <p>If a document hits an exception, the documents of the
+   * batch before it remain added, the failing document is
+   * marked deleted and the exception is rethrown; the
+   * documents the iterator did not hand out yet are not
+   * added.  See {@link #addDocument(Iterable)} for details
+   * on index and IndexWriter state after an Exception.</p>
+   *
+   * <p>The batch is indexed in chunks of up to a few hundred
+   * documents. A delete (by term or query) that runs
+   * concurrently with the batch is ordered before the
+   * chunk that was being indexed when it arrived: it
+   * applies to the documents of the earlier chunks, but not
+   * to the documents of that chunk and the following ones,
+   * even if some of them were indexed before the delete
+   * started. So the documents of a batch that a concurrent
+   * delete removes are always a prefix of the batch. Deletes
+   * that completed before this method was called never apply
+   * to the batch, deletes issued after it returned apply to
+   * all of it.</p>
+   *
+   * <p>Every batch that returned before {@link #commit()} or
+   * {@link DirectoryReader#open(IndexWriter,boolean)} is called
+   * is visible to that commit or reader. A commit or reader
+   * opened concurrently sees a prefix of the batch, up to the
+   * end of a chunk.</p>
+   *
+   * @return the number of documents added, that is the number
+   * of documents the iterator handed out; this lets callers
+   * stream documents from an iterator of unknown size and
+   * account for them once the method returns. The returned
+   * count is not a sequence number: it does not order the
+   * batch relative to concurrent operations.
+   *
+   * @throws CorruptIndexException if the index is corrupt
+   * @throws IOException if there is a low-level IO error
+   *
+   * @lucene.experimental
+   */
+  public int addDocumentsBulk(Iterable<? extends Iterable<? extends IndexableField>> docs) throws IOException {
+    ensureOpen();
+    int docCount = 0;
+    try {
+      boolean success = false;
+      try {
+        docCount = docWriter.addDocumentsBulk(docs, analyzer);
+        // a batch may span flushes: process whatever they queued
+        processEvents(true, false);
+        success = true;
+      } finally {
+        if (!success) {
+          if (infoStream.isEnabled("IW")) {
+            infoStream.message("IW", "hit exception adding bulk batch");
+          }
+        }
+      }
+    } catch (OutOfMemoryError oom) {
+      tragicEvent(oom, "addDocumentsBulk");
+    }
+    return docCount;
+  }
+
   /**
    * Atomically deletes documents matching the provided
    * delTerm and adds a block of documents with sequentially
@@ -2295,6 +2381,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
       mergeFinish(merge);
     }
     pendingMerges.clear();
+    updateMergeBacklog();
 
     for (final MergePolicy.OneMerge merge : runningMerges) {
       if (infoStream.isEnabled("IW")) {
@@ -3885,6 +3972,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     ensureValidMerge(merge);
 
     pendingMerges.add(merge);
+    updateMergeBacklog();
 
     if (infoStream.isEnabled("IW")) {
       infoStream.message("IW", "add merge to pendingMerges: " + segString(merge.segments) + " [total " + pendingMerges.size() + " pending]");
@@ -4059,6 +4147,18 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     }
 
     runningMerges.remove(merge);
+    updateMergeBacklog();
+  }
+
+  private void updateMergeBacklog() {
+    assert Thread.holdsLock(this);
+    mergeBacklog = pendingMerges.size() + runningMerges.size();
+  }
+
+  /** Returns the number of registered merges that did not
+   *  finish yet, without acquiring the IndexWriter lock. */
+  int getMergeBacklog() {
+    return mergeBacklog;
   }
 
   private final synchronized void closeMergeReaders(MergePolicy.OneMerge merge, boolean suppressExceptions) throws IOException {
@@ -18,6 +18,7 @@ package org.apache.lucene.index;
  */
 
 import java.io.PrintStream;
+import java.util.concurrent.Executor;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.codecs.Codec;
@@ -105,6 +106,10 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
 
   /** Default value is 1945. Change using {@link #setRAMPerThreadHardLimitMB(int)} */
   public static final int DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB = 1945;
+
+  /** Default value for the memory kept for recycled term hash
+   *  blocks (set to 0, which disables recycling). */
+  public static final int DEFAULT_RECYCLED_BLOCKS_MB = 0;
   
   /** The maximum number of simultaneous threads that may be
    *  indexing documents at once in IndexWriter; if more
@@ -121,6 +126,10 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
    *  merging segments (set to <code>false</code>). You can set this
    *  to <code>true</code> for additional safety. */
   public final static boolean DEFAULT_CHECK_INTEGRITY_AT_MERGE = false;
+
+  /** Default minimum length, in chars, of a field value that is
+   *  analyzed on the field inversion executor (set to 65536). */
+  public final static int DEFAULT_PARALLEL_INVERSION_MIN_CHARS = 64 * 1024;
   
   /**
    * Sets the default (for any instance) maximum time to wait for a write lock
@@ -403,6 +412,25 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
     return this;
   }
 
+  /**
+   * Expert: flushes segments with a policy that adapts its RAM trigger at
+   * runtime instead of using {@link #getRAMBufferSizeMB()} as a fixed
+   * threshold. The trigger shrinks, down to a quarter of the RAM buffer, when
+   * indexing threads get stalled by slow flushes, and grows while merges are
+   * behind, up to twice the RAM buffer or the
+   * {@link #getRAMPerThreadHardLimitMB() per thread hard limit}, whichever is
+   * lower. Otherwise it drifts back to the RAM buffer. If <code>targetFlushMillis</code> is positive, a thread's
+   * segment is also flushed once the measured flush bandwidth could not write
+   * it within that many milliseconds, which bounds the latency of NRT
+   * reopens; pass <code>0</code> if reopen latency does not matter.
+   *
+   * @see #setRAMBufferSizeMB(double)
+   * @lucene.experimental
+   */
+  public IndexWriterConfig setAdaptiveFlushPolicy(long targetFlushMillis) {
+    return setFlushPolicy(new AdaptiveFlushPolicy(targetFlushMillis));
+  }
+
   /**
    * Expert: Sets the maximum memory consumption per thread triggering a forced
    * flush if exceeded. A {@link DocumentsWriterPerThread} is forcefully flushed
@@ -426,6 +454,31 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
   public int getRAMPerThreadHardLimitMB() {
     return perThreadHardLimitMB;
   }
+
+  /**
+   * Expert: keeps up to this many MB of the byte and int blocks that buffer
+   * postings in RAM for reuse after their segment was flushed, instead of
+   * leaving them to the garbage collector. With large RAM buffers those
+   * blocks live long enough to be promoted, so each flush otherwise creates
+   * a RAM buffer worth of old generation garbage; recycling them keeps
+   * old generation collections, and their pauses, rare. Recycled blocks are
+   * zero filled when their segment is flushed.
+   * <p>
+   * The free blocks are kept in addition to the RAM buffer; setting this to
+   * {@link #getRAMBufferSizeMB()} lets a steady indexing load run without
+   * allocating new blocks. The default is
+   * {@link #DEFAULT_RECYCLED_BLOCKS_MB}. Only takes effect when the
+   * {@link IndexWriter} is created.
+   *
+   * @lucene.experimental
+   */
+  public IndexWriterConfig setRecycledBlocksMB(int recycledBlocksMB) {
+    if (recycledBlocksMB < 0) {
+      throw new IllegalArgumentException("recycledBlocksMB must be >= 0, got " + recycledBlocksMB);
+    }
+    this.recycledBlocksMB = recycledBlocksMB;
+    return this;
+  }
   
   @Override
   FlushPolicy getFlushPolicy() {
@@ -537,6 +590,21 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
     return (IndexWriterConfig) super.setUseCompoundFile(useCompoundFile);
   }
 
+  @Override
+  public IndexWriterConfig setFieldInversionExecutor(Executor fieldInversionExecutor) {
+    return (IndexWriterConfig) super.setFieldInversionExecutor(fieldInversionExecutor);
+  }
+
+  @Override
+  public IndexWriterConfig setParallelInversionMinChars(int parallelInversionMinChars) {
+    return (IndexWriterConfig) super.setParallelInversionMinChars(parallelInversionMinChars);
+  }
+
+  @Override
+  public IndexWriterConfig setIndexingStallListener(IndexingStallListener indexingStallListener) {
+    return (IndexWriterConfig) super.setIndexingStallListener(indexingStallListener);
+  }
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder(super.toString());
@@ -0,0 +1,58 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Receives events about indexing being stalled because flushing fell behind
+ * indexing; see {@link IndexWriterConfig#setIndexingStallListener}. Producers
+ * feeding an {@link IndexWriter} can use it to apply backpressure upstream
+ * instead of finding out once their indexing threads are blocked. Use
+ * {@link IndexWriter#getIndexingStallStats()} to poll how close the writer is
+ * to stalling.
+ * <p>
+ * <b>NOTE</b>: the callbacks are invoked from indexing and flushing threads
+ * once these released the writer's flush and stall control locks, so a stall
+ * may be reported shortly after it started or ended. Callbacks are invoked
+ * one at a time and in order. They must return quickly since they delay
+ * indexing; they may call {@link IndexWriter#getIndexingStallStats()}, but
+ * must not add, update or delete documents, flush or commit.
+ *
+ * @lucene.experimental
+ */
+public abstract class IndexingStallListener {
+
+  /** Sole constructor. (For invocation by subclass
+   *  constructors, typically implicit.) */
+  protected IndexingStallListener() {
+  }
+
+  /** Called when indexing becomes stalled: from now on threads
+   *  adding or updating documents block until flushing caught up. */
+  public void onStallStart() {
+  }
+
+  /** Called when a stall ends; <code>stallNanos</code> is how
+   *  long indexing was stalled. */
+  public void onStallEnd(long stallNanos) {
+  }
+
+  /** Called when an indexing thread that was blocked by a stall
+   *  resumes, after being blocked for <code>blockedNanos</code>. */
+  public void onThreadResumed(Thread thread, long blockedNanos) {
+  }
+}
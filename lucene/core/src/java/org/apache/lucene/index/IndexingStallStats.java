@@ -0,0 +1,140 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Map;
+
+/**
+ * Point in time view of the indexing backpressure state of an
+ * {@link IndexWriter}, as returned by {@link IndexWriter#getIndexingStallStats()}.
+ * <p>
+ * Indexing stalls once the RAM held by in-memory segments plus the RAM of
+ * segments waiting to be flushed exceeds {@link #getStallLimitBytes()};
+ * {@link #getActiveBytes()} + {@link #getFlushPendingBytes()} approaching that
+ * limit means threads are about to block.
+ *
+ * @see IndexingStallListener
+ * @lucene.experimental
+ */
+public final class IndexingStallStats {
+  private final boolean stalled;
+  private final long stallCount;
+  private final long stalledNanos;
+  private final int numBlockedThreads;
+  private final long blockedNanos;
+  private final Map<Thread,Long> blockedNanosPerThread;
+  private final long activeBytes;
+  private final long flushPendingBytes;
+  private final long stallLimitBytes;
+  private final int numQueuedFlushes;
+  private final int numFlushing;
+  private final int flushQueueDepth;
+
+  IndexingStallStats(boolean stalled, long stallCount, long stalledNanos, int numBlockedThreads,
+      long blockedNanos, Map<Thread,Long> blockedNanosPerThread, long activeBytes, long flushPendingBytes,
+      long stallLimitBytes, int numQueuedFlushes, int numFlushing, int flushQueueDepth) {
+    this.stalled = stalled;
+    this.stallCount = stallCount;
+    this.stalledNanos = stalledNanos;
+    this.numBlockedThreads = numBlockedThreads;
+    this.blockedNanos = blockedNanos;
+    this.blockedNanosPerThread = blockedNanosPerThread;
+    this.activeBytes = activeBytes;
+    this.flushPendingBytes = flushPendingBytes;
+    this.stallLimitBytes = stallLimitBytes;
+    this.numQueuedFlushes = numQueuedFlushes;
+    this.numFlushing = numFlushing;
+    this.flushQueueDepth = flushQueueDepth;
+  }
+
+  /** Returns true if indexing is currently stalled. */
+  public boolean isStalled() {
+    return stalled;
+  }
+
+  /** Returns how many times indexing became stalled. */
+  public long getStallCount() {
+    return stallCount;
+  }
+
+  /** Returns the total wall clock time indexing was stalled,
+   *  including the current stall if any, in nanoseconds. */
+  public long getStalledNanos() {
+    return stalledNanos;
+  }
+
+  /** Returns the number of threads currently blocked by a stall. */
+  public int getNumBlockedThreads() {
+    return numBlockedThreads;
+  }
+
+  /** Returns the time all indexing threads together spent
+   *  blocked by stalls, in nanoseconds. */
+  public long getBlockedNanos() {
+    return blockedNanos;
+  }
+
+  /** Returns, per indexing thread that was ever blocked and is still
+   *  alive, the cumulative time it spent blocked, in nanoseconds. */
+  public Map<Thread,Long> getBlockedNanosPerThread() {
+    return blockedNanosPerThread;
+  }
+
+  /** Returns the RAM, in bytes, held by in-memory segments that are
+   *  still being indexed into. */
+  public long getActiveBytes() {
+    return activeBytes;
+  }
+
+  /** Returns the RAM, in bytes, held by in-memory segments that are
+   *  pending or being flushed. */
+  public long getFlushPendingBytes() {
+    return flushPendingBytes;
+  }
+
+  /** Returns the net RAM, in bytes, above which indexing stalls, or
+   *  {@link Long#MAX_VALUE} if flushing by RAM is disabled. */
+  public long getStallLimitBytes() {
+    return stallLimitBytes;
+  }
+
+  /** Returns the number of segments queued for flushing that no
+   *  thread picked up yet. */
+  public int getNumQueuedFlushes() {
+    return numQueuedFlushes;
+  }
+
+  /** Returns the number of segments currently being flushed. */
+  public int getNumFlushing() {
+    return numFlushing;
+  }
+
+  /** Returns the number of flushes not published to the index yet,
+   *  because they did not finish or wait for an earlier flush. */
+  public int getFlushQueueDepth() {
+    return flushQueueDepth;
+  }
+
+  @Override
+  public String toString() {
+    return "IndexingStallStats(stalled=" + stalled + " stallCount=" + stallCount + " stalledNanos=" + stalledNanos
+        + " numBlockedThreads=" + numBlockedThreads + " blockedNanos=" + blockedNanos
+        + " activeBytes=" + activeBytes + " flushPendingBytes=" + flushPendingBytes + " stallLimitBytes=" + stallLimitBytes
+        + " numQueuedFlushes=" + numQueuedFlushes + " numFlushing=" + numFlushing + " flushQueueDepth=" + flushQueueDepth + ")";
+  }
+}
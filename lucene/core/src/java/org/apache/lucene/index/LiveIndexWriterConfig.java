@@ -17,6 +17,8 @@ package org.apache.lucene.index;
  * limitations under the License.
  */
 
+import java.util.concurrent.Executor;
+
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.lucene41.Lucene41PostingsFormat; // javadocs
@@ -95,6 +97,10 @@ public class LiveIndexWriterConfig {
    *  segment, after which the segment is forced to flush. */
   protected volatile int perThreadHardLimitMB;
 
+  /** Upper bound, in MB, on the free term hash blocks kept for
+   *  reuse by later segments; 0 disables recycling. */
+  protected volatile int recycledBlocksMB;
+
   /** {@link Version} that {@link IndexWriter} should emulate. */
   protected final Version matchVersion;
 
@@ -104,6 +110,18 @@ public class LiveIndexWriterConfig {
   /** True if merging should check integrity of segments before merge */
   protected volatile boolean checkIntegrityAtMerge = IndexWriterConfig.DEFAULT_CHECK_INTEGRITY_AT_MERGE;
 
+  /** {@link Executor} used to analyze large fields of a document
+   *  in parallel, or null to analyze on the indexing thread. */
+  protected volatile Executor fieldInversionExecutor;
+
+  /** {@link IndexingStallListener} notified about indexing
+   *  stalls, or null. */
+  protected volatile IndexingStallListener indexingStallListener;
+
+  /** Minimum length of a field value, in chars, before it is
+   *  analyzed on the {@link #fieldInversionExecutor}. */
+  protected volatile int parallelInversionMinChars = IndexWriterConfig.DEFAULT_PARALLEL_INVERSION_MIN_CHARS;
+
   // used by IndexWriterConfig
   LiveIndexWriterConfig(Analyzer analyzer, Version matchVersion) {
     this.analyzer = analyzer;
@@ -132,6 +150,7 @@ public class LiveIndexWriterConfig {
     readerPooling = IndexWriterConfig.DEFAULT_READER_POOLING;
     indexerThreadPool = new DocumentsWriterPerThreadPool(IndexWriterConfig.DEFAULT_MAX_THREAD_STATES);
     perThreadHardLimitMB = IndexWriterConfig.DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB;
+    recycledBlocksMB = IndexWriterConfig.DEFAULT_RECYCLED_BLOCKS_MB;
   }
   
   /** Returns the default analyzer to use for indexing documents. */
@@ -521,6 +540,16 @@ public class LiveIndexWriterConfig {
   public int getRAMPerThreadHardLimitMB() {
     return perThreadHardLimitMB;
   }
+
+  /**
+   * Returns how many MB of free term hash blocks are kept for reuse by
+   * later segments, or 0 if blocks are not recycled.
+   *
+   * @see IndexWriterConfig#setRecycledBlocksMB(int)
+   */
+  public int getRecycledBlocksMB() {
+    return recycledBlocksMB;
+  }
   
   /**
    * @see IndexWriterConfig#setFlushPolicy(FlushPolicy)
@@ -584,6 +613,75 @@ public class LiveIndexWriterConfig {
     return checkIntegrityAtMerge;
   }
   
+  /**
+   * Expert: sets the {@link Executor} used to analyze the large
+   * tokenized fields of a document in parallel. When set, every
+   * tokenized field whose string value is at least
+   * {@link #getParallelInversionMinChars()} chars long has its token
+   * stream consumed and buffered on the executor while the indexing
+   * thread inverts the other fields; the buffered tokens are then
+   * added to the field's postings on the indexing thread, in document
+   * order, so the resulting index is identical to sequential indexing.
+   * Fields given as a {@link java.io.Reader}, and fields beyond
+   * 1/64th of {@link #getRAMPerThreadHardLimitMB()} worth of chars per
+   * document, are analyzed on the indexing thread.
+   * <p>
+   * The default is <code>null</code>, which analyzes every field on
+   * the indexing thread. The {@link Analyzer} must not rely on being
+   * called from the indexing thread, and documents must be
+   * {@link Iterable}s that can be iterated twice.
+   *
+   * @lucene.experimental
+   */
+  public LiveIndexWriterConfig setFieldInversionExecutor(Executor fieldInversionExecutor) {
+    this.fieldInversionExecutor = fieldInversionExecutor;
+    return this;
+  }
+
+  /** Returns the {@link Executor} set by
+   *  {@link #setFieldInversionExecutor(Executor)}, or null. */
+  public Executor getFieldInversionExecutor() {
+    return fieldInversionExecutor;
+  }
+
+  /**
+   * Sets the minimum length, in chars, of a field value before it is
+   * analyzed on the {@link #setFieldInversionExecutor(Executor) field
+   * inversion executor}. Default is
+   * {@link IndexWriterConfig#DEFAULT_PARALLEL_INVERSION_MIN_CHARS}.
+   *
+   * @lucene.experimental
+   */
+  public LiveIndexWriterConfig setParallelInversionMinChars(int parallelInversionMinChars) {
+    if (parallelInversionMinChars < 0) {
+      throw new IllegalArgumentException("parallelInversionMinChars must be >= 0, got " + parallelInversionMinChars);
+    }
+    this.parallelInversionMinChars = parallelInversionMinChars;
+    return this;
+  }
+
+  /** Returns the minimum field length, in chars, for parallel analysis. */
+  public int getParallelInversionMinChars() {
+    return parallelInversionMinChars;
+  }
+
+  /**
+   * Sets the {@link IndexingStallListener} that is notified when indexing
+   * threads get stalled because flushing fell behind, or <code>null</code>
+   * (the default) for none.
+   *
+   * @lucene.experimental
+   */
+  public LiveIndexWriterConfig setIndexingStallListener(IndexingStallListener indexingStallListener) {
+    this.indexingStallListener = indexingStallListener;
+    return this;
+  }
+
+  /** Returns the {@link IndexingStallListener}, or null. */
+  public IndexingStallListener getIndexingStallListener() {
+    return indexingStallListener;
+  }
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder();
@@ -609,8 +707,12 @@ public class LiveIndexWriterConfig {
     sb.append("indexerThreadPool=").append(getIndexerThreadPool()).append("\n");
     sb.append("readerPooling=").append(getReaderPooling()).append("\n");
     sb.append("perThreadHardLimitMB=").append(getRAMPerThreadHardLimitMB()).append("\n");
+    sb.append("recycledBlocksMB=").append(getRecycledBlocksMB()).append("\n");
     sb.append("useCompoundFile=").append(getUseCompoundFile()).append("\n");
     sb.append("checkIntegrityAtMerge=").append(getCheckIntegrityAtMerge()).append("\n");
+    sb.append("fieldInversionExecutor=").append(getFieldInversionExecutor()).append("\n");
+    sb.append("parallelInversionMinChars=").append(getParallelInversionMinChars()).append("\n");
+    sb.append("indexingStallListener=").append(getIndexingStallListener()).append("\n");
     return sb.toString();
   }
 
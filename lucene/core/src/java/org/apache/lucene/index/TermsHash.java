@@ -44,10 +44,14 @@ abstract class TermsHash {
 
   final boolean trackAllocations;
 
+  // recycled blocks must be handed back zero filled, see reset():
+  private final boolean zeroFillOnReset;
+
   TermsHash(final DocumentsWriterPerThread docWriter, boolean trackAllocations, TermsHash nextTermsHash) {
     this.docState = docWriter.docState;
     this.trackAllocations = trackAllocations; 
     this.nextTermsHash = nextTermsHash;
+    this.zeroFillOnReset = docWriter.recyclesBlocks;
     this.bytesUsed = trackAllocations ? docWriter.bytesUsed : Counter.newCounter();
     intPool = new IntBlockPool(docWriter.intBlockAllocator);
     bytePool = new ByteBlockPool(docWriter.byteBlockAllocator);
@@ -71,9 +75,10 @@ abstract class TermsHash {
 
   // Clear all state
   void reset() {
-    // we don't reuse so we drop everything and don't fill with 0
-    intPool.reset(false, false); 
-    bytePool.reset(false, false);
+    // we don't reuse so we drop everything and don't fill with 0,
+    // unless the allocator recycles the blocks to a later DWPT
+    intPool.reset(zeroFillOnReset, false); 
+    bytePool.reset(zeroFillOnReset, false);
   }
 
   void flush(Map<String,TermsHashPerField> fieldsToFlush, final SegmentWriteState state) throws IOException {
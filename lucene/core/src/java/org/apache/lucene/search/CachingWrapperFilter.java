@@ -0,0 +1,92 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Wraps another {@link Filter}'s result and caches it per segment in a
+ * {@link FilterCache}. The purpose is to allow filters to simply filter, and
+ * then wrap with this class to add caching.
+ *
+ * <p>Sets are cached without deletions, keyed by the segment's core, so that
+ * near-real-time reopens keep using them. Deletions are applied to the cached
+ * set when it is returned.
+ */
+public class CachingWrapperFilter extends Filter {
+  private final Filter filter;
+  private final FilterCache cache;
+
+  /** Wraps another filter's result and caches it in {@link FilterCache#DEFAULT}.
+   * @param filter Filter to cache results of
+   */
+  public CachingWrapperFilter(Filter filter) {
+    this(filter, FilterCache.DEFAULT);
+  }
+
+  /** Wraps another filter's result and caches it in the given cache.
+   * @param filter Filter to cache results of
+   * @param cache cache to store the results in
+   */
+  public CachingWrapperFilter(Filter filter, FilterCache cache) {
+    if (filter == null || cache == null) {
+      throw new NullPointerException("filter and cache must not be null");
+    }
+    this.filter = filter;
+    this.cache = cache;
+  }
+
+  /**
+   * Gets the contained filter.
+   * @return the contained filter.
+   */
+  public Filter getFilter() {
+    return filter;
+  }
+
+  /** Returns the cache the results are stored in. */
+  public FilterCache getCache() {
+    return cache;
+  }
+
+  @Override
+  public DocIdSet getDocIdSet(AtomicReaderContext context, final Bits acceptDocs) throws IOException {
+    final DocIdSet docIdSet = cache.getDocIdSet(filter, context);
+    return docIdSet == DocIdSet.EMPTY ? null : BitsFilteredDocIdSet.wrap(docIdSet, acceptDocs);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "("+filter+")";
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == null || !getClass().equals(o.getClass())) return false;
+    final CachingWrapperFilter other = (CachingWrapperFilter) o;
+    return this.filter.equals(other.filter);
+  }
+
+  @Override
+  public int hashCode() {
+    return (filter.hashCode() ^ getClass().hashCode());
+  }
+}
@@ -175,5 +175,20 @@ public abstract class Collector {
    * here.
    */
   public abstract boolean acceptsDocsOutOfOrder();
+
+  /**
+   * Return <code>true</code> if this collector calls
+   * {@link Scorer#setMinCompetitiveScore(float)} on the scorer passed to
+   * {@link #setScorer(Scorer)}. Queries then may pick a scorer that skips
+   * non-competitive documents, which only pays off when a threshold is
+   * actually set. Such collectors must collect in order.
+   *
+   * <p>The default implementation returns <code>false</code>.
+   *
+   * @lucene.experimental
+   */
+  public boolean setsMinCompetitiveScore() {
+    return false;
+  }
   
 }
@@ -0,0 +1,495 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.document.DoubleDocValuesField; // for javadocs
+import org.apache.lucene.document.FloatDocValuesField; // for javadocs
+import org.apache.lucene.document.NumericDocValuesField; // for javadocs
+import org.apache.lucene.document.SortedDocValuesField; // for javadocs
+import org.apache.lucene.document.SortedNumericDocValuesField; // for javadocs
+import org.apache.lucene.document.SortedSetDocValuesField; // for javadocs
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+
+/**
+ * A range filter built on top of per-document values, read from
+ * {@link NumericDocValuesField}, {@link SortedNumericDocValuesField},
+ * {@link SortedDocValuesField} or {@link SortedSetDocValuesField}.
+ *
+ * <p>{@code DocValuesRangeFilter} never touches the terms dictionary or the
+ * postings: {@link #getDocIdSet} only resolves the range bounds and returns a
+ * {@link DocValuesDocIdSet} whose {@link DocIdSet#bits() bits} check the
+ * value of a single document on demand. This makes it a good fit for
+ * {@link FilteredQuery#RANDOM_ACCESS_FILTER_STRATEGY} when the main query is
+ * selective, and a poor fit when the filter has to drive iteration, since its
+ * iterator visits every document of the segment.
+ *
+ * <p>A document with several values matches if any of its values is in the
+ * range. Documents without a value never match.
+ *
+ * <p>Numeric fields are read as follows:
+ * <ul>
+ *  <li>{@link NumericDocValuesField} values are compared as longs; floats and doubles
+ *  are expected in the raw encoding of {@link FloatDocValuesField} and
+ *  {@link DoubleDocValuesField}.
+ *  <li>{@link SortedNumericDocValuesField} values are compared as longs; floats and doubles
+ *  are expected to be encoded with {@link NumericUtils#floatToSortableInt} and
+ *  {@link NumericUtils#doubleToSortableLong}.
+ * </ul>
+ *
+ * <p>This filter's results are cacheable, but the values are read from the
+ * reader while documents are matched, so the {@link DocIdSet} must not be used
+ * after its reader has been closed.
+ *
+ * @see NumericRangeFilter
+ */
+public abstract class DocValuesRangeFilter<T> extends Filter {
+  final String field;
+  final T lowerVal;
+  final T upperVal;
+  final boolean includeLower;
+  final boolean includeUpper;
+  
+  private DocValuesRangeFilter(String field, T lowerVal, T upperVal, boolean includeLower, boolean includeUpper) {
+    if (field == null) {
+      throw new IllegalArgumentException("field must not be null");
+    }
+    this.field = field;
+    this.lowerVal = lowerVal;
+    this.upperVal = upperVal;
+    this.includeLower = includeLower;
+    this.includeUpper = includeUpper;
+  }
+  
+  /** This method is implemented for each data type */
+  @Override
+  public abstract DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException;
+
+  /**
+   * Creates a string range filter using {@link SortedDocValues} or {@link SortedSetDocValues}.
+   * This works with {@link SortedDocValuesField} and {@link SortedSetDocValuesField}.
+   * The bounds are resolved to ordinals once per segment.
+   */
+  public static DocValuesRangeFilter<String> newStringRange(String field, String lowerVal, String upperVal, boolean includeLower, boolean includeUpper) {
+    return new DocValuesRangeFilter<String>(field, lowerVal, upperVal, includeLower, includeUpper) {
+      @Override
+      public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        return ordRange(context, field, 
+            lowerVal == null ? null : new BytesRef(lowerVal), 
+            upperVal == null ? null : new BytesRef(upperVal), 
+            includeLower, includeUpper, acceptDocs);
+      }
+    };
+  }
+
+  /**
+   * Creates a BytesRef range filter using {@link SortedDocValues} or {@link SortedSetDocValues}.
+   * This works with {@link SortedDocValuesField} and {@link SortedSetDocValuesField}.
+   * The bounds are resolved to ordinals once per segment.
+   */
+  public static DocValuesRangeFilter<BytesRef> newBytesRefRange(String field, BytesRef lowerVal, BytesRef upperVal, boolean includeLower, boolean includeUpper) {
+    return new DocValuesRangeFilter<BytesRef>(field, lowerVal, upperVal, includeLower, includeUpper) {
+      @Override
+      public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        return ordRange(context, field, lowerVal, upperVal, includeLower, includeUpper, acceptDocs);
+      }
+    };
+  }
+
+  /**
+   * Creates a numeric range filter over <code>int</code> values read from
+   * {@link NumericDocValues} or {@link SortedNumericDocValues}. 
+   * This works with all <code>int</code> fields indexed as
+   * {@link NumericDocValuesField} or {@link SortedNumericDocValuesField}.
+   * You can have half-open ranges by setting the min or max value to <code>null</code>.
+   */
+  public static DocValuesRangeFilter<Integer> newIntRange(String field, Integer lowerVal, Integer upperVal, boolean includeLower, boolean includeUpper) {
+    return new DocValuesRangeFilter<Integer>(field, lowerVal, upperVal, includeLower, includeUpper) {
+      @Override
+      public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        final int inclusiveLowerPoint, inclusiveUpperPoint;
+        if (lowerVal != null) {
+          int i = lowerVal.intValue();
+          if (!includeLower && i == Integer.MAX_VALUE)
+            return null;
+          inclusiveLowerPoint = includeLower ? i : (i + 1);
+        } else {
+          inclusiveLowerPoint = Integer.MIN_VALUE;
+        }
+        if (upperVal != null) {
+          int i = upperVal.intValue();
+          if (!includeUpper && i == Integer.MIN_VALUE)
+            return null;
+          inclusiveUpperPoint = includeUpper ? i : (i - 1);
+        } else {
+          inclusiveUpperPoint = Integer.MAX_VALUE;
+        }
+        
+        if (inclusiveLowerPoint > inclusiveUpperPoint)
+          return null;
+        
+        return numericRange(context, field, inclusiveLowerPoint, inclusiveUpperPoint, NumericEncoding.LONG, acceptDocs);
+      }
+    };
+  }
+  
+  /**
+   * Creates a numeric range filter over <code>long</code> values read from
+   * {@link NumericDocValues} or {@link SortedNumericDocValues}. 
+   * This works with all <code>long</code> fields indexed as
+   * {@link NumericDocValuesField} or {@link SortedNumericDocValuesField}.
+   * You can have half-open ranges by setting the min or max value to <code>null</code>.
+   */
+  public static DocValuesRangeFilter<Long> newLongRange(String field, Long lowerVal, Long upperVal, boolean includeLower, boolean includeUpper) {
+    return new DocValuesRangeFilter<Long>(field, lowerVal, upperVal, includeLower, includeUpper) {
+      @Override
+      public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        final long inclusiveLowerPoint, inclusiveUpperPoint;
+        if (lowerVal != null) {
+          long i = lowerVal.longValue();
+          if (!includeLower && i == Long.MAX_VALUE)
+            return null;
+          inclusiveLowerPoint = includeLower ? i : (i + 1L);
+        } else {
+          inclusiveLowerPoint = Long.MIN_VALUE;
+        }
+        if (upperVal != null) {
+          long i = upperVal.longValue();
+          if (!includeUpper && i == Long.MIN_VALUE)
+            return null;
+          inclusiveUpperPoint = includeUpper ? i : (i - 1L);
+        } else {
+          inclusiveUpperPoint = Long.MAX_VALUE;
+        }
+        
+        if (inclusiveLowerPoint > inclusiveUpperPoint)
+          return null;
+        
+        return numericRange(context, field, inclusiveLowerPoint, inclusiveUpperPoint, NumericEncoding.LONG, acceptDocs);
+      }
+    };
+  }
+  
+  /**
+   * Creates a numeric range filter over <code>float</code> values read from
+   * {@link NumericDocValues} or {@link SortedNumericDocValues}. 
+   * This works with <code>float</code> fields indexed as {@link FloatDocValuesField}
+   * or as {@link SortedNumericDocValuesField} encoded with {@link NumericUtils#floatToSortableInt}.
+   * You can have half-open ranges by setting the min or max value to <code>null</code>.
+   */
+  public static DocValuesRangeFilter<Float> newFloatRange(String field, Float lowerVal, Float upperVal, boolean includeLower, boolean includeUpper) {
+    return new DocValuesRangeFilter<Float>(field, lowerVal, upperVal, includeLower, includeUpper) {
+      @Override
+      public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        // we transform the floating point numbers to sortable integers
+        // using NumericUtils to easier find the next bigger/lower value
+        final int inclusiveLowerPoint, inclusiveUpperPoint;
+        if (lowerVal != null) {
+          int i = NumericUtils.floatToSortableInt(lowerVal.floatValue());
+          if (!includeLower && i == Integer.MAX_VALUE)
+            return null;
+          inclusiveLowerPoint = includeLower ? i : (i + 1);
+        } else {
+          inclusiveLowerPoint = NumericUtils.floatToSortableInt(Float.NEGATIVE_INFINITY);
+        }
+        if (upperVal != null) {
+          int i = NumericUtils.floatToSortableInt(upperVal.floatValue());
+          if (!includeUpper && i == Integer.MIN_VALUE)
+            return null;
+          inclusiveUpperPoint = includeUpper ? i : (i - 1);
+        } else {
+          inclusiveUpperPoint = NumericUtils.floatToSortableInt(Float.POSITIVE_INFINITY);
+        }
+        
+        if (inclusiveLowerPoint > inclusiveUpperPoint)
+          return null;
+        
+        return numericRange(context, field, inclusiveLowerPoint, inclusiveUpperPoint, NumericEncoding.FLOAT, acceptDocs);
+      }
+    };
+  }
+  
+  /**
+   * Creates a numeric range filter over <code>double</code> values read from
+   * {@link NumericDocValues} or {@link SortedNumericDocValues}. 
+   * This works with <code>double</code> fields indexed as {@link DoubleDocValuesField}
+   * or as {@link SortedNumericDocValuesField} encoded with {@link NumericUtils#doubleToSortableLong}.
+   * You can have half-open ranges by setting the min or max value to <code>null</code>.
+   */
+  public static DocValuesRangeFilter<Double> newDoubleRange(String field, Double lowerVal, Double upperVal, boolean includeLower, boolean includeUpper) {
+    return new DocValuesRangeFilter<Double>(field, lowerVal, upperVal, includeLower, includeUpper) {
+      @Override
+      public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        // we transform the floating point numbers to sortable integers
+        // using NumericUtils to easier find the next bigger/lower value
+        final long inclusiveLowerPoint, inclusiveUpperPoint;
+        if (lowerVal != null) {
+          long i = NumericUtils.doubleToSortableLong(lowerVal.doubleValue());
+          if (!includeLower && i == Long.MAX_VALUE)
+            return null;
+          inclusiveLowerPoint = includeLower ? i : (i + 1L);
+        } else {
+          inclusiveLowerPoint = NumericUtils.doubleToSortableLong(Double.NEGATIVE_INFINITY);
+        }
+        if (upperVal != null) {
+          long i = NumericUtils.doubleToSortableLong(upperVal.doubleValue());
+          if (!includeUpper && i == Long.MIN_VALUE)
+            return null;
+          inclusiveUpperPoint = includeUpper ? i : (i - 1L);
+        } else {
+          inclusiveUpperPoint = NumericUtils.doubleToSortableLong(Double.POSITIVE_INFINITY);
+        }
+        
+        if (inclusiveLowerPoint > inclusiveUpperPoint)
+          return null;
+        
+        return numericRange(context, field, inclusiveLowerPoint, inclusiveUpperPoint, NumericEncoding.DOUBLE, acceptDocs);
+      }
+    };
+  }
+
+  /** How numeric values are encoded in a {@link DocValuesType#NUMERIC} field. */
+  private static enum NumericEncoding {
+    LONG {
+      @Override
+      long toSortable(long value) {
+        return value;
+      }
+    },
+    FLOAT {
+      @Override
+      long toSortable(long value) {
+        return NumericUtils.sortableFloatBits((int) value);
+      }
+    },
+    DOUBLE {
+      @Override
+      long toSortable(long value) {
+        return NumericUtils.sortableDoubleBits(value);
+      }
+    };
+
+    /** Converts a raw {@link NumericDocValues} value to its sortable form. */
+    abstract long toSortable(long value);
+  }
+
+  /** Returns the docvalues type of <code>field</code>, or null if the segment has no docvalues for it. */
+  static DocValuesType getDocValuesType(AtomicReader reader, String field) {
+    final FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+    if (fieldInfo == null || !fieldInfo.hasDocValues()) {
+      return null;
+    }
+    return fieldInfo.getDocValuesType();
+  }
+
+  private static DocIdSet numericRange(AtomicReaderContext context, String field,
+      final long inclusiveLower, final long inclusiveUpper, final NumericEncoding encoding, Bits acceptDocs) throws IOException {
+    final AtomicReader reader = context.reader();
+    final DocValuesType type = getDocValuesType(reader, field);
+    if (type == null) {
+      return null;
+    }
+    switch (type) {
+      case NUMERIC: {
+        final NumericDocValues values = reader.getNumericDocValues(field);
+        final Bits docsWithField = reader.getDocsWithField(field);
+        return new DocValuesDocIdSet(reader.maxDoc(), acceptDocs) {
+          @Override
+          protected boolean matchDoc(int doc) {
+            final long value = encoding.toSortable(values.get(doc));
+            // missing values read as 0: only check for them on hits
+            return value >= inclusiveLower && value <= inclusiveUpper && docsWithField.get(doc);
+          }
+        };
+      }
+      case SORTED_NUMERIC: {
+        // values are already stored in sortable form
+        final SortedNumericDocValues sortedValues = reader.getSortedNumericDocValues(field);
+        final NumericDocValues singleton = DocValues.unwrapSingleton(sortedValues);
+        if (singleton != null) {
+          final Bits docsWithField = DocValues.unwrapSingletonBits(sortedValues);
+          return new DocValuesDocIdSet(reader.maxDoc(), acceptDocs) {
+            @Override
+            protected boolean matchDoc(int doc) {
+              final long value = singleton.get(doc);
+              return value >= inclusiveLower && value <= inclusiveUpper && (docsWithField == null || docsWithField.get(doc));
+            }
+          };
+        }
+        return new DocValuesDocIdSet(reader.maxDoc(), acceptDocs) {
+          @Override
+          protected boolean matchDoc(int doc) {
+            sortedValues.setDocument(doc);
+            final int count = sortedValues.count();
+            for (int i = 0; i < count; i++) {
+              final long value = sortedValues.valueAt(i);
+              if (value > inclusiveUpper) {
+                // values are sorted, no later value can match
+                return false;
+              }
+              if (value >= inclusiveLower) {
+                return true;
+              }
+            }
+            return false;
+          }
+        };
+      }
+      default:
+        throw new IllegalStateException("field '" + field + "' has docvalues type " + type + ", expected NUMERIC or SORTED_NUMERIC");
+    }
+  }
+
+  private static DocIdSet ordRange(AtomicReaderContext context, String field, BytesRef lowerVal, BytesRef upperVal,
+      boolean includeLower, boolean includeUpper, Bits acceptDocs) throws IOException {
+    final AtomicReader reader = context.reader();
+    final DocValuesType type = getDocValuesType(reader, field);
+    if (type == null) {
+      return null;
+    }
+    if (type != DocValuesType.SORTED && type != DocValuesType.SORTED_SET) {
+      throw new IllegalStateException("field '" + field + "' has docvalues type " + type + ", expected SORTED or SORTED_SET");
+    }
+    final SortedSetDocValues docTermOrds = DocValues.getSortedSet(reader, field);
+    final long lowerPoint = lowerVal == null ? -1 : docTermOrds.lookupTerm(lowerVal);
+    final long upperPoint = upperVal == null ? -1 : docTermOrds.lookupTerm(upperVal);
+
+    final long inclusiveLowerPoint, inclusiveUpperPoint;
+
+    // Hints:
+    // * lookupTerm returns -1, if value was null.
+    // * the value is <0 if no exact hit was found, the returned value
+    //   is (-(insertion point) - 1)
+    if (lowerPoint == -1 && lowerVal == null) {
+      inclusiveLowerPoint = 0;
+    } else if (includeLower && lowerPoint >= 0) {
+      inclusiveLowerPoint = lowerPoint;
+    } else if (lowerPoint >= 0) {
+      inclusiveLowerPoint = lowerPoint + 1;
+    } else {
+      inclusiveLowerPoint = Math.max(0, -lowerPoint - 1);
+    }
+    
+    if (upperPoint == -1 && upperVal == null) {
+      inclusiveUpperPoint = Long.MAX_VALUE;  
+    } else if (includeUpper && upperPoint >= 0) {
+      inclusiveUpperPoint = upperPoint;
+    } else if (upperPoint >= 0) {
+      inclusiveUpperPoint = upperPoint - 1;
+    } else {
+      inclusiveUpperPoint = -upperPoint - 2;
+    }      
+
+    if (inclusiveUpperPoint < 0 || inclusiveLowerPoint > inclusiveUpperPoint) {
+      return null;
+    }
+    
+    assert inclusiveLowerPoint >= 0 && inclusiveUpperPoint >= 0;
+
+    final SortedDocValues singleton = DocValues.unwrapSingleton(docTermOrds);
+    if (singleton != null) {
+      return new DocValuesDocIdSet(reader.maxDoc(), acceptDocs) {
+        @Override
+        protected boolean matchDoc(int doc) {
+          // missing docs have ord -1, which is never in range
+          final int docOrd = singleton.getOrd(doc);
+          return docOrd >= inclusiveLowerPoint && docOrd <= inclusiveUpperPoint;
+        }
+      };
+    }
+    return new DocValuesDocIdSet(reader.maxDoc(), acceptDocs) {
+      @Override
+      protected boolean matchDoc(int doc) {
+        docTermOrds.setDocument(doc);
+        long ord;
+        while ((ord = docTermOrds.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+          if (ord > inclusiveUpperPoint) {
+            return false;
+          } else if (ord >= inclusiveLowerPoint) {
+            return true;
+          }
+        }
+        return false;
+      }
+    };
+  }
+  
+  @Override
+  public final String toString() {
+    final StringBuilder sb = new StringBuilder(field).append(":");
+    return sb.append(includeLower ? '[' : '{')
+      .append((lowerVal == null) ? "*" : lowerVal.toString())
+      .append(" TO ")
+      .append((upperVal == null) ? "*" : upperVal.toString())
+      .append(includeUpper ? ']' : '}')
+      .toString();
+  }
+
+  @Override
+  @SuppressWarnings({"rawtypes"})
+  public final boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof DocValuesRangeFilter)) return false;
+    DocValuesRangeFilter other = (DocValuesRangeFilter) o;
+
+    if (!this.field.equals(other.field)
+        || this.includeLower != other.includeLower
+        || this.includeUpper != other.includeUpper
+    ) { return false; }
+    if (this.lowerVal != null ? !this.lowerVal.equals(other.lowerVal) : other.lowerVal != null) return false;
+    if (this.upperVal != null ? !this.upperVal.equals(other.upperVal) : other.upperVal != null) return false;
+    return true;
+  }
+  
+  @Override
+  public final int hashCode() {
+    int h = field.hashCode();
+    h ^= (lowerVal != null) ? lowerVal.hashCode() : 550356204;
+    h = (h << 1) | (h >>> 31);  // rotate to distinguish lower from upper
+    h ^= (upperVal != null) ? upperVal.hashCode() : -1674416163;
+    h ^= (includeLower ? 1549299360 : -365038026) ^ (includeUpper ? 1721088258 : 1948649653);
+    return h;
+  }
+
+  /** Returns the field name for this filter */
+  public String getField() { return field; }
+
+  /** Returns <code>true</code> if the lower endpoint is inclusive */
+  public boolean includesLower() { return includeLower; }
+  
+  /** Returns <code>true</code> if the upper endpoint is inclusive */
+  public boolean includesUpper() { return includeUpper; }
+
+  /** Returns the lower value of this range filter */
+  public T getLowerVal() { return lowerVal; }
+
+  /** Returns the upper value of this range filter */
+  public T getUpperVal() { return upperVal; }
+}
@@ -0,0 +1,276 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.document.NumericDocValuesField; // for javadocs
+import org.apache.lucene.document.SortedDocValuesField; // for javadocs
+import org.apache.lucene.document.SortedNumericDocValuesField; // for javadocs
+import org.apache.lucene.document.SortedSetDocValuesField; // for javadocs
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FieldInfo.DocValuesType;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongBitSet;
+
+/**
+ * A {@link Filter} that only accepts documents whose per-document value is
+ * one of a fixed set of terms or numbers, read from
+ * {@link SortedDocValuesField}, {@link SortedSetDocValuesField},
+ * {@link NumericDocValuesField} or {@link SortedNumericDocValuesField}.
+ *
+ * <p>Like {@link DocValuesRangeFilter}, this filter never reads postings.
+ * For terms, {@link #getDocIdSet} looks up the ordinal of each term once per
+ * segment and marks it in a bit set of size <code>valueCount</code>; numbers are
+ * kept in a sorted array and looked up with a binary search. Documents are then
+ * checked one at a time through {@link DocIdSet#bits()}, which makes this filter
+ * efficient when it is applied with {@link FilteredQuery#RANDOM_ACCESS_FILTER_STRATEGY}
+ * on top of a selective query, even if the set of terms is large.
+ *
+ * <p>A document with several values matches if any of its values is in the set.
+ * Documents without a value never match.
+ *
+ * @see DocValuesRangeFilter
+ */
+public abstract class DocValuesTermsFilter extends Filter {
+  final String field;
+
+  private DocValuesTermsFilter(String field) {
+    if (field == null) {
+      throw new IllegalArgumentException("field must not be null");
+    }
+    this.field = field;
+  }
+
+  /** Returns the field name for this filter */
+  public String getField() { return field; }
+
+  /**
+   * Creates a filter accepting documents whose {@link SortedDocValues} or
+   * {@link SortedSetDocValues} contain any of the given terms.
+   */
+  public static DocValuesTermsFilter newBytesRefTerms(String field, BytesRef... terms) {
+    final BytesRef[] sorted = new BytesRef[terms.length];
+    for (int i = 0; i < terms.length; i++) {
+      sorted[i] = BytesRef.deepCopyOf(terms[i]);
+    }
+    Arrays.sort(sorted);
+    return new TermsFilter(field, sorted);
+  }
+
+  /**
+   * Creates a filter accepting documents whose {@link SortedDocValues} or
+   * {@link SortedSetDocValues} contain any of the given terms.
+   */
+  public static DocValuesTermsFilter newStringTerms(String field, String... terms) {
+    final BytesRef[] bytes = new BytesRef[terms.length];
+    for (int i = 0; i < terms.length; i++) {
+      bytes[i] = new BytesRef(terms[i]);
+    }
+    Arrays.sort(bytes);
+    return new TermsFilter(field, bytes);
+  }
+
+  /**
+   * Creates a filter accepting documents whose {@link NumericDocValues} or
+   * {@link SortedNumericDocValues} contain any of the given values. The values
+   * are compared as they are stored, so floating point values must be encoded
+   * the same way they were indexed.
+   */
+  public static DocValuesTermsFilter newLongTerms(String field, long... values) {
+    final long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return new LongsFilter(field, sorted);
+  }
+
+  private static final class TermsFilter extends DocValuesTermsFilter {
+    // sorted, may contain duplicates
+    private final BytesRef[] terms;
+
+    TermsFilter(String field, BytesRef[] terms) {
+      super(field);
+      this.terms = terms;
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+      final AtomicReader reader = context.reader();
+      final DocValuesType type = DocValuesRangeFilter.getDocValuesType(reader, field);
+      if (type == null) {
+        return null;
+      }
+      if (type != DocValuesType.SORTED && type != DocValuesType.SORTED_SET) {
+        throw new IllegalStateException("field '" + field + "' has docvalues type " + type + ", expected SORTED or SORTED_SET");
+      }
+      final SortedSetDocValues docTermOrds = DocValues.getSortedSet(reader, field);
+      final LongBitSet bits = new LongBitSet(docTermOrds.getValueCount());
+      boolean matchesAny = false;
+      for (BytesRef term : terms) {
+        final long ord = docTermOrds.lookupTerm(term);
+        if (ord >= 0) {
+          bits.set(ord);
+          matchesAny = true;
+        }
+      }
+      if (!matchesAny) {
+        return null;
+      }
+
+      final SortedDocValues singleton = DocValues.unwrapSingleton(docTermOrds);
+      if (singleton != null) {
+        return new DocValuesDocIdSet(reader.maxDoc(), acceptDocs) {
+          @Override
+          protected boolean matchDoc(int doc) {
+            final int ord = singleton.getOrd(doc);
+            return ord != -1 && bits.get(ord);
+          }
+        };
+      }
+      return new DocValuesDocIdSet(reader.maxDoc(), acceptDocs) {
+        @Override
+        protected boolean matchDoc(int doc) {
+          docTermOrds.setDocument(doc);
+          long ord;
+          while ((ord = docTermOrds.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+            if (bits.get(ord)) {
+              return true;
+            }
+          }
+          return false;
+        }
+      };
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder sb = new StringBuilder(field).append(":(");
+      for (int i = 0; i < terms.length; i++) {
+        if (i > 0) {
+          sb.append(' ');
+        }
+        sb.append(terms[i].utf8ToString());
+      }
+      return sb.append(')').toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof TermsFilter)) return false;
+      final TermsFilter other = (TermsFilter) o;
+      return field.equals(other.field) && Arrays.equals(terms, other.terms);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * field.hashCode() + Arrays.hashCode(terms);
+    }
+  }
+
+  private static final class LongsFilter extends DocValuesTermsFilter {
+    // sorted, may contain duplicates
+    private final long[] values;
+
+    LongsFilter(String field, long[] values) {
+      super(field);
+      this.values = values;
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+      if (values.length == 0) {
+        return null;
+      }
+      final AtomicReader reader = context.reader();
+      final DocValuesType type = DocValuesRangeFilter.getDocValuesType(reader, field);
+      if (type == null) {
+        return null;
+      }
+      final long min = values[0];
+      final long max = values[values.length - 1];
+      switch (type) {
+        case NUMERIC: {
+          final NumericDocValues numeric = reader.getNumericDocValues(field);
+          final Bits docsWithField = reader.getDocsWithField(field);
+          return new DocValuesDocIdSet(reader.maxDoc(), acceptDocs) {
+            @Override
+            protected boolean matchDoc(int doc) {
+              // missing values read as 0: only check for them on hits
+              return contains(numeric.get(doc), min, max) && docsWithField.get(doc);
+            }
+          };
+        }
+        case SORTED_NUMERIC: {
+          final SortedNumericDocValues sortedNumeric = reader.getSortedNumericDocValues(field);
+          return new DocValuesDocIdSet(reader.maxDoc(), acceptDocs) {
+            @Override
+            protected boolean matchDoc(int doc) {
+              sortedNumeric.setDocument(doc);
+              final int count = sortedNumeric.count();
+              for (int i = 0; i < count; i++) {
+                if (contains(sortedNumeric.valueAt(i), min, max)) {
+                  return true;
+                }
+              }
+              return false;
+            }
+          };
+        }
+        default:
+          throw new IllegalStateException("field '" + field + "' has docvalues type " + type + ", expected NUMERIC or SORTED_NUMERIC");
+      }
+    }
+
+    boolean contains(long value, long min, long max) {
+      return value >= min && value <= max && Arrays.binarySearch(values, value) >= 0;
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder sb = new StringBuilder(field).append(":(");
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0) {
+          sb.append(' ');
+        }
+        sb.append(values[i]);
+      }
+      return sb.append(')').toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof LongsFilter)) return false;
+      final LongsFilter other = (LongsFilter) o;
+      return field.equals(other.field) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * field.hashCode() + Arrays.hashCode(values);
+    }
+  }
+}
@@ -0,0 +1,294 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.PForDeltaDocIdSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.WAH8DocIdSet;
+
+/**
+ * Expert: Caches the {@link DocIdSet}s that {@link Filter}s produce per
+ * segment, on behalf of {@link CachingWrapperFilter}.
+ *
+ * <p>Entries are keyed by the filter and the
+ * {@link IndexReader#getCoreCacheKey() core cache key} of the segment. Sets
+ * are computed without the segment's deletions, which are applied when an
+ * entry is returned, so entries stay valid across near-real-time reopens
+ * that only delete documents or add segments. They are dropped once the
+ * segment core is closed. Filters must implement
+ * {@link Object#equals(Object)} and {@link Object#hashCode()} for equal
+ * filters to share entries.
+ *
+ * <p>Each set is stored in the representation that is cheapest for its
+ * density, see {@link #cacheImpl(DocIdSet, AtomicReader)}. All entries are
+ * linked into a single list in least recently used order, and adding an
+ * entry that brings the sum of their {@link Accountable#ramBytesUsed()} over
+ * {@link #getMaxRamBytesUsed()} evicts entries from the head of that list.
+ *
+ * @lucene.experimental
+ */
+public class FilterCache implements Accountable {
+
+  /** Default budget for all cached sets: 32 MB, or a twentieth of the maximum heap if that is less. */
+  public static final long DEFAULT_MAX_RAM_BYTES_USED = Math.min(32 * RamUsageEstimator.ONE_MB, Runtime.getRuntime().maxMemory() / 20);
+
+  /** The cache used by {@link CachingWrapperFilter}s that are not given one. */
+  public static final FilterCache DEFAULT = new FilterCache(DEFAULT_MAX_RAM_BYTES_USED);
+
+  // a key plus its nodes in the lru and per-core maps
+  private static final long ENTRY_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Key.class)
+      + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 8 * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+  // all entries, least recently used first
+  private final LinkedHashMap<Key,DocIdSet> lru = new LinkedHashMap<>(16, 0.75f, true);
+  // entries of each segment core, to drop them when the core is closed
+  private final Map<Object,Set<Key>> keysByCore = new HashMap<>();
+  private long ramBytesUsed;
+  private volatile long maxRamBytesUsed;
+
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /** Creates a cache whose entries may use up to {@code maxRamBytesUsed} bytes together. */
+  public FilterCache(long maxRamBytesUsed) {
+    setMaxRamBytesUsed(maxRamBytesUsed);
+  }
+
+  /**
+   * Returns the set of {@code filter} on the segment of {@code context},
+   * ignoring deletions. On a miss the set is computed through
+   * {@link Filter#getDocIdSet(AtomicReaderContext, org.apache.lucene.util.Bits)}
+   * and cached. A filter that matches no document yields
+   * {@link DocIdSet#EMPTY}, never {@code null}.
+   */
+  public DocIdSet getDocIdSet(Filter filter, AtomicReaderContext context) throws IOException {
+    final AtomicReader reader = context.reader();
+    final Key key = new Key(reader.getCoreCacheKey(), filter);
+    synchronized (this) {
+      final DocIdSet cached = lru.get(key);
+      if (cached != null) {
+        hitCount++;
+        return cached;
+      }
+      missCount++;
+    }
+    // computed outside of the lock: concurrent misses on the same entry may
+    // compute it twice, but never block lookups of other entries
+    final DocIdSet docIdSet = cacheImpl(filter.getDocIdSet(context, null), reader);
+    if (put(key, docIdSet)) {
+      // outside of the lock, as the core notifies its listeners under its own lock
+      reader.addCoreClosedListener(purgeCore);
+    }
+    return docIdSet;
+  }
+
+  /** Adds an entry and returns whether it is the first one of its segment core. */
+  private synchronized boolean put(Key key, DocIdSet docIdSet) {
+    boolean newCore = false;
+    final DocIdSet previous = lru.put(key, docIdSet);
+    if (previous != null) {
+      ramBytesUsed -= ramBytesUsed(previous);
+    } else {
+      Set<Key> keys = keysByCore.get(key.coreKey);
+      if (keys == null) {
+        keys = new HashSet<>();
+        keysByCore.put(key.coreKey, keys);
+        newCore = true;
+      }
+      keys.add(key);
+    }
+    ramBytesUsed += ramBytesUsed(docIdSet);
+    evict();
+    return newCore;
+  }
+
+  private void evict() {
+    final Iterator<Map.Entry<Key,DocIdSet>> it = lru.entrySet().iterator();
+    while (ramBytesUsed > maxRamBytesUsed && it.hasNext()) {
+      final Map.Entry<Key,DocIdSet> eldest = it.next();
+      it.remove();
+      ramBytesUsed -= ramBytesUsed(eldest.getValue());
+      final Key key = eldest.getKey();
+      final Set<Key> keys = keysByCore.get(key.coreKey);
+      keys.remove(key);
+      if (keys.isEmpty()) {
+        keysByCore.remove(key.coreKey);
+      }
+      evictionCount++;
+    }
+  }
+
+  private static long ramBytesUsed(DocIdSet docIdSet) {
+    return ENTRY_RAM_BYTES_USED + docIdSet.ramBytesUsed();
+  }
+
+  /**
+   * Returns the representation to cache for the set a filter produced on
+   * {@code reader}. Sets that match no document become
+   * {@link DocIdSet#EMPTY}. {@link PForDeltaDocIdSet}s and
+   * {@link WAH8DocIdSet}s are immutable and account for their memory, so
+   * they are kept as they are. All other sets, even
+   * {@link DocIdSet#isCacheable() cacheable} ones, may be mutable, hold
+   * per-thread state or report no memory usage. They are copied and stored
+   * as a {@link PForDeltaDocIdSet} if they match less than 1/128th of the
+   * documents, otherwise as a {@link WAH8DocIdSet} if that takes less than
+   * half the memory of a {@link FixedBitSet}, and as a {@link FixedBitSet}
+   * else. Only the latter gives {@link FilteredQuery} random access, which is
+   * why compression has to pay off clearly for dense sets.
+   */
+  protected DocIdSet cacheImpl(DocIdSet docIdSet, AtomicReader reader) throws IOException {
+    if (docIdSet == null) {
+      return DocIdSet.EMPTY;
+    } else if (docIdSet == DocIdSet.EMPTY
+        || docIdSet instanceof PForDeltaDocIdSet
+        || docIdSet instanceof WAH8DocIdSet) {
+      return docIdSet;
+    }
+    final FixedBitSet bits;
+    if (docIdSet instanceof FixedBitSet) {
+      // the filter may still modify its instance
+      bits = ((FixedBitSet) docIdSet).clone();
+    } else {
+      final DocIdSetIterator it = docIdSet.iterator();
+      if (it == null) {
+        return DocIdSet.EMPTY;
+      }
+      bits = new FixedBitSet(reader.maxDoc());
+      bits.or(it);
+    }
+
+    final int cardinality = bits.cardinality();
+    if (cardinality == 0) {
+      return DocIdSet.EMPTY;
+    } else if (cardinality <= reader.maxDoc() >>> 7) {
+      return new PForDeltaDocIdSet.Builder().add(bits.iterator()).build();
+    }
+    final WAH8DocIdSet compressed = new WAH8DocIdSet.Builder().add(bits.iterator()).build();
+    return compressed.ramBytesUsed() < bits.ramBytesUsed() >>> 1 ? compressed : bits;
+  }
+
+  /** Drops all entries. */
+  public synchronized void purgeAllCaches() {
+    lru.clear();
+    keysByCore.clear();
+    ramBytesUsed = 0;
+  }
+
+  /** Drops all entries of the segment core with the given cache key. */
+  public synchronized void purgeByCacheKey(Object coreCacheKey) {
+    final Set<Key> keys = keysByCore.remove(coreCacheKey);
+    if (keys != null) {
+      for (Key key : keys) {
+        ramBytesUsed -= ramBytesUsed(lru.remove(key));
+      }
+    }
+  }
+
+  // entries don't purge until the shared core closes.
+  private final AtomicReader.CoreClosedListener purgeCore = new AtomicReader.CoreClosedListener() {
+    @Override
+    public void onClose(Object ownerCoreCacheKey) {
+      purgeByCacheKey(ownerCoreCacheKey);
+    }
+  };
+
+  /**
+   * Sets the maximum number of bytes the cached sets may use together. Once
+   * it is exceeded, the least recently used entries are dropped until the
+   * cache fits again. A single set that is larger than the whole budget is
+   * still returned to its caller but is not kept.
+   */
+  public synchronized void setMaxRamBytesUsed(long maxRamBytesUsed) {
+    if (maxRamBytesUsed < 0) {
+      throw new IllegalArgumentException("maxRamBytesUsed must be >= 0 (got " + maxRamBytesUsed + ")");
+    }
+    this.maxRamBytesUsed = maxRamBytesUsed;
+    evict();
+  }
+
+  /**
+   * Returns the maximum number of bytes the cached sets may use together.
+   * @see #setMaxRamBytesUsed(long)
+   */
+  public long getMaxRamBytesUsed() {
+    return maxRamBytesUsed;
+  }
+
+  @Override
+  public synchronized long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  /** Returns the number of cached entries. */
+  public synchronized int getCacheSize() {
+    return lru.size();
+  }
+
+  /** Returns how many lookups found their entry in the cache. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns how many lookups had to compute their set. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns how many entries were dropped to stay within the budget. */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  private static final class Key {
+    final Object coreKey;
+    final Filter filter;
+
+    Key(Object coreKey, Filter filter) {
+      this.coreKey = coreKey;
+      this.filter = filter;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      return coreKey == other.coreKey && filter.equals(other.filter);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(coreKey) + filter.hashCode();
+    }
+  }
+}
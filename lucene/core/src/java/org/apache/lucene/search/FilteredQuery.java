@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -568,6 +569,137 @@ public class FilteredQuery extends Query {
     }
   }
   
+  /**
+   * A {@link FilterStrategy} that chooses how to apply the filter on each
+   * segment from the {@link DocIdSetIterator#cost() cost} of the filter's
+   * iterator, the cost of the query's {@link Scorer} and whether the filter
+   * supports random access through {@link DocIdSet#bits()}:
+   * <ul>
+   *  <li>If the filter supports random access and
+   *      {@link #useRandomAccess(Bits, long, long)} returns <code>true</code>
+   *      for the costs of the filter and the query, the filter's bits are
+   *      checked for each document the query matches.</li>
+   *  <li>Otherwise the cheaper side leads a leap-frog, as in
+   *      {@link FilteredQuery#LEAP_FROG_QUERY_FIRST_STRATEGY} and
+   *      {@link FilteredQuery#LEAP_FROG_FILTER_FIRST_STRATEGY}.</li>
+   * </ul>
+   * <p>
+   * If the filter would be applied as random access even to a query that
+   * matches every document, its bits are passed to the query as accepted
+   * documents, the same way deletions are, without pulling a scorer for its
+   * cost first. Otherwise the query's scorer is pulled once and then drives
+   * either the bits check or the leap-frog.
+   * <p>
+   * Filters cached by {@link CachingWrapperFilter} report their exact
+   * cardinality as cost, unless they are cached as a bit set because they
+   * are dense. Each instance counts how often it chose each way, which
+   * helps to tell whether a custom strategy would pay off; use one instance
+   * per searcher or application to get meaningful counts.
+   */
+  public static class CostBasedFilterStrategy extends FilterStrategy {
+
+    private final AtomicLong randomAccessCount = new AtomicLong();
+    private final AtomicLong queryFirstCount = new AtomicLong();
+    private final AtomicLong leapFrogQueryFirstCount = new AtomicLong();
+    private final AtomicLong leapFrogFilterFirstCount = new AtomicLong();
+
+    /** Sole constructor. */
+    public CostBasedFilterStrategy() {
+    }
+
+    @Override
+    public Scorer filteredScorer(AtomicReaderContext context, Weight weight, DocIdSet docIdSet) throws IOException {
+      final DocIdSetIterator filterIter = docIdSet.iterator();
+      if (filterIter == null) {
+        // this means the filter does not accept any documents.
+        return null;
+      }
+      final Bits filterAcceptDocs = docIdSet.bits();
+      if (filterAcceptDocs != null && useRandomAccess(filterAcceptDocs, filterIter.cost(), filterAcceptDocs.length())) {
+        randomAccessCount.incrementAndGet();
+        return weight.scorer(context, filterAcceptDocs);
+      }
+      return filteredScorer(context, weight, filterIter, filterAcceptDocs);
+    }
+
+    @Override
+    public BulkScorer filteredBulkScorer(AtomicReaderContext context, Weight weight,
+        boolean scoreDocsInOrder, DocIdSet docIdSet) throws IOException {
+      final DocIdSetIterator filterIter = docIdSet.iterator();
+      if (filterIter == null) {
+        // this means the filter does not accept any documents.
+        return null;
+      }
+      final Bits filterAcceptDocs = docIdSet.bits();
+      if (filterAcceptDocs != null && useRandomAccess(filterAcceptDocs, filterIter.cost(), filterAcceptDocs.length())) {
+        randomAccessCount.incrementAndGet();
+        return weight.bulkScorer(context, scoreDocsInOrder, filterAcceptDocs);
+      }
+      final Scorer scorer = filteredScorer(context, weight, filterIter, filterAcceptDocs);
+      return scorer == null ? null : new Weight.DefaultBulkScorer(scorer);
+    }
+
+    private Scorer filteredScorer(AtomicReaderContext context, Weight weight,
+        DocIdSetIterator filterIter, Bits filterAcceptDocs) throws IOException {
+      // we pass null as acceptDocs, as our filter has already respected acceptDocs, no need to do twice
+      final Scorer scorer = weight.scorer(context, null);
+      if (scorer == null) {
+        return null;
+      }
+      final long queryCost = scorer.cost();
+      final long filterCost = filterIter.cost();
+      if (filterAcceptDocs != null && useRandomAccess(filterAcceptDocs, filterCost, queryCost)) {
+        queryFirstCount.incrementAndGet();
+        return new QueryFirstScorer(weight, filterAcceptDocs, scorer);
+      } else if (queryCost < filterCost) {
+        leapFrogQueryFirstCount.incrementAndGet();
+        return new LeapFrogScorer(weight, scorer, filterIter, scorer);
+      } else {
+        leapFrogFilterFirstCount.incrementAndGet();
+        return new LeapFrogScorer(weight, filterIter, scorer, scorer);
+      }
+    }
+
+    /**
+     * Expert: decides if a filter that supports random access should be
+     * checked for each document the query matches rather than lead a
+     * leap-frog, given the cost of the filter's iterator and of the query's
+     * scorer. It is first called with the number of documents of the segment
+     * as <code>queryCost</code>, so it must not return <code>false</code>
+     * for a query cost for which a larger one returned <code>true</code>.
+     * The default implementation returns <code>true</code> if the filter
+     * matches more than 1% of the documents the query matches: checking a
+     * bit per query hit is then cheaper than advancing the query to every
+     * filter hit.
+     *
+     * @lucene.internal
+     */
+    protected boolean useRandomAccess(Bits bits, long filterCost, long queryCost) {
+      // costs of disjunctions may add up to more than the segment's documents
+      return filterCost * 100 > Math.min(queryCost, bits.length());
+    }
+
+    /** Returns how often the filter's bits were passed to the query as accepted documents. */
+    public long getRandomAccessCount() {
+      return randomAccessCount.get();
+    }
+
+    /** Returns how often the query led and the filter's bits were checked for each match. */
+    public long getQueryFirstCount() {
+      return queryFirstCount.get();
+    }
+
+    /** Returns how often the query led a leap-frog with the filter. */
+    public long getLeapFrogQueryFirstCount() {
+      return leapFrogQueryFirstCount.get();
+    }
+
+    /** Returns how often the filter led a leap-frog with the query. */
+    public long getLeapFrogFilterFirstCount() {
+      return leapFrogFilterFirstCount.get();
+    }
+  }
+
   private static final class LeapFrogFilterStrategy extends FilterStrategy {
     
     private final boolean scorerFirst;
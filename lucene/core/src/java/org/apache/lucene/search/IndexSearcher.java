@@ -18,17 +18,18 @@ package org.apache.lucene.search;
  */
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -87,6 +88,9 @@ public class IndexSearcher {
 	  
 	// These are only used for multi-threaded search
 	  private final ExecutorService executor;
+	  private final int maxDocsPerSlice;
+	  private final int maxSegmentsPerSlice;
+	  private final boolean splitLeaves;
 	  
 	// the default Similarity
 	  private static final Similarity defaultSimilarity = new DefaultSimilarity();
@@ -105,6 +109,9 @@ public class IndexSearcher {
 	  /** The Similarity implementation used by this searcher. */
 	  private Similarity similarity = defaultSimilarity;
 
+	  /** Whether top-N searches count every matching document. */
+	  private boolean trackTotalHits = true;
+
 	  
 	  /** Creates a searcher searching the provided index. */
 	  public IndexSearcher(IndexReader r) {
@@ -125,6 +132,18 @@ public class IndexSearcher {
 	public IndexSearcher(IndexReader r, ExecutorService executor) {
 		this(r.getContext(), executor);
 	}
+
+	  /** Runs searches for each {@link LeafSlice} separately, using the
+	   *  provided ExecutorService, where slices are built by
+	   *  {@link #slices(List, int, int, boolean) slices(leaves, maxDocsPerSlice,
+	   *  maxSegmentsPerSlice, splitLeaves)}. See
+	   *  {@link #IndexSearcher(IndexReader, ExecutorService)}.
+	   *
+	   * @lucene.experimental */
+	  public IndexSearcher(IndexReader r, ExecutorService executor, int maxDocsPerSlice,
+	                       int maxSegmentsPerSlice, boolean splitLeaves) {
+	    this(r.getContext(), executor, maxDocsPerSlice, maxSegmentsPerSlice, splitLeaves);
+	  }
 	
 	/**
 	   * Creates a searcher searching the provided top-level {@link IndexReaderContext}.
@@ -143,9 +162,35 @@ public class IndexSearcher {
 	   * @lucene.experimental
 	   */
 	public IndexSearcher(IndexReaderContext context, ExecutorService executor) {
+	    this(context, executor, DEFAULT_MAX_DOCS_PER_SLICE, DEFAULT_MAX_SEGMENTS_PER_SLICE, false);
+	  }
+
+	  /**
+	   * Creates a searcher searching the provided top-level {@link IndexReaderContext}
+	   * with the provided ExecutorService, see
+	   * {@link #IndexSearcher(IndexReaderContext, ExecutorService)}. The leaves are
+	   * grouped into slices of at most <code>maxDocsPerSlice</code> live documents
+	   * and <code>maxSegmentsPerSlice</code> leaves; if <code>splitLeaves</code>
+	   * is true, a larger leaf is searched as several doc-ID range slices
+	   * concurrently rather than as a single slice. See
+	   * {@link #slices(List, int, int, boolean)} for when splitting pays off.
+	   *
+	   * @lucene.experimental
+	   */
+	  public IndexSearcher(IndexReaderContext context, ExecutorService executor, int maxDocsPerSlice,
+	                       int maxSegmentsPerSlice, boolean splitLeaves) {
 	    assert context.isTopLevel: "IndexSearcher's ReaderContext must be topLevel for reader" + context.reader();
+	    if (maxDocsPerSlice <= 0) {
+	      throw new IllegalArgumentException("maxDocsPerSlice must be > 0; got: " + maxDocsPerSlice);
+	    }
+	    if (maxSegmentsPerSlice <= 0) {
+	      throw new IllegalArgumentException("maxSegmentsPerSlice must be > 0; got: " + maxSegmentsPerSlice);
+	    }
 	    reader = context.reader();
 	    this.executor = executor;
+	    this.maxDocsPerSlice = maxDocsPerSlice;
+	    this.maxSegmentsPerSlice = maxSegmentsPerSlice;
+	    this.splitLeaves = splitLeaves;
 	    this.readerContext = context;
 	    leafContexts = context.leaves();
 	    this.leafSlices = executor == null ? null : slices(leafContexts);
@@ -162,22 +207,110 @@ public class IndexSearcher {
 	    this(context, null);
 	  }
 	  
+	  /** Default maximum number of live documents grouped into one {@link LeafSlice}
+	   *  by {@link #slices(List)}; larger leaves get a slice of their own. */
+	  public static final int DEFAULT_MAX_DOCS_PER_SLICE = 250000;
+
+	  /** Default maximum number of leaves grouped into one {@link LeafSlice}
+	   *  by {@link #slices(List)}. */
+	  public static final int DEFAULT_MAX_SEGMENTS_PER_SLICE = 5;
+
 	  /**
 	   * Expert: Creates an array of leaf slices each holding a subset of the given leaves.
-	   * Each {@link LeafSlice} is executed in a single thread. By default there
-	   * will be one {@link LeafSlice} per leaf ({@link AtomicReaderContext}).
+	   * Each {@link LeafSlice} is executed in a single thread. By default small
+	   * leaves are grouped together while large leaves get a slice of their own,
+	   * or several if the searcher was created to split leaves, see
+	   * {@link #slices(List, int, int, boolean)}.
+	   * <p>
+	   * NOTE: this method is called from the constructor.
 	   */
+	  protected LeafSlice[] slices(List<AtomicReaderContext> leaves) {
+	    return slices(leaves, maxDocsPerSlice, maxSegmentsPerSlice, splitLeaves);
+	  }
+
 	  /**
-	   * Expert: Creates an array of leaf slices each holding a subset of the given leaves.
-	   * Each {@link LeafSlice} is executed in a single thread. By default there
-	   * will be one {@link LeafSlice} per leaf ({@link AtomicReaderContext}).
+	   * Expert: Creates size-balanced leaf slices, without splitting leaves.
+	   * Same as {@link #slices(List, int, int, boolean) slices(leaves,
+	   * maxDocsPerSlice, maxSegmentsPerSlice, false)}.
+	   * 
+	   * @lucene.experimental
 	   */
-	  protected LeafSlice[] slices(List<AtomicReaderContext> leaves) {
-	    LeafSlice[] slices = new LeafSlice[leaves.size()];
-	    for (int i = 0; i < slices.length; i++) {
-	      slices[i] = new LeafSlice(leaves.get(i));
+	  public static LeafSlice[] slices(List<AtomicReaderContext> leaves, int maxDocsPerSlice, int maxSegmentsPerSlice) {
+	    return slices(leaves, maxDocsPerSlice, maxSegmentsPerSlice, false);
+	  }
+
+	  /**
+	   * Expert: Creates size-balanced leaf slices. The cost of a leaf is estimated
+	   * by its number of live documents, which is what an exhaustive
+	   * {@link DocIdSetIterator#cost()} over the leaf reports; slices are built
+	   * once per searcher, so no query-specific cost is available yet.
+	   * <p>
+	   * Leaves are visited in index order and consecutive leaves are packed
+	   * together as long as the slice stays within <code>maxDocsPerSlice</code>
+	   * documents and <code>maxSegmentsPerSlice</code> leaves. A leaf with more than
+	   * <code>maxDocsPerSlice</code> documents gets a slice of its own or, if
+	   * <code>splitLeaves</code> is true, several slices each covering an equally
+	   * sized doc-ID range of that leaf. The returned slices are therefore in
+	   * doc-ID order, which lets {@link TopDocs#merge} break ties between slices
+	   * the same way a single collector would.
+	   * <p>
+	   * NOTE: every doc-ID range slice pulls its own {@link Scorer} for the whole
+	   * leaf, so per-segment setup such as term lookups or filter bitsets is
+	   * repeated once per range. Only split leaves when scoring dominates that
+	   * setup cost.
+	   * 
+	   * @lucene.experimental
+	   */
+	  public static LeafSlice[] slices(List<AtomicReaderContext> leaves, int maxDocsPerSlice, int maxSegmentsPerSlice,
+	                                   boolean splitLeaves) {
+	    if (maxDocsPerSlice <= 0) {
+	      throw new IllegalArgumentException("maxDocsPerSlice must be > 0; got: " + maxDocsPerSlice);
+	    }
+	    if (maxSegmentsPerSlice <= 0) {
+	      throw new IllegalArgumentException("maxSegmentsPerSlice must be > 0; got: " + maxSegmentsPerSlice);
+	    }
+
+	    final List<LeafSlice> slices = new ArrayList<>();
+	    final List<AtomicReaderContext> group = new ArrayList<>();
+	    long docSum = 0;
+	    for (AtomicReaderContext ctx : leaves) {
+	      final int numDocs = ctx.reader().numDocs();
+	      if (group.isEmpty() == false
+	          && (group.size() >= maxSegmentsPerSlice || docSum + numDocs > maxDocsPerSlice)) {
+	        // adding this leaf would exceed the budget: close the current slice first
+	        slices.add(newLeafSlice(group));
+	        group.clear();
+	        docSum = 0;
+	      }
+
+	      if (numDocs > maxDocsPerSlice) {
+	        assert group.isEmpty();
+	        if (splitLeaves) {
+	          // split the leaf in doc-ID ranges of roughly maxDocsPerSlice live docs each
+	          final int maxDoc = ctx.reader().maxDoc();
+	          final int numRanges = (int) ((numDocs + (long) maxDocsPerSlice - 1) / maxDocsPerSlice);
+	          final int rangeSize = (maxDoc + numRanges - 1) / numRanges;
+	          for (int minDoc = 0; minDoc < maxDoc; minDoc += rangeSize) {
+	            slices.add(new LeafSlice(ctx, minDoc, Math.min(maxDoc, minDoc + rangeSize)));
+	          }
+	        } else {
+	          slices.add(new LeafSlice(ctx));
+	        }
+	        continue;
+	      }
+
+	      group.add(ctx);
+	      docSum += numDocs;
+	    }
+	    if (group.isEmpty() == false) {
+	      slices.add(newLeafSlice(group));
 	    }
-	    return slices;
+
+	    return slices.toArray(new LeafSlice[slices.size()]);
+	  }
+
+	  private static LeafSlice newLeafSlice(List<AtomicReaderContext> group) {
+	    return new LeafSlice(group.toArray(new AtomicReaderContext[group.size()]));
 	  }
 
 	  
@@ -228,16 +361,635 @@ public class IndexSearcher {
 	  public Similarity getSimilarity() {
 	    return similarity;
 	  }
+
+	  /** Expert: Set whether top-N searches sorted by score, such as
+	   *  {@link #search(Query, int)}, count every matching document. If false,
+	   *  the first page of hits is collected with a collector that
+	   *  {@link Scorer#setMinCompetitiveScore(float) tells scorers} which
+	   *  documents cannot make it into the top hits anymore, so that
+	   *  disjunctions can skip them. The top hits are the same, but
+	   *  {@link TopDocs#totalHits} is then only a lower bound of the number of
+	   *  matches. The default is true.
+	   *  <p>How much can be skipped depends on how tightly the
+	   *  {@link Similarity} bounds the score of a block of postings:
+	   *  {@link org.apache.lucene.search.similarities.BM25Similarity} saturates
+	   *  term frequencies and bounds well, while
+	   *  {@link org.apache.lucene.search.similarities.TFIDFSimilarity} has to
+	   *  assume the largest possible norm and barely skips anything.
+	   *  @see TopScoreDocCollector#create(int, boolean, boolean)
+	   *  @lucene.experimental */
+	  public void setTrackTotalHits(boolean trackTotalHits) {
+	    this.trackTotalHits = trackTotalHits;
+	  }
+
+	  /** Returns whether top-N searches count every matching document.
+	   *  @see #setTrackTotalHits(boolean) */
+	  public boolean getTrackTotalHits() {
+	    return trackTotalHits;
+	  }
 	  
 	  /** @lucene.internal */
 	  protected Query wrapFilter(Query query, Filter filter) {
 	    return (filter == null) ? query : new FilteredQuery(query, filter);
 	  }
 	  
+	  /** Finds the top <code>n</code>
+	   * hits for <code>query</code> where all results are after a previous 
+	   * result (<code>after</code>).
+	   * <p>
+	   * By passing the bottom result from a previous page as <code>after</code>,
+	   * this method can be used for efficient 'deep-paging' across potentially
+	   * large result sets.
+	   *
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  public TopDocs searchAfter(ScoreDoc after, Query query, int n) throws IOException {
+	    return search(createNormalizedWeight(query), after, n);
+	  }
+
+	  /** Finds the top <code>n</code>
+	   * hits for <code>query</code>, applying <code>filter</code> if non-null,
+	   * where all results are after a previous result (<code>after</code>).
+	   * <p>
+	   * By passing the bottom result from a previous page as <code>after</code>,
+	   * this method can be used for efficient 'deep-paging' across potentially
+	   * large result sets.
+	   *
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  public TopDocs searchAfter(ScoreDoc after, Query query, Filter filter, int n) throws IOException {
+	    return search(createNormalizedWeight(wrapFilter(query, filter)), after, n);
+	  }
+
+	  /** Finds the top <code>n</code>
+	   * hits for <code>query</code>.
+	   *
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  public TopDocs search(Query query, int n)
+	    throws IOException {
+	    return search(query, null, n);
+	  }
+
+	  /** Finds the top <code>n</code>
+	   * hits for <code>query</code>, applying <code>filter</code> if non-null.
+	   *
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  public TopDocs search(Query query, Filter filter, int n)
+	    throws IOException {
+	    return search(createNormalizedWeight(wrapFilter(query, filter)), n);
+	  }
+
+	  /** Lower-level search API.
+	   *
+	   * <p>{@link Collector#collect(int)} is called for every matching
+	   * document.
+	   *
+	   * @param query to match documents
+	   * @param filter if non-null, used to permit documents to be collected.
+	   * @param results to receive hits
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  public void search(Query query, Filter filter, Collector results)
+	    throws IOException {
+	    search(leafContexts, createNormalizedWeight(wrapFilter(query, filter)), results);
+	  }
+
+	  /** Lower-level search API.
+	   *
+	   * <p>{@link Collector#collect(int)} is called for every matching document.
+	   * <p>NOTE: a single {@link Collector} is not thread-safe, so this
+	   * method always visits the leaves sequentially, even if this
+	   * searcher was created with an {@link ExecutorService}.
+	   *
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  public void search(Query query, Collector results)
+	    throws IOException {
+	    search(leafContexts, createNormalizedWeight(query), results);
+	  }
+
+	  /** Search implementation with arbitrary sorting.  Finds
+	   * the top <code>n</code> hits for <code>query</code>, applying
+	   * <code>filter</code> if non-null, and sorting the hits by the criteria in
+	   * <code>sort</code>.
+	   * 
+	   * <p>NOTE: this does not compute scores by default; use
+	   * {@link IndexSearcher#search(Query,Filter,int,Sort,boolean,boolean)} to
+	   * control scoring.
+	   *
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  public TopFieldDocs search(Query query, Filter filter, int n,
+	                             Sort sort) throws IOException {
+	    return search(createNormalizedWeight(wrapFilter(query, filter)), n, sort, false, false);
+	  }
+
+	  /** Search implementation with arbitrary sorting, plus
+	   * control over whether hit scores and max score
+	   * should be computed.  Finds
+	   * the top <code>n</code> hits for <code>query</code>, applying
+	   * <code>filter</code> if non-null, and sorting the hits by the criteria in
+	   * <code>sort</code>.  If <code>doDocScores</code> is <code>true</code>
+	   * then the score of each hit will be computed and
+	   * returned.  If <code>doMaxScore</code> is
+	   * <code>true</code> then the maximum score over all
+	   * collected hits will be computed.
+	   * 
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  public TopFieldDocs search(Query query, Filter filter, int n,
+	                             Sort sort, boolean doDocScores, boolean doMaxScore) throws IOException {
+	    return search(createNormalizedWeight(wrapFilter(query, filter)), n, sort, doDocScores, doMaxScore);
+	  }
+
+	  /**
+	   * Search implementation with arbitrary sorting and no filter.
+	   * @param query The query to search for
+	   * @param n Return only the top n results
+	   * @param sort The {@link org.apache.lucene.search.Sort} object
+	   * @return The top docs, sorted according to the supplied {@link org.apache.lucene.search.Sort} instance
+	   * @throws IOException if there is a low-level I/O error
+	   */
+	  public TopFieldDocs search(Query query, int n,
+	                             Sort sort) throws IOException {
+	    return search(createNormalizedWeight(query), n, sort, false, false);
+	  }
+
+	  /** Finds the top <code>n</code>
+	   * hits for <code>query</code>, applying <code>filter</code> if non-null,
+	   * where all results are after a previous result (<code>after</code>).
+	   * <p>
+	   * By passing the bottom result from a previous page as <code>after</code>,
+	   * this method can be used for efficient 'deep-paging' across potentially
+	   * large result sets.
+	   *
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  public TopDocs searchAfter(ScoreDoc after, Query query, Filter filter, int n, Sort sort) throws IOException {
+	    return searchAfter(after, query, filter, n, sort, false, false);
+	  }
+
+	  /** Finds the top <code>n</code>
+	   * hits for <code>query</code> where all results are after a previous 
+	   * result (<code>after</code>), sorting the hits by the criteria in
+	   * <code>sort</code>.
+	   * <p>
+	   * By passing the bottom result from a previous page as <code>after</code>,
+	   * this method can be used for efficient 'deep-paging' across potentially
+	   * large result sets.
+	   *
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  public TopDocs searchAfter(ScoreDoc after, Query query, int n, Sort sort) throws IOException {
+	    return searchAfter(after, query, null, n, sort);
+	  }
+
+	  /** Finds the top <code>n</code>
+	   * hits for <code>query</code> where all results are after a previous 
+	   * result (<code>after</code>), allowing control over
+	   * whether hit scores and max score should be computed.
+	   * <p>
+	   * By passing the bottom result from a previous page as <code>after</code>,
+	   * this method can be used for efficient 'deep-paging' across potentially
+	   * large result sets.  If <code>doDocScores</code> is <code>true</code>
+	   * then the score of each hit will be computed and
+	   * returned.  If <code>doMaxScore</code> is
+	   * <code>true</code> then the maximum score over all
+	   * collected hits will be computed.
+	   *
+	   * @throws IllegalArgumentException if <code>after</code> is not a
+	   *         {@link FieldDoc} whose fields were filled by the previous search
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  public TopDocs searchAfter(ScoreDoc after, Query query, Filter filter, int n, Sort sort,
+	                             boolean doDocScores, boolean doMaxScore) throws IOException {
+	    if (after != null && !(after instanceof FieldDoc)) {
+	      // TODO: if we fix type safety of TopFieldDocs we can
+	      // remove this
+	      throw new IllegalArgumentException("after must be a FieldDoc; got " + after);
+	    }
+	    return search(createNormalizedWeight(wrapFilter(query, filter)), (FieldDoc) after, n, sort, true,
+	                  doDocScores, doMaxScore);
+	  }
+
+	  /** Expert: Low-level search implementation.  Finds the top <code>nDocs</code>
+	   * hits for <code>query</code>.
+	   *
+	   * <p>If an {@link ExecutorService} was passed to the constructor, each
+	   * {@link LeafSlice} is searched on the executor with its own collector
+	   * and the per-slice results are combined with {@link TopDocs#merge}.
+	   *
+	   * <p>Applications should usually call {@link IndexSearcher#search(Query,int)} or
+	   * {@link IndexSearcher#search(Query,Filter,int)} instead.
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  protected TopDocs search(Weight weight, int nDocs) throws IOException {
+	    return search(weight, null, nDocs);
+	  }
+
+	  /** Expert: Low-level search implementation.  Finds the top <code>nDocs</code>
+	   * hits for <code>query</code> that sort after <code>after</code>, which
+	   * may be <code>null</code> for the first page.
+	   *
+	   * <p>Applications should usually call {@link IndexSearcher#searchAfter(ScoreDoc,Query,int)} or
+	   * {@link IndexSearcher#searchAfter(ScoreDoc,Query,Filter,int)} instead.
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  protected TopDocs search(Weight weight, ScoreDoc after, int nDocs) throws IOException {
+	    int limit = reader.maxDoc();
+	    if (limit == 0) {
+	      limit = 1;
+	    }
+	    if (after != null && after.doc >= limit) {
+	      throw new IllegalArgumentException("after.doc exceeds the number of documents in the reader: after.doc="
+	          + after.doc + " limit=" + limit);
+	    }
+	    nDocs = Math.min(nDocs, limit);
+
+	    if (executor == null) {
+	      return search(leafContexts, weight, after, nDocs);
+	    } else {
+	      final ExecutionHelper<TopDocs> runner = new ExecutionHelper<>(executor);
+
+	      for (int i = 0; i < leafSlices.length; i++) { // search each sub
+	        runner.submit(new SearcherCallableNoSort(this, leafSlices[i], weight, after, nDocs));
+	      }
+
+	      final TopDocs[] sliceHits = new TopDocs[leafSlices.length];
+	      int upto = 0;
+	      for (final TopDocs topDocs : runner) {
+	        sliceHits[upto++] = topDocs;
+	      }
+
+	      // slice hits already carry top-level docIDs, so the shard
+	      // index of the merged hits is left untouched; slices are in
+	      // docID order, so ties are broken by docID as by a single collector:
+	      return TopDocs.merge(null, 0, nDocs, sliceHits, false);
+	    }
+	  }
+
+	  /** Expert: Low-level search implementation.  Finds the top <code>n</code>
+	   * hits for <code>query</code>, visiting only the provided leaves.
+	   *
+	   * <p>Applications should usually call {@link IndexSearcher#search(Query,int)} or
+	   * {@link IndexSearcher#search(Query,Filter,int)} instead.
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  protected TopDocs search(List<AtomicReaderContext> leaves, Weight weight, int nDocs) throws IOException {
+	    return search(leaves, weight, null, nDocs);
+	  }
+
+	  /** Expert: Low-level search implementation.  Finds the top <code>n</code>
+	   * hits for <code>query</code> that sort after <code>after</code>, visiting
+	   * only the provided leaves.
+	   *
+	   * <p>Applications should usually call {@link IndexSearcher#searchAfter(ScoreDoc,Query,int)} or
+	   * {@link IndexSearcher#searchAfter(ScoreDoc,Query,Filter,int)} instead.
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  protected TopDocs search(List<AtomicReaderContext> leaves, Weight weight, ScoreDoc after, int nDocs) throws IOException {
+	    // single thread
+	    int limit = reader.maxDoc();
+	    if (limit == 0) {
+	      limit = 1;
+	    }
+	    nDocs = Math.min(nDocs, limit);
+	    final TopScoreDocCollector collector;
+	    if (after == null && trackTotalHits == false) {
+	      collector = TopScoreDocCollector.create(nDocs, true, false);
+	    } else {
+	      collector = TopScoreDocCollector.create(nDocs, after, !weight.scoresDocsOutOfOrder());
+	    }
+	    search(leaves, weight, collector);
+	    return collector.topDocs();
+	  }
+
+	  /** Expert: Low-level search implementation with arbitrary
+	   * sorting and control over whether hit scores and max
+	   * score should be computed.  Finds
+	   * the top <code>nDocs</code> hits for <code>query</code> and sorting the hits
+	   * by the criteria in <code>sort</code>.
+	   *
+	   * <p>If an {@link ExecutorService} was passed to the constructor, each
+	   * {@link LeafSlice} is searched on the executor with its own
+	   * {@link TopFieldCollector} and the per-slice results are combined with
+	   * {@link TopDocs#merge(Sort, int, int, TopDocs[])}.
+	   *
+	   * <p>Applications should usually call {@link
+	   * IndexSearcher#search(Query,Filter,int,Sort)} instead.
+	   * 
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  protected TopFieldDocs search(Weight weight,
+	                                int nDocs, Sort sort,
+	                                boolean doDocScores, boolean doMaxScore) throws IOException {
+	    return search(weight, null, nDocs, sort, true, doDocScores, doMaxScore);
+	  }
+
+	  /**
+	   * Just like {@link #search(Weight, int, Sort, boolean, boolean)}, but only
+	   * collects hits that sort after <code>after</code>, which may be
+	   * <code>null</code> for the first page, and you choose whether or not
+	   * the fields in the returned {@link FieldDoc} instances should be set by
+	   * specifying fillFields. Fields are always filled when an
+	   * {@link ExecutorService} was passed to the constructor, as slices are
+	   * merged by their sort values.
+	   */
+	  protected TopFieldDocs search(Weight weight, FieldDoc after, int nDocs,
+	                                Sort sort, boolean fillFields,
+	                                boolean doDocScores, boolean doMaxScore)
+	      throws IOException {
+	    if (sort == null) throw new NullPointerException("Sort must not be null");
+	    int limit = reader.maxDoc();
+	    if (limit == 0) {
+	      limit = 1;
+	    }
+	    if (after != null && after.doc >= limit) {
+	      throw new IllegalArgumentException("after.doc exceeds the number of documents in the reader: after.doc="
+	          + after.doc + " limit=" + limit);
+	    }
+	    nDocs = Math.min(nDocs, limit);
+
+	    if (executor == null) {
+	      return search(leafContexts, weight, after, nDocs, sort, fillFields, doDocScores, doMaxScore);
+	    } else {
+	      final ExecutionHelper<TopFieldDocs> runner = new ExecutionHelper<>(executor);
+
+	      for (int i = 0; i < leafSlices.length; i++) { // search each sub
+	        runner.submit(new SearcherCallableWithSort(this, leafSlices[i], weight, after, nDocs, sort, doDocScores, doMaxScore));
+	      }
+
+	      final TopDocs[] sliceHits = new TopDocs[leafSlices.length];
+	      int upto = 0;
+	      for (final TopFieldDocs topDocs : runner) {
+	        sliceHits[upto++] = topDocs;
+	      }
+
+	      // slices are in docID order and merge breaks ties by slice
+	      // index, so ties are broken by docID as by a single collector:
+	      return (TopFieldDocs) TopDocs.merge(sort, 0, nDocs, sliceHits, false);
+	    }
+	  }
+
+	  /**
+	   * Just like {@link #search(Weight, int, Sort, boolean, boolean)}, but you choose
+	   * whether or not the fields in the returned {@link FieldDoc} instances should
+	   * be set by specifying fillFields.
+	   */
+	  protected TopFieldDocs search(List<AtomicReaderContext> leaves, Weight weight, int nDocs,
+	                                Sort sort, boolean fillFields, boolean doDocScores, boolean doMaxScore)
+	      throws IOException {
+	    return search(leaves, weight, null, nDocs, sort, fillFields, doDocScores, doMaxScore);
+	  }
 
+	  /**
+	   * Just like {@link #search(List, Weight, int, Sort, boolean, boolean, boolean)},
+	   * but only collects hits that sort after <code>after</code>, which may be
+	   * <code>null</code> for the first page.
+	   */
+	  protected TopFieldDocs search(List<AtomicReaderContext> leaves, Weight weight, FieldDoc after, int nDocs,
+	                                Sort sort, boolean fillFields, boolean doDocScores, boolean doMaxScore)
+	      throws IOException {
+	    // single thread
+	    int limit = reader.maxDoc();
+	    if (limit == 0) {
+	      limit = 1;
+	    }
+	    nDocs = Math.min(nDocs, limit);
 
+	    TopFieldCollector collector = TopFieldCollector.create(sort, nDocs, after,
+	                                                           fillFields, doDocScores,
+	                                                           doMaxScore, !weight.scoresDocsOutOfOrder());
+	    search(leaves, weight, collector);
+	    return (TopFieldDocs) collector.topDocs();
+	  }
 
+	  /**
+	   * Lower-level search API.
+	   * 
+	   * <p>
+	   * {@link Collector#collect(int)} is called for every document. <br>
+	   * 
+	   * <p>
+	   * NOTE: this method executes the searches on all given leaves exclusively.
+	   * To search across all the searchers leaves use {@link #leafContexts}.
+	   * 
+	   * @param leaves 
+	   *          the searchers leaves to execute the searches on
+	   * @param weight
+	   *          to match documents
+	   * @param collector
+	   *          to receive hits
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  protected void search(List<AtomicReaderContext> leaves, Weight weight, Collector collector)
+	      throws IOException {
+
+	    // TODO: should we make this
+	    // threaded...?  the Collector could be sync'd?
+	    // always use single thread:
+	    for (AtomicReaderContext ctx : leaves) { // search each subreader
+	      try {
+	        collector.setNextReader(ctx);
+	      } catch (CollectionTerminatedException e) {
+	        // there is no doc of interest in this reader context
+	        // continue with the following leaf
+	        continue;
+	      }
+	      BulkScorer scorer = weight.bulkScorer(ctx, !collector.acceptsDocsOutOfOrder(), ctx.reader().getLiveDocs(),
+	                                            collector.setsMinCompetitiveScore());
+	      if (scorer != null) {
+	        try {
+	          scorer.score(collector);
+	        } catch (CollectionTerminatedException e) {
+	          // collection was terminated prematurely
+	          // continue with the following leaf
+	        }
+	      }
+	    }
+	  }
+
+	  /**
+	   * Expert: Low-level search implementation for a {@link LeafSlice} that only
+	   * covers the documents <code>[minDoc, maxDoc)</code> of a single leaf. An
+	   * in-order {@link Scorer} is advanced to <code>minDoc</code> and hits are
+	   * collected until <code>maxDoc</code>, so several threads can share the work
+	   * of one large segment. Each call pulls its own scorer, see
+	   * {@link #slices(List, int, int, boolean)}.
+	   */
+	  protected TopDocs search(AtomicReaderContext ctx, int minDoc, int maxDoc, Weight weight, int nDocs) throws IOException {
+	    return search(ctx, minDoc, maxDoc, weight, null, nDocs);
+	  }
 
+	  /**
+	   * Just like {@link #search(AtomicReaderContext, int, int, Weight, int)}, but
+	   * only collects hits that sort after <code>after</code>, which may be
+	   * <code>null</code>.
+	   */
+	  protected TopDocs search(AtomicReaderContext ctx, int minDoc, int maxDoc, Weight weight, ScoreDoc after, int nDocs) throws IOException {
+	    TopScoreDocCollector collector = TopScoreDocCollector.create(nDocs, after, true);
+	    search(ctx, minDoc, maxDoc, weight, collector);
+	    return collector.topDocs();
+	  }
+
+	  /**
+	   * Just like {@link #search(AtomicReaderContext, int, int, Weight, ScoreDoc, int)}, but
+	   * sorts the hits by the criteria in <code>sort</code> and fills the sort
+	   * values of the returned {@link FieldDoc}s, so that slices can be merged.
+	   */
+	  protected TopFieldDocs search(AtomicReaderContext ctx, int minDoc, int maxDoc, Weight weight, FieldDoc after, int nDocs,
+	                                Sort sort, boolean doDocScores, boolean doMaxScore) throws IOException {
+	    TopFieldCollector collector = TopFieldCollector.create(sort, nDocs, after, true, doDocScores, doMaxScore, true);
+	    search(ctx, minDoc, maxDoc, weight, collector);
+	    return (TopFieldDocs) collector.topDocs();
+	  }
+
+	  private void search(AtomicReaderContext ctx, int minDoc, int maxDoc, Weight weight, Collector collector) throws IOException {
+	    try {
+	      collector.setNextReader(ctx);
+	    } catch (CollectionTerminatedException e) {
+	      return;
+	    }
+	    Scorer scorer = weight.scorer(ctx, ctx.reader().getLiveDocs());
+	    if (scorer != null) {
+	      collector.setScorer(scorer);
+	      try {
+	        Weight.DefaultBulkScorer.scoreRange(collector, scorer, scorer.advance(minDoc), maxDoc);
+	      } catch (CollectionTerminatedException e) {
+	        // collection was terminated prematurely
+	      }
+	    }
+	  }
+
+	  /** Expert: called to re-write queries into primitive queries.
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  public Query rewrite(Query original) throws IOException {
+	    Query query = original;
+	    for (Query rewrittenQuery = query.rewrite(reader); rewrittenQuery != query;
+	         rewrittenQuery = query.rewrite(reader)) {
+	      query = rewrittenQuery;
+	    }
+	    return query;
+	  }
+
+	  /** Returns an Explanation that describes how <code>doc</code> scored against
+	   * <code>query</code>.
+	   *
+	   * <p>This is intended to be used in developing Similarity implementations,
+	   * and, for good performance, should not be displayed with every hit.
+	   * Computing an explanation is as expensive as executing the query over the
+	   * entire index.
+	   */
+	  public Explanation explain(Query query, int doc) throws IOException {
+	    return explain(createNormalizedWeight(query), doc);
+	  }
+
+	  /** Expert: low-level implementation method
+	   * Returns an Explanation that describes how <code>doc</code> scored against
+	   * <code>weight</code>.
+	   *
+	   * <p>This is intended to be used in developing Similarity implementations,
+	   * and, for good performance, should not be displayed with every hit.
+	   * Computing an explanation is as expensive as executing the query over the
+	   * entire index.
+	   * <p>Applications should call {@link IndexSearcher#explain(Query, int)}.
+	   * @throws BooleanQuery.TooManyClauses If a query would exceed 
+	   *         {@link BooleanQuery#getMaxClauseCount()} clauses.
+	   */
+	  protected Explanation explain(Weight weight, int doc) throws IOException {
+	    int n = ReaderUtil.subIndex(doc, leafContexts);
+	    final AtomicReaderContext ctx = leafContexts.get(n);
+	    int deBasedDoc = doc - ctx.docBase;
+
+	    return weight.explain(ctx, deBasedDoc);
+	  }
+
+	  /**
+	   * Creates a normalized weight for a top-level {@link Query}.
+	   * The query is rewritten by this method and {@link Query#createWeight} called,
+	   * afterwards the {@link Weight} is normalized. The returned {@code Weight}
+	   * can then directly be used to get a {@link Scorer}.
+	   * @lucene.internal
+	   */
+	  public Weight createNormalizedWeight(Query query) throws IOException {
+	    query = rewrite(query);
+	    Weight weight = query.createWeight(this);
+	    float v = weight.getValueForNormalization();
+	    float norm = getSimilarity().queryNorm(v);
+	    if (Float.isInfinite(norm) || Float.isNaN(norm)) {
+	      norm = 1.0f;
+	    }
+	    weight.normalize(norm, 1.0f);
+	    return weight;
+	  }
+
+	  /**
+	   * Returns this searchers the top-level {@link IndexReaderContext}.
+	   * @see IndexReader#getContext()
+	   */
+	  /* sugar for #getReader().getTopReaderContext() */
+	  public IndexReaderContext getTopReaderContext() {
+	    return readerContext;
+	  }
+
+	  /**
+	   * Returns {@link TermStatistics} for a term.
+	   * 
+	   * This can be overridden for example, to return a term's statistics
+	   * across a distributed collection.
+	   * @lucene.experimental
+	   */
+	  public TermStatistics termStatistics(Term term, TermContext context) throws IOException {
+	    return new TermStatistics(term.bytes(), context.docFreq(), context.totalTermFreq());
+	  }
+
+	  /**
+	   * Returns {@link CollectionStatistics} for a field.
+	   * 
+	   * This can be overridden for example, to return a field's statistics
+	   * across a distributed collection.
+	   * @lucene.experimental
+	   */
+	  public CollectionStatistics collectionStatistics(String field) throws IOException {
+	    final int docCount;
+	    final long sumTotalTermFreq;
+	    final long sumDocFreq;
+
+	    assert field != null;
+
+	    Terms terms = MultiFields.getTerms(reader, field);
+	    if (terms == null) {
+	      docCount = 0;
+	      sumTotalTermFreq = 0;
+	      sumDocFreq = 0;
+	    } else {
+	      docCount = terms.getDocCount();
+	      sumTotalTermFreq = terms.getSumTotalTermFreq();
+	      sumDocFreq = terms.getSumDocFreq();
+	    }
+	    return new CollectionStatistics(field, reader.maxDoc(), docCount, sumTotalTermFreq, sumDocFreq);
+	  }
 	/**
 	   * A class holding a subset of the {@link IndexSearcher}s leaf contexts to be
 	   * executed within a single thread.
@@ -246,46 +998,155 @@ public class IndexSearcher {
 	   */
 	public static class LeafSlice {
 		final AtomicReaderContext[] leaves;
+		/** first doc (inclusive) and last doc (exclusive) to search in each leaf */
+		final int minDoc, maxDoc;
 
 		public LeafSlice(AtomicReaderContext... leaves) {
 			this.leaves = leaves;
+			this.minDoc = 0;
+			this.maxDoc = DocIdSetIterator.NO_MORE_DOCS;
+		}
+
+		/** Creates a slice that only covers the documents
+		 *  <code>[minDoc, maxDoc)</code> of a single leaf. */
+		public LeafSlice(AtomicReaderContext leaf, int minDoc, int maxDoc) {
+			if (minDoc < 0 || minDoc >= maxDoc) {
+				throw new IllegalArgumentException("invalid doc range [" + minDoc + ", " + maxDoc + ")");
+			}
+			this.leaves = new AtomicReaderContext[] { leaf };
+			this.minDoc = minDoc;
+			this.maxDoc = maxDoc;
+		}
+
+		/** Returns true if this slice only covers a doc-ID range of its leaf. */
+		boolean isPartial() {
+			return minDoc != 0 || maxDoc != DocIdSetIterator.NO_MORE_DOCS;
 		}
 	}
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
-	
+
+	  /**
+	   * A thread subclass for searching a single searchable 
+	   */
+	  private static final class SearcherCallableNoSort implements Callable<TopDocs> {
+
+	    private final IndexSearcher searcher;
+	    private final Weight weight;
+	    private final ScoreDoc after;
+	    private final int nDocs;
+	    private final LeafSlice slice;
+
+	    public SearcherCallableNoSort(IndexSearcher searcher, LeafSlice slice, Weight weight,
+	        ScoreDoc after, int nDocs) {
+	      this.searcher = searcher;
+	      this.weight = weight;
+	      this.after = after;
+	      this.nDocs = nDocs;
+	      this.slice = slice;
+	    }
+
+	    @Override
+	    public TopDocs call() throws IOException {
+	      if (slice.isPartial()) {
+	        return searcher.search(slice.leaves[0], slice.minDoc, slice.maxDoc, weight, after, nDocs);
+	      }
+	      return searcher.search(Arrays.asList(slice.leaves), weight, after, nDocs);
+	    }
+	  }
+
+	  /**
+	   * A thread subclass for searching a single searchable with a sort
+	   */
+	  private static final class SearcherCallableWithSort implements Callable<TopFieldDocs> {
+
+	    private final IndexSearcher searcher;
+	    private final Weight weight;
+	    private final FieldDoc after;
+	    private final int nDocs;
+	    private final LeafSlice slice;
+	    private final Sort sort;
+	    private final boolean doDocScores;
+	    private final boolean doMaxScore;
+
+	    public SearcherCallableWithSort(IndexSearcher searcher, LeafSlice slice, Weight weight,
+	        FieldDoc after, int nDocs, Sort sort, boolean doDocScores, boolean doMaxScore) {
+	      this.searcher = searcher;
+	      this.weight = weight;
+	      this.after = after;
+	      this.nDocs = nDocs;
+	      this.slice = slice;
+	      this.sort = sort;
+	      this.doDocScores = doDocScores;
+	      this.doMaxScore = doMaxScore;
+	    }
+
+	    @Override
+	    public TopFieldDocs call() throws IOException {
+	      if (slice.isPartial()) {
+	        return searcher.search(slice.leaves[0], slice.minDoc, slice.maxDoc, weight, after, nDocs, sort, doDocScores, doMaxScore);
+	      }
+	      return searcher.search(Arrays.asList(slice.leaves), weight, after, nDocs, sort, true, doDocScores, doMaxScore);
+	    }
+	  }
+
+	  /**
+	   * A helper class that runs {@link Callable} instances on an {@link Executor}
+	   * and provides an iterable interface to their results. Results are returned
+	   * in submission order, not completion order, so that the i-th result always
+	   * belongs to the i-th submitted task.
+	   * 
+	   * @param <T>
+	   *          the type of the {@link Callable} return value
+	   */
+	  private static final class ExecutionHelper<T> implements Iterator<T>, Iterable<T> {
+	    private final Executor executor;
+	    private final List<Future<T>> futures = new ArrayList<>();
+	    private int upto;
+
+	    ExecutionHelper(final Executor executor) {
+	      this.executor = executor;
+	    }
+
+	    @Override
+	    public boolean hasNext() {
+	      return upto < futures.size();
+	    }
+
+	    public void submit(Callable<T> task) {
+	      final FutureTask<T> future = new FutureTask<>(task);
+	      futures.add(future);
+	      executor.execute(future);
+	    }
+
+	    @Override
+	    public T next() {
+	      if(!this.hasNext()) 
+	        throw new NoSuchElementException("next() is called but hasNext() returned false");
+	      try {
+	        return futures.get(upto).get();
+	      } catch (InterruptedException e) {
+	        throw new ThreadInterruptedException(e);
+	      } catch (ExecutionException e) {
+	        throw new RuntimeException(e);
+	      } finally {
+	        ++upto;
+	      }
+	    }
+
+	    @Override
+	    public void remove() {
+	      throw new UnsupportedOperationException();
+	    }
+
+	    @Override
+	    public Iterator<T> iterator() {
+	      // use the shortcut here - this is only used in a private context
+	      return this;
+	    }
+	  }
+
+	  @Override
+	  public String toString() {
+	    return "IndexSearcher(" + reader + "; executor=" + executor + ")";
+	  }
 
 }
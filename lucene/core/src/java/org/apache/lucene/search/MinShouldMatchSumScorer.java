@@ -0,0 +1,108 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Scorer for OR like queries, counterpart of <code>ConjunctionScorer</code>,
+ * that only matches documents on which at least
+ * <code>minimumNrMatchers</code> of the sub-scorers match.
+ * <p>Candidates are produced by the disjunction heap; a candidate is only
+ * returned once enough sub-scorers are positioned on it.
+ */
+final class MinShouldMatchSumScorer extends DisjunctionScorer {
+  
+  /** The minimum number of scorers that should match. */
+  private final int mm;
+  private double score;
+  private final float[] coord;
+
+  /**
+   * Construct a <code>MinShouldMatchSumScorer</code>.
+   * 
+   * @param weight The weight to be used.
+   * @param subScorers A collection of at least two subscorers.
+   * @param minimumNrMatchers The positive minimum number of subscorers that should
+   * match to match this query.
+   * <br>When <code>minimumNrMatchers</code> is bigger than
+   * the number of <code>subScorers</code>, no matches will be produced.
+   * <br>When minimumNrMatchers equals the number of subScorers,
+   * it is more efficient to use <code>ConjunctionScorer</code>.
+   * @param coord Table of coordination factors
+   */
+  MinShouldMatchSumScorer(Weight weight, List<Scorer> subScorers, int minimumNrMatchers, float[] coord) {
+    super(weight, subScorers.toArray(new Scorer[subScorers.size()]));
+    if (minimumNrMatchers <= 0) {
+      throw new IllegalArgumentException("Minimum nr of matchers must be positive");
+    }
+    this.mm = minimumNrMatchers;
+    this.coord = coord;
+  }
+
+  @Override
+  public int nextDoc() throws IOException {
+    int doc;
+    while ((doc = super.nextDoc()) != NO_MORE_DOCS && freq() < mm) {
+      // not enough matching clauses, move on to the next candidate
+    }
+    return doc;
+  }
+
+  @Override
+  public int advance(int target) throws IOException {
+    int doc = super.advance(target);
+    if (doc != NO_MORE_DOCS && freq() < mm) {
+      doc = nextDoc();
+    }
+    return doc;
+  }
+
+  @Override
+  public long cost() {
+    // a match requires mm clauses, so the least costly
+    // numScorers - mm + 1 clauses bound the number of matches
+    long[] costs = new long[numScorers];
+    for (int i = 0; i < numScorers; i++) {
+      costs[i] = subScorers[i].cost();
+    }
+    Arrays.sort(costs);
+    long sum = 0;
+    for (int i = 0; i < numScorers - mm + 1; i++) {
+      sum += costs[i];
+    }
+    return sum;
+  }
+
+  @Override
+  protected void reset() {
+    score = 0;
+  }
+  
+  @Override
+  protected void accum(Scorer subScorer) throws IOException {
+    score += subScorer.score();
+  }
+  
+  @Override
+  protected float getFinal() {
+    return (float)score * coord[freq]; 
+  }
+}
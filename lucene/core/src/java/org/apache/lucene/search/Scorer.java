@@ -60,6 +60,32 @@ public abstract class Scorer extends DocsEnum {
    * {@link Collector#collect}.
    */
   public abstract float score() throws IOException;
+
+  /** Returns an upper bound of {@link #score()} over all documents of this
+   * scorer, or {@link Float#POSITIVE_INFINITY} if it is unknown (the default).
+   * @lucene.experimental
+   */
+  public float getMaxScore() {
+    return Float.POSITIVE_INFINITY;
+  }
+
+  /** Returns an upper bound of {@link #score()} over the documents up to
+   * the value returned by the last call to {@link #advanceShallow(int)}.
+   * The default implementation returns {@link #getMaxScore()}.
+   * @lucene.experimental
+   */
+  public float getBlockMaxScore() {
+    return getMaxScore();
+  }
+
+  /** Expert: tells the scorer that documents scoring less than
+   * <code>minScore</code> are not competitive anymore, so that it may skip
+   * them. The value only ever increases. Collectors that call this give up
+   * counting every match. The default implementation ignores it.
+   * @lucene.experimental
+   */
+  public void setMinCompetitiveScore(float minScore) throws IOException {
+  }
   
   /** returns parent Weight
    * @lucene.experimental
@@ -0,0 +1,378 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.search.similarities.Similarity;
+
+/** Scorer for phrases with slop. Like {@link ExactPhraseScorer}, documents
+ * are first intersected at the document level with the rarest term leading.
+ * Within a matching document, the {@link PhrasePositions} are kept in a
+ * {@link PhraseQueue} ordered by phrase position, and each time the least
+ * one is advanced, the distance to the greatest one gives the length of a
+ * candidate match; matches no longer than the slop contribute
+ * {@link Similarity.SimScorer#computeSlopFactor(int)} to the sloppy freq.
+ * <p>
+ * When terms repeat in the phrase, the {@link PhrasePositions} of a term
+ * must never sit on the same position of the document. Such repetition
+ * groups are found once per scorer, and collisions are resolved by
+ * advancing the lesser of the two colliding positions. All the state is
+ * allocated up front, so scoring a document allocates nothing.
+ */
+final class SloppyPhraseScorer extends Scorer {
+  private final PhrasePositions[] phrasePositions; // rarest term first
+  private final PhrasePositions lead;
+
+  private float sloppyFreq; //phrase frequency in current doc as computed by phraseFreq().
+
+  private final Similarity.SimScorer docScorer;
+  
+  private final int slop;
+  private final PhraseQueue pq; // for advancing min position
+  
+  private int end; // current largest phrase position  
+
+  private final boolean hasRpts; // true if there are repeating pps
+  private final PhrasePositions[][] rptGroups; // in each group, pps are sorted by offset
+  
+  private int numMatches;
+  private final long cost;
+  private int docID = -1;
+  
+  /** Postings must be sorted by increasing docFreq. */
+  SloppyPhraseScorer(Weight weight, PhraseQuery.PostingsAndFreq[] postings,
+      int slop, Similarity.SimScorer docScorer) {
+    super(weight);
+    this.docScorer = docScorer;
+    this.slop = slop;
+    phrasePositions = new PhrasePositions[postings.length];
+    for (int i = 0; i < postings.length; i++) {
+      phrasePositions[i] = new PhrasePositions(postings[i].postings, postings[i].position, i, postings[i].terms);
+    }
+    lead = phrasePositions[0];
+    // min(cost)
+    cost = lead.postings.cost();
+    pq = new PhraseQueue(postings.length);
+    rptGroups = gatherRptGroups();
+    hasRpts = rptGroups.length > 0;
+  }
+
+  /** Groups the pps whose terms overlap: for those, two pps could land on
+   * the same position of a document. Groups are sorted by offset, and
+   * rptGroup/rptInd of their pps are set accordingly. */
+  private PhrasePositions[][] gatherRptGroups() {
+    final int n = phrasePositions.length;
+    // union-find over pps sharing at least one term
+    final int[] parent = new int[n];
+    for (int i = 0; i < n; i++) {
+      parent[i] = i;
+    }
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        if (sharesTerm(phrasePositions[i], phrasePositions[j])) {
+          parent[root(parent, j)] = root(parent, i);
+        }
+      }
+    }
+    List<PhrasePositions[]> groups = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      if (root(parent, i) != i) {
+        continue;
+      }
+      List<PhrasePositions> group = new ArrayList<>();
+      for (int j = 0; j < n; j++) {
+        if (root(parent, j) == i) {
+          group.add(phrasePositions[j]);
+        }
+      }
+      if (group.size() > 1) {
+        PhrasePositions[] rg = group.toArray(new PhrasePositions[group.size()]);
+        // insertion sort by offset: groups are tiny
+        for (int k = 1; k < rg.length; k++) {
+          PhrasePositions pp = rg[k];
+          int l = k - 1;
+          while (l >= 0 && rg[l].offset > pp.offset) {
+            rg[l + 1] = rg[l];
+            l--;
+          }
+          rg[l + 1] = pp;
+        }
+        for (int k = 0; k < rg.length; k++) {
+          rg[k].rptGroup = groups.size();
+          rg[k].rptInd = k;
+        }
+        groups.add(rg);
+      }
+    }
+    return groups.toArray(new PhrasePositions[groups.size()][]);
+  }
+
+  private static int root(int[] parent, int i) {
+    while (parent[i] != i) {
+      i = parent[i];
+    }
+    return i;
+  }
+
+  private static boolean sharesTerm(PhrasePositions pp1, PhrasePositions pp2) {
+    for (int i = 0; i < pp1.terms.length; i++) {
+      for (int j = 0; j < pp2.terms.length; j++) {
+        if (pp1.terms[i].equals(pp2.terms[j])) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Score a candidate doc for all slop-valid position-combinations (matches) 
+   * encountered while traversing/hopping the PhrasePositions.
+   * <br> The score contribution of a match depends on the distance: 
+   * <br> - highest score for distance=0 (exact match).
+   * <br> - score gets lower as distance gets higher.
+   * <br>Example: for query "a b"~2, a document "x a b a y" can be scored twice: 
+   * once for "a b" (distance=0), and once for "b a" (distance=2).
+   * <br>Possibly not all valid combinations are encountered, because for efficiency  
+   * we always propagate the least PhrasePosition. This allows to base on 
+   * PriorityQueue and move forward faster. 
+   * As result, for example, document "a b c b a"
+   * would score differently for queries "a b c"~4 and "c b a"~4, although 
+   * they really are equivalent. 
+   * Similarly, for doc "a b c b a f g", query "c b"~2 
+   * would get same score as "g f"~2, although "c b"~2 could be matched twice.
+   * We may want to fix this in the future (currently not, for performance reasons).
+   */
+  private float phraseFreq() throws IOException {
+    if (!initPhrasePositions()) {
+      return 0.0f;
+    }
+    float freq = 0.0f;
+    numMatches = 0;
+    PhrasePositions pp = pq.pop();
+    int matchLength = end - pp.position;
+    int next = pq.top().position; 
+    while (advancePP(pp)) {
+      if (hasRpts) {
+        if (!advanceRpts(pp)) {
+          break; // pps exhausted
+        }
+        next = pq.top().position;
+      }
+      if (pp.position > next) { // done minimizing current match-length 
+        if (matchLength <= slop) {
+          freq += docScorer.computeSlopFactor(matchLength); // score match
+          numMatches++;
+        }      
+        pq.add(pp);
+        pp = pq.pop();
+        next = pq.top().position;
+        matchLength = end - pp.position;
+      } else {
+        int matchLength2 = end - pp.position;
+        if (matchLength2 < matchLength) {
+          matchLength = matchLength2;
+        }
+      }
+    }
+    if (matchLength <= slop) {
+      freq += docScorer.computeSlopFactor(matchLength); // score match
+      numMatches++;
+    }    
+    return freq;
+  }
+
+  /** advance a PhrasePosition and update 'end', return false if exhausted */
+  private boolean advancePP(PhrasePositions pp) throws IOException {
+    if (!pp.nextPosition()) {
+      return false;
+    }
+    if (pp.position > end) {
+      end = pp.position;
+    }
+    return true;
+  }
+  
+  /** pp was just advanced. If that caused a repeater collision, resolve by advancing the lesser
+   * of the two colliding pps. Note that there can only be one collision, as by the initialization
+   * there were no collisions before pp was advanced.  */
+  private boolean advanceRpts(PhrasePositions pp) throws IOException {
+    if (pp.rptGroup < 0) {
+      return true; // not a repeater
+    }
+    final PhrasePositions[] rg = rptGroups[pp.rptGroup];
+    final PhrasePositions popped = pp; // the only pp that is not in the queue
+    boolean requeue = false;
+    int k;
+    while ((k = collide(pp)) >= 0) {
+      pp = lesser(pp, rg[k]); // always advance the lesser of the (only) two colliding pps
+      if (!advancePP(pp)) {
+        return false; // exhausted
+      }
+      requeue |= pp != popped;
+    }
+    if (requeue) {
+      // queued pps moved: rebuild the queue rather than trusting a heap
+      // whose keys changed underneath it
+      pq.clear();
+      for (PhrasePositions pp2 : phrasePositions) {
+        if (pp2 != popped) {
+          pq.add(pp2);
+        }
+      }
+    }
+    return true;
+  }
+
+  /** compare two pps, but only by position and offset */
+  private PhrasePositions lesser(PhrasePositions pp, PhrasePositions pp2) {
+    if (pp.position < pp2.position ||
+        (pp.position == pp2.position && pp.offset < pp2.offset)) {
+      return pp;
+    }
+    return pp2;
+  }
+
+  /** index of a pp2 colliding with pp, or -1 if none */
+  private int collide(PhrasePositions pp) {
+    int tpPos = tpPos(pp);
+    PhrasePositions[] rg = rptGroups[pp.rptGroup];
+    for (int i = 0; i < rg.length; i++) {
+      PhrasePositions pp2 = rg[i];
+      if (pp2 != pp && tpPos(pp2) == tpPos) {
+        return pp2.rptInd;
+      }
+    }
+    return -1;
+  }
+
+  /** Actual position in doc of a PhrasePosition, relies on that position = tpPos - offset) */
+  private final int tpPos(PhrasePositions pp) {
+    return pp.position + pp.offset;
+  }
+
+  /**
+   * Initialize PhrasePositions in place for the current doc: every pp is put
+   * on its first position, then, if terms repeat, pps of a repetition group
+   * that sit on the same position in the doc are moved apart by advancing
+   * the lesser one, and finally the queue is filled.
+   * @return false if PPs are exhausted (and so current doc will not be a match) 
+   */
+  private boolean initPhrasePositions() throws IOException {
+    end = Integer.MIN_VALUE;
+    pq.clear();
+    for (PhrasePositions pp : phrasePositions) {
+      pp.firstPosition();
+      if (pp.position > end) {
+        end = pp.position;
+      }
+    }
+    if (hasRpts) {
+      for (PhrasePositions[] rg : rptGroups) {
+        for (int i = 0; i < rg.length; i++) {
+          PhrasePositions pp = rg[i];
+          int k;
+          while ((k = collide(pp)) >= 0) {
+            pp = lesser(pp, rg[k]);
+            if (!advancePP(pp)) {
+              return false;
+            }
+          }
+        }
+      }
+    }
+    for (PhrasePositions pp : phrasePositions) {
+      pq.add(pp);
+    }
+    return true;
+  }
+
+  @Override
+  public int freq() {
+    return numMatches;
+  }
+  
+  float sloppyFreq() {
+    return sloppyFreq;
+  }
+  
+  @Override
+  public int docID() {
+    return docID;
+  }
+
+  @Override
+  public int nextDoc() throws IOException {
+    return doNext(lead.postings.nextDoc());
+  }
+
+  @Override
+  public int advance(int target) throws IOException {
+    return doNext(lead.postings.advance(target));
+  }
+
+  /** Leapfrogs the other terms on the lead's doc, and returns the first doc
+   *  that contains all terms and a match within the slop. */
+  private int doNext(int doc) throws IOException {
+    while (true) {
+      if (doc == NO_MORE_DOCS) {
+        return docID = NO_MORE_DOCS;
+      }
+      int i = 1;
+      int doc2 = doc;
+      while (i < phrasePositions.length) {
+        doc2 = phrasePositions[i].postings.docID();
+        if (doc2 < doc) {
+          doc2 = phrasePositions[i].postings.advance(doc);
+        }
+        if (doc2 > doc) {
+          break;
+        }
+        i++;
+      }
+      if (i < phrasePositions.length) {
+        // some term is missing in doc: skip the lead beyond it
+        doc = lead.postings.advance(doc2);
+        continue;
+      }
+      // this doc has all the terms -- now look for matches within slop
+      docID = doc;
+      sloppyFreq = phraseFreq();
+      if (sloppyFreq != 0f) {
+        return docID;
+      }
+      doc = lead.postings.nextDoc();
+    }
+  }
+
+  @Override
+  public float score() {
+    return docScorer.score(docID, sloppyFreq);
+  }
+
+  @Override
+  public long cost() {
+    return cost;
+  }
+  
+  @Override
+  public String toString() { return "scorer(" + weight + ")"; }
+}
@@ -0,0 +1,160 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * Encapsulates sort criteria for returned hits.
+ *
+ * <p>The fields used to determine sort order should be indexed with doc
+ * values: {@link org.apache.lucene.document.NumericDocValuesField} for
+ * numeric sorts, and {@link org.apache.lucene.document.SortedDocValuesField}
+ * for string sorts.  Values are read one segment at a time, straight from
+ * the doc values, so sorting never loads stored fields.  Segments in which
+ * the field has no doc values but is indexed (a single term per document,
+ * or a numeric field such as {@link org.apache.lucene.document.IntField})
+ * are uninverted by the {@link FieldCache} instead.
+ *
+ * <p>Sorting by a string field compares the ordinals of its
+ * {@link org.apache.lucene.index.SortedDocValues} within a segment; the
+ * actual bytes are only looked at when hits from different segments are
+ * compared.
+ *
+ * <p>Created: Feb 12, 2004 10:53:57 AM
+ *
+ * @since   lucene 1.4
+ */
+public class Sort {
+
+  /**
+   * Represents sorting by computed relevance. Using this sort criteria returns
+   * the same results as calling
+   * {@link IndexSearcher#search(Query,int) IndexSearcher#search()} without a sort criteria,
+   * only with slightly more overhead.
+   */
+  public static final Sort RELEVANCE = new Sort();
+
+  /** Represents sorting by index order. */
+  public static final Sort INDEXORDER = new Sort(SortField.FIELD_DOC);
+
+  // internal representation of the sort criteria
+  SortField[] fields;
+
+  /**
+   * Sorts by computed relevance. This is the same sort criteria as calling
+   * {@link IndexSearcher#search(Query,int) IndexSearcher#search()} without a sort criteria,
+   * only with slightly more overhead.
+   */
+  public Sort() {
+    this(SortField.FIELD_SCORE);
+  }
+
+  /** Sorts by the criteria in the given SortField. */
+  public Sort(SortField field) {
+    setSort(field);
+  }
+
+  /** Sorts in succession by the criteria in each SortField. */
+  public Sort(SortField... fields) {
+    setSort(fields);
+  }
+
+  /** Sets the sort to the given criteria. */
+  public void setSort(SortField field) {
+    this.fields = new SortField[] { field };
+  }
+
+  /** Sets the sort to the given criteria in succession. */
+  public void setSort(SortField... fields) {
+    this.fields = fields;
+  }
+  
+  /**
+   * Representation of the sort criteria.
+   * @return Array of SortField objects used in this sort criteria
+   */
+  public SortField[] getSort() {
+    return fields;
+  }
+
+  /**
+   * Rewrites the SortFields in this Sort, returning a new Sort if any of the fields
+   * changes during their rewriting.
+   *
+   * @param searcher IndexSearcher to use in the rewriting
+   * @return {@code this} if the Sort/Fields have not changed, or a new Sort if there
+   *        is a change
+   * @throws IOException Can be thrown by the rewriting
+   * @lucene.experimental
+   */
+  public Sort rewrite(IndexSearcher searcher) throws IOException {
+    boolean changed = false;
+    
+    SortField[] rewrittenSortFields = new SortField[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      rewrittenSortFields[i] = fields[i].rewrite(searcher);
+      if (fields[i] != rewrittenSortFields[i]) {
+        changed = true;
+      }
+    }
+
+    return (changed) ? new Sort(rewrittenSortFields) : this;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buffer = new StringBuilder();
+
+    for (int i = 0; i < fields.length; i++) {
+      buffer.append(fields[i].toString());
+      if ((i+1) < fields.length)
+        buffer.append(',');
+    }
+
+    return buffer.toString();
+  }
+
+  /** Returns true if <code>o</code> is equal to this. */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof Sort)) return false;
+    final Sort other = (Sort)o;
+    return Arrays.equals(this.fields, other.fields);
+  }
+
+  /** Returns a hash code value for this object. */
+  @Override
+  public int hashCode() {
+    return 0x45aaf665 + Arrays.hashCode(fields);
+  }
+
+  /** Returns true if the relevance score is needed to sort documents. */
+  public boolean needsScores() {
+    for (SortField sortField : fields) {
+      if (sortField.needsScores()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
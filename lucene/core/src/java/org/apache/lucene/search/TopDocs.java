@@ -20,6 +20,7 @@ package org.apache.lucene.search;
 import org.apache.lucene.util.PriorityQueue;
 
 import java.io.IOException;
+import java.util.Comparator;
 
 /** Represents hits returned by {@link
  * IndexSearcher#search(Query,Filter,int)} and {@link
@@ -116,30 +117,352 @@ public class TopDocs {
 		      }
 		    }
 	  }
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
-	  
+
+	  // Fails gracefully if the merge API is misused:
+	  private static void checkSortedShard(int shardIDX, TopDocs shard) {
+	    if (shard.scoreDocs == null) {
+	      return;
+	    }
+	    for(int hitIDX=0;hitIDX<shard.scoreDocs.length;hitIDX++) {
+	      final ScoreDoc sd = shard.scoreDocs[hitIDX];
+	      if (!(sd instanceof FieldDoc)) {
+	        throw new IllegalArgumentException("shard " + shardIDX + " was not sorted by the provided Sort (expected FieldDoc but got ScoreDoc)");
+	      }
+	      final FieldDoc fd = (FieldDoc) sd;
+	      if (fd.fields == null) {
+	        throw new IllegalArgumentException("shard " + shardIDX + " did not set sort field values (FieldDoc.fields is null); you must pass fillFields=true to IndexSearcher.search on each shard");
+	      }
+	    }
+	  }
+
+	  // Compares the sort values of two FieldDocs, returns < 0 if first
+	  // sorts before second; ties are left to the caller:
+	  private static final class FieldDocComparator {
+	    final FieldComparator<?>[] comparators;
+	    final int[] reverseMul;
+
+	    FieldDocComparator(Sort sort) throws IOException {
+	      final SortField[] sortFields = sort.getSort();
+	      comparators = new FieldComparator<?>[sortFields.length];
+	      reverseMul = new int[sortFields.length];
+	      for(int compIDX=0;compIDX<sortFields.length;compIDX++) {
+	        final SortField sortField = sortFields[compIDX];
+	        comparators[compIDX] = sortField.getComparator(1, compIDX);
+	        reverseMul[compIDX] = sortField.getReverse() ? -1 : 1;
+	      }
+	    }
+
+	    @SuppressWarnings({"unchecked","rawtypes"})
+	    int compare(FieldDoc first, FieldDoc second) {
+	      for(int compIDX=0;compIDX<comparators.length;compIDX++) {
+	        final FieldComparator comp = comparators[compIDX];
+	        final int cmp = reverseMul[compIDX] * comp.compareValues(first.fields[compIDX], second.fields[compIDX]);
+	        if (cmp != 0) {
+	          return cmp;
+	        }
+	      }
+	      return 0;
+	    }
+	  }
+
+	  // MergeSortQueue that merges FieldDocs by their sort values:
+	  private static class MergeSortQueue extends PriorityQueue<ShardRef> {
+	    // These are really FieldDoc instances:
+	    final ScoreDoc[][] shardHits;
+	    final FieldDocComparator comparator;
+
+	    public MergeSortQueue(Sort sort, TopDocs[] shardHits) throws IOException {
+	      super(shardHits.length);
+	      this.shardHits = new ScoreDoc[shardHits.length][];
+	      for(int shardIDX=0;shardIDX<shardHits.length;shardIDX++) {
+	        checkSortedShard(shardIDX, shardHits[shardIDX]);
+	        this.shardHits[shardIDX] = shardHits[shardIDX].scoreDocs;
+	      }
+	      comparator = new FieldDocComparator(sort);
+	    }
+
+	    // Returns true if first is < second
+	    @Override
+	    public boolean lessThan(ShardRef first, ShardRef second) {
+	      assert first != second;
+	      final FieldDoc firstFD = (FieldDoc) shardHits[first.shardIndex][first.hitIndex];
+	      final FieldDoc secondFD = (FieldDoc) shardHits[second.shardIndex][second.hitIndex];
+	      final int cmp = comparator.compare(firstFD, secondFD);
+	      if (cmp != 0) {
+	        return cmp < 0;
+	      }
+
+	      // Tie break: earlier shard wins
+	      if (first.shardIndex < second.shardIndex) {
+	        return true;
+	      } else if (first.shardIndex > second.shardIndex) {
+	        return false;
+	      } else {
+	        // Tie break in same shard: resolve however the
+	        // shard had resolved it:
+	        assert first.hitIndex != second.hitIndex;
+	        return first.hitIndex < second.hitIndex;
+	      }
+	    }
+	  }
+
+	  /** Returns a new TopDocs, containing topN results across
+	   *  the provided TopDocs, sorting by score. Each {@link TopDocs}
+	   *  instance must be sorted by descending score, as returned by
+	   *  the score collectors.
+	   *  <p>The {@link ScoreDoc#shardIndex} of each returned hit is
+	   *  set to the index of the {@link TopDocs} it came from.
+	   * @lucene.experimental */
+	  public static TopDocs merge(int topN, TopDocs[] shardHits) throws IOException {
+	    return merge(null, 0, topN, shardHits, true);
+	  }
+
+	  /** Returns a new TopDocs, containing topN results across
+	   *  the provided TopDocs, sorting by the specified {@link
+	   *  Sort}.  Each of the TopDocs must have been sorted by
+	   *  the same Sort, and sort field values must have been
+	   *  filled (ie, <code>fillFields=true</code> must be
+	   *  passed to {@link
+	   *  TopFieldCollector#create}).
+	   *
+	   * <p>Pass sort=null to merge sort by score descending.
+	   *
+	   * @lucene.experimental */
+	  public static TopDocs merge(Sort sort, int topN, TopDocs[] shardHits) throws IOException {
+	    return merge(sort, 0, topN, shardHits, true);
+	  }
+
+	  /**
+	   * Same as {@link #merge(Sort, int, TopDocs[])} but also slurps
+	   * in the first <code>start</code> merged hits and returns
+	   * the <code>size</code> hits that follow, as for the page
+	   * of a paged search. Shards are merged with a queue that holds
+	   * one entry per shard, so only the returned page is allocated,
+	   * whatever the value of <code>start</code>.
+	   *
+	   * @lucene.experimental
+	   */
+	  public static TopDocs merge(Sort sort, int start, int size, TopDocs[] shardHits) throws IOException {
+	    return merge(sort, start, size, shardHits, true);
+	  }
+
+	  /** Same as {@link #merge(Sort, int, int, TopDocs[])} but lets the caller
+	   *  decide whether {@link ScoreDoc#shardIndex} should be set; 
+	   *  {@link IndexSearcher} merges slices whose hits already carry
+	   *  top-level docIDs and must not be tagged with a slice ordinal. */
+	  static TopDocs merge(Sort sort, int start, int size, TopDocs[] shardHits, boolean setShardIndex) throws IOException {
+	    if (start < 0 || size < 0) {
+	      throw new IllegalArgumentException("start and size must be >= 0 (got start=" + start + ", size=" + size + ")");
+	    }
+	    final PriorityQueue<ShardRef> queue;
+	    if (sort == null) {
+	      queue = new ScoreMergeSortQueue(shardHits);
+	    } else {
+	      queue = new MergeSortQueue(sort, shardHits);
+	    }
+
+	    int totalHitCount = 0;
+	    int availHitCount = 0;
+	    float maxScore = Float.MIN_VALUE;
+	    for(int shardIDX=0;shardIDX<shardHits.length;shardIDX++) {
+	      final TopDocs shard = shardHits[shardIDX];
+	      // totalHits can be non-zero even if no hits were
+	      // collected, when searchAfter was used:
+	      totalHitCount += shard.totalHits;
+	      if (shard.scoreDocs != null && shard.scoreDocs.length > 0) {
+	        availHitCount += shard.scoreDocs.length;
+	        queue.add(new ShardRef(shardIDX));
+	        maxScore = Math.max(maxScore, shard.getMaxScore());
+	      }
+	    }
+
+	    if (availHitCount == 0) {
+	      maxScore = Float.NaN;
+	    }
+
+	    final ScoreDoc[] hits;
+	    if (availHitCount <= start) {
+	      hits = new ScoreDoc[0];
+	    } else {
+	      hits = new ScoreDoc[Math.min(size, availHitCount - start)];
+	      final int requestedResultWindow = start + hits.length;
+	      int hitUpto = 0;
+	      while (hitUpto < requestedResultWindow) {
+	        assert queue.size() > 0;
+	        ShardRef ref = queue.pop();
+	        final ScoreDoc hit = shardHits[ref.shardIndex].scoreDocs[ref.hitIndex++];
+	        if (hitUpto >= start) {
+	          if (setShardIndex) {
+	            hit.shardIndex = ref.shardIndex;
+	          }
+	          hits[hitUpto - start] = hit;
+	        }
+	        hitUpto++;
+
+	        if (ref.hitIndex < shardHits[ref.shardIndex].scoreDocs.length) {
+	          // Not done with this these TopDocs yet:
+	          queue.add(ref);
+	        }
+	      }
+	    }
+
+	    if (sort == null) {
+	      return new TopDocs(totalHitCount, hits, maxScore);
+	    } else {
+	      return new TopFieldDocs(totalHitCount, hits, sort.getSort(), maxScore);
+	    }
+	  }
+
+	  /**
+	   * Merges shard results one shard at a time, in whatever order they
+	   * arrive, into the same page that {@link TopDocs#merge(Sort, int, int, TopDocs[])}
+	   * would return for all shards at once. Only the best
+	   * <code>start+size</code> hits are retained, so the results of a
+	   * shard can be released as soon as they were added, and a shard's hits
+	   * are only read up to its first hit that does not make it into the
+	   * retained ones. Ties are broken by shard index, whatever the order of
+	   * arrival.
+	   *
+	   * <p>NOTE: this class is not thread-safe, callers that receive shard
+	   * results on several threads must synchronize on it.
+	   *
+	   * @lucene.experimental
+	   */
+	  public static final class StreamingMerge {
+	    private final Sort sort;
+	    private final FieldDocComparator comparator; // null when merging by score
+	    private final int start;
+	    private final int maxSize;
+	    private final java.util.PriorityQueue<StreamedHit> queue;
+	    private int totalHitCount;
+	    private int availHitCount;
+	    private float maxScore = Float.MIN_VALUE;
+	    private boolean merged;
+
+	    /** Creates a merge of the hits <code>[start, start+size)</code>, sorted by
+	     *  the given {@link Sort}, or by score descending if it is <code>null</code>. */
+	    public StreamingMerge(Sort sort, int start, int size) throws IOException {
+	      if (start < 0 || size < 0 || start + size < 0) {
+	        throw new IllegalArgumentException("start and size must be >= 0 and their sum must fit an int (got start=" + start + ", size=" + size + ")");
+	      }
+	      this.sort = sort;
+	      this.start = start;
+	      this.maxSize = start + size;
+	      this.comparator = sort == null ? null : new FieldDocComparator(sort);
+	      // the head of the queue is the least competitive retained hit; the
+	      // queue grows with the retained hits instead of allocating the whole
+	      // window up-front, as start+size is often much larger than the number
+	      // of hits the shards return:
+	      queue = new java.util.PriorityQueue<>(Math.max(1, Math.min(maxSize, INITIAL_QUEUE_SIZE)), new Comparator<StreamedHit>() {
+	        @Override
+	        public int compare(StreamedHit a, StreamedHit b) {
+	          return TopDocs.compare(comparator, b, a);
+	        }
+	      });
+	    }
+
+	    /** Adds the results of the shard with the given index. Each shard
+	     *  must be added once, its hits sorted as by {@link TopDocs#merge(Sort, int, int, TopDocs[])}. */
+	    public void add(int shardIndex, TopDocs shard) {
+	      if (merged) {
+	        throw new IllegalStateException("cannot add shards after merge() was called");
+	      }
+	      if (sort != null) {
+	        checkSortedShard(shardIndex, shard);
+	      }
+	      totalHitCount += shard.totalHits;
+	      if (shard.scoreDocs == null || shard.scoreDocs.length == 0) {
+	        return;
+	      }
+	      availHitCount += shard.scoreDocs.length;
+	      maxScore = Math.max(maxScore, shard.getMaxScore());
+	      for(int hitIDX=0;hitIDX<shard.scoreDocs.length;hitIDX++) {
+	        final ScoreDoc scoreDoc = shard.scoreDocs[hitIDX];
+	        if (queue.size() < maxSize) {
+	          queue.add(new StreamedHit(scoreDoc, shardIndex, hitIDX));
+	        } else if (maxSize > 0 && compare(comparator, queue.peek(), scoreDoc, shardIndex, hitIDX) > 0) {
+	          // the hit replaces the least competitive one, whose entry is reused:
+	          final StreamedHit hit = queue.poll();
+	          hit.reset(scoreDoc, shardIndex, hitIDX);
+	          queue.add(hit);
+	        } else {
+	          // the following hits of this shard sort after this one:
+	          break;
+	        }
+	      }
+	    }
+
+	    /** Returns the merged hits of all shards that were added, setting
+	     *  the {@link ScoreDoc#shardIndex} of each hit. Must be called once,
+	     *  after the last shard was added. */
+	    public TopDocs merge() {
+	      if (merged) {
+	        throw new IllegalStateException("merge() was already called");
+	      }
+	      merged = true;
+	      final int retained = queue.size();
+	      final ScoreDoc[] hits = new ScoreDoc[Math.max(0, retained - start)];
+	      for(int hitUpto=retained-1;hitUpto>=0;hitUpto--) {
+	        final StreamedHit hit = queue.poll();
+	        if (hitUpto >= start) {
+	          hit.scoreDoc.shardIndex = hit.shardIndex;
+	          hits[hitUpto - start] = hit.scoreDoc;
+	        }
+	      }
+
+	      final float max = availHitCount == 0 ? Float.NaN : maxScore;
+	      if (sort == null) {
+	        return new TopDocs(totalHitCount, hits, max);
+	      } else {
+	        return new TopFieldDocs(totalHitCount, hits, sort.getSort(), max);
+	      }
+	    }
+	  }
+
+	  // Initial capacity of a StreamingMerge's queue:
+	  private static final int INITIAL_QUEUE_SIZE = 16;
+
+	  // A hit retained by a StreamingMerge:
+	  private static final class StreamedHit {
+	    ScoreDoc scoreDoc;
+	    int shardIndex;
+	    int hitIndex;
+
+	    StreamedHit(ScoreDoc scoreDoc, int shardIndex, int hitIndex) {
+	      reset(scoreDoc, shardIndex, hitIndex);
+	    }
+
+	    void reset(ScoreDoc scoreDoc, int shardIndex, int hitIndex) {
+	      this.scoreDoc = scoreDoc;
+	      this.shardIndex = shardIndex;
+	      this.hitIndex = hitIndex;
+	    }
+	  }
+
+	  private static int compare(FieldDocComparator comparator, StreamedHit first, StreamedHit second) {
+	    return compare(comparator, first, second.scoreDoc, second.shardIndex, second.hitIndex);
+	  }
+
+	  // Returns < 0 if first sorts before the second hit, in the same order as
+	  // the merge sort queues; comparator is null when merging by score:
+	  private static int compare(FieldDocComparator comparator, StreamedHit first,
+	                             ScoreDoc secondDoc, int secondShardIndex, int secondHitIndex) {
+	    final int cmp;
+	    if (comparator == null) {
+	      final float firstScore = first.scoreDoc.score;
+	      final float secondScore = secondDoc.score;
+	      cmp = firstScore > secondScore ? -1 : (firstScore < secondScore ? 1 : 0);
+	    } else {
+	      cmp = comparator.compare((FieldDoc) first.scoreDoc, (FieldDoc) secondDoc);
+	    }
+	    if (cmp != 0) {
+	      return cmp;
+	    }
+	    // Tie break: earlier shard wins, then the shard's own order
+	    if (first.shardIndex != secondShardIndex) {
+	      return first.shardIndex < secondShardIndex ? -1 : 1;
+	    }
+	    return first.hitIndex < secondHitIndex ? -1 : (first.hitIndex == secondHitIndex ? 0 : 1);
+	  }
 
 }
@@ -0,0 +1,466 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/** A Scorer for pure disjunctions that skips documents which cannot make it
+ * into the top hits, using the WAND ("weak AND") algorithm with block-max
+ * upper bounds.
+ * <p>
+ * Sub-scorers are split in three groups:
+ * <ul>
+ *   <li><i>lead</i>: the sub-scorers positioned on the current candidate,
+ *   <li><i>head</i>: a heap of the sub-scorers positioned beyond it, ordered
+ *       by document,
+ *   <li><i>tail</i>: a heap of the sub-scorers behind it, ordered by maximum
+ *       score, whose maximum scores add up to less than the minimum
+ *       competitive score, so that they cannot produce a hit on their own.
+ * </ul>
+ * A candidate is only considered if the maximum scores of lead and tail
+ * could reach the minimum competitive score set through
+ * {@link #setMinCompetitiveScore(float)}; tail sub-scorers are then advanced
+ * one at a time, largest maximum score first, until that is either certain
+ * or impossible. Documents that only tail sub-scorers match are never
+ * visited.
+ * <p>
+ * Maximum scores are the {@link Scorer#getBlockMaxScore() block maxima} of
+ * the range of documents up to the end of the shortest block of the head
+ * sub-scorers, found through {@link Scorer#advanceShallow(int)} before any
+ * postings are decoded, and are refreshed when the candidate moves beyond
+ * that range. They are summed as scaled longs so that rounding cannot make
+ * a bound lower than an actual score.
+ * <p>
+ * As long as no minimum competitive score has been set, this scorer matches
+ * the same documents as {@link DisjunctionSumScorer}. It requires scores to
+ * be non-negative and the coordination factors to be at most 1.
+ */
+final class WANDScorer extends Scorer {
+  /** Maximum scores are scaled so that their sum is about 2^SCALED_BITS. */
+  private static final int SCALED_BITS = 24;
+  /** Relative error tolerated between a sum of scores and the sum of their bounds. */
+  private static final double MIN_SCORE_SLACK = 1e-6;
+
+  /** A sub-scorer with its position and scaled maximum score. */
+  private static final class Clause {
+    final Scorer scorer;
+    final long cost;
+    int doc = -1;
+    long maxScore;
+    Clause next; // next lead
+
+    Clause(Scorer scorer) {
+      this.scorer = scorer;
+      this.cost = scorer.cost();
+    }
+  }
+
+  private final Clause[] clauses;
+  private final float[] coord;
+  private final int scalingFactor;
+  private final long cost;
+  private float minCompetitiveScore;
+  private long scaledMinCompetitiveScore;
+
+  // sub-scorers on doc, as a linked list
+  private Clause lead;
+  private long leadMaxScore;
+  // sub-scorers beyond doc, ordered by doc
+  private final Clause[] head;
+  private int headSize;
+  // sub-scorers behind doc, ordered by decreasing maxScore
+  private final Clause[] tail;
+  private int tailSize;
+  private long tailMaxScore;
+  // maximum scores are valid for documents up to upTo
+  private int upTo = -1;
+
+  private int doc = -1;
+  private int freq;
+  private float score;
+
+  /** Construct a <code>WANDScorer</code>.
+   * @param weight The weight to be used.
+   * @param subScorers At least two subscorers, whose scores are non-negative
+   *        and have finite {@link Scorer#getMaxScore() maximum scores}.
+   * @param coord Table of coordination factors, none of them greater than 1
+   */
+  WANDScorer(Weight weight, List<Scorer> subScorers, float[] coord) {
+    super(weight);
+    this.coord = coord;
+    this.clauses = new Clause[subScorers.size()];
+    this.head = new Clause[clauses.length];
+    this.tail = new Clause[clauses.length];
+    double maxScoreSum = 0;
+    long cost = 0;
+    for (int i = 0; i < clauses.length; i++) {
+      final Scorer scorer = subScorers.get(i);
+      maxScoreSum += scorer.getMaxScore();
+      cost += scorer.cost();
+      clauses[i] = new Clause(scorer);
+    }
+    assert Double.isInfinite(maxScoreSum) == false;
+    this.cost = cost;
+    this.scalingFactor = maxScoreSum > 0 ? SCALED_BITS - Math.getExponent(maxScoreSum) : 0;
+    for (Clause clause : clauses) {
+      clause.maxScore = scale(clause.scorer.getMaxScore());
+      headAdd(clause);
+    }
+  }
+
+  /** Scales an upper bound, rounding up. */
+  private long scale(float maxScore) {
+    return (long) Math.ceil(Math.scalb((double) maxScore, scalingFactor));
+  }
+
+  @Override
+  public void setMinCompetitiveScore(float minScore) {
+    assert minScore >= minCompetitiveScore;
+    minCompetitiveScore = minScore;
+    // rounded down, so that no competitive document is skipped
+    scaledMinCompetitiveScore = (long) Math.floor(Math.scalb(minScore * (1 - MIN_SCORE_SLACK), scalingFactor));
+  }
+
+  @Override
+  public int nextDoc() throws IOException {
+    if (doc == NO_MORE_DOCS) {
+      return doc;
+    }
+    return advance(doc + 1);
+  }
+
+  @Override
+  public int advance(int target) throws IOException {
+    pushBackLeads(target);
+    advanceHead(target);
+    moveToNextCandidate(target);
+    while (doc != NO_MORE_DOCS) {
+      if (leadMaxScore < scaledMinCompetitiveScore) {
+        if (leadMaxScore + tailMaxScore >= scaledMinCompetitiveScore) {
+          // a hit on doc is still possible: check the best tail clause
+          advanceTail(tailPop());
+          continue;
+        }
+      } else {
+        // the clauses matching doc are all in lead once the tail is drained
+        while (tailSize > 0) {
+          advanceTail(tailPop());
+        }
+        computeScore();
+        if (score >= minCompetitiveScore) {
+          return doc;
+        }
+      }
+      pushBackLeads(doc + 1);
+      moveToNextCandidate(doc + 1);
+    }
+    return doc;
+  }
+
+  /** Moves the leads to the tail, or beyond <code>target</code> if they do not fit. */
+  private void pushBackLeads(int target) throws IOException {
+    for (Clause clause = lead; clause != null; clause = clause.next) {
+      final Clause evicted = insertTailWithOverflow(clause);
+      if (evicted != null) {
+        evicted.doc = evicted.scorer.advance(target);
+        headAdd(evicted);
+      }
+    }
+    lead = null;
+    leadMaxScore = 0;
+  }
+
+  /** Moves the head clauses behind <code>target</code> to the tail, or to <code>target</code>. */
+  private void advanceHead(int target) throws IOException {
+    while (headSize > 0 && head[0].doc < target) {
+      final Clause evicted = insertTailWithOverflow(head[0]);
+      if (evicted != null) {
+        evicted.doc = evicted.scorer.advance(target);
+        head[0] = evicted;
+        headDownHeap();
+      } else {
+        headPop();
+      }
+    }
+  }
+
+  /** Advances a clause that was behind doc, making it a lead or a head clause. */
+  private void advanceTail(Clause clause) throws IOException {
+    clause.doc = clause.scorer.advance(doc);
+    if (clause.doc == doc) {
+      addLead(clause);
+    } else {
+      headAdd(clause);
+    }
+  }
+
+  private void addLead(Clause clause) {
+    clause.next = lead;
+    lead = clause;
+    leadMaxScore += clause.maxScore;
+  }
+
+  /** Makes the head clauses on the next document the leads. */
+  private void moveToNextCandidate(int target) throws IOException {
+    if (headSize == 0 || head[0].doc > upTo) {
+      updateMaxScores(target);
+    }
+    if (headSize == 0) {
+      doc = NO_MORE_DOCS;
+      return;
+    }
+    doc = head[0].doc;
+    if (doc == NO_MORE_DOCS) {
+      return;
+    }
+    while (headSize > 0 && head[0].doc == doc) {
+      addLead(headPop());
+    }
+  }
+
+  /** Computes the maximum scores of the next range of documents that can
+   *  hold a competitive hit, starting at <code>target</code>. */
+  private void updateMaxScores(int target) throws IOException {
+    while (true) {
+      if (upTo == NO_MORE_DOCS && headSize == 0) {
+        // only tail clauses are left, and they cannot produce a hit
+        return;
+      }
+      target = Math.max(target, upTo + 1);
+      int newUpTo = NO_MORE_DOCS;
+      if (headSize == 0) {
+        // the best tail clause bounds the range, as its blocks are the most selective
+        newUpTo = tail[0].scorer.advanceShallow(target);
+      } else {
+        // the head clauses bound the range, as they are where the next candidate is;
+        // tail clauses are left out so that their short blocks do not shrink it
+        for (int i = 0; i < headSize; i++) {
+          final Clause clause = head[i];
+          if (clause.doc <= newUpTo && clause.doc != NO_MORE_DOCS) {
+            newUpTo = Math.min(newUpTo, clause.scorer.advanceShallow(clause.doc));
+            clause.maxScore = scale(clause.scorer.getBlockMaxScore());
+          }
+        }
+      }
+      upTo = newUpTo;
+
+      tailMaxScore = 0;
+      for (int i = 0; i < tailSize; i++) {
+        final Clause clause = tail[i];
+        tailMaxScore += clause.maxScore = tailMaxScore(clause, target);
+      }
+      tailHeapify();
+      // the tail alone must not be able to produce a hit
+      while (tailSize > 0 && tailMaxScore >= scaledMinCompetitiveScore) {
+        final Clause clause = tailPop();
+        clause.doc = clause.scorer.advance(target);
+        headAdd(clause);
+      }
+
+      if (headSize > 0 && head[0].doc <= upTo) {
+        return;
+      }
+      if (upTo == NO_MORE_DOCS) {
+        return;
+      }
+      // no head clause matches in this range and the tail cannot produce a hit: skip it
+    }
+  }
+
+  /** Returns the maximum score of a tail clause on the documents in <code>[target, upTo]</code>. */
+  private long tailMaxScore(Clause clause, int target) throws IOException {
+    if (clause.scorer.advanceShallow(target) >= upTo) {
+      return scale(clause.scorer.getBlockMaxScore());
+    }
+    // the range spans several blocks of this clause
+    return scale(clause.scorer.getMaxScore());
+  }
+
+  /** Adds a clause to the tail if the tail still cannot produce a hit with it. Otherwise
+   *  returns the clause with the largest maximum score, which must leave the tail. */
+  private Clause insertTailWithOverflow(Clause clause) {
+    if (tailMaxScore + clause.maxScore < scaledMinCompetitiveScore) {
+      tailAdd(clause);
+      tailMaxScore += clause.maxScore;
+      return null;
+    } else if (tailSize == 0 || greaterMaxScore(tail[0], clause) == false) {
+      return clause;
+    }
+    // swap it with the tail clause with the largest maximum score
+    final Clause top = tail[0];
+    tail[0] = clause;
+    tailDownHeap(0);
+    tailMaxScore += clause.maxScore - top.maxScore;
+    return top;
+  }
+
+  @Override
+  public int docID() {
+    return doc;
+  }
+
+  /** Scores doc, whose matching clauses must all be leads. */
+  private void computeScore() throws IOException {
+    double scoreSum = 0;
+    int freq = 0;
+    for (Clause clause = lead; clause != null; clause = clause.next) {
+      scoreSum += clause.scorer.score();
+      freq++;
+    }
+    this.freq = freq;
+    this.score = (float) scoreSum * coord[freq];
+  }
+
+  @Override
+  public float score() throws IOException {
+    return score;
+  }
+
+  @Override
+  public int freq() throws IOException {
+    return freq;
+  }
+
+  @Override
+  public float getMaxScore() {
+    double sum = 0;
+    for (Clause clause : clauses) {
+      sum += clause.scorer.getMaxScore();
+    }
+    return (float) sum;
+  }
+
+  @Override
+  public long cost() {
+    return cost;
+  }
+
+  @Override
+  public Collection<ChildScorer> getChildren() {
+    ArrayList<ChildScorer> children = new ArrayList<>();
+    for (Clause clause : clauses) {
+      children.add(new ChildScorer(clause.scorer, "SHOULD"));
+    }
+    return children;
+  }
+
+  // head: a min-heap by doc
+
+  private void headAdd(Clause clause) {
+    int i = headSize++;
+    while (i > 0) {
+      final int parent = (i - 1) >>> 1;
+      if (head[parent].doc <= clause.doc) {
+        break;
+      }
+      head[i] = head[parent];
+      i = parent;
+    }
+    head[i] = clause;
+  }
+
+  private Clause headPop() {
+    final Clause top = head[0];
+    head[0] = head[--headSize];
+    head[headSize] = null;
+    if (headSize > 0) {
+      headDownHeap();
+    }
+    return top;
+  }
+
+  private void headDownHeap() {
+    final Clause clause = head[0];
+    int i = 0;
+    while (true) {
+      int child = (i << 1) + 1;
+      if (child >= headSize) {
+        break;
+      }
+      if (child + 1 < headSize && head[child + 1].doc < head[child].doc) {
+        child++;
+      }
+      if (head[child].doc >= clause.doc) {
+        break;
+      }
+      head[i] = head[child];
+      i = child;
+    }
+    head[i] = clause;
+  }
+
+  // tail: a max-heap by maxScore, cheaper clauses first on ties
+
+  private static boolean greaterMaxScore(Clause a, Clause b) {
+    return a.maxScore > b.maxScore || (a.maxScore == b.maxScore && a.cost < b.cost);
+  }
+
+  private void tailAdd(Clause clause) {
+    int i = tailSize++;
+    while (i > 0) {
+      final int parent = (i - 1) >>> 1;
+      if (greaterMaxScore(tail[parent], clause) == false) {
+        // parent is not greater: move it down
+        tail[i] = tail[parent];
+        i = parent;
+      } else {
+        break;
+      }
+    }
+    tail[i] = clause;
+  }
+
+  private Clause tailPop() {
+    final Clause top = tail[0];
+    tailMaxScore -= top.maxScore;
+    tail[0] = tail[--tailSize];
+    tail[tailSize] = null;
+    if (tailSize > 0) {
+      tailDownHeap(0);
+    }
+    return top;
+  }
+
+  private void tailDownHeap(int i) {
+    final Clause clause = tail[i];
+    while (true) {
+      int child = (i << 1) + 1;
+      if (child >= tailSize) {
+        break;
+      }
+      if (child + 1 < tailSize && greaterMaxScore(tail[child + 1], tail[child])) {
+        child++;
+      }
+      if (greaterMaxScore(tail[child], clause) == false) {
+        break;
+      }
+      tail[i] = tail[child];
+      i = child;
+    }
+    tail[i] = clause;
+  }
+
+  private void tailHeapify() {
+    for (int i = (tailSize >>> 1) - 1; i >= 0; i--) {
+      tailDownHeap(i);
+    }
+  }
+}
@@ -139,6 +139,21 @@ public abstract class Weight {
     return new DefaultBulkScorer(scorer);
   }
 
+  /**
+   * Expert: like {@link #bulkScorer(AtomicReaderContext, boolean, Bits)}, but
+   * also tells whether the collector will call
+   * {@link Scorer#setMinCompetitiveScore(float)}, see
+   * {@link Collector#setsMinCompetitiveScore()}. Queries that can skip
+   * non-competitive documents only pick such a scorer when this is true.
+   * The default implementation ignores it.
+   *
+   * @lucene.experimental
+   */
+  public BulkScorer bulkScorer(AtomicReaderContext context, boolean scoreDocsInOrder, Bits acceptDocs,
+                               boolean minCompetitiveScoreSet) throws IOException {
+    return bulkScorer(context, scoreDocsInOrder, acceptDocs);
+  }
+
   /** Just wraps a Scorer and performs top scoring using it. */
   static class DefaultBulkScorer extends BulkScorer {
     private final Scorer scorer;
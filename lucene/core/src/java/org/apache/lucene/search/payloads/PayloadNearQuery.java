@@ -0,0 +1,248 @@
+package org.apache.lucene.search.payloads;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.ComplexExplanation;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.search.similarities.Similarity.SimScorer;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanScorer;
+import org.apache.lucene.search.spans.SpanWeight;
+import org.apache.lucene.search.spans.Spans;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.ToStringUtils;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * This class is very similar to
+ * {@link org.apache.lucene.search.spans.SpanNearQuery} except that it factors
+ * in the value of the payloads located at each of the positions where the
+ * {@link org.apache.lucene.search.spans.TermSpans} occurs.
+ * <p/>
+ * Payload scores are aggregated using a pluggable {@link PayloadFunction}.
+ * Documents are first intersected on their ids, and the payloads of a match
+ * are only read when a document that passed that check is scored.
+ * 
+ * @see org.apache.lucene.search.similarities.Similarity.SimScorer#computePayloadFactor(int, int, int, BytesRef)
+ */
+public class PayloadNearQuery extends SpanNearQuery {
+  protected String fieldName;
+  protected PayloadFunction function;
+
+  public PayloadNearQuery(SpanQuery[] clauses, int slop, boolean inOrder) {
+    this(clauses, slop, inOrder, new AveragePayloadFunction());
+  }
+
+  public PayloadNearQuery(SpanQuery[] clauses, int slop, boolean inOrder,
+      PayloadFunction function) {
+    super(clauses, slop, inOrder);
+    fieldName = clauses[0].getField(); // all clauses must have same field
+    this.function = function;
+  }
+
+  @Override
+  public Weight createWeight(IndexSearcher searcher) throws IOException {
+    return new PayloadNearSpanWeight(this, searcher);
+  }
+
+  @Override
+  public PayloadNearQuery clone() {
+    int sz = clauses.size();
+    SpanQuery[] newClauses = new SpanQuery[sz];
+
+    for (int i = 0; i < sz; i++) {
+      newClauses[i] = (SpanQuery) clauses.get(i).clone();
+    }
+    PayloadNearQuery boostingNearQuery = new PayloadNearQuery(newClauses, slop,
+        inOrder, function);
+    boostingNearQuery.setBoost(getBoost());
+    return boostingNearQuery;
+  }
+
+  @Override
+  public String toString(String field) {
+    StringBuilder buffer = new StringBuilder();
+    buffer.append("payloadNear([");
+    Iterator<SpanQuery> i = clauses.iterator();
+    while (i.hasNext()) {
+      SpanQuery clause = i.next();
+      buffer.append(clause.toString(field));
+      if (i.hasNext()) {
+        buffer.append(", ");
+      }
+    }
+    buffer.append("], ");
+    buffer.append(slop);
+    buffer.append(", ");
+    buffer.append(inOrder);
+    buffer.append(")");
+    buffer.append(ToStringUtils.boost(getBoost()));
+    return buffer.toString();
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = super.hashCode();
+    result = prime * result + ((fieldName == null) ? 0 : fieldName.hashCode());
+    result = prime * result + ((function == null) ? 0 : function.hashCode());
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!super.equals(obj))
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    PayloadNearQuery other = (PayloadNearQuery) obj;
+    if (fieldName == null) {
+      if (other.fieldName != null)
+        return false;
+    } else if (!fieldName.equals(other.fieldName))
+      return false;
+    if (function == null) {
+      if (other.function != null)
+        return false;
+    } else if (!function.equals(other.function))
+      return false;
+    return true;
+  }
+
+  public class PayloadNearSpanWeight extends SpanWeight {
+    public PayloadNearSpanWeight(SpanQuery query, IndexSearcher searcher)
+        throws IOException {
+      super(query, searcher);
+    }
+
+    @Override
+    public Scorer scorer(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+      if (stats == null) {
+        return null;
+      }
+      final Spans spans = query.getSpans(context, acceptDocs, termContexts);
+      if (spans == null) {
+        return null;
+      }
+      return new PayloadNearSpanScorer(spans, this, similarity.simScorer(stats, context));
+    }
+    
+    @Override
+    public Explanation explain(AtomicReaderContext context, int doc) throws IOException {
+      PayloadNearSpanScorer scorer = (PayloadNearSpanScorer) scorer(context, context.reader().getLiveDocs());
+      if (scorer != null) {
+        int newDoc = scorer.advance(doc);
+        if (newDoc == doc) {
+          float freq = scorer.sloppyFreq();
+          SimScorer docScorer = similarity.simScorer(stats, context);
+          Explanation expl = new Explanation();
+          expl.setDescription("weight("+getQuery()+" in "+doc+") [" + similarity.getClass().getSimpleName() + "], result of:");
+          Explanation scoreExplanation = docScorer.explain(doc, new Explanation(freq, "phraseFreq=" + freq));
+          expl.addDetail(scoreExplanation);
+          expl.setValue(scoreExplanation.getValue());
+          String field = ((SpanQuery)getQuery()).getField();
+          // now the payloads part
+          Explanation payloadExpl = function.explain(doc, field, scorer.payloadsSeen, scorer.payloadScore);
+          // combined
+          ComplexExplanation result = new ComplexExplanation();
+          result.addDetail(expl);
+          result.addDetail(payloadExpl);
+          result.setValue(expl.getValue() * payloadExpl.getValue());
+          result.setDescription("PayloadNearQuery, product of:");
+          result.setMatch(true);
+          return result;
+        }
+      }
+      
+      return new ComplexExplanation(false, 0.0f, "no matching term");
+    }
+  }
+
+  public class PayloadNearSpanScorer extends SpanScorer {
+    protected float payloadScore;
+    private int payloadsSeen;
+    private final BytesRef scratch = new BytesRef();
+
+    protected PayloadNearSpanScorer(Spans spans, Weight weight, Similarity.SimScorer docScorer) throws IOException {
+      super(spans, weight, docScorer);
+    }
+
+    /**
+     * By default, uses the {@link PayloadFunction} to score the payloads, but
+     * can be overridden to do other things.
+     * 
+     * @param payLoads The payloads
+     * @param start The start position of the span being scored
+     * @param end The end position of the span being scored
+     * 
+     * @see Spans
+     */
+    protected void processPayloads(Collection<byte[]> payLoads, int start, int end) {
+      for (final byte[] thePayload : payLoads) {
+        if (thePayload == null) {
+          continue;
+        }
+        scratch.bytes = thePayload;
+        scratch.offset = 0;
+        scratch.length = thePayload.length;
+        payloadScore = function.currentScore(doc, fieldName, start, end,
+            payloadsSeen, payloadScore, docScorer.computePayloadFactor(doc,
+                start, end, scratch));
+        ++payloadsSeen;
+      }
+    }
+
+    @Override
+    protected void setFreqCurrentDoc() throws IOException {
+      freq = 0.0f;
+      numMatches = 0;
+      payloadScore = 0;
+      payloadsSeen = 0;
+      int startPos = spans.nextStartPosition();
+      assert startPos != Spans.NO_MORE_POSITIONS : "initial startPos NO_MORE_POSITIONS " + spans;
+      do {
+        int matchLength = spans.endPosition() - startPos;
+        numMatches++;
+        freq += docScorer.computeSlopFactor(matchLength);
+        if (spans.isPayloadAvailable()) {
+          processPayloads(spans.getPayload(), startPos, spans.endPosition());
+        }
+        startPos = spans.nextStartPosition();
+      } while (startPos != Spans.NO_MORE_POSITIONS);
+    }
+
+    @Override
+    public float score() throws IOException {
+      return super.score()
+          * function.docScore(doc, fieldName, payloadsSeen, payloadScore);
+    }
+  }
+
+}
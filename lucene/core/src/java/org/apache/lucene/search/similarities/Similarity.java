@@ -198,6 +198,19 @@ public abstract class Similarity {
      */
     public abstract float score(int doc, float freq);
 
+    /**
+     * Returns an upper bound of {@link #score(int, float)} for any document
+     * whose frequency is at most <code>maxFreq</code>, or
+     * {@link Float#POSITIVE_INFINITY} if no bound can be computed. Scorers
+     * use this to skip blocks of postings that cannot produce a competitive
+     * hit, so the bound must never be lower than an actual score. The
+     * default implementation returns {@link Float#POSITIVE_INFINITY}.
+     * @lucene.experimental
+     */
+    public float maxScore(float maxFreq) {
+      return Float.POSITIVE_INFINITY;
+    }
+
     /** Computes the amount of a sloppy phrase match, based on an edit distance. */
     public abstract float computeSlopFactor(int distance);
     
@@ -0,0 +1,151 @@
+package org.apache.lucene.search.spans;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * Common super class for multiple sub spans required in a document.
+ * <p>Documents are first found by leapfrogging the sub-spans on their
+ * document ids only, cheapest first, without reading a single position.
+ * Only documents that contain all sub-spans are handed to
+ * {@link #twoPhaseCurrentDocMatches()} for the position check.
+ */
+abstract class ConjunctionSpans extends Spans {
+  final Spans[] subSpans; // in query order
+  private final Spans lead; // cheapest sub spans, drives the conjunction
+  private final Spans[] others; // remaining sub spans, by increasing cost
+  private int doc = -1;
+  boolean atFirstInCurrentDoc; // a first start position is available in current doc for nextStartPosition
+  boolean oneExhaustedInCurrentDoc; // one subspans exhausted in current doc
+
+  ConjunctionSpans(List<Spans> subSpans) {
+    if (subSpans.size() < 2) {
+      throw new IllegalArgumentException("Less than 2 subSpans.size():" + subSpans.size());
+    }
+    this.subSpans = subSpans.toArray(new Spans[subSpans.size()]);
+    final Spans[] byCost = this.subSpans.clone();
+    ArrayUtil.timSort(byCost, new Comparator<Spans>() {
+      @Override
+      public int compare(Spans o1, Spans o2) {
+        return Long.compare(o1.cost(), o2.cost());
+      }
+    });
+    this.lead = byCost[0];
+    this.others = Arrays.copyOfRange(byCost, 1, byCost.length);
+    this.atFirstInCurrentDoc = true; // ensure for doc -1 that start/end positions are -1
+  }
+
+  @Override
+  public int docID() {
+    return doc;
+  }
+
+  @Override
+  public long cost() {
+    return lead.cost();
+  }
+
+  @Override
+  public int nextDoc() throws IOException {
+    return toMatchDoc(lead.nextDoc());
+  }
+
+  @Override
+  public int advance(int target) throws IOException {
+    return toMatchDoc(lead.advance(target));
+  }
+
+  /** Advances the other sub spans to the first doc on or after
+   *  <code>target</code> that all sub spans contain. */
+  private int doNext(int target) throws IOException {
+    advanceHead:
+    for (;;) {
+      if (target == NO_MORE_DOCS) {
+        return NO_MORE_DOCS;
+      }
+      for (Spans other : others) {
+        int otherDoc = other.docID();
+        if (otherDoc < target) {
+          otherDoc = other.advance(target);
+        }
+        if (otherDoc > target) {
+          // this sub spans is beyond target: move the lead and start over
+          target = lead.advance(otherDoc);
+          continue advanceHead;
+        }
+      }
+      return target;
+    }
+  }
+
+  private int toMatchDoc(int target) throws IOException {
+    for (;;) {
+      doc = doNext(target);
+      if (doc == NO_MORE_DOCS) {
+        return NO_MORE_DOCS;
+      }
+      oneExhaustedInCurrentDoc = false;
+      if (twoPhaseCurrentDocMatches()) {
+        return doc;
+      }
+      target = lead.nextDoc();
+    }
+  }
+
+  /**
+   * Called on each document that contains all sub spans, with all sub spans
+   * not yet positioned in it. Returns whether the document has a match, in
+   * which case {@link #atFirstInCurrentDoc} must be set so that the first
+   * match is returned by the next call to {@link #nextStartPosition()}.
+   */
+  abstract boolean twoPhaseCurrentDocMatches() throws IOException;
+
+  /** Returns the payloads of the sub spans at the current match. */
+  @Override
+  public Collection<byte[]> getPayload() throws IOException {
+    final List<byte[]> payloads = new ArrayList<>();
+    for (Spans spans : subSpans) {
+      if (spans.isPayloadAvailable()) {
+        payloads.addAll(spans.getPayload());
+      }
+    }
+    return payloads;
+  }
+
+  @Override
+  public boolean isPayloadAvailable() throws IOException {
+    for (Spans spans : subSpans) {
+      if (spans.isPayloadAvailable()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public Spans[] getSubSpans() {
+    return subSpans;
+  }
+}
@@ -0,0 +1,184 @@
+package org.apache.lucene.search.spans;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * A {@link Spans} implementation wrapping another spans instance,
+ * allowing to filter spans matches easily by implementing {@link #accept}
+ * <p>A document is only returned by {@link #nextDoc()} or
+ * {@link #advance(int)} once one of its matches was accepted; that match
+ * is then returned by the first call to {@link #nextStartPosition()}.
+ */
+public abstract class FilterSpans extends Spans {
+ 
+  /** The wrapped spans instance. */
+  protected final Spans in;
+
+  private boolean atFirstInCurrentDoc = false;
+  private int startPos = -1;
+  
+  /** Wrap the given {@link Spans}. */
+  protected FilterSpans(Spans in) {
+    if (in == null) {
+      throw new NullPointerException("in");
+    }
+    this.in = in;
+  }
+  
+  /** 
+   * Returns YES if the candidate should be an accepted match,
+   * NO if it should not, and NO_MORE_IN_CURRENT_DOC if iteration
+   * should move on to the next document.
+   */
+  protected abstract AcceptStatus accept(Spans candidate) throws IOException;
+  
+  @Override
+  public final int nextDoc() throws IOException {
+    while (true) {
+      int doc = in.nextDoc();
+      if (doc == NO_MORE_DOCS) {
+        return NO_MORE_DOCS;
+      } else if (currentDocMatches()) {
+        return doc;
+      }
+    }
+  }
+
+  @Override
+  public final int advance(int target) throws IOException {
+    int doc = in.advance(target);
+    while (doc != NO_MORE_DOCS) {
+      if (currentDocMatches()) {
+        break;
+      }
+      doc = in.nextDoc();
+    }
+
+    return doc;
+  }
+
+  @Override
+  public final int docID() {
+    return in.docID();
+  }
+
+  @Override
+  public final int nextStartPosition() throws IOException {
+    if (atFirstInCurrentDoc) {
+      atFirstInCurrentDoc = false;
+      return startPos;
+    }
+
+    for (;;) {
+      startPos = in.nextStartPosition();
+      if (startPos == NO_MORE_POSITIONS) {
+        return NO_MORE_POSITIONS;
+      }
+      switch(accept(in)) {
+        case YES:
+          return startPos;
+        case NO:
+          break;
+        case NO_MORE_IN_CURRENT_DOC:
+          return startPos = NO_MORE_POSITIONS; // startPos ahead for the current doc.
+        default:
+          throw new IllegalStateException("accept() returned unexpected value");
+      }
+    }
+  }
+
+  @Override
+  public final int startPosition() {
+    return atFirstInCurrentDoc ? -1 : startPos;
+  }
+
+  @Override
+  public final int endPosition() {
+    return atFirstInCurrentDoc ? -1
+          : (startPos != NO_MORE_POSITIONS) ? in.endPosition() : NO_MORE_POSITIONS;
+  }
+
+  @Override
+  public Collection<byte[]> getPayload() throws IOException {
+    return in.getPayload();
+  }
+
+  @Override
+  public boolean isPayloadAvailable() throws IOException {
+    return in.isPayloadAvailable();
+  }
+
+  @Override
+  public long cost() {
+    return in.cost();
+  }
+
+  @Override
+  public String toString() {
+    return "Filter(" + in.toString() + ")";
+  }
+
+  /** Positions the wrapped spans on its first accepted match in the
+   *  current document, returns false when there is none. */
+  private boolean currentDocMatches() throws IOException {
+    atFirstInCurrentDoc = false;
+    startPos = in.nextStartPosition();
+    assert startPos != NO_MORE_POSITIONS;
+    for (;;) {
+      switch(accept(in)) {
+        case YES:
+          atFirstInCurrentDoc = true;
+          return true;
+        case NO:
+          startPos = in.nextStartPosition();
+          if (startPos == NO_MORE_POSITIONS) {
+            startPos = -1;
+            return false;
+          }
+          break;
+        case NO_MORE_IN_CURRENT_DOC:
+          startPos = -1;
+          return false;
+        default:
+          throw new IllegalStateException("accept() returned unexpected value");
+      }
+    }
+  }
+
+  /**
+   * Status returned from {@link FilterSpans#accept(Spans)} that indicates
+   * whether a candidate match should be accepted, rejected, or rejected
+   * and move on to the next document.
+   */
+  public static enum AcceptStatus {
+    /** Indicates the match should be accepted */
+    YES,
+
+    /** Indicates the match should be rejected */
+    NO,
+
+    /**
+     * Indicates the match should be rejected, and the enumeration may continue
+     * with the next document.
+     */
+    NO_MORE_IN_CURRENT_DOC
+  };
+}
@@ -0,0 +1,131 @@
+package org.apache.lucene.search.spans;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.List;
+
+/** A Spans that is formed from the ordered subspans of a SpanNearQuery
+ * where the subspans do not overlap and have a maximum slop between them.
+ * <p>
+ * The formed spans only contains minimum slop matches.<br>
+ * The matching slop is computed from the distance(s) between
+ * the non overlapping matching Spans.<br>
+ * Successive matches are always formed from the successive Spans
+ * of the first sub-spans, each later sub-spans moving only forward:
+ * the positions of a document are read at most once.
+ * <p>
+ * For example, a query for
+ * <pre>
+ *    t1 t2 t3
+ * </pre>
+ * with slop 0, and on a document containing
+ * <pre>
+ *    t1 t1 t2 t3 t3
+ * </pre>
+ * the only match is formed by the second t1, t2 and the first t3: the
+ * first t1 is one position too far from t2.
+ * <p>
+ * Expert:
+ * Only public for subclassing.  Most implementations should not need this class
+ */
+public class NearSpansOrdered extends ConjunctionSpans {
+
+  protected int matchStart = -1;
+  protected int matchEnd = -1;
+  protected int matchWidth = -1;
+
+  private final int allowedSlop;
+
+  public NearSpansOrdered(int allowedSlop, List<Spans> subSpans) throws IOException {
+    super(subSpans);
+    this.allowedSlop = allowedSlop;
+  }
+
+  @Override
+  boolean twoPhaseCurrentDocMatches() throws IOException {
+    matchStart = matchEnd = -1;
+    while (subSpans[0].nextStartPosition() != NO_MORE_POSITIONS && !oneExhaustedInCurrentDoc) {
+      if (stretchToOrder() && matchWidth <= allowedSlop) {
+        return atFirstInCurrentDoc = true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public int nextStartPosition() throws IOException {
+    if (atFirstInCurrentDoc) {
+      atFirstInCurrentDoc = false;
+      return matchStart;
+    }
+    while (subSpans[0].nextStartPosition() != NO_MORE_POSITIONS && !oneExhaustedInCurrentDoc) {
+      if (stretchToOrder() && matchWidth <= allowedSlop) {
+        return matchStart;
+      }
+    }
+    return matchStart = matchEnd = NO_MORE_POSITIONS;
+  }
+
+  /**
+   * Order the subSpans within the same document by using nextStartPosition on
+   * all subSpans after the first as little as necessary.
+   * Return true when the subSpans could be ordered in this way,
+   * otherwise at least one is exhausted in the current doc.
+   */
+  private boolean stretchToOrder() throws IOException {
+    Spans prevSpans = subSpans[0];
+    matchStart = prevSpans.startPosition();
+    assert prevSpans.startPosition() != NO_MORE_POSITIONS : "prevSpans no start position "+prevSpans;
+    assert prevSpans.endPosition() != NO_MORE_POSITIONS;
+    matchWidth = 0;
+    for (int i = 1; i < subSpans.length; i++) {
+      Spans spans = subSpans[i];
+      if (advancePosition(spans, prevSpans.endPosition()) == NO_MORE_POSITIONS) {
+        oneExhaustedInCurrentDoc = true;
+        return false;
+      }
+      matchWidth += (spans.startPosition() - prevSpans.endPosition());
+      prevSpans = spans;
+    }
+    matchEnd = subSpans[subSpans.length - 1].endPosition();
+    return true; // all subSpans ordered and non overlapping
+  }
+
+  private static int advancePosition(Spans spans, int position) throws IOException {
+    while (spans.startPosition() < position) {
+      spans.nextStartPosition();
+    }
+    return spans.startPosition();
+  }
+
+  @Override
+  public int startPosition() {
+    return atFirstInCurrentDoc ? -1 : matchStart;
+  }
+
+  @Override
+  public int endPosition() {
+    return atFirstInCurrentDoc ? -1 : matchEnd;
+  }
+
+  @Override
+  public String toString() {
+    return "NearSpansOrdered("+allowedSlop+")@"+docID()+": "+startPosition()+" - "+endPosition();
+  }
+}
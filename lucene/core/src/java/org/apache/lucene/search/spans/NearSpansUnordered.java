@@ -0,0 +1,162 @@
+package org.apache.lucene.search.spans;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.util.PriorityQueue;
+
+/**
+ * Similar to {@link NearSpansOrdered}, but for the unordered case.
+ * <p>
+ * The sub spans of the current document form a window, kept in a queue by
+ * start position: its start is the start of the first sub spans and its
+ * end is the largest end of all sub spans. A window is a match when the
+ * positions it holds that are not covered by a sub spans are at most the
+ * allowed slop. The window moves by advancing its first sub spans only,
+ * so each position of a document is read once.
+ * <p>
+ * Expert:
+ * Only public for subclassing.  Most implementations should not need this class
+ */
+public class NearSpansUnordered extends ConjunctionSpans {
+
+  private final int allowedSlop;
+  private final SpanPositionQueue spanWindow;
+
+  private int totalSpanLength;
+  private int maxEndPosition;
+
+  public NearSpansUnordered(int allowedSlop, List<Spans> subSpans)
+  throws IOException {
+    super(subSpans);
+    this.allowedSlop = allowedSlop;
+    this.spanWindow = new SpanPositionQueue(this.subSpans.length);
+  }
+
+  private static final class SpanPositionQueue extends PriorityQueue<Spans> {
+    SpanPositionQueue(int size) {
+      super(size);
+    }
+
+    @Override
+    protected final boolean lessThan(Spans spans1, Spans spans2) {
+      return positionsOrdered(spans1, spans2);
+    }
+  }
+
+  /** Check whether two Spans in the same document are ordered with possible overlap.
+   * @return true iff spans1 starts before spans2
+   *              or the spans start at the same position,
+   *              and spans1 ends before spans2.
+   */
+  static final boolean positionsOrdered(Spans spans1, Spans spans2) {
+    assert spans1.docID() == spans2.docID() : "doc1 " + spans1.docID() + " != doc2 " + spans2.docID();
+    int start1 = spans1.startPosition();
+    int start2 = spans2.startPosition();
+    return (start1 == start2) ? (spans1.endPosition() < spans2.endPosition()) : (start1 < start2);
+  }
+
+  /** Positions all sub spans on their first span in the current document. */
+  private void startDocument() throws IOException {
+    spanWindow.clear();
+    totalSpanLength = 0;
+    maxEndPosition = -1;
+    for (Spans spans : subSpans) {
+      spans.nextStartPosition();
+      spanWindow.add(spans);
+      if (spans.endPosition() > maxEndPosition) {
+        maxEndPosition = spans.endPosition();
+      }
+      totalSpanLength += spans.endPosition() - spans.startPosition();
+    }
+  }
+
+  /** Moves the first sub spans of the window to its next span, returns
+   *  false when it is exhausted in the current document. */
+  private boolean nextPosition() throws IOException {
+    Spans topSpans = spanWindow.top();
+    assert topSpans.startPosition() != NO_MORE_POSITIONS;
+    int spanLength = topSpans.endPosition() - topSpans.startPosition();
+    if (topSpans.nextStartPosition() == NO_MORE_POSITIONS) {
+      return false;
+    }
+    totalSpanLength += topSpans.endPosition() - topSpans.startPosition() - spanLength;
+    if (topSpans.endPosition() > maxEndPosition) {
+      maxEndPosition = topSpans.endPosition();
+    }
+    spanWindow.updateTop();
+    return true;
+  }
+
+  private boolean atMatch() {
+    return (maxEndPosition - spanWindow.top().startPosition() - totalSpanLength) <= allowedSlop;
+  }
+
+  @Override
+  boolean twoPhaseCurrentDocMatches() throws IOException {
+    startDocument();
+    while (true) {
+      if (atMatch()) {
+        atFirstInCurrentDoc = true;
+        return true;
+      }
+      if (! nextPosition()) {
+        return false;
+      }
+    }
+  }
+
+  @Override
+  public int nextStartPosition() throws IOException {
+    if (atFirstInCurrentDoc) {
+      atFirstInCurrentDoc = false;
+      return spanWindow.top().startPosition();
+    }
+    assert spanWindow.top() != null;
+    while (true) {
+      if (! nextPosition()) {
+        oneExhaustedInCurrentDoc = true;
+        return NO_MORE_POSITIONS;
+      }
+      if (atMatch()) {
+        return spanWindow.top().startPosition();
+      }
+    }
+  }
+
+  @Override
+  public int startPosition() {
+    return atFirstInCurrentDoc ? -1
+          : oneExhaustedInCurrentDoc ? NO_MORE_POSITIONS
+          : spanWindow.top().startPosition();
+  }
+
+  @Override
+  public int endPosition() {
+    return atFirstInCurrentDoc ? -1
+          : oneExhaustedInCurrentDoc ? NO_MORE_POSITIONS
+          : maxEndPosition;
+  }
+
+  @Override
+  public String toString() {
+    return "NearSpansUnordered("+allowedSlop+")@"+docID()+": "+startPosition()+" - "+endPosition();
+  }
+}
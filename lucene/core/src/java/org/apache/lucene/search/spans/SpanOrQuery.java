@@ -0,0 +1,338 @@
+package org.apache.lucene.search.spans;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import java.util.List;
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.ToStringUtils;
+import org.apache.lucene.search.Query;
+
+/** Matches the union of its clauses.
+ * <p>The clauses are merged on document ids first; the positions of the
+ * clauses that match the current document are only merged when its spans
+ * are asked for.
+ */
+public class SpanOrQuery extends SpanQuery implements Cloneable {
+  private List<SpanQuery> clauses;
+  private String field;
+
+  /** Construct a SpanOrQuery merging the provided clauses. */
+  public SpanOrQuery(SpanQuery... clauses) {
+
+    // copy clauses array into an ArrayList
+    this.clauses = new ArrayList<>(clauses.length);
+    for (int i = 0; i < clauses.length; i++) {
+      addClause(clauses[i]);
+    }
+  }
+
+  /** Adds a clause to this query */
+  public final void addClause(SpanQuery clause) {
+    if (field == null) {
+      field = clause.getField();
+    } else if (clause.getField() != null && !clause.getField().equals(field)) {
+      throw new IllegalArgumentException("Clauses must have same field.");
+    }
+    this.clauses.add(clause);
+  }
+  
+  /** Return the clauses whose spans are matched. */
+  public SpanQuery[] getClauses() {
+    return clauses.toArray(new SpanQuery[clauses.size()]);
+  }
+
+  @Override
+  public String getField() { return field; }
+
+  @Override
+  public void extractTerms(Set<Term> terms) {
+    for(final SpanQuery clause: clauses) {
+      clause.extractTerms(terms);
+    }
+  }
+  
+  @Override
+  public SpanOrQuery clone() {
+    int sz = clauses.size();
+    SpanQuery[] newClauses = new SpanQuery[sz];
+
+    for (int i = 0; i < sz; i++) {
+      newClauses[i] = (SpanQuery) clauses.get(i).clone();
+    }
+    SpanOrQuery soq = new SpanOrQuery(newClauses);
+    soq.setBoost(getBoost());
+    return soq;
+  }
+
+  @Override
+  public Query rewrite(IndexReader reader) throws IOException {
+    SpanOrQuery clone = null;
+    for (int i = 0 ; i < clauses.size(); i++) {
+      SpanQuery c = clauses.get(i);
+      SpanQuery query = (SpanQuery) c.rewrite(reader);
+      if (query != c) {                     // clause rewrote: must clone
+        if (clone == null)
+          clone = this.clone();
+        clone.clauses.set(i,query);
+      }
+    }
+    if (clone != null) {
+      return clone;                        // some clauses rewrote
+    } else {
+      return this;                         // no clauses rewrote
+    }
+  }
+
+  @Override
+  public String toString(String field) {
+    StringBuilder buffer = new StringBuilder();
+    buffer.append("spanOr([");
+    Iterator<SpanQuery> i = clauses.iterator();
+    while (i.hasNext()) {
+      SpanQuery clause = i.next();
+      buffer.append(clause.toString(field));
+      if (i.hasNext()) {
+        buffer.append(", ");
+      }
+    }
+    buffer.append("])");
+    buffer.append(ToStringUtils.boost(getBoost()));
+    return buffer.toString();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    final SpanOrQuery that = (SpanOrQuery) o;
+
+    if (!clauses.equals(that.clauses)) return false;
+
+    return getBoost() == that.getBoost();
+  }
+
+  @Override
+  public int hashCode() {
+    int h = clauses.hashCode();
+    h ^= (h << 10) | (h >>> 23);
+    h ^= Float.floatToRawIntBits(getBoost());
+    return h;
+  }
+
+
+  private static final class SpanDocQueue extends PriorityQueue<Spans> {
+    SpanDocQueue(int size) {
+      super(size);
+    }
+
+    @Override
+    protected final boolean lessThan(Spans spans1, Spans spans2) {
+      return spans1.docID() < spans2.docID();
+    }
+
+    Object[] heap() {
+      return getHeapArray();
+    }
+  }
+
+  private static final class SpanPositionQueue extends PriorityQueue<Spans> {
+    SpanPositionQueue(int size) {
+      super(size);
+    }
+
+    @Override
+    protected final boolean lessThan(Spans spans1, Spans spans2) {
+      return NearSpansUnordered.positionsOrdered(spans1, spans2);
+    }
+  }
+
+  @Override
+  public Spans getSpans(final AtomicReaderContext context, final Bits acceptDocs, final Map<Term,TermContext> termContexts) throws IOException {
+    final List<Spans> subSpans = new ArrayList<>(clauses.size());
+    for (SpanQuery clause : clauses) {
+      final Spans spans = clause.getSpans(context, acceptDocs, termContexts);
+      if (spans != null) {
+        subSpans.add(spans);
+      }
+    }
+
+    if (subSpans.size() == 0) {
+      return null;
+    } else if (subSpans.size() == 1) {
+      return subSpans.get(0);
+    }
+
+    final SpanDocQueue byDocQueue = new SpanDocQueue(subSpans.size());
+    final SpanPositionQueue byPositionQueue = new SpanPositionQueue(subSpans.size());
+
+    return new Spans() {
+      private int doc = -1;
+      private boolean queueInitialized;
+      private Spans topPositionSpans; // null until positions of the current doc are merged
+
+      private int initSpanQueue(int target) throws IOException {
+        queueInitialized = true;
+        for (Spans spans : subSpans) {
+          final int spansDoc = (target == -1) ? spans.nextDoc() : spans.advance(target);
+          if (spansDoc != NO_MORE_DOCS) {
+            byDocQueue.add(spans);
+          }
+        }
+        return doc = byDocQueue.size() == 0 ? NO_MORE_DOCS : byDocQueue.top().docID();
+      }
+
+      @Override
+      public int nextDoc() throws IOException {
+        topPositionSpans = null;
+        if (!queueInitialized) {
+          return initSpanQueue(-1);
+        }
+        if (byDocQueue.size() == 0) {
+          return doc = NO_MORE_DOCS;
+        }
+        final int currentDoc = doc;
+        Spans top = byDocQueue.top();
+        do {
+          if (top.nextDoc() == NO_MORE_DOCS) {
+            byDocQueue.pop();
+            if (byDocQueue.size() == 0) {
+              return doc = NO_MORE_DOCS;
+            }
+            top = byDocQueue.top();
+          } else {
+            top = byDocQueue.updateTop();
+          }
+        } while (top.docID() == currentDoc);
+        return doc = top.docID();
+      }
+
+      @Override
+      public int advance(int target) throws IOException {
+        topPositionSpans = null;
+        if (!queueInitialized) {
+          return initSpanQueue(target);
+        }
+        if (byDocQueue.size() == 0) {
+          return doc = NO_MORE_DOCS;
+        }
+        Spans top = byDocQueue.top();
+        while (top.docID() < target) {
+          if (top.advance(target) == NO_MORE_DOCS) {
+            byDocQueue.pop();
+            if (byDocQueue.size() == 0) {
+              return doc = NO_MORE_DOCS;
+            }
+            top = byDocQueue.top();
+          } else {
+            top = byDocQueue.updateTop();
+          }
+        }
+        return doc = top.docID();
+      }
+
+      @Override
+      public int docID() {
+        return doc;
+      }
+
+      /** Merges the first positions of the sub spans on the current doc. */
+      private void fillPositionQueue() throws IOException {
+        byPositionQueue.clear();
+        final Object[] heap = byDocQueue.heap();
+        for (int i = 1; i <= byDocQueue.size(); i++) { // heap is 1-based
+          final Spans spans = (Spans) heap[i];
+          if (spans.docID() == doc) {
+            final int start = spans.nextStartPosition();
+            assert start != NO_MORE_POSITIONS : "no start position on current doc " + spans;
+            byPositionQueue.add(spans);
+          }
+        }
+        assert byPositionQueue.size() > 0;
+      }
+
+      @Override
+      public int nextStartPosition() throws IOException {
+        if (topPositionSpans == null) {
+          fillPositionQueue();
+        } else {
+          topPositionSpans.nextStartPosition();
+          byPositionQueue.updateTop();
+        }
+        topPositionSpans = byPositionQueue.top();
+        return topPositionSpans.startPosition();
+      }
+
+      @Override
+      public int startPosition() {
+        return topPositionSpans == null ? -1 : topPositionSpans.startPosition();
+      }
+
+      @Override
+      public int endPosition() {
+        return topPositionSpans == null ? -1 : topPositionSpans.endPosition();
+      }
+
+      @Override
+      public Collection<byte[]> getPayload() throws IOException {
+        ArrayList<byte[]> result = null;
+        if (topPositionSpans != null && topPositionSpans.isPayloadAvailable()) {
+          result = new ArrayList<>(topPositionSpans.getPayload());
+        }
+        return result;
+      }
+
+      @Override
+      public boolean isPayloadAvailable() throws IOException {
+        return topPositionSpans != null && topPositionSpans.isPayloadAvailable();
+      }
+
+      @Override
+      public long cost() {
+        long cost = 0;
+        for (Spans spans : subSpans) {
+          cost += spans.cost();
+        }
+        return cost;
+      }
+
+      @Override
+      public String toString() {
+          return "spans("+SpanOrQuery.this+")@"+
+            ((doc == -1) ? "START"
+             : (doc == NO_MORE_DOCS) ? "END"
+             : doc + ":" + startPosition() + "-" + endPosition());
+      }
+
+    };
+  }
+
+}
@@ -0,0 +1,111 @@
+package org.apache.lucene.search.spans;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.similarities.Similarity;
+
+/**
+ * Public for extension only.
+ * <p>The frequency of a document is only computed, by walking its spans,
+ * when {@link #score()} or {@link #freq()} is first called on it.
+ */
+public class SpanScorer extends Scorer {
+  protected final Spans spans;
+  protected int doc = -1;
+  protected float freq;
+  protected int numMatches;
+  protected final Similarity.SimScorer docScorer;
+
+  /** doc for which freq and numMatches were last computed */
+  private int freqDoc = -1;
+
+  protected SpanScorer(Spans spans, Weight weight, Similarity.SimScorer docScorer)
+  throws IOException {
+    super(weight);
+    this.docScorer = docScorer;
+    this.spans = spans;
+  }
+
+  @Override
+  public int nextDoc() throws IOException {
+    return doc = spans.nextDoc();
+  }
+
+  @Override
+  public int advance(int target) throws IOException {
+    return doc = spans.advance(target);
+  }
+
+  /**
+   * Sets {@link #freq} and {@link #numMatches} for the current document,
+   * consuming all of its spans.
+   */
+  protected void setFreqCurrentDoc() throws IOException {
+    freq = 0.0f;
+    numMatches = 0;
+    int startPos = spans.nextStartPosition();
+    assert startPos != Spans.NO_MORE_POSITIONS : "initial startPos NO_MORE_POSITIONS " + spans;
+    do {
+      int matchLength = spans.endPosition() - startPos;
+      numMatches++;
+      freq += docScorer.computeSlopFactor(matchLength);
+      startPos = spans.nextStartPosition();
+    } while (startPos != Spans.NO_MORE_POSITIONS);
+  }
+
+  /** Calls {@link #setFreqCurrentDoc()} unless it was already called on
+   *  the current document. */
+  protected final void ensureFreq() throws IOException {
+    if (freqDoc != doc) {
+      setFreqCurrentDoc();
+      freqDoc = doc;
+    }
+  }
+
+  @Override
+  public int docID() { return doc; }
+
+  @Override
+  public float score() throws IOException {
+    ensureFreq();
+    return docScorer.score(doc, freq);
+  }
+  
+  @Override
+  public int freq() throws IOException {
+    ensureFreq();
+    return numMatches;
+  }
+  
+  /** Returns the intermediate "sloppy freq" adjusted for edit distance 
+   *  @lucene.internal */
+  // only public so .payloads can see it.
+  public float sloppyFreq() throws IOException {
+    ensureFreq();
+    return freq;
+  }
+  
+  @Override
+  public long cost() {
+    return spans.cost();
+  }
+}
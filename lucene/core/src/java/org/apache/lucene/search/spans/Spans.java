@@ -0,0 +1,91 @@
+package org.apache.lucene.search.spans;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.apache.lucene.search.DocIdSetIterator;
+
+/** Expert: an enumeration of span matches.  Used to implement span searching.
+ * <p>A Spans is first a {@link DocIdSetIterator}: {@link #nextDoc()} and
+ * {@link #advance(int)} only stop on documents that contain at least one
+ * match.  Within the current document, matches are enumerated in order of
+ * increasing start position (and then end position) by
+ * {@link #nextStartPosition()}.  Implementations align their sub-spans on
+ * document ids before they read any position, and they stream positions
+ * from the underlying postings instead of buffering them, so memory use
+ * does not grow with document length.
+ * <p>Right after the spans was positioned on a document, {@link #startPosition()}
+ * and {@link #endPosition()} return -1; once the matches of the current
+ * document are exhausted they return {@link #NO_MORE_POSITIONS}.
+ */
+public abstract class Spans extends DocIdSetIterator {
+
+  /** Returned by {@link #nextStartPosition()} when there are no more
+   *  matches in the current document. */
+  public static final int NO_MORE_POSITIONS = Integer.MAX_VALUE;
+
+  /**
+   * Returns the start position of the next match in the current document,
+   * or {@link #NO_MORE_POSITIONS} when there are none left.
+   * <p>Must not be called before the spans was positioned on a document,
+   * nor after the document enumeration is exhausted.
+   */
+  public abstract int nextStartPosition() throws IOException;
+
+  /** Returns the start position of the current match: -1 when
+   *  {@link #nextStartPosition()} was not called yet on the current
+   *  document, {@link #NO_MORE_POSITIONS} after the last match. */
+  public abstract int startPosition();
+
+  /** Returns the end position of the current match, one past its last
+   *  position: -1 when {@link #nextStartPosition()} was not called yet on
+   *  the current document, {@link #NO_MORE_POSITIONS} after the last match. */
+  public abstract int endPosition();
+
+  /**
+   * Returns the payload data for the current match.
+   * This is invalid until {@link #nextStartPosition()} is called for
+   * the first time.
+   * This method must not be called more than once after each call
+   * of {@link #nextStartPosition()}. However, most payloads are loaded lazily,
+   * so if the payload data for the current position is not needed,
+   * this method may not be called at all for performance reasons. Composite
+   * spans gather the payloads of their sub-spans at the current match only
+   * when asked, so documents rejected at the doc level never read a payload.<br>
+   * <br>
+   * Note that the return type is a collection, thus the ordering should not be relied upon.
+   * <br>
+   * @lucene.experimental
+   *
+   * @return a List of byte arrays containing the data of this payload, otherwise null if isPayloadAvailable is false
+   * @throws IOException if there is a low-level I/O error
+   */
+  public abstract Collection<byte[]> getPayload() throws IOException;
+
+  /**
+   * Checks if a payload can be loaded at this position.
+   * <p>
+   * Payloads can only be loaded once per call to
+   * {@link #nextStartPosition()}.
+   *
+   * @return true if there is a payload available at this position that can be loaded
+   */
+  public abstract boolean isPayloadAvailable() throws IOException;
+}
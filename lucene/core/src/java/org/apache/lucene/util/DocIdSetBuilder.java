@@ -0,0 +1,123 @@
+package org.apache.lucene.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+
+/**
+ * A builder of {@link DocIdSet}s that adapts to the number of documents
+ * that are added. Doc ids can be added in any order and more than once.
+ * <p>As long as the set is sparse, doc ids are buffered in an int[] and
+ * the result is a compressed {@link PForDeltaDocIdSet}. As soon as the
+ * number of buffered doc ids would exceed 1/128th of <code>maxDoc</code>,
+ * the builder upgrades to a {@link FixedBitSet}.
+ * @lucene.internal
+ */
+public final class DocIdSetBuilder {
+
+  private final int maxDoc;
+  private final int threshold;
+
+  private int[] buffer;
+  private int bufferSize;
+
+  private FixedBitSet bitSet;
+
+  /** Create a builder that can contain doc ids between <code>0</code> and <code>maxDoc</code>. */
+  public DocIdSetBuilder(int maxDoc) {
+    this.maxDoc = maxDoc;
+    threshold = maxDoc >>> 7;
+    buffer = new int[0];
+    bufferSize = 0;
+    bitSet = null;
+  }
+
+  private void upgradeToBitSet() {
+    assert bitSet == null;
+    bitSet = new FixedBitSet(maxDoc);
+    for (int i = 0; i < bufferSize; ++i) {
+      bitSet.set(buffer[i]);
+    }
+    this.buffer = null;
+    this.bufferSize = 0;
+  }
+
+  /**
+   * Add the content of the provided {@link DocIdSetIterator} to this builder.
+   * The iterator's {@link DocIdSetIterator#cost() cost} is used to decide
+   * up-front whether the builder should switch to a {@link FixedBitSet}.
+   */
+  public void add(DocIdSetIterator iter) throws IOException {
+    if (bitSet == null && bufferSize + iter.cost() > threshold) {
+      upgradeToBitSet();
+    }
+    if (bitSet != null) {
+      bitSet.or(iter);
+      return;
+    }
+    for (int doc = iter.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iter.nextDoc()) {
+      if (bufferSize == buffer.length) {
+        if (bufferSize >= threshold) {
+          // the cost was an under-estimation
+          upgradeToBitSet();
+          bitSet.set(doc);
+          bitSet.or(iter);
+          return;
+        }
+        buffer = ArrayUtil.grow(buffer, bufferSize + 1);
+      }
+      buffer[bufferSize++] = doc;
+    }
+  }
+
+  /**
+   * Build a {@link DocIdSet} that contains all doc ids that have been added.
+   * This method may return <tt>null</tt> if no documents were added.
+   * <p><b>NOTE</b>: this is a destructive operation; the builder should
+   * not be used anymore after this method has been called.
+   */
+  public DocIdSet build() {
+    final DocIdSet result;
+    if (bitSet != null) {
+      result = bitSet;
+    } else if (bufferSize == 0) {
+      result = null;
+    } else {
+      Arrays.sort(buffer, 0, bufferSize);
+      final PForDeltaDocIdSet.Builder builder = new PForDeltaDocIdSet.Builder();
+      int previous = -1;
+      for (int i = 0; i < bufferSize; ++i) {
+        final int doc = buffer[i];
+        if (doc != previous) {
+          builder.add(doc);
+          previous = doc;
+        }
+      }
+      result = builder.build();
+    }
+    this.buffer = null;
+    this.bufferSize = 0;
+    this.bitSet = null;
+    return result;
+  }
+
+}
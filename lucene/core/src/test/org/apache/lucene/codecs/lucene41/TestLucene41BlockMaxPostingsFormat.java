@@ -0,0 +1,191 @@
+package org.apache.lucene.codecs.lucene41;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene410.Lucene410Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.Test;
+
+/**
+ * Tests that the per-block max freqs of {@link Lucene41BlockMaxPostingsFormat}
+ * survive a write/read round trip.
+ */
+public class TestLucene41BlockMaxPostingsFormat extends CoreTestCase {
+  private static final Term TERM = new Term("field", "term");
+
+  /** Indexes {@link #TERM} with the given per-document freqs (0 means
+   *  absent) and returns the single segment. */
+  private DirectoryReader index(Directory dir, final PostingsFormat format, int[] freqs) throws Exception {
+    IndexWriterConfig iwc = newIndexWriterConfig();
+    iwc.setCodec(new Lucene410Codec() {
+      @Override
+      public PostingsFormat getPostingsFormatForField(String field) {
+        return format;
+      }
+    });
+    IndexWriter iw = new IndexWriter(dir, iwc);
+    FieldType ft = new FieldType(StringField.TYPE_NOT_STORED);
+    ft.setIndexOptions(random().nextBoolean() ? IndexOptions.DOCS_AND_FREQS : IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+    ft.freeze();
+    for (int freq : freqs) {
+      Document doc = new Document();
+      for (int i = 0; i < freq; i++) {
+        doc.add(new Field(TERM.field(), TERM.text(), ft));
+      }
+      iw.addDocument(doc);
+    }
+    iw.forceMerge(1);
+    iw.close();
+    return DirectoryReader.open(dir);
+  }
+
+  private static AtomicReader onlyLeaf(DirectoryReader reader) {
+    assertEquals(1, reader.leaves().size());
+    return reader.leaves().get(0).reader();
+  }
+
+  /** Small freqs with a single large one, so that only one block has a high max freq. */
+  private int[] randomFreqs(int bigDoc) {
+    final int[] freqs = new int[atLeast(2000)];
+    for (int i = 0; i < freqs.length; i++) {
+      freqs[i] = random().nextInt(5) == 0 ? 0 : nextInt(1, 3);
+    }
+    freqs[Math.min(bigDoc, freqs.length - 1)] = 50;
+    return freqs;
+  }
+
+  @Test
+  public void testPostingsRoundTrip() throws Exception {
+    final int[] freqs = randomFreqs(random().nextInt(2000));
+    Directory dir = newDirectory();
+    DirectoryReader reader = index(dir, new Lucene41BlockMaxPostingsFormat(), freqs);
+    AtomicReader leaf = onlyLeaf(reader);
+
+    DocsEnum docs = leaf.termDocsEnum(TERM);
+    for (int doc = 0; doc < freqs.length; doc++) {
+      if (freqs[doc] != 0) {
+        assertEquals(doc, docs.nextDoc());
+        assertEquals(freqs[doc], docs.freq());
+      }
+    }
+    assertEquals(DocIdSetIterator.NO_MORE_DOCS, docs.nextDoc());
+
+    // advance over the skip data
+    docs = leaf.termDocsEnum(TERM);
+    int target = 0;
+    while (true) {
+      target += nextInt(1, 500);
+      int expected = target;
+      while (expected < freqs.length && freqs[expected] == 0) {
+        expected++;
+      }
+      if (expected >= freqs.length) {
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, docs.advance(target));
+        break;
+      }
+      assertEquals(expected, docs.advance(target));
+      assertEquals(freqs[expected], docs.freq());
+      target = expected;
+    }
+
+    reader.close();
+    dir.close();
+  }
+
+  @Test
+  public void testBlockMaxFreqs() throws Exception {
+    final int[] freqs = randomFreqs(random().nextInt(2000));
+    Directory dir = newDirectory();
+    DirectoryReader reader = index(dir, new Lucene41BlockMaxPostingsFormat(), freqs);
+    AtomicReader leaf = onlyLeaf(reader);
+
+    DocsEnum docs = leaf.termDocsEnum(TERM);
+    assertTrue(docs.maxFreq() >= 50);
+    int target = 0;
+    int numBlocks = 0;
+    while (target < freqs.length) {
+      final int upTo = docs.advanceShallow(target);
+      assertTrue(upTo >= target);
+      int max = 0;
+      boolean hasBigDoc = false;
+      for (int doc = target; doc <= upTo && doc < freqs.length; doc++) {
+        max = Math.max(max, freqs[doc]);
+        hasBigDoc |= freqs[doc] == 50;
+      }
+      final int blockMaxFreq = docs.blockMaxFreq();
+      assertTrue("block [" + target + ", " + upTo + "]: " + blockMaxFreq + " < " + max, blockMaxFreq >= max);
+      if (upTo != DocIdSetIterator.NO_MORE_DOCS && hasBigDoc == false) {
+        // the skip data bounds the block, not just the whole term
+        assertTrue(blockMaxFreq <= 3);
+      }
+
+      // the enum still works after moving the skip data
+      int expected = target;
+      while (expected < freqs.length && freqs[expected] == 0) {
+        expected++;
+      }
+      if (expected >= freqs.length) {
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, docs.advance(target));
+        break;
+      }
+      assertEquals(expected, docs.advance(target));
+      assertEquals(freqs[expected], docs.freq());
+
+      numBlocks++;
+      if (upTo == DocIdSetIterator.NO_MORE_DOCS) {
+        break;
+      }
+      target = upTo + 1;
+    }
+    assertTrue(numBlocks > 1);
+
+    reader.close();
+    dir.close();
+  }
+
+  @Test
+  public void testNoBlockMaxFreqsInLucene41() throws Exception {
+    final int[] freqs = randomFreqs(random().nextInt(2000));
+    Directory dir = newDirectory();
+    DirectoryReader reader = index(dir, new Lucene41PostingsFormat(), freqs);
+    AtomicReader leaf = onlyLeaf(reader);
+
+    // a single block bounded by the term-wide max freq
+    DocsEnum docs = leaf.termDocsEnum(TERM);
+    assertEquals(DocIdSetIterator.NO_MORE_DOCS, docs.advanceShallow(0));
+    assertEquals(docs.maxFreq(), docs.blockMaxFreq());
+    assertTrue(docs.maxFreq() >= 50);
+
+    reader.close();
+    dir.close();
+  }
+}
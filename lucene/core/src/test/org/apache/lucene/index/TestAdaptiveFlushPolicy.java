@@ -0,0 +1,149 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.Test;
+
+/** Drives {@link AdaptiveFlushPolicy#onFlushed} with synthetic stall counts
+ *  and merge backlogs. */
+public class TestAdaptiveFlushPolicy extends CoreTestCase {
+
+  private static final long MB = 1024 * 1024;
+  private static final double DELTA = 1e-9;
+
+  private IndexWriterConfig config;
+  // merge backlogs with and without merges behind
+  private int behind, caughtUp;
+  private long stallCount;
+
+  private AdaptiveFlushPolicy newPolicy(long targetFlushMillis, double ramBufferSizeMB) {
+    final ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
+    final int maxMergeCount = nextInt(1, 5);
+    mergeScheduler.setMaxMergesAndThreads(maxMergeCount, 1);
+    behind = maxMergeCount + 1 + random().nextInt(3);
+    caughtUp = random().nextInt(maxMergeCount + 1);
+    config = newIndexWriterConfig();
+    config.setMergeScheduler(mergeScheduler);
+    config.setRAMBufferSizeMB(ramBufferSizeMB);
+    final AdaptiveFlushPolicy policy = new AdaptiveFlushPolicy(targetFlushMillis);
+    policy.init(config);
+    return policy;
+  }
+
+  private void flushedStalled(AdaptiveFlushPolicy policy, int mergeBacklog) {
+    policy.onFlushed(MB, 1000000, ++stallCount, mergeBacklog);
+  }
+
+  private void flushed(AdaptiveFlushPolicy policy, int mergeBacklog) {
+    policy.onFlushed(MB, 1000000, stallCount, mergeBacklog);
+  }
+
+  @Test
+  public void testStallsShrinkTrigger() {
+    final AdaptiveFlushPolicy policy = newPolicy(0, 16);
+    assertEquals(16 * MB, policy.ramBufferBytes());
+    flushedStalled(policy, caughtUp);
+    assertEquals(0.75, policy.getBufferFraction(), DELTA);
+    assertEquals(12 * MB, policy.ramBufferBytes());
+    // a stall shrinks the trigger even while merges are behind
+    flushedStalled(policy, behind);
+    assertEquals(0.75 * 0.75, policy.getBufferFraction(), DELTA);
+    for (int i = 0; i < 20; i++) {
+      flushedStalled(policy, random().nextBoolean() ? behind : caughtUp);
+    }
+    assertEquals(AdaptiveFlushPolicy.MIN_BUFFER_FRACTION, policy.getBufferFraction(), DELTA);
+    assertEquals(4 * MB, policy.ramBufferBytes());
+
+    // without stalls nor backlog, it drifts back up to the RAM buffer but not beyond
+    double last = policy.getBufferFraction();
+    for (int i = 0; i < 100; i++) {
+      flushed(policy, caughtUp);
+      assertTrue(policy.getBufferFraction() >= last);
+      last = policy.getBufferFraction();
+    }
+    assertEquals(1.0, policy.getBufferFraction(), DELTA);
+  }
+
+  @Test
+  public void testMergesBehindGrowTrigger() {
+    final AdaptiveFlushPolicy policy = newPolicy(0, 16);
+    flushed(policy, behind);
+    assertEquals(1.25, policy.getBufferFraction(), DELTA);
+    assertEquals(20 * MB, policy.ramBufferBytes());
+    for (int i = 0; i < 20; i++) {
+      flushed(policy, behind);
+    }
+    assertEquals(AdaptiveFlushPolicy.MAX_BUFFER_FRACTION, policy.getBufferFraction(), DELTA);
+    assertEquals(32 * MB, policy.ramBufferBytes());
+
+    // once merges caught up, it drifts back down to the RAM buffer but not below
+    double last = policy.getBufferFraction();
+    for (int i = 0; i < 100; i++) {
+      flushed(policy, caughtUp);
+      assertTrue(policy.getBufferFraction() <= last);
+      last = policy.getBufferFraction();
+    }
+    assertEquals(1.0, policy.getBufferFraction(), DELTA);
+
+    // and the first stall shrinks it again
+    flushedStalled(policy, behind);
+    assertEquals(0.75, policy.getBufferFraction(), DELTA);
+  }
+
+  @Test
+  public void testGrowthBoundedByPerThreadHardLimit() {
+    final AdaptiveFlushPolicy policy = newPolicy(0, 1000);
+    config.setRAMPerThreadHardLimitMB(1200);
+    for (int i = 0; i < 20; i++) {
+      flushed(policy, behind);
+    }
+    assertEquals(1.2, policy.getBufferFraction(), DELTA);
+    assertEquals(1200 * MB, policy.ramBufferBytes(), MB / 1024);
+
+    // a hard limit below the RAM buffer does not shrink the trigger
+    config.setRAMPerThreadHardLimitMB(500);
+    flushed(policy, behind);
+    assertEquals(1.0, policy.getBufferFraction(), DELTA);
+  }
+
+  @Test
+  public void testWriterLimitFollowsFlushBandwidth() {
+    final AdaptiveFlushPolicy policy = newPolicy(100, 64);
+    assertEquals(Long.MAX_VALUE, policy.getWriterLimitBytes());
+    // 100 MB per second: 10 MB can be flushed within 100 msec
+    policy.onFlushed(100 * MB, 1000000000L, stallCount, caughtUp);
+    assertEquals(10 * MB, policy.getWriterLimitBytes(), 1);
+    // the bandwidth is smoothed: 20 MB per second only lowers it by a quarter of the difference
+    policy.onFlushed(20 * MB, 1000000000L, stallCount, caughtUp);
+    assertEquals(8 * MB, policy.getWriterLimitBytes(), 1);
+    // the cap is lifted while merges are behind
+    policy.onFlushed(20 * MB, 1000000000L, stallCount, behind);
+    assertEquals(Long.MAX_VALUE, policy.getWriterLimitBytes());
+    // and never drops below MIN_WRITER_BYTES
+    for (int i = 0; i < 50; i++) {
+      policy.onFlushed(MB, 1000000000L, stallCount, caughtUp);
+    }
+    assertEquals(AdaptiveFlushPolicy.MIN_WRITER_BYTES, policy.getWriterLimitBytes());
+
+    // without a latency target there is no cap
+    final AdaptiveFlushPolicy noTarget = newPolicy(0, 64);
+    noTarget.onFlushed(MB, 1000000000L, stallCount, caughtUp);
+    assertEquals(Long.MAX_VALUE, noTarget.getWriterLimitBytes());
+  }
+}
@@ -0,0 +1,447 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DocumentsWriterPerThreadPool.ThreadState;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.Test;
+
+public class TestAddDocumentsBulk extends CoreTestCase {
+
+  private static final int CHUNK = DocumentsWriter.BULK_CHUNK_DOCS;
+
+  /** Hands out <code>numDocs</code> documents with increasing ids,
+   *  calling {@link #onNext} before each one. */
+  static class Docs implements Iterable<Document> {
+    final int numDocs;
+    final AtomicInteger handedOut = new AtomicInteger();
+
+    Docs(int numDocs) {
+      this.numDocs = numDocs;
+    }
+
+    void onNext(int id) throws Exception {
+    }
+
+    Document newDoc(int id) {
+      final Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(id), Field.Store.YES));
+      doc.add(new StringField("f", "x", Field.Store.NO));
+      doc.add(new TextField("body", "some text for document " + id, Field.Store.NO));
+      return doc;
+    }
+
+    @Override
+    public Iterator<Document> iterator() {
+      return new Iterator<Document>() {
+        @Override
+        public boolean hasNext() {
+          return handedOut.get() < numDocs;
+        }
+
+        @Override
+        public Document next() {
+          if (hasNext() == false) {
+            throw new NoSuchElementException();
+          }
+          final int id = handedOut.getAndIncrement();
+          try {
+            onNext(id);
+          } catch (RuntimeException e) {
+            throw e;
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+          return newDoc(id);
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+  }
+
+  private IndexWriterConfig newBulkConfig() {
+    final IndexWriterConfig config = newIndexWriterConfig();
+    config.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    config.setRAMBufferSizeMB(16);
+    return config;
+  }
+
+  /** Returns the ids of the live documents of the reader. */
+  private static BitSet liveIds(DirectoryReader reader) throws IOException {
+    final BitSet ids = new BitSet();
+    for (AtomicReaderContext context : reader.leaves()) {
+      final AtomicReader leaf = context.reader();
+      final Bits liveDocs = leaf.getLiveDocs();
+      for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+        if (liveDocs == null || liveDocs.get(doc)) {
+          final int id = Integer.parseInt(leaf.document(doc).get("id"));
+          assertFalse("duplicate id " + id, ids.get(id));
+          ids.set(id);
+        }
+      }
+    }
+    return ids;
+  }
+
+  @Test
+  public void testReturnsDocCount() throws IOException {
+    try (Directory dir = newDirectory(); IndexWriter writer = new IndexWriter(dir, newBulkConfig())) {
+      assertEquals(0, writer.addDocumentsBulk(new Docs(0)));
+      final int numDocs = atLeast(3 * CHUNK);
+      assertEquals(numDocs, writer.addDocumentsBulk(new Docs(numDocs)));
+      assertEquals(numDocs, writer.numDocs());
+    }
+  }
+
+  /** Deletes <code>f:x</code> from another thread and waits for it. */
+  private static void deleteAndWait(final IndexWriter writer) throws Exception {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    // does not need the indexing thread, which holds its DWPT
+    final Thread deleter = new Thread() {
+      @Override
+      public void run() {
+        try {
+          writer.deleteDocuments(new Term("f", "x"));
+        } catch (Throwable t) {
+          failure.set(t);
+        }
+      }
+    };
+    deleter.start();
+    deleter.join();
+    assertNull(failure.get());
+  }
+
+  /** A delete that completes while a chunk is indexed applies to the
+   *  chunks before it only. */
+  @Test
+  public void testDeleteDuringChunk() throws Exception {
+    try (Directory dir = newDirectory(); final IndexWriter writer = new IndexWriter(dir, newBulkConfig())) {
+      final int numDocs = nextInt(2 * CHUNK, 6 * CHUNK);
+      final int deleteAt = random().nextInt(numDocs);
+      final Docs docs = new Docs(numDocs) {
+        @Override
+        void onNext(int id) throws Exception {
+          if (id == deleteAt) {
+            deleteAndWait(writer);
+          }
+        }
+      };
+      assertEquals(numDocs, writer.addDocumentsBulk(docs));
+      try (DirectoryReader reader = DirectoryReader.open(writer, true)) {
+        final BitSet expected = new BitSet();
+        expected.set(deleteAt / CHUNK * CHUNK, numDocs);
+        assertEquals(expected, liveIds(reader));
+      }
+
+      // a delete issued after the batch returned removes all of it
+      writer.deleteDocuments(new Term("f", "x"));
+      try (DirectoryReader reader = DirectoryReader.open(writer, true)) {
+        assertEquals(0, reader.numDocs());
+      }
+    }
+  }
+
+  /** Deletes that run concurrently with a batch remove a prefix of it. */
+  @Test
+  public void testConcurrentDeletes() throws Exception {
+    final int iters = atLeast(5);
+    for (int iter = 0; iter < iters; iter++) {
+      try (Directory dir = newDirectory(); final IndexWriter writer = new IndexWriter(dir, newBulkConfig())) {
+        final int numDocs = nextInt(2 * CHUNK, 20 * CHUNK);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread deleter = new Thread() {
+          @Override
+          public void run() {
+            try {
+              while (done.get() == false) {
+                writer.deleteDocuments(new Term("f", "x"));
+                Thread.sleep(1);
+              }
+            } catch (Throwable t) {
+              failure.set(t);
+            }
+          }
+        };
+        deleter.start();
+        try {
+          assertEquals(numDocs, writer.addDocumentsBulk(new Docs(numDocs)));
+        } finally {
+          done.set(true);
+          deleter.join();
+        }
+        assertNull(failure.get());
+
+        try (DirectoryReader reader = DirectoryReader.open(writer, true)) {
+          final BitSet live = liveIds(reader);
+          if (live.isEmpty() == false) {
+            final int firstLive = live.nextSetBit(0);
+            assertEquals(numDocs, live.nextClearBit(firstLive));
+          }
+        }
+      }
+    }
+  }
+
+  /** A document failing in the middle of a chunk is deleted, the
+   *  documents before it are kept and the rest is not consumed. A delete
+   *  that arrived during that chunk is ordered before the whole chunk,
+   *  as if the chunk had succeeded. */
+  @Test
+  public void testNonAbortingExceptionMidChunk() throws Exception {
+    try (Directory dir = newDirectory(); final IndexWriter writer = new IndexWriter(dir, newBulkConfig())) {
+      final int failAt = CHUNK + nextInt(1, CHUNK - 1);
+      final int total = failAt + CHUNK;
+      final Docs docs = new Docs(total) {
+        @Override
+        void onNext(int id) throws Exception {
+          if (id == failAt - 1) {
+            deleteAndWait(writer);
+          }
+        }
+
+        @Override
+        Document newDoc(int id) {
+          final Document doc = super.newDoc(id);
+          if (id == failAt) {
+            doc.add(new TextField("body", new Reader() {
+              @Override
+              public int read(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("failing on purpose");
+              }
+
+              @Override
+              public void close() {
+              }
+            }));
+          }
+          return doc;
+        }
+      };
+      try {
+        writer.addDocumentsBulk(docs);
+        fail("the document should have failed");
+      } catch (IOException e) {
+        assertEquals("failing on purpose", e.getMessage());
+      }
+      assertEquals(failAt + 1, docs.handedOut.get());
+
+      // the writer is still usable, and the pending delete must not
+      // reach the second chunk when the next document is finished
+      final Docs more = new Docs(1) {
+        @Override
+        Document newDoc(int id) {
+          return super.newDoc(total);
+        }
+      };
+      assertEquals(1, writer.addDocumentsBulk(more));
+      writer.commit();
+      try (DirectoryReader reader = DirectoryReader.open(dir)) {
+        assertEquals(failAt + 2, reader.maxDoc());
+        final BitSet expected = new BitSet();
+        expected.set(CHUNK, failAt);
+        expected.set(total);
+        assertEquals(expected, liveIds(reader));
+      }
+    }
+  }
+
+  /** A full flush that starts in the middle of a batch does not wait for
+   *  the batch: it gets the documents up to the end of the current chunk. */
+  @Test
+  public void testFullFlushBetweenChunks() throws Exception {
+    try (Directory dir = newDirectory(); final IndexWriter writer = new IndexWriter(dir, newBulkConfig())) {
+      final DocumentsWriterFlushControl flushControl = writer.getDocsWriter().flushControl;
+      final int commitAt = CHUNK + nextInt(0, CHUNK - 1);
+      final int numDocs = 4 * CHUNK;
+      final AtomicReference<Throwable> failure = new AtomicReference<>();
+      final Thread committer = new Thread() {
+        @Override
+        public void run() {
+          try {
+            writer.commit();
+          } catch (Throwable t) {
+            failure.set(t);
+          }
+        }
+      };
+      final Docs docs = new Docs(numDocs) {
+        @Override
+        void onNext(int id) throws Exception {
+          if (id == commitAt) {
+            committer.start();
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (flushControl.isFullFlush() == false) {
+              assertTrue("full flush did not start", System.nanoTime() < deadline);
+              Thread.sleep(1);
+            }
+          }
+        }
+      };
+      assertEquals(numDocs, writer.addDocumentsBulk(docs));
+      committer.join();
+      assertNull(failure.get());
+
+      try (DirectoryReader reader = DirectoryReader.open(dir)) {
+        final BitSet expected = new BitSet();
+        expected.set(0, 2 * CHUNK);
+        assertEquals(expected, liveIds(reader));
+      }
+      writer.commit();
+      try (DirectoryReader reader = DirectoryReader.open(dir)) {
+        assertEquals(numDocs, reader.numDocs());
+      }
+    }
+  }
+
+  /** Blocks the first segment flush of the given thread until released. */
+  static final class BlockingFlushDirectory extends RAMDirectory {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    volatile Thread flushThread;
+
+    @Override
+    public IndexOutput createOutput(String name, IOContext context) throws IOException {
+      if (Thread.currentThread() == flushThread && context.context == IOContext.Context.FLUSH) {
+        blocked.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      return super.createOutput(name, context);
+    }
+  }
+
+  /** Flushes the DWPT of the given thread once it uses 1.5 MB, and the
+   *  others once they use 1 MB. */
+  static final class FlushThreadPolicy extends FlushPolicy {
+    volatile Thread flushThread;
+
+    @Override
+    public void onDelete(DocumentsWriterFlushControl control, ThreadState state) {
+    }
+
+    @Override
+    public void onInsert(DocumentsWriterFlushControl control, ThreadState state) {
+      final long limit = Thread.currentThread() == flushThread ? 3 * 512 * 1024 : 1024 * 1024;
+      if (state.bytesUsed > limit) {
+        control.setFlushPending(state);
+      }
+    }
+  }
+
+  /** A batch gives up its DWPT and waits between chunks when indexing
+   *  gets stalled, then continues once flushing caught up. */
+  @Test
+  public void testStallBetweenChunks() throws Exception {
+    final BlockingFlushDirectory dir = new BlockingFlushDirectory();
+    final FlushThreadPolicy flushPolicy = new FlushThreadPolicy();
+    final IndexWriterConfig config = newIndexWriterConfig();
+    config.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    // stalls once more than 2 MB are buffered or flushing
+    config.setRAMBufferSizeMB(1);
+    config.setFlushPolicy(flushPolicy);
+    try (final IndexWriter writer = new IndexWriter(dir, config)) {
+      final AtomicReference<Throwable> failure = new AtomicReference<>();
+      // fills a DWPT up to 1.5 MB and gets blocked flushing it
+      final Thread flusher = new Thread() {
+        @Override
+        public void run() {
+          try {
+            final Docs docs = new Docs(Integer.MAX_VALUE);
+            for (Document doc : docs) {
+              writer.addDocument(doc);
+              if (dir.release.getCount() == 0) {
+                break;
+              }
+            }
+          } catch (Throwable t) {
+            failure.set(t);
+          }
+        }
+      };
+      dir.flushThread = flusher;
+      flushPolicy.flushThread = flusher;
+      flusher.start();
+      assertTrue(dir.blocked.await(1, TimeUnit.MINUTES));
+
+      // now a batch that needs more than the remaining 0.5 MB
+      final int numDocs = 50000;
+      final Docs docs = new Docs(numDocs);
+      final Thread indexer = new Thread() {
+        @Override
+        public void run() {
+          try {
+            writer.addDocumentsBulk(docs);
+          } catch (Throwable t) {
+            failure.set(t);
+          }
+        }
+      };
+      indexer.start();
+      final DocumentsWriterStallControl stallControl = writer.getDocsWriter().flushControl.stallControl;
+      final long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+      while (stallControl.isThreadQueued(indexer) == false) {
+        assertTrue("indexer did not get stalled", System.nanoTime() < deadline);
+        assertTrue(indexer.isAlive());
+        Thread.sleep(1);
+      }
+      // the batch waits outside of its DWPT, with documents left
+      assertTrue(docs.handedOut.get() < numDocs);
+      final DocumentsWriterPerThreadPool perThreadPool = writer.getDocsWriter().perThreadPool;
+      for (int i = 0; i < perThreadPool.getActiveThreadState(); i++) {
+        assertFalse(perThreadPool.getThreadState(i).isLocked());
+      }
+
+      dir.release.countDown();
+      indexer.join();
+      flusher.join();
+      assertNull(failure.get());
+      assertEquals(numDocs, docs.handedOut.get());
+      assertTrue(stallControl.wasStalled());
+      assertTrue(stallControl.isHealthy());
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.TestAddDocumentsBulk.BlockingFlushDirectory;
+import org.apache.lucene.index.TestAddDocumentsBulk.Docs;
+import org.apache.lucene.index.TestAddDocumentsBulk.FlushThreadPolicy;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.Test;
+
+public class TestIndexingStallListener extends CoreTestCase {
+
+  /** Records the callbacks, and fails if one runs while the writer's
+   *  flush or stall control is locked by the calling thread. */
+  private static final class RecordingListener extends IndexingStallListener {
+    final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    final List<Thread> resumed = Collections.synchronizedList(new ArrayList<Thread>());
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    volatile IndexWriter writer;
+
+    private void assertNotLocked() {
+      try {
+        final DocumentsWriter docWriter = writer.getDocsWriter();
+        assertFalse(Thread.holdsLock(docWriter.flushControl));
+        assertFalse(Thread.holdsLock(docWriter.flushControl.stallControl));
+        final DocumentsWriterPerThreadPool perThreadPool = docWriter.perThreadPool;
+        for (int i = 0; i < perThreadPool.getActiveThreadState(); i++) {
+          assertFalse(perThreadPool.getThreadState(i).isHeldByCurrentThread());
+        }
+        // takes both monitors
+        assertNotNull(writer.getIndexingStallStats());
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+      }
+    }
+
+    @Override
+    public void onStallStart() {
+      assertNotLocked();
+      events.add("start");
+    }
+
+    @Override
+    public void onStallEnd(long stallNanos) {
+      assertNotLocked();
+      events.add("end");
+    }
+
+    @Override
+    public void onThreadResumed(Thread thread, long blockedNanos) {
+      assertNotLocked();
+      resumed.add(thread);
+    }
+  }
+
+  @Test
+  public void testCallbacksRunOutsideOfLocks() throws Exception {
+    final BlockingFlushDirectory dir = new BlockingFlushDirectory();
+    final FlushThreadPolicy flushPolicy = new FlushThreadPolicy();
+    final RecordingListener listener = new RecordingListener();
+    final IndexWriterConfig config = newIndexWriterConfig();
+    config.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    // stalls once more than 2 MB are buffered or flushing
+    config.setRAMBufferSizeMB(1);
+    config.setFlushPolicy(flushPolicy);
+    config.setIndexingStallListener(listener);
+    try (final IndexWriter writer = new IndexWriter(dir, config)) {
+      listener.writer = writer;
+      final AtomicReference<Throwable> failure = new AtomicReference<>();
+      final Thread flusher = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (Document doc : new Docs(Integer.MAX_VALUE)) {
+              writer.addDocument(doc);
+              if (dir.release.getCount() == 0) {
+                break;
+              }
+            }
+          } catch (Throwable t) {
+            failure.set(t);
+          }
+        }
+      };
+      dir.flushThread = flusher;
+      flushPolicy.flushThread = flusher;
+      flusher.start();
+      assertTrue(dir.blocked.await(1, TimeUnit.MINUTES));
+
+      final Thread indexer = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (Document doc : new Docs(Integer.MAX_VALUE)) {
+              writer.addDocument(doc);
+              if (dir.release.getCount() == 0) {
+                break;
+              }
+            }
+          } catch (Throwable t) {
+            failure.set(t);
+          }
+        }
+      };
+      indexer.start();
+      final DocumentsWriterStallControl stallControl = writer.getDocsWriter().flushControl.stallControl;
+      final long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+      while (stallControl.isThreadQueued(indexer) == false) {
+        assertTrue("indexer did not get stalled", System.nanoTime() < deadline);
+        assertTrue(indexer.isAlive());
+        Thread.sleep(1);
+      }
+      // reported before the indexer blocked
+      assertEquals(Collections.singletonList("start"), listener.events);
+
+      dir.release.countDown();
+      indexer.join();
+      flusher.join();
+      assertNull(failure.get());
+      assertNull(listener.failure.get());
+      assertEquals(2, listener.events.size());
+      assertEquals("end", listener.events.get(1));
+      assertTrue(listener.resumed.contains(indexer));
+      assertEquals(1, writer.getIndexingStallStats().getStallCount());
+    }
+  }
+}
@@ -0,0 +1,408 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CoreTestCase;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Checks that analyzing fields on the field inversion executor produces
+ *  the same index as analyzing them on the indexing thread. */
+public class TestParallelFieldInversion extends CoreTestCase {
+
+  private static final String[] WORDS = {
+    "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog"
+  };
+
+  private static final FieldType OFFSETS_TYPE = new FieldType(TextField.TYPE_NOT_STORED);
+  static {
+    OFFSETS_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+    OFFSETS_TYPE.freeze();
+  }
+
+  private ExecutorService pool;
+
+  @Before
+  public void setUpPool() {
+    pool = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDownPool() throws InterruptedException {
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+  }
+
+  /** Splits on spaces, sets a payload on most tokens, and throws on the
+   *  token "fail" if asked to. */
+  private static final class PayloadAnalyzer extends Analyzer {
+    private final boolean failOnToken;
+
+    PayloadAnalyzer(boolean failOnToken) {
+      this.failOnToken = failOnToken;
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+      final Tokenizer tokenizer = new WhitespaceTokenizer(reader);
+      return new TokenStreamComponents(tokenizer, new PayloadFilter(tokenizer, failOnToken));
+    }
+
+    @Override
+    public int getPositionIncrementGap(String fieldName) {
+      return 7;
+    }
+
+    @Override
+    public int getOffsetGap(String fieldName) {
+      return 3;
+    }
+  }
+
+  private static final class PayloadFilter extends TokenFilter {
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final PayloadAttribute payloadAtt = addAttribute(PayloadAttribute.class);
+    private final boolean failOnToken;
+    private int count;
+
+    PayloadFilter(TokenStream input, boolean failOnToken) {
+      super(input);
+      this.failOnToken = failOnToken;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+      if (input.incrementToken() == false) {
+        return false;
+      }
+      if (failOnToken && termAtt.toString().equals("fail")) {
+        throw new IOException("analyzer failed on purpose");
+      }
+      count++;
+      if (count % 3 == 0) {
+        payloadAtt.setPayload(null);
+      } else {
+        payloadAtt.setPayload(new BytesRef(termAtt.charAt(0) + "" + count));
+      }
+      return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+      super.reset();
+      count = 0;
+    }
+  }
+
+  private String randomText(int maxWords) {
+    final int numWords = random().nextInt(maxWords + 1);
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < numWords; i++) {
+      if (i > 0) {
+        sb.append(' ');
+      }
+      sb.append(WORDS[random().nextInt(WORDS.length)]);
+    }
+    return sb.toString();
+  }
+
+  private List<Document> randomDocs() {
+    final int numDocs = atLeast(200);
+    final List<Document> docs = new ArrayList<>();
+    for (int i = 0; i < numDocs; i++) {
+      final Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.YES));
+      final int numValues = nextInt(1, 3);
+      for (int j = 0; j < numValues; j++) {
+        doc.add(new Field("body", randomText(200), OFFSETS_TYPE));
+      }
+      doc.add(new TextField("title", randomText(10), Field.Store.NO));
+      if (random().nextBoolean()) {
+        doc.add(new Field("body", randomText(50), OFFSETS_TYPE));
+      }
+      if (random().nextInt(10) == 0) {
+        // fails the document if the analyzer fails on this token
+        doc.add(new Field("body", randomText(50) + " fail " + randomText(50), OFFSETS_TYPE));
+      }
+      docs.add(doc);
+    }
+    return docs;
+  }
+
+  /** Indexes the documents, dropping those whose analysis fails, and
+   *  merges them into a single segment. */
+  private Directory index(List<Document> docs, IndexWriterConfig config) throws IOException {
+    final Directory dir = newDirectory();
+    try (IndexWriter writer = new IndexWriter(dir, config)) {
+      for (Document doc : docs) {
+        try {
+          writer.addDocument(doc);
+        } catch (IOException e) {
+          assertEquals("analyzer failed on purpose", e.getMessage());
+        }
+      }
+      writer.forceMerge(1);
+    }
+    return dir;
+  }
+
+  private IndexWriterConfig newConfig(boolean failOnToken) {
+    final IndexWriterConfig config = new IndexWriterConfig(Version.LATEST, new PayloadAnalyzer(failOnToken));
+    config.setMaxBufferedDocs(nextInt(10, 100));
+    return config;
+  }
+
+  /** Lists every posting of the single segment of the index, with its
+   *  positions, offsets and payloads. Merges may reorder documents, so
+   *  the postings of each term are listed by id. */
+  private static List<String> postings(Directory dir) throws IOException {
+    final List<String> postings = new ArrayList<>();
+    try (DirectoryReader reader = DirectoryReader.open(dir)) {
+      assertEquals(1, reader.leaves().size());
+      final AtomicReader leaf = reader.leaves().get(0).reader();
+      postings.add("numDocs=" + leaf.numDocs() + " maxDoc=" + leaf.maxDoc());
+      final Bits liveDocs = leaf.getLiveDocs();
+      for (String field : leaf.fields()) {
+        final TermsEnum termsEnum = leaf.terms(field).iterator(null);
+        DocsAndPositionsEnum postingsEnum = null;
+        DocsEnum docsEnum = null;
+        for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+          postings.add(field + ":" + term.utf8ToString() + " docFreq=" + termsEnum.docFreq());
+          final List<String> termPostings = new ArrayList<>();
+          postingsEnum = termsEnum.docsAndPositions(liveDocs, postingsEnum, DocsAndPositionsEnum.FLAG_OFFSETS | DocsAndPositionsEnum.FLAG_PAYLOADS);
+          if (postingsEnum == null) {
+            docsEnum = termsEnum.docs(liveDocs, docsEnum);
+            for (int doc = docsEnum.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docsEnum.nextDoc()) {
+              termPostings.add("  doc=" + leaf.document(doc).get("id") + " freq=" + docsEnum.freq());
+            }
+          } else {
+            for (int doc = postingsEnum.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postingsEnum.nextDoc()) {
+              termPostings.add(describe(leaf, doc, postingsEnum));
+            }
+          }
+          Collections.sort(termPostings);
+          postings.addAll(termPostings);
+        }
+      }
+    }
+    return postings;
+  }
+
+  private static String describe(AtomicReader leaf, int doc, DocsAndPositionsEnum postingsEnum) throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("  doc=").append(leaf.document(doc).get("id")).append(" freq=").append(postingsEnum.freq());
+    for (int i = 0; i < postingsEnum.freq(); i++) {
+      sb.append(' ').append(postingsEnum.nextPosition());
+      sb.append('[').append(postingsEnum.startOffset()).append('-').append(postingsEnum.endOffset()).append(']');
+      final BytesRef payload = postingsEnum.getPayload();
+      if (payload != null) {
+        sb.append('/').append(payload.utf8ToString());
+      }
+    }
+    return sb.toString();
+  }
+
+  private void assertSameIndex(List<Document> docs, boolean failOnToken, Executor executor) throws IOException {
+    try (Directory expected = index(docs, newConfig(failOnToken))) {
+      final IndexWriterConfig config = newConfig(failOnToken);
+      config.setFieldInversionExecutor(executor);
+      config.setParallelInversionMinChars(nextInt(0, 100));
+      try (Directory actual = index(docs, config)) {
+        assertSamePostings(postings(expected), postings(actual));
+      }
+    }
+  }
+
+  private static void assertSamePostings(List<String> expected, List<String> actual) {
+    for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+      assertEquals(expected.get(i), actual.get(i));
+    }
+    assertEquals(expected.size(), actual.size());
+  }
+
+  @Test
+  public void testSameIndex() throws IOException {
+    final AtomicInteger submitted = new AtomicInteger();
+    final Executor counting = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        submitted.incrementAndGet();
+        pool.execute(command);
+      }
+    };
+    assertSameIndex(randomDocs(), false, counting);
+    assertTrue(submitted.get() > 0);
+  }
+
+  @Test
+  public void testSameIndexWithFailingAnalyzer() throws IOException {
+    assertSameIndex(randomDocs(), true, pool);
+  }
+
+  @Test
+  public void testRejectedExecution() throws IOException {
+    final Executor rejecting = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+    assertSameIndex(randomDocs(), random().nextBoolean(), rejecting);
+  }
+
+  @Test
+  public void testSometimesRejectedExecution() throws IOException {
+    final Executor sometimesRejecting = new Executor() {
+      private int count;
+
+      @Override
+      public void execute(Runnable command) {
+        if (count++ % 2 == 0) {
+          throw new RejectedExecutionException();
+        }
+        pool.execute(command);
+      }
+    };
+    assertSameIndex(randomDocs(), random().nextBoolean(), sometimesRejecting);
+  }
+
+  private static List<Document> docsWithReaders(List<String> texts) {
+    final List<Document> docs = new ArrayList<>();
+    for (int i = 0; i < texts.size(); i += 2) {
+      final Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.YES));
+      doc.add(new TextField("body", texts.get(i), Field.Store.NO));
+      doc.add(new TextField("body", new StringReader(texts.get(i + 1))));
+      docs.add(doc);
+    }
+    return docs;
+  }
+
+  @Test
+  public void testReaderValuesAreAnalyzedInline() throws IOException {
+    final List<String> texts = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      texts.add(randomText(100));
+    }
+    final List<Runnable> submitted = new ArrayList<>();
+    final Executor recording = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        submitted.add(command);
+        command.run();
+      }
+    };
+    // each index consumes its own readers
+    try (Directory expected = index(docsWithReaders(texts), newConfig(false))) {
+      final IndexWriterConfig config = newConfig(false);
+      config.setFieldInversionExecutor(recording);
+      config.setParallelInversionMinChars(0);
+      try (Directory actual = index(docsWithReaders(texts), config)) {
+        assertSamePostings(postings(expected), postings(actual));
+      }
+    }
+    // only the String valued field of each document was submitted
+    assertEquals(texts.size() / 2, submitted.size());
+  }
+
+  /** The document fails on a field that is analyzed inline, while its
+   *  other fields are still being analyzed on the executor: addDocument
+   *  must not return before those tasks are done. */
+  @Test
+  public void testFailureWaitsForPendingAnalysis() throws Exception {
+    final List<Future<?>> submitted = new ArrayList<>();
+    final Executor slow = new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        submitted.add((Future<?>) command);
+        pool.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              Thread.sleep(20);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            command.run();
+          }
+        });
+      }
+    };
+    final IndexWriterConfig config = newConfig(true);
+    config.setFieldInversionExecutor(slow);
+    config.setParallelInversionMinChars(20);
+    try (Directory dir = newDirectory(); IndexWriter writer = new IndexWriter(dir, config)) {
+      final Document doc = new Document();
+      doc.add(new TextField("title", "quick fail", Field.Store.NO));
+      doc.add(new TextField("body", "the quick brown fox jumps over the lazy dog", Field.Store.NO));
+      doc.add(new TextField("body", "the lazy dog jumps over the quick brown fox", Field.Store.NO));
+      try {
+        writer.addDocument(doc);
+        fail("analysis should have failed");
+      } catch (IOException e) {
+        assertEquals("analyzer failed on purpose", e.getMessage());
+      }
+      assertEquals(2, submitted.size());
+      for (Future<?> task : submitted) {
+        assertTrue(task.isDone());
+      }
+
+      // the writer is still usable, and the failed document is deleted
+      doc.removeFields("title");
+      writer.addDocument(doc);
+      writer.commit();
+      try (DirectoryReader reader = DirectoryReader.open(dir)) {
+        assertEquals(1, reader.numDocs());
+        assertEquals(2, reader.maxDoc());
+        assertEquals(1, reader.docFreq(new Term("body", "fox")));
+      }
+    }
+  }
+}
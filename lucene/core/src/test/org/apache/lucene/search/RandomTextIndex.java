@@ -0,0 +1,216 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.CoreTestCase;
+import org.apache.lucene.util.Version;
+import org.junit.Assert;
+
+/**
+ * A small index of random text, that keeps the tokens of every document so
+ * that tests can check query matches against a brute-force evaluation.
+ * Words are drawn from a skewed vocabulary, so that some terms are in most
+ * documents and others in very few. A few documents are deleted.
+ */
+public final class RandomTextIndex implements Closeable {
+  public static final String FIELD = "body";
+  public static final String[] VOCABULARY = {
+    "a", "b", "c", "d", "e", "f", "g", "h", "i", "j",
+    "k", "l", "m", "n", "o", "p", "q", "r", "s", "t"
+  };
+
+  public final Random random;
+  public final Directory dir;
+  public final IndexReader reader;
+  public final IndexSearcher searcher;
+  // tokens of each document, by id:
+  public final String[][] docs;
+  public final boolean[] deleted;
+  private final NumericDocValues ids;
+
+  public RandomTextIndex(Random random, int numDocs) throws IOException {
+    this(random, numDocs, new CoreTestCase.WhitespaceAnalyzer());
+  }
+
+  public RandomTextIndex(Random random, int numDocs, Analyzer analyzer) throws IOException {
+    this.random = random;
+    dir = CoreTestCase.newDirectory();
+    IndexWriter iw = new IndexWriter(dir, new IndexWriterConfig(Version.LATEST, analyzer));
+    docs = new String[numDocs][];
+    deleted = new boolean[numDocs];
+    for (int id = 0; id < numDocs; id++) {
+      final int length = random.nextInt(10) == 0 ? 1 + random.nextInt(100) : 1 + random.nextInt(10);
+      docs[id] = new String[length];
+      final StringBuilder text = new StringBuilder();
+      for (int i = 0; i < length; i++) {
+        docs[id][i] = randomWord(random);
+        text.append(docs[id][i]).append(' ');
+      }
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(id), Field.Store.NO));
+      doc.add(new NumericDocValuesField("id", id));
+      doc.add(new TextField(FIELD, text.toString(), Field.Store.NO));
+      iw.addDocument(doc);
+      if (random.nextInt(100) == 0) {
+        iw.commit();
+      }
+    }
+    for (int id = 0; id < numDocs; id++) {
+      if (random.nextInt(20) == 0) {
+        iw.deleteDocuments(new Term("id", Integer.toString(id)));
+        deleted[id] = true;
+      }
+    }
+    reader = DirectoryReader.open(iw, true);
+    iw.close();
+    searcher = new IndexSearcher(reader);
+    ids = MultiDocValues.getNumericValues(reader, "id");
+  }
+
+  /** Returns a word of the vocabulary, earlier words being much more frequent. */
+  public static String randomWord(Random random) {
+    final double r = random.nextDouble();
+    return VOCABULARY[(int) (VOCABULARY.length * r * r * r)];
+  }
+
+  /** Returns the id of the given top-level document. */
+  public int id(int doc) {
+    return (int) ids.get(doc);
+  }
+
+  /** Returns the number of times the document with the given id contains the word. */
+  public int freq(int id, String word) {
+    int freq = 0;
+    for (String token : docs[id]) {
+      if (token.equals(word)) {
+        freq++;
+      }
+    }
+    return freq;
+  }
+
+  /** Searches all hits of the query, by id. */
+  public Map<Integer,Float> search(Query query) throws IOException {
+    final TopDocs hits = searcher.search(query, reader.maxDoc());
+    final Map<Integer,Float> scores = new HashMap<>();
+    for (ScoreDoc hit : hits.scoreDocs) {
+      Assert.assertNull(query + ": hit twice", scores.put(id(hit.doc), hit.score));
+    }
+    Assert.assertEquals(query.toString(), scores.size(), hits.totalHits);
+    return scores;
+  }
+
+  /**
+   * Checks that the query matches exactly the live documents whose ids are
+   * set in <code>expected</code>, both through a search and through the
+   * scorer of each leaf, moved with random mixes of nextDoc and advance.
+   * Scores of the scorers must agree with those of the search.
+   */
+  public void assertMatches(Query query, boolean[] expected) throws IOException {
+    final Map<Integer,Float> hits = search(query);
+    for (int id = 0; id < docs.length; id++) {
+      Assert.assertEquals(query + ": id=" + id + " " + describe(id), expected[id] && !deleted[id], hits.containsKey(id));
+    }
+
+    final Weight weight = searcher.createNormalizedWeight(query);
+    for (AtomicReaderContext context : reader.leaves()) {
+      final Bits liveDocs = context.reader().getLiveDocs();
+      final Scorer scorer = weight.scorer(context, liveDocs);
+      int next = nextMatch(context, expected, 0);
+      if (scorer == null) {
+        Assert.assertEquals(query + ": no scorer but a match", DocIdSetIterator.NO_MORE_DOCS, next);
+        continue;
+      }
+      Assert.assertEquals(-1, scorer.docID());
+      int doc = -1;
+      while (true) {
+        if (random.nextBoolean()) {
+          doc = scorer.nextDoc();
+        } else {
+          final int target = doc + 1 + random.nextInt(random.nextBoolean() ? 2 : 50);
+          if (target >= context.reader().maxDoc()) {
+            doc = scorer.advance(target);
+            Assert.assertEquals(query.toString(), DocIdSetIterator.NO_MORE_DOCS, doc);
+            break;
+          }
+          doc = scorer.advance(target);
+          next = nextMatch(context, expected, target);
+        }
+        Assert.assertEquals(query + ": leaf " + context.ord, next, doc);
+        Assert.assertEquals(doc, scorer.docID());
+        if (doc == DocIdSetIterator.NO_MORE_DOCS) {
+          break;
+        }
+        final float expectedScore = hits.get(id(context.docBase + doc));
+        Assert.assertEquals(query + ": score of id=" + id(context.docBase + doc), expectedScore, scorer.score(), 1e-5f * Math.abs(expectedScore));
+        next = nextMatch(context, expected, doc + 1);
+      }
+    }
+  }
+
+  // first live doc of the leaf, at or after target, that is expected to match:
+  private int nextMatch(AtomicReaderContext context, boolean[] expected, int target) {
+    final Bits liveDocs = context.reader().getLiveDocs();
+    for (int doc = target; doc < context.reader().maxDoc(); doc++) {
+      if ((liveDocs == null || liveDocs.get(doc)) && expected[id(context.docBase + doc)]) {
+        return doc;
+      }
+    }
+    return DocIdSetIterator.NO_MORE_DOCS;
+  }
+
+  /** Returns the text of the document with the given id. */
+  public String describe(int id) {
+    final StringBuilder sb = new StringBuilder("[");
+    for (String token : docs[id]) {
+      if (sb.length() > 1) {
+        sb.append(' ');
+      }
+      sb.append(token);
+    }
+    return sb.append(']').toString();
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+    dir.close();
+  }
+}
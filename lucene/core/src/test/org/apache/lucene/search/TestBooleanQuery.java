@@ -0,0 +1,193 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Map;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks random nested {@link BooleanQuery}s against a brute-force
+ * evaluation of their clauses, and that the document-at-a-time scorers,
+ * the out-of-order {@link BooleanScorer} and the pruning top hits
+ * collection agree on scores.
+ */
+public class TestBooleanQuery extends CoreTestCase {
+  private RandomTextIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    index = new RandomTextIndex(random(), atLeast(1000));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  @Test
+  public void testRandomQueries() throws Exception {
+    final int iters = atLeast(200);
+    for (int iter = 0; iter < iters; iter++) {
+      final BooleanQuery query = randomQuery(2);
+      index.assertMatches(query, matches(query));
+      assertSameScores(query);
+    }
+  }
+
+  @Test
+  public void testPureDisjunctions() throws Exception {
+    final int iters = atLeast(50);
+    for (int iter = 0; iter < iters; iter++) {
+      final BooleanQuery query = new BooleanQuery(random().nextBoolean());
+      final int numClauses = nextInt(1, 6);
+      for (int i = 0; i < numClauses; i++) {
+        query.add(termQuery(), Occur.SHOULD);
+      }
+      if (random().nextInt(3) == 0) {
+        query.add(termQuery(), Occur.MUST_NOT);
+      }
+      index.assertMatches(query, matches(query));
+      assertSameScores(query);
+
+      // collecting only the top hits may skip documents, but not change them:
+      final int numHits = nextInt(1, 20);
+      final TopDocs all = index.searcher.search(query, index.reader.maxDoc());
+      final TopScoreDocCollector collector = TopScoreDocCollector.create(numHits, true, false);
+      index.searcher.search(query, collector);
+      final TopDocs top = collector.topDocs();
+      assertEquals(Math.min(numHits, all.scoreDocs.length), top.scoreDocs.length);
+      assertTrue(top.totalHits <= all.totalHits);
+      for (int i = 0; i < top.scoreDocs.length; i++) {
+        assertEquals(query + " hit " + i, all.scoreDocs[i].score, top.scoreDocs[i].score, 1e-5f * all.scoreDocs[i].score);
+      }
+    }
+  }
+
+  @Test
+  public void testSingleClause() throws Exception {
+    for (String word : RandomTextIndex.VOCABULARY) {
+      final TermQuery term = new TermQuery(new Term(RandomTextIndex.FIELD, word));
+      final BooleanQuery query = new BooleanQuery();
+      query.add(term, random().nextBoolean() ? Occur.SHOULD : Occur.MUST);
+      assertEquals(index.search(term), index.search(query));
+    }
+  }
+
+  private TermQuery termQuery() {
+    final String word = random().nextInt(20) == 0 ? "missing" : RandomTextIndex.randomWord(random());
+    return new TermQuery(new Term(RandomTextIndex.FIELD, word));
+  }
+
+  private BooleanQuery randomQuery(int depth) {
+    final BooleanQuery query = new BooleanQuery(random().nextBoolean());
+    final int numClauses = nextInt(1, 5);
+    int numShould = 0;
+    for (int i = 0; i < numClauses; i++) {
+      final Query sub = depth > 0 && random().nextInt(4) == 0 ? randomQuery(depth - 1) : termQuery();
+      if (random().nextInt(5) == 0) {
+        sub.setBoost(nextInt(1, 4));
+      }
+      final Occur occur;
+      switch (random().nextInt(5)) {
+        case 0:
+          occur = Occur.MUST_NOT;
+          break;
+        case 1:
+        case 2:
+          occur = Occur.MUST;
+          break;
+        default:
+          occur = Occur.SHOULD;
+          numShould++;
+      }
+      query.add(sub, occur);
+    }
+    if (numShould > 0 && random().nextInt(3) == 0) {
+      query.setMinimumNumberShouldMatch(nextInt(0, numShould + 1));
+    }
+    return query;
+  }
+
+  /** Evaluates a query of nested {@link BooleanQuery}s and {@link TermQuery}s over the tokens of each document. */
+  private boolean[] matches(Query query) {
+    final boolean[] result = new boolean[index.docs.length];
+    if (query instanceof TermQuery) {
+      final Term term = ((TermQuery) query).getTerm();
+      for (int id = 0; id < result.length; id++) {
+        result[id] = term.field().equals(RandomTextIndex.FIELD) && index.freq(id, term.text()) > 0;
+      }
+      return result;
+    }
+    final BooleanQuery bq = (BooleanQuery) query;
+    final BooleanClause[] clauses = bq.getClauses();
+    final boolean[][] clauseMatches = new boolean[clauses.length][];
+    int numRequired = 0;
+    int numOptional = 0;
+    for (int i = 0; i < clauses.length; i++) {
+      clauseMatches[i] = matches(clauses[i].getQuery());
+      if (clauses[i].isRequired()) {
+        numRequired++;
+      } else if (!clauses[i].isProhibited()) {
+        numOptional++;
+      }
+    }
+    final int minShouldMatch = bq.getMinimumNumberShouldMatch();
+    for (int id = 0; id < result.length; id++) {
+      boolean match = numRequired + numOptional > 0;
+      int optionalMatches = 0;
+      for (int i = 0; i < clauses.length; i++) {
+        if (clauses[i].isRequired()) {
+          match &= clauseMatches[i][id];
+        } else if (clauses[i].isProhibited()) {
+          match &= !clauseMatches[i][id];
+        } else if (clauseMatches[i][id]) {
+          optionalMatches++;
+        }
+      }
+      if (numRequired == 0) {
+        // without required clauses, at least one optional clause must match
+        match &= optionalMatches >= Math.max(1, minShouldMatch);
+      } else {
+        match &= optionalMatches >= minShouldMatch;
+      }
+      result[id] = match;
+    }
+    return result;
+  }
+
+  /** Checks that in-order collection, which never uses {@link BooleanScorer},
+   *  finds the hits of a search with the same scores. */
+  private void assertSameScores(Query query) throws Exception {
+    final Map<Integer,Float> hits = index.search(query);
+    final TopScoreDocCollector collector = TopScoreDocCollector.create(index.reader.maxDoc(), true);
+    index.searcher.search(query, collector);
+    final TopDocs inOrder = collector.topDocs();
+    assertEquals(query.toString(), hits.size(), inOrder.totalHits);
+    for (ScoreDoc hit : inOrder.scoreDocs) {
+      final int id = index.id(hit.doc);
+      assertTrue(query + ": id=" + id, hits.containsKey(id));
+      assertEquals(query + ": id=" + id, hits.get(id), hit.score, 1e-5f * hit.score);
+    }
+  }
+}
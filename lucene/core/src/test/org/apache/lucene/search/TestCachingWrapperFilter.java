@@ -0,0 +1,157 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCachingWrapperFilter extends CoreTestCase {
+  private Directory dir;
+  private IndexReader reader;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = newDirectory();
+    IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig());
+    final int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(new StringField("all", "all", Field.Store.NO));
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+      doc.add(new NumericDocValuesField("long", random().nextInt(100)));
+      iw.addDocument(doc);
+      if (random().nextInt(100) == 0) {
+        iw.commit();
+      }
+    }
+    for (int i = 0; i < numDocs / 10; i++) {
+      iw.deleteDocuments(new Term("id", Integer.toString(random().nextInt(numDocs))));
+    }
+    reader = DirectoryReader.open(iw, true);
+    iw.close();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+  }
+
+  private Filter[] docValuesFilters() {
+    final List<Filter> filters = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      final long lower = random().nextInt(100);
+      final long upper = lower + random().nextInt(30);
+      filters.add(DocValuesRangeFilter.newLongRange("long", lower, upper, random().nextBoolean(), random().nextBoolean()));
+      filters.add(DocValuesTermsFilter.newLongTerms("long", random().nextInt(100), random().nextInt(100)));
+    }
+    // dense enough to be cached as a bit set:
+    filters.add(DocValuesRangeFilter.newLongRange("long", 10L, null, true, true));
+    return filters.toArray(new Filter[filters.size()]);
+  }
+
+  private static int[] docs(TopDocs topDocs) {
+    final int[] docs = new int[topDocs.scoreDocs.length];
+    for (int i = 0; i < docs.length; i++) {
+      docs[i] = topDocs.scoreDocs[i].doc;
+    }
+    Arrays.sort(docs);
+    return docs;
+  }
+
+  @Test
+  public void testCachedSetIsReused() throws Exception {
+    final FilterCache cache = new FilterCache(FilterCache.DEFAULT_MAX_RAM_BYTES_USED);
+    final Filter filter = DocValuesRangeFilter.newLongRange("long", 0L, 50L, true, true);
+    for (AtomicReaderContext context : reader.leaves()) {
+      final DocIdSet cached = cache.getDocIdSet(filter, context);
+      // the docvalues set is a view over per-thread docvalues and must be copied
+      assertFalse(cached instanceof DocValuesDocIdSet);
+      assertTrue(cached.isCacheable());
+      assertSame(cached, cache.getDocIdSet(filter, context));
+    }
+    assertEquals(reader.leaves().size(), cache.getMissCount());
+    assertEquals(reader.leaves().size(), cache.getHitCount());
+  }
+
+  @Test
+  public void testConcurrentSearches() throws Exception {
+    final IndexSearcher searcher = new IndexSearcher(reader);
+    final Query query = new TermQuery(new Term("all", "all"));
+    final Filter[] filters = docValuesFilters();
+    final int[][] expected = new int[filters.length][];
+    for (int i = 0; i < filters.length; i++) {
+      expected[i] = docs(searcher.search(query, filters[i], reader.maxDoc()));
+    }
+
+    // a small budget makes entries get evicted and recomputed concurrently
+    final FilterCache cache = new FilterCache(random().nextBoolean() ? 1024 : FilterCache.DEFAULT_MAX_RAM_BYTES_USED);
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicBoolean failed = new AtomicBoolean();
+    final Thread[] threads = new Thread[nextInt(2, 6)];
+    final int iters = atLeast(50);
+    final long seed = random().nextLong();
+    for (int t = 0; t < threads.length; t++) {
+      final long threadSeed = seed + t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            final Random random = new Random(threadSeed);
+            start.await();
+            for (int iter = 0; iter < iters && failed.get() == false; iter++) {
+              final int i = random.nextInt(filters.length);
+              final Filter cached = new CachingWrapperFilter(filters[i], cache);
+              final int[] actual = docs(searcher.search(query, cached, reader.maxDoc()));
+              assertArrayEquals("filter=" + filters[i], expected[i], actual);
+            }
+          } catch (Throwable t) {
+            failed.set(true);
+            throw new RuntimeException(t);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertFalse(failed.get());
+    assertTrue(cache.getHitCount() + cache.getMissCount() > 0);
+  }
+}
@@ -0,0 +1,284 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.FloatField;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the values {@link FieldCache#DEFAULT} uninverts from trie encoded
+ * numeric fields and string fields against the values indexed for each
+ * document, and that the cache stays within its RAM budget.
+ */
+public class TestFieldCache extends CoreTestCase {
+  private static final int[] STEPS = new int[] {1, 2, 4, 8, 16, Integer.MAX_VALUE};
+  private static final String[] WORDS = new String[] {"", "a", "b", "ab", "ba", "abc", "c"};
+
+  private Directory dir;
+  private IndexReader reader;
+  private long maxRamBytesUsed;
+  // values of each document, by id, null if missing:
+  private Integer[] ints;
+  private Long[] longs;
+  private Float[] floats;
+  private Double[] doubles;
+  private String[] strings;
+  private String[][] multi;
+
+  @Before
+  public void setUp() throws Exception {
+    maxRamBytesUsed = FieldCache.DEFAULT.getMaxRamBytesUsed();
+    FieldCache.DEFAULT.purgeAllCaches();
+    dir = newDirectory();
+    IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig());
+    final int numDocs = atLeast(300);
+    ints = new Integer[numDocs];
+    longs = new Long[numDocs];
+    floats = new Float[numDocs];
+    doubles = new Double[numDocs];
+    strings = new String[numDocs];
+    multi = new String[numDocs][];
+    // only full precision terms may be uninverted, whatever the precision step
+    final int step = STEPS[random().nextInt(STEPS.length)];
+    final FieldType intType = numericType(IntField.TYPE_NOT_STORED, step);
+    final FieldType longType = numericType(LongField.TYPE_NOT_STORED, step);
+    final FieldType floatType = numericType(FloatField.TYPE_NOT_STORED, step);
+    final FieldType doubleType = numericType(DoubleField.TYPE_NOT_STORED, step);
+    for (int id = 0; id < numDocs; id++) {
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(id), Field.Store.NO));
+      doc.add(new NumericDocValuesField("id", id));
+      if (random().nextInt(10) != 0) {
+        ints[id] = random().nextBoolean() ? random().nextInt() : nextInt(-10, 10);
+        doc.add(new IntField("int", ints[id], intType));
+      }
+      if (random().nextInt(10) != 0) {
+        longs[id] = random().nextBoolean() ? random().nextLong() : nextInt(-10, 10);
+        doc.add(new LongField("long", longs[id], longType));
+      }
+      if (random().nextInt(10) != 0) {
+        floats[id] = random().nextBoolean() ? random().nextFloat() * Float.MAX_VALUE : -random().nextFloat();
+        doc.add(new FloatField("float", floats[id], floatType));
+      }
+      if (random().nextInt(10) != 0) {
+        doubles[id] = random().nextBoolean() ? random().nextDouble() * Double.MAX_VALUE : -random().nextDouble();
+        doc.add(new DoubleField("double", doubles[id], doubleType));
+      }
+      if (random().nextInt(10) != 0) {
+        strings[id] = WORDS[random().nextInt(WORDS.length)];
+        doc.add(new StringField("string", strings[id], Field.Store.NO));
+      }
+      multi[id] = new String[random().nextInt(4)];
+      for (int i = 0; i < multi[id].length; i++) {
+        multi[id][i] = WORDS[random().nextInt(WORDS.length)];
+        doc.add(new StringField("multi", multi[id][i], Field.Store.NO));
+      }
+      iw.addDocument(doc);
+      if (random().nextInt(50) == 0) {
+        iw.commit();
+      }
+    }
+    for (int id = 0; id < numDocs; id++) {
+      if (random().nextInt(20) == 0) {
+        iw.deleteDocuments(new Term("id", Integer.toString(id)));
+      }
+    }
+    reader = DirectoryReader.open(iw, true);
+    iw.close();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FieldCache.DEFAULT.setMaxRamBytesUsed(maxRamBytesUsed);
+    FieldCache.DEFAULT.purgeAllCaches();
+    reader.close();
+    dir.close();
+  }
+
+  private static FieldType numericType(FieldType ref, int precisionStep) {
+    final FieldType type = new FieldType(ref);
+    type.setNumericPrecisionStep(precisionStep);
+    type.freeze();
+    return type;
+  }
+
+  /** Checks every cached numeric value of the leaf, for live documents. */
+  private void assertNumerics(AtomicReader leaf) throws Exception {
+    final NumericDocValues ids = leaf.getNumericDocValues("id");
+    final Bits liveDocs = leaf.getLiveDocs();
+    final FieldCache cache = FieldCache.DEFAULT;
+    final FieldCache.Ints intValues = cache.getInts(leaf, "int", random().nextBoolean());
+    final FieldCache.Longs longValues = cache.getLongs(leaf, "long", random().nextBoolean());
+    final FieldCache.Floats floatValues = cache.getFloats(leaf, "float", random().nextBoolean());
+    final FieldCache.Doubles doubleValues = cache.getDoubles(leaf, "double", random().nextBoolean());
+    final Bits[] docsWithField = new Bits[] {
+      cache.getDocsWithField(leaf, "int"), cache.getDocsWithField(leaf, "long"),
+      cache.getDocsWithField(leaf, "float"), cache.getDocsWithField(leaf, "double")
+    };
+    for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+      if (liveDocs != null && liveDocs.get(doc) == false) {
+        continue;
+      }
+      final int id = (int) ids.get(doc);
+      final Number[] expected = new Number[] {ints[id], longs[id], floats[id], doubles[id]};
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals("id=" + id, expected[i] != null, docsWithField[i].get(doc));
+      }
+      assertEquals("id=" + id, ints[id] == null ? 0 : ints[id], intValues.get(doc));
+      assertEquals("id=" + id, longs[id] == null ? 0 : longs[id], longValues.get(doc));
+      assertEquals("id=" + id, floats[id] == null ? 0 : floats[id], floatValues.get(doc), 0f);
+      assertEquals("id=" + id, doubles[id] == null ? 0 : doubles[id], doubleValues.get(doc), 0d);
+    }
+  }
+
+  /** Checks the cached terms, terms index and term ords of the leaf, for live documents. */
+  private void assertTerms(AtomicReader leaf) throws Exception {
+    final NumericDocValues ids = leaf.getNumericDocValues("id");
+    final Bits liveDocs = leaf.getLiveDocs();
+    final BinaryDocValues terms = FieldCache.DEFAULT.getTerms(leaf, "string", random().nextBoolean());
+    final SortedDocValues termsIndex = FieldCache.DEFAULT.getTermsIndex(leaf, "string");
+    final SortedSetDocValues docTermOrds = FieldCache.DEFAULT.getDocTermOrds(leaf, "multi");
+    final Bits docsWithField = FieldCache.DEFAULT.getDocsWithField(leaf, "string");
+    // ords follow the order of the terms
+    for (int ord = 1; ord < termsIndex.getValueCount(); ord++) {
+      assertTrue(BytesRef.deepCopyOf(termsIndex.lookupOrd(ord - 1)).compareTo(termsIndex.lookupOrd(ord)) < 0);
+    }
+    for (long ord = 1; ord < docTermOrds.getValueCount(); ord++) {
+      assertTrue(BytesRef.deepCopyOf(docTermOrds.lookupOrd(ord - 1)).compareTo(docTermOrds.lookupOrd(ord)) < 0);
+    }
+    for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+      if (liveDocs != null && liveDocs.get(doc) == false) {
+        continue;
+      }
+      final int id = (int) ids.get(doc);
+      assertEquals("id=" + id, strings[id] != null, docsWithField.get(doc));
+      final int ord = termsIndex.getOrd(doc);
+      if (strings[id] == null) {
+        assertEquals("id=" + id, -1, ord);
+        assertEquals("id=" + id, new BytesRef(), terms.get(doc));
+      } else {
+        assertEquals("id=" + id, new BytesRef(strings[id]), terms.get(doc));
+        assertEquals("id=" + id, new BytesRef(strings[id]), termsIndex.lookupOrd(ord));
+      }
+      final TreeSet<String> expected = new TreeSet<>(Arrays.asList(multi[id]));
+      final TreeSet<String> actual = new TreeSet<>();
+      docTermOrds.setDocument(doc);
+      long previous = -1;
+      for (long termOrd = docTermOrds.nextOrd(); termOrd != SortedSetDocValues.NO_MORE_ORDS; termOrd = docTermOrds.nextOrd()) {
+        assertTrue(termOrd > previous);
+        actual.add(docTermOrds.lookupOrd(termOrd).utf8ToString());
+        previous = termOrd;
+      }
+      assertEquals("id=" + id, expected, actual);
+    }
+  }
+
+  /** Checks that the accounted size is the sum of the cached values and fits the budget. */
+  private void assertRamBytesUsed() {
+    long sum = 0;
+    for (FieldCache.CacheEntry entry : FieldCache.DEFAULT.getCacheEntries()) {
+      sum += entry.ramBytesUsed();
+    }
+    assertEquals(sum, FieldCache.DEFAULT.ramBytesUsed());
+    assertTrue(sum + " > " + FieldCache.DEFAULT.getMaxRamBytesUsed(), sum <= FieldCache.DEFAULT.getMaxRamBytesUsed());
+  }
+
+  @Test
+  public void testValues() throws Exception {
+    for (AtomicReaderContext context : reader.leaves()) {
+      assertNumerics(context.reader());
+      assertTerms(context.reader());
+      // again from the cache
+      assertNumerics(context.reader());
+      assertTerms(context.reader());
+    }
+    assertRamBytesUsed();
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    for (AtomicReaderContext context : reader.leaves()) {
+      assertNumerics(context.reader());
+      assertTerms(context.reader());
+    }
+    final long total = FieldCache.DEFAULT.ramBytesUsed();
+    assertTrue(total > 0);
+    // values are evicted and uninverted again as the searches go on
+    FieldCache.DEFAULT.setMaxRamBytesUsed(total / 2 + (long) (random().nextDouble() * total / 2));
+    assertRamBytesUsed();
+    final int iters = atLeast(20);
+    for (int iter = 0; iter < iters; iter++) {
+      final AtomicReader leaf = reader.leaves().get(random().nextInt(reader.leaves().size())).reader();
+      if (random().nextBoolean()) {
+        assertNumerics(leaf);
+      } else {
+        assertTerms(leaf);
+      }
+      assertRamBytesUsed();
+    }
+    FieldCache.DEFAULT.setMaxRamBytesUsed(0);
+    assertEquals(0, FieldCache.DEFAULT.getCacheEntries().length);
+    assertEquals(0, FieldCache.DEFAULT.ramBytesUsed());
+    // values larger than the budget are still returned
+    assertNumerics(reader.leaves().get(0).reader());
+    assertTerms(reader.leaves().get(0).reader());
+    assertRamBytesUsed();
+  }
+
+  @Test
+  public void testPurgeByCacheKey() throws Exception {
+    for (AtomicReaderContext context : reader.leaves()) {
+      assertNumerics(context.reader());
+    }
+    final Object key = reader.leaves().get(0).reader().getCoreCacheKey();
+    FieldCache.DEFAULT.purgeByCacheKey(key);
+    for (FieldCache.CacheEntry entry : FieldCache.DEFAULT.getCacheEntries()) {
+      assertNotSame(key, entry.getReaderKey());
+    }
+    assertRamBytesUsed();
+    assertNumerics(reader.leaves().get(0).reader());
+    assertRamBytesUsed();
+  }
+}
@@ -0,0 +1,317 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleDocValuesField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FloatDocValuesField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the hits and sort values of searches sorted by doc values, with
+ * ties, missing values and reversed fields, against the values indexed
+ * for each document sorted with a plain {@link Comparator}.
+ */
+public class TestFieldSort extends CoreTestCase {
+  private static final String[] WORDS = new String[] {"a", "b", "c"};
+  private static final SortField.Type[] TYPES = new SortField.Type[] {
+    SortField.Type.INT, SortField.Type.LONG, SortField.Type.FLOAT, SortField.Type.DOUBLE,
+    SortField.Type.STRING, SortField.Type.STRING_VAL, SortField.Type.SCORE, SortField.Type.DOC
+  };
+
+  private Directory dir;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+  // values of each document, by top-level doc id, null if missing:
+  private String[] texts;
+  private Integer[] ints;
+  private Long[] longs;
+  private Float[] floats;
+  private Double[] doubles;
+  private String[] strings;
+  private boolean[] deleted;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = newDirectory();
+    IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig());
+    final int numDocs = atLeast(500);
+    texts = new String[numDocs];
+    ints = new Integer[numDocs];
+    longs = new Long[numDocs];
+    floats = new Float[numDocs];
+    doubles = new Double[numDocs];
+    strings = new String[numDocs];
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+      doc.add(new NumericDocValuesField("id", i));
+      final StringBuilder text = new StringBuilder();
+      final int numWords = nextInt(1, 3);
+      for (int j = 0; j < numWords; j++) {
+        text.append(WORDS[random().nextInt(WORDS.length)]).append(' ');
+      }
+      texts[i] = text.toString();
+      doc.add(new TextField("text", texts[i], Field.Store.NO));
+      // few distinct values, so that many hits tie
+      if (random().nextInt(10) != 0) {
+        ints[i] = random().nextInt(20) == 0 ? random().nextInt() : nextInt(-5, 5);
+        doc.add(new NumericDocValuesField("int", ints[i]));
+      }
+      if (random().nextInt(10) != 0) {
+        longs[i] = random().nextInt(20) == 0 ? random().nextLong() : nextInt(-5, 5);
+        doc.add(new NumericDocValuesField("long", longs[i]));
+      }
+      if (random().nextInt(10) != 0) {
+        floats[i] = nextInt(-5, 5) / 2f;
+        doc.add(new FloatDocValuesField("float", floats[i]));
+      }
+      if (random().nextInt(10) != 0) {
+        doubles[i] = nextInt(-5, 5) / 2d;
+        doc.add(new DoubleDocValuesField("double", doubles[i]));
+      }
+      if (random().nextInt(10) != 0) {
+        // the empty string is a value, not a missing one
+        final StringBuilder string = new StringBuilder();
+        final int length = random().nextInt(3);
+        for (int j = 0; j < length; j++) {
+          string.append(WORDS[random().nextInt(WORDS.length)]);
+        }
+        strings[i] = string.toString();
+        doc.add(new SortedDocValuesField("sorted", new BytesRef(strings[i])));
+        doc.add(new BinaryDocValuesField("binary", new BytesRef(strings[i])));
+      }
+      iw.addDocument(doc);
+      if (random().nextInt(50) == 0) {
+        iw.commit();
+      }
+    }
+    for (int i = 0; i < numDocs; i++) {
+      if (random().nextInt(20) == 0) {
+        iw.deleteDocuments(new Term("id", Integer.toString(i)));
+      }
+    }
+    reader = DirectoryReader.open(iw, true);
+    iw.close();
+    searcher = new IndexSearcher(reader);
+
+    // merges may reorder documents: index the values by top-level doc id
+    final NumericDocValues ids = MultiDocValues.getNumericValues(reader, "id");
+    final Bits liveDocs = MultiFields.getLiveDocs(reader);
+    final int maxDoc = reader.maxDoc();
+    texts = reorder(texts, new String[maxDoc], ids);
+    ints = reorder(ints, new Integer[maxDoc], ids);
+    longs = reorder(longs, new Long[maxDoc], ids);
+    floats = reorder(floats, new Float[maxDoc], ids);
+    doubles = reorder(doubles, new Double[maxDoc], ids);
+    strings = reorder(strings, new String[maxDoc], ids);
+    deleted = new boolean[maxDoc];
+    for (int doc = 0; doc < maxDoc; doc++) {
+      deleted[doc] = liveDocs != null && liveDocs.get(doc) == false;
+    }
+  }
+
+  private static <T> T[] reorder(T[] byId, T[] byDoc, NumericDocValues ids) {
+    for (int doc = 0; doc < byDoc.length; doc++) {
+      byDoc[doc] = byId[(int) ids.get(doc)];
+    }
+    return byDoc;
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+  }
+
+  private SortField randomSortField() {
+    final SortField.Type type = TYPES[random().nextInt(TYPES.length)];
+    final boolean reverse = random().nextBoolean();
+    switch (type) {
+      case SCORE:
+        return new SortField(null, type, reverse);
+      case DOC:
+        return new SortField(null, type, reverse);
+      case STRING_VAL:
+        return new SortField("binary", type, reverse);
+      case STRING: {
+        final SortField field = new SortField("sorted", type, reverse);
+        final int missing = random().nextInt(3);
+        if (missing > 0) {
+          field.setMissingValue(missing == 1 ? SortField.STRING_FIRST : SortField.STRING_LAST);
+        }
+        return field;
+      }
+      default: {
+        final SortField field = new SortField(type.name().toLowerCase(Locale.ROOT), type, reverse);
+        if (random().nextBoolean()) {
+          final int missing = nextInt(-6, 6);
+          switch (type) {
+            case INT: field.setMissingValue(missing); break;
+            case LONG: field.setMissingValue((long) missing); break;
+            case FLOAT: field.setMissingValue(missing / 2f); break;
+            default: field.setMissingValue(missing / 2d); break;
+          }
+        }
+        return field;
+      }
+    }
+  }
+
+  /** Returns the sort value the field should report for the document. */
+  private Object expectedValue(SortField field, int doc, Map<Integer,Float> scores) {
+    final Object missing = field.missingValue;
+    switch (field.getType()) {
+      case SCORE: return scores.get(doc);
+      case DOC: return doc;
+      case INT: return ints[doc] != null ? ints[doc] : missing != null ? missing : Integer.valueOf(0);
+      case LONG: return longs[doc] != null ? longs[doc] : missing != null ? missing : Long.valueOf(0);
+      case FLOAT: return floats[doc] != null ? floats[doc] : missing != null ? missing : Float.valueOf(0);
+      case DOUBLE: return doubles[doc] != null ? doubles[doc] : missing != null ? missing : Double.valueOf(0);
+      default: return strings[doc] == null ? null : new BytesRef(strings[doc]);
+    }
+  }
+
+  private Comparator<Integer> comparator(final Sort sort, final Map<Integer,Float> scores) {
+    return new Comparator<Integer>() {
+      @Override
+      @SuppressWarnings({"unchecked", "rawtypes"})
+      public int compare(Integer doc1, Integer doc2) {
+        for (SortField field : sort.getSort()) {
+          final Object value1 = expectedValue(field, doc1, scores);
+          final Object value2 = expectedValue(field, doc2, scores);
+          int cmp;
+          if (value1 == null || value2 == null) {
+            // missing strings sort first unless STRING_LAST is set
+            final int missingCmp = field.missingValue == SortField.STRING_LAST ? 1 : -1;
+            cmp = value1 == value2 ? 0 : value1 == null ? missingCmp : -missingCmp;
+          } else {
+            cmp = ((Comparable) value1).compareTo(value2);
+          }
+          if (field.getType() == SortField.Type.SCORE) {
+            // higher scores sort first
+            cmp = -cmp;
+          }
+          if (cmp != 0) {
+            return field.getReverse() ? -cmp : cmp;
+          }
+        }
+        return Integer.compare(doc1, doc2);
+      }
+    };
+  }
+
+  private Query randomQuery() {
+    if (random().nextBoolean()) {
+      return new TermQuery(new Term("text", WORDS[random().nextInt(WORDS.length)]));
+    }
+    // may be scored out of order
+    final BooleanQuery query = new BooleanQuery();
+    query.add(new TermQuery(new Term("text", "a")), Occur.SHOULD);
+    query.add(new TermQuery(new Term("text", "b")), Occur.SHOULD);
+    return query;
+  }
+
+  private boolean matches(Query query, int doc) {
+    if (query instanceof TermQuery) {
+      return texts[doc].contains(((TermQuery) query).getTerm().text() + " ");
+    }
+    return texts[doc].contains("a ") || texts[doc].contains("b ");
+  }
+
+  @Test
+  public void testSort() throws Exception {
+    final int iters = atLeast(100);
+    for (int iter = 0; iter < iters; iter++) {
+      final Query query = randomQuery();
+      final SortField[] fields = new SortField[nextInt(1, 3)];
+      for (int i = 0; i < fields.length; i++) {
+        fields[i] = randomSortField();
+      }
+      final Sort sort = new Sort(fields);
+
+      final Map<Integer,Float> scores = new HashMap<>();
+      for (ScoreDoc hit : searcher.search(query, reader.maxDoc()).scoreDocs) {
+        scores.put(hit.doc, hit.score);
+      }
+      final List<Integer> expected = new ArrayList<>();
+      for (int doc = 0; doc < reader.maxDoc(); doc++) {
+        if (deleted[doc] == false && matches(query, doc)) {
+          expected.add(doc);
+        }
+      }
+      assertEquals(expected.size(), scores.size());
+      Collections.sort(expected, comparator(sort, scores));
+
+      final int n = nextInt(1, expected.size() + 10);
+      final boolean doDocScores = random().nextBoolean();
+      final boolean doMaxScore = random().nextBoolean();
+      final TopFieldDocs topDocs = searcher.search(query, null, n, sort, doDocScores, doMaxScore);
+      final String message = query + " " + sort + " n=" + n;
+      assertEquals(message, expected.size(), topDocs.totalHits);
+      assertEquals(message, Math.min(n, expected.size()), topDocs.scoreDocs.length);
+      for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+        final FieldDoc hit = (FieldDoc) topDocs.scoreDocs[i];
+        final int doc = expected.get(i);
+        assertEquals(message + " hit " + i, doc, hit.doc);
+        for (int j = 0; j < fields.length; j++) {
+          assertEquals(message + " hit " + i + " " + fields[j], expectedValue(fields[j], doc, scores), hit.fields[j]);
+        }
+        if (doDocScores || doMaxScore) {
+          // tracking the max score also scores each hit
+          assertEquals(message, scores.get(doc), hit.score, 0f);
+        } else {
+          assertTrue(message, Float.isNaN(hit.score));
+        }
+      }
+      if (doMaxScore) {
+        assertEquals(message, Collections.max(scores.values()), topDocs.getMaxScore(), 0f);
+      } else {
+        assertTrue(message, Float.isNaN(topDocs.getMaxScore()));
+      }
+    }
+  }
+}
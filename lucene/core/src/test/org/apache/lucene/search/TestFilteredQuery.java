@@ -0,0 +1,202 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.CoreTestCase;
+import org.apache.lucene.util.FixedBitSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks {@link FilteredQuery} with every {@link FilteredQuery.FilterStrategy},
+ * including {@link FilteredQuery.CostBasedFilterStrategy}, against the hits
+ * of the unfiltered query that the filter accepts, for filters of random
+ * density with and without random access.
+ */
+public class TestFilteredQuery extends CoreTestCase {
+  private RandomTextIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    index = new RandomTextIndex(random(), atLeast(1000));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  /**
+   * Accepts the documents whose id is set. Without random access, its
+   * iterator reports the exact number of documents as its cost, where
+   * {@link FixedBitSet} reports the size of the segment.
+   */
+  private static class IdFilter extends Filter {
+    final boolean[] accept;
+    final boolean randomAccess;
+
+    IdFilter(boolean[] accept, boolean randomAccess) {
+      this.accept = accept;
+      this.randomAccess = randomAccess;
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+      final NumericDocValues ids = context.reader().getNumericDocValues("id");
+      final FixedBitSet bits = new FixedBitSet(context.reader().maxDoc());
+      for (int doc = 0; doc < bits.length(); doc++) {
+        if (accept[(int) ids.get(doc)] && (acceptDocs == null || acceptDocs.get(doc))) {
+          bits.set(doc);
+        }
+      }
+      if (randomAccess) {
+        return bits;
+      }
+      final int cardinality = bits.cardinality();
+      return new DocIdSet() {
+        @Override
+        public DocIdSetIterator iterator() {
+          final DocIdSetIterator in = bits.iterator();
+          return new DocIdSetIterator() {
+            @Override
+            public int docID() {
+              return in.docID();
+            }
+
+            @Override
+            public int nextDoc() throws IOException {
+              return in.nextDoc();
+            }
+
+            @Override
+            public int advance(int target) throws IOException {
+              return in.advance(target);
+            }
+
+            @Override
+            public long cost() {
+              return cardinality;
+            }
+          };
+        }
+
+        @Override
+        public long ramBytesUsed() {
+          return bits.ramBytesUsed();
+        }
+      };
+    }
+
+    @Override
+    public String toString() {
+      return "IdFilter(randomAccess=" + randomAccess + ")";
+    }
+  }
+
+  private boolean[] randomIds(double density) {
+    final boolean[] ids = new boolean[index.docs.length];
+    for (int id = 0; id < ids.length; id++) {
+      ids[id] = random().nextDouble() < density;
+    }
+    return ids;
+  }
+
+  private Query randomQuery() {
+    final Query term1 = new TermQuery(new Term(RandomTextIndex.FIELD, RandomTextIndex.randomWord(random())));
+    if (random().nextBoolean()) {
+      return term1;
+    }
+    final Query term2 = new TermQuery(new Term(RandomTextIndex.FIELD, RandomTextIndex.randomWord(random())));
+    final BooleanQuery query = new BooleanQuery();
+    query.add(term1, random().nextBoolean() ? Occur.MUST : Occur.SHOULD);
+    query.add(term2, random().nextBoolean() ? Occur.MUST : Occur.SHOULD);
+    return query;
+  }
+
+  /** Checks that the filtered query matches and scores the hits of the query that the filter accepts. */
+  private void assertFiltered(Query query, boolean[] accept, Filter filter,
+      FilteredQuery.FilterStrategy strategy) throws IOException {
+    final Map<Integer,Float> hits = index.search(query);
+    final boolean[] expected = new boolean[index.docs.length];
+    for (int id = 0; id < expected.length; id++) {
+      expected[id] = accept[id] && hits.containsKey(id);
+    }
+    final FilteredQuery filtered = new FilteredQuery(query, filter, strategy);
+    index.assertMatches(filtered, expected);
+    for (Map.Entry<Integer,Float> hit : index.search(filtered).entrySet()) {
+      final float score = hits.get(hit.getKey());
+      assertEquals(filtered + " " + strategy, score, hit.getValue(), 1e-5f * score);
+    }
+  }
+
+  @Test
+  public void testStrategies() throws Exception {
+    final double[] densities = new double[] {0, 0.001, 0.01, 0.1, 0.5, 0.99, 1};
+    final int iters = atLeast(50);
+    for (int iter = 0; iter < iters; iter++) {
+      final boolean[] accept = randomIds(densities[random().nextInt(densities.length)]);
+      Filter filter = new IdFilter(accept, random().nextBoolean());
+      if (random().nextBoolean()) {
+        filter = new CachingWrapperFilter(filter);
+      }
+      final Query query = randomQuery();
+      final FilteredQuery.FilterStrategy[] strategies = new FilteredQuery.FilterStrategy[] {
+        FilteredQuery.RANDOM_ACCESS_FILTER_STRATEGY,
+        FilteredQuery.LEAP_FROG_FILTER_FIRST_STRATEGY,
+        FilteredQuery.LEAP_FROG_QUERY_FIRST_STRATEGY,
+        FilteredQuery.QUERY_FIRST_FILTER_STRATEGY,
+        new FilteredQuery.CostBasedFilterStrategy()
+      };
+      for (FilteredQuery.FilterStrategy strategy : strategies) {
+        assertFiltered(query, accept, filter, strategy);
+      }
+    }
+  }
+
+  @Test
+  public void testCostBasedChoices() throws Exception {
+    final Query query = new TermQuery(new Term(RandomTextIndex.FIELD, RandomTextIndex.VOCABULARY[0]));
+
+    // a filter that accepts every document is passed as acceptDocs
+    final boolean[] all = randomIds(1);
+    FilteredQuery.CostBasedFilterStrategy strategy = new FilteredQuery.CostBasedFilterStrategy();
+    assertFiltered(query, all, new IdFilter(all, true), strategy);
+    assertTrue(strategy.getRandomAccessCount() > 0);
+    assertEquals(0, strategy.getQueryFirstCount());
+    assertEquals(0, strategy.getLeapFrogQueryFirstCount());
+    assertEquals(0, strategy.getLeapFrogFilterFirstCount());
+
+    // without random access, the sparser side leads
+    final boolean[] sparse = randomIds(0.01);
+    strategy = new FilteredQuery.CostBasedFilterStrategy();
+    assertFiltered(query, sparse, new IdFilter(sparse, false), strategy);
+    assertEquals(0, strategy.getRandomAccessCount());
+    assertEquals(0, strategy.getQueryFirstCount());
+    assertEquals(0, strategy.getLeapFrogQueryFirstCount());
+    assertTrue(strategy.getLeapFrogFilterFirstCount() > 0);
+  }
+}
@@ -0,0 +1,222 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the terms, boosts and hits of {@link FuzzyQuery} against the edit
+ * distance of every indexed term to the query term, including when
+ * <code>maxExpansions</code> only keeps the best terms and the enum lowers
+ * its edit distance as the queue fills up.
+ */
+public class TestFuzzyQuery extends CoreTestCase {
+  private static final String FIELD = "term";
+  private static final char[] ALPHABET = new char[] {'a', 'b', 'c', 'd'};
+
+  private Directory dir;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+  // terms of each document, by id:
+  private String[][] terms;
+  private TreeSet<String> allTerms;
+  private int[] ids;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = newDirectory();
+    IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig());
+    final int numDocs = atLeast(300);
+    terms = new String[numDocs][];
+    allTerms = new TreeSet<>();
+    // no deletions: the best terms are picked among all terms of the dictionary
+    for (int id = 0; id < numDocs; id++) {
+      Document doc = new Document();
+      doc.add(new NumericDocValuesField("id", id));
+      terms[id] = new String[nextInt(1, 3)];
+      for (int i = 0; i < terms[id].length; i++) {
+        terms[id][i] = randomString();
+        allTerms.add(terms[id][i]);
+        doc.add(new StringField(FIELD, terms[id][i], Field.Store.NO));
+      }
+      iw.addDocument(doc);
+      if (random().nextInt(50) == 0) {
+        iw.commit();
+      }
+    }
+    reader = DirectoryReader.open(iw, true);
+    iw.close();
+    searcher = new IndexSearcher(reader);
+    final NumericDocValues idValues = MultiDocValues.getNumericValues(reader, "id");
+    ids = new int[reader.maxDoc()];
+    for (int doc = 0; doc < ids.length; doc++) {
+      ids[doc] = (int) idValues.get(doc);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+  }
+
+  private String randomString() {
+    final StringBuilder s = new StringBuilder();
+    final int length = random().nextInt(7);
+    for (int i = 0; i < length; i++) {
+      s.append(ALPHABET[random().nextInt(ALPHABET.length)]);
+    }
+    return s.toString();
+  }
+
+  /**
+   * Returns the Levenshtein distance of the strings, counting the swap of
+   * two adjacent characters as one edit if <code>transpositions</code> is
+   * set, as long as no other edit touches them.
+   */
+  private static int distance(String s1, String s2, boolean transpositions) {
+    final int[][] d = new int[s1.length() + 1][s2.length() + 1];
+    for (int i = 0; i <= s1.length(); i++) {
+      d[i][0] = i;
+    }
+    for (int j = 0; j <= s2.length(); j++) {
+      d[0][j] = j;
+    }
+    for (int i = 1; i <= s1.length(); i++) {
+      for (int j = 1; j <= s2.length(); j++) {
+        final int cost = s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 1;
+        d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+        if (transpositions && i > 1 && j > 1
+            && s1.charAt(i - 1) == s2.charAt(j - 2) && s1.charAt(i - 2) == s2.charAt(j - 1)) {
+          d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+        }
+      }
+    }
+    return d[s1.length()][s2.length()];
+  }
+
+  /** Returns the boost of every indexed term the query accepts, ignoring maxExpansions. */
+  private Map<String,Float> acceptedTerms(String text, int maxEdits, int prefixLength, boolean transpositions) {
+    final Map<String,Float> accepted = new HashMap<>();
+    if (maxEdits == 0 || prefixLength >= text.length()) {
+      // can only match exactly
+      if (allTerms.contains(text)) {
+        accepted.put(text, 1f);
+      }
+      return accepted;
+    }
+    final String prefix = text.substring(0, prefixLength);
+    for (String term : allTerms) {
+      if (term.startsWith(prefix) == false) {
+        continue;
+      }
+      final int ed = distance(term.substring(prefixLength), text.substring(prefixLength), transpositions);
+      if (ed == 0) {
+        accepted.put(term, 1f);
+      } else if (ed <= maxEdits) {
+        final float similarity = 1.0f - ((float) ed / (float) Math.min(term.length(), text.length()));
+        if (similarity > 0) {
+          accepted.put(term, similarity);
+        }
+      }
+    }
+    return accepted;
+  }
+
+  @Test
+  public void testRewrite() throws Exception {
+    final int iters = atLeast(300);
+    for (int iter = 0; iter < iters; iter++) {
+      final String text = random().nextBoolean() ? randomString() : allTerms.ceiling(randomString());
+      final int maxEdits = random().nextInt(3);
+      final int prefixLength = random().nextInt(4);
+      final int maxExpansions = random().nextBoolean() ? nextInt(1, 10) : BooleanQuery.getMaxClauseCount();
+      final boolean transpositions = random().nextBoolean();
+      final FuzzyQuery query = new FuzzyQuery(new Term(FIELD, text == null ? "" : text),
+          maxEdits, prefixLength, maxExpansions, transpositions);
+      final String message = query + " prefixLength=" + prefixLength + " maxExpansions=" + maxExpansions
+          + " transpositions=" + transpositions;
+
+      // the best terms by boost, then by term
+      final Map<String,Float> accepted = acceptedTerms(query.getTerm().text(), maxEdits, prefixLength, transpositions);
+      final List<String> best = new ArrayList<>(accepted.keySet());
+      Collections.sort(best, new Comparator<String>() {
+        @Override
+        public int compare(String term1, String term2) {
+          final int cmp = Float.compare(accepted.get(term2), accepted.get(term1));
+          return cmp != 0 ? cmp : term1.compareTo(term2);
+        }
+      });
+      final Map<String,Float> expected = new HashMap<>();
+      for (String term : best.subList(0, Math.min(maxExpansions, best.size()))) {
+        expected.put(term, accepted.get(term));
+      }
+
+      final Map<String,Float> actual = new HashMap<>();
+      final Query rewritten = searcher.rewrite(query);
+      if (rewritten instanceof TermQuery) {
+        // a single term rewrites to its clause
+        actual.put(((TermQuery) rewritten).getTerm().text(), rewritten.getBoost());
+      } else {
+        for (BooleanClause clause : ((BooleanQuery) rewritten).clauses()) {
+          final TermQuery termQuery = (TermQuery) clause.getQuery();
+          assertNull(message, actual.put(termQuery.getTerm().text(), termQuery.getBoost()));
+        }
+      }
+      assertEquals(message, expected, actual);
+
+      final Set<Integer> expectedHits = new HashSet<>();
+      for (int id = 0; id < terms.length; id++) {
+        for (String term : terms[id]) {
+          if (expected.containsKey(term)) {
+            expectedHits.add(id);
+          }
+        }
+      }
+      final Set<Integer> actualHits = new HashSet<>();
+      for (ScoreDoc hit : searcher.search(query, reader.maxDoc()).scoreDocs) {
+        actualHits.add(ids[hit.doc]);
+      }
+      assertEquals(message, expectedHits, actualHits);
+    }
+  }
+}
@@ -0,0 +1,212 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.CoreTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestIndexSearcher extends CoreTestCase {
+  Directory dir;
+  IndexReader reader;
+  ThreadPoolExecutor service;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = newDirectory();
+    // many small segments, so that searches run over many slices:
+    IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig()
+                                             .setMergePolicy(NoMergePolicy.INSTANCE));
+    final int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      // few distinct values, so that there are many ties on both score and sort value
+      doc.add(new StringField("field", "value" + (i % 3), Field.Store.NO));
+      doc.add(new StringField("field2", "value" + (i % 5), Field.Store.NO));
+      doc.add(new NumericDocValuesField("sort", i % 7));
+      iw.addDocument(doc);
+      if (random().nextInt(20) == 0) {
+        iw.commit();
+      }
+    }
+    reader = DirectoryReader.open(iw, true);
+    iw.close();
+    service = new ThreadPoolExecutor(4, 4, 0L, TimeUnit.MILLISECONDS,
+                                     new LinkedBlockingQueue<Runnable>(),
+                                     new NamedThreadFactory("TestIndexSearcher"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+    service.shutdown();
+    service.awaitTermination(1000, TimeUnit.MILLISECONDS);
+  }
+
+  /** Returns a searcher that searches many small slices on the executor,
+   *  some of which only cover a doc-ID range of their leaf. */
+  private IndexSearcher newSlicingSearcher(int maxDocsPerSlice, int maxSegmentsPerSlice) {
+    return new IndexSearcher(reader, service, maxDocsPerSlice, maxSegmentsPerSlice, true);
+  }
+
+  private Query[] queries() {
+    BooleanQuery disjunction = new BooleanQuery();
+    disjunction.add(new TermQuery(new Term("field", "value0")), Occur.SHOULD);
+    disjunction.add(new TermQuery(new Term("field2", "value1")), Occur.SHOULD);
+    BooleanQuery conjunction = new BooleanQuery();
+    conjunction.add(new TermQuery(new Term("field", "value1")), Occur.MUST);
+    conjunction.add(new TermQuery(new Term("field2", "value2")), Occur.MUST);
+    return new Query[] {
+      new TermQuery(new Term("field", "value2")),
+      disjunction,
+      conjunction
+    };
+  }
+
+  @Test
+  public void testSameHitsAsSequentialSearch() throws Exception {
+    IndexSearcher sequential = new IndexSearcher(reader);
+    IndexSearcher[] parallel = new IndexSearcher[] {
+      new IndexSearcher(reader, service),
+      newSlicingSearcher(nextInt(1, 100), nextInt(1, 5))
+    };
+    final Sort sort = new Sort(new SortField("sort", SortField.Type.LONG));
+    for (Query query : queries()) {
+      for (int n : new int[] {1, 10, nextInt(1, reader.maxDoc()), reader.maxDoc()}) {
+        TopDocs expected = sequential.search(query, n);
+        TopDocs expectedSorted = sequential.search(query, null, n, sort);
+        for (IndexSearcher searcher : parallel) {
+          assertSameHits(expected, searcher.search(query, n));
+          assertSameHits(expectedSorted, searcher.search(query, null, n, sort));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSplitLeavesOption() throws Exception {
+    int maxLeafDocs = 0;
+    for (AtomicReaderContext ctx : reader.leaves()) {
+      maxLeafDocs = Math.max(maxLeafDocs, ctx.reader().numDocs());
+    }
+    final int maxDocsPerSlice = Math.max(1, maxLeafDocs / 3);
+    final IndexSearcher whole = new IndexSearcher(reader, service, maxDocsPerSlice, 1, false);
+    final IndexSearcher split = new IndexSearcher(reader, service, maxDocsPerSlice, 1, true);
+    assertEquals(reader.leaves().size(), whole.leafSlices.length);
+    for (IndexSearcher.LeafSlice slice : whole.leafSlices) {
+      assertFalse(slice.isPartial());
+    }
+    int numPartial = 0;
+    for (IndexSearcher.LeafSlice slice : split.leafSlices) {
+      if (slice.isPartial()) {
+        numPartial++;
+      }
+    }
+    assertTrue(numPartial >= 3);
+
+    final IndexSearcher sequential = new IndexSearcher(reader);
+    final Sort sort = new Sort(new SortField("sort", SortField.Type.LONG));
+    for (Query query : queries()) {
+      final long completedTasks = service.getTaskCount();
+      final int n = nextInt(1, reader.maxDoc());
+      assertSameHits(sequential.search(query, n), split.search(query, n));
+      assertSameHits(sequential.search(query, null, n, sort), split.search(query, null, n, sort));
+      // both searches ran one task per slice on the executor
+      assertEquals(completedTasks + 2 * split.leafSlices.length, service.getTaskCount());
+    }
+
+    try {
+      new IndexSearcher(reader, service, 0, 1, true);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSlicesCoverLeavesInOrder() throws Exception {
+    final List<AtomicReaderContext> leaves = reader.leaves();
+    for (int iter = 0; iter < 10; iter++) {
+      final int maxDocsPerSlice = nextInt(1, reader.maxDoc());
+      final int maxSegmentsPerSlice = nextInt(1, 5);
+      final boolean splitLeaves = random().nextBoolean();
+      IndexSearcher.LeafSlice[] slices = IndexSearcher.slices(leaves, maxDocsPerSlice, maxSegmentsPerSlice, splitLeaves);
+      int leaf = 0;
+      int nextDoc = 0; // next doc of the current leaf that must be covered
+      for (IndexSearcher.LeafSlice slice : slices) {
+        assertTrue(slice.leaves.length > 0);
+        assertTrue(slice.leaves.length <= maxSegmentsPerSlice);
+        if (slice.isPartial()) {
+          assertTrue(splitLeaves);
+          assertEquals(1, slice.leaves.length);
+          assertSame(leaves.get(leaf), slice.leaves[0]);
+          assertEquals(nextDoc, slice.minDoc);
+          final int maxDoc = slice.leaves[0].reader().maxDoc();
+          assertTrue(slice.maxDoc <= maxDoc);
+          if (slice.maxDoc == maxDoc) {
+            leaf++;
+            nextDoc = 0;
+          } else {
+            nextDoc = slice.maxDoc;
+          }
+        } else {
+          assertEquals(0, nextDoc);
+          long numDocs = 0;
+          for (AtomicReaderContext ctx : slice.leaves) {
+            assertSame(leaves.get(leaf++), ctx);
+            numDocs += ctx.reader().numDocs();
+          }
+          assertTrue(slice.leaves.length == 1 || numDocs <= maxDocsPerSlice);
+        }
+      }
+      assertEquals(leaves.size(), leaf);
+      assertEquals(0, nextDoc);
+    }
+  }
+
+  static void assertSameHits(TopDocs expected, TopDocs actual) {
+    assertEquals(expected.totalHits, actual.totalHits);
+    assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      assertEquals("hit " + i, expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+      // scores are NaN when sorting by field without scores
+      assertEquals("hit " + i, Float.floatToIntBits(expected.scoreDocs[i].score), Float.floatToIntBits(actual.scoreDocs[i].score));
+    }
+  }
+}
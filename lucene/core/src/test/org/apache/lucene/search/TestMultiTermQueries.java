@@ -0,0 +1,336 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the hits of {@link WildcardQuery}, {@link RegexpQuery},
+ * {@link PrefixQuery} and {@link TermRangeQuery}, with every rewrite
+ * method, against the terms of each document matched with
+ * {@link Pattern} or compared directly.
+ */
+public class TestMultiTermQueries extends CoreTestCase {
+  private static final String FIELD = "term";
+  private static final char[] ALPHABET = new char[] {'a', 'b', 'c'};
+
+  private Directory dir;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+  // terms of each document, by id:
+  private String[][] terms;
+  private boolean[] deleted;
+  private int[] ids;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = newDirectory();
+    IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig());
+    final int numDocs = atLeast(300);
+    terms = new String[numDocs][];
+    deleted = new boolean[numDocs];
+    for (int id = 0; id < numDocs; id++) {
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(id), Field.Store.NO));
+      doc.add(new NumericDocValuesField("id", id));
+      terms[id] = new String[random().nextInt(4)];
+      for (int i = 0; i < terms[id].length; i++) {
+        terms[id][i] = randomString(5);
+        doc.add(new StringField(FIELD, terms[id][i], Field.Store.NO));
+      }
+      iw.addDocument(doc);
+      if (random().nextInt(50) == 0) {
+        iw.commit();
+      }
+    }
+    for (int id = 0; id < numDocs; id++) {
+      if (random().nextInt(20) == 0) {
+        iw.deleteDocuments(new Term("id", Integer.toString(id)));
+        deleted[id] = true;
+      }
+    }
+    reader = DirectoryReader.open(iw, true);
+    iw.close();
+    searcher = new IndexSearcher(reader);
+    final NumericDocValues idValues = MultiDocValues.getNumericValues(reader, "id");
+    ids = new int[reader.maxDoc()];
+    for (int doc = 0; doc < ids.length; doc++) {
+      ids[doc] = (int) idValues.get(doc);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+  }
+
+  /** Returns a string of the alphabet, shorter than <code>maxLength</code>. */
+  private String randomString(int maxLength) {
+    final StringBuilder s = new StringBuilder();
+    final int length = random().nextInt(maxLength);
+    for (int i = 0; i < length; i++) {
+      s.append(ALPHABET[random().nextInt(ALPHABET.length)]);
+    }
+    return s.toString();
+  }
+
+  /** Returns a term of the alphabet or a random wildcard, '.' or class. */
+  private String randomRegexpAtom(int depth) {
+    switch (random().nextInt(depth > 0 ? 5 : 3)) {
+      case 0:
+        return Character.toString(ALPHABET[random().nextInt(ALPHABET.length)]);
+      case 1:
+        return ".";
+      case 2: {
+        final StringBuilder s = new StringBuilder("[");
+        for (char c : ALPHABET) {
+          if (random().nextBoolean()) {
+            s.append(c);
+          }
+        }
+        return s.length() == 1 ? "[a]" : s.append(']').toString();
+      }
+      case 3:
+        return "(" + randomRegexp(depth - 1) + "|" + randomRegexp(depth - 1) + ")";
+      default:
+        return "(" + randomRegexp(depth - 1) + ")";
+    }
+  }
+
+  /** Returns a regular expression that both {@link RegexpQuery} and {@link Pattern} parse alike. */
+  private String randomRegexp(int depth) {
+    final StringBuilder s = new StringBuilder();
+    final int numAtoms = nextInt(1, 3);
+    for (int i = 0; i < numAtoms; i++) {
+      s.append(randomRegexpAtom(depth));
+      switch (random().nextInt(6)) {
+        case 0: s.append('*'); break;
+        case 1: s.append('+'); break;
+        case 2: s.append('?'); break;
+        default: break;
+      }
+    }
+    return s.toString();
+  }
+
+  /** Returns a non-empty wildcard pattern: the empty pattern matches no term at all. */
+  private String randomWildcard() {
+    final StringBuilder s = new StringBuilder();
+    final int length = nextInt(1, 4);
+    for (int i = 0; i < length; i++) {
+      switch (random().nextInt(5)) {
+        case 0: s.append('*'); break;
+        case 1: s.append('?'); break;
+        default: s.append(ALPHABET[random().nextInt(ALPHABET.length)]); break;
+      }
+    }
+    return s.toString();
+  }
+
+  private static String wildcardToRegexp(String wildcard) {
+    return wildcard.replace("?", ".").replace("*", ".*");
+  }
+
+  /** A term predicate and a query that should match the same terms. */
+  private static abstract class Model {
+    final MultiTermQuery query;
+
+    Model(MultiTermQuery query) {
+      this.query = query;
+    }
+
+    abstract boolean accept(String term);
+  }
+
+  private Model randomModel() {
+    switch (random().nextInt(4)) {
+      case 0: {
+        final String wildcard = randomWildcard();
+        final Pattern pattern = Pattern.compile(wildcardToRegexp(wildcard));
+        return new Model(new WildcardQuery(new Term(FIELD, wildcard))) {
+          @Override
+          boolean accept(String term) {
+            return pattern.matcher(term).matches();
+          }
+        };
+      }
+      case 1: {
+        final String regexp = randomRegexp(2);
+        final Pattern pattern = Pattern.compile(regexp);
+        return new Model(new RegexpQuery(new Term(FIELD, regexp))) {
+          @Override
+          boolean accept(String term) {
+            return pattern.matcher(term).matches();
+          }
+        };
+      }
+      case 2: {
+        final String prefix = randomString(4);
+        return new Model(new PrefixQuery(new Term(FIELD, prefix))) {
+          @Override
+          boolean accept(String term) {
+            return term.startsWith(prefix);
+          }
+        };
+      }
+      default: {
+        final String lower = random().nextInt(5) == 0 ? null : randomString(5);
+        final String upper = random().nextInt(5) == 0 ? null : randomString(5);
+        final boolean includeLower = random().nextBoolean();
+        final boolean includeUpper = random().nextBoolean();
+        return new Model(TermRangeQuery.newStringRange(FIELD, lower, upper, includeLower, includeUpper)) {
+          @Override
+          boolean accept(String term) {
+            if (lower != null) {
+              final int cmp = term.compareTo(lower);
+              if (cmp < 0 || (cmp == 0 && includeLower == false)) {
+                return false;
+              }
+            }
+            if (upper != null) {
+              final int cmp = term.compareTo(upper);
+              if (cmp > 0 || (cmp == 0 && includeUpper == false)) {
+                return false;
+              }
+            }
+            return true;
+          }
+        };
+      }
+    }
+  }
+
+  private MultiTermQuery.RewriteMethod randomRewriteMethod() {
+    switch (random().nextInt(7)) {
+      case 0: return MultiTermQuery.CONSTANT_SCORE_FILTER_REWRITE;
+      case 1: return MultiTermQuery.SCORING_BOOLEAN_QUERY_REWRITE;
+      case 2: return MultiTermQuery.CONSTANT_SCORE_BOOLEAN_QUERY_REWRITE;
+      case 3: return MultiTermQuery.CONSTANT_SCORE_AUTO_REWRITE_DEFAULT;
+      case 4: {
+        // cutoffs small enough to switch to the filter rewrite half way
+        final MultiTermQuery.ConstantScoreAutoRewrite rewrite = new MultiTermQuery.ConstantScoreAutoRewrite();
+        rewrite.setTermCountCutoff(nextInt(1, 20));
+        rewrite.setDocCountPercent(random().nextDouble() * 10);
+        return rewrite;
+      }
+      // large enough to keep every term
+      case 5: return new MultiTermQuery.TopTermsScoringBooleanQueryRewrite(BooleanQuery.getMaxClauseCount());
+      default: return new MultiTermQuery.TopTermsBoostOnlyBooleanQueryRewrite(BooleanQuery.getMaxClauseCount());
+    }
+  }
+
+  @Test
+  public void testMatches() throws Exception {
+    final Bits liveDocs = MultiFields.getLiveDocs(reader);
+    final int iters = atLeast(300);
+    for (int iter = 0; iter < iters; iter++) {
+      final Model model = randomModel();
+      final MultiTermQuery query = model.query;
+      final MultiTermQuery.RewriteMethod rewriteMethod = randomRewriteMethod();
+      query.setRewriteMethod(rewriteMethod);
+      final String message = query + " " + rewriteMethod;
+
+      final Set<Integer> expected = new HashSet<>();
+      for (int id = 0; id < terms.length; id++) {
+        if (deleted[id]) {
+          continue;
+        }
+        for (String term : terms[id]) {
+          if (model.accept(term)) {
+            expected.add(id);
+            break;
+          }
+        }
+      }
+      final TopDocs topDocs = searcher.search(query, reader.maxDoc());
+      final Set<Integer> actual = new HashSet<>();
+      for (ScoreDoc hit : topDocs.scoreDocs) {
+        assertTrue(message, liveDocs == null || liveDocs.get(hit.doc));
+        actual.add(ids[hit.doc]);
+        if (rewriteMethod != MultiTermQuery.SCORING_BOOLEAN_QUERY_REWRITE
+            && rewriteMethod instanceof TopTermsRewrite == false) {
+          // every hit gets the same score
+          assertEquals(message, topDocs.scoreDocs[0].score, hit.score, 0f);
+        }
+      }
+      assertEquals(message, expected, actual);
+      assertEquals(message, expected.size(), topDocs.totalHits);
+    }
+  }
+
+  @Test
+  public void testRewrittenTerms() throws Exception {
+    final Set<String> liveTerms = new HashSet<>();
+    final Set<String> allTerms = new HashSet<>();
+    for (int id = 0; id < terms.length; id++) {
+      for (String term : terms[id]) {
+        allTerms.add(term);
+        if (deleted[id] == false) {
+          liveTerms.add(term);
+        }
+      }
+    }
+    final int iters = atLeast(300);
+    for (int iter = 0; iter < iters; iter++) {
+      final Model model = randomModel();
+      final MultiTermQuery query = model.query;
+      query.setRewriteMethod(MultiTermQuery.SCORING_BOOLEAN_QUERY_REWRITE);
+      final Query rewritten = searcher.rewrite(query);
+      final Set<String> actual = new HashSet<>();
+      if (rewritten instanceof BooleanQuery) {
+        for (BooleanClause clause : ((BooleanQuery) rewritten).clauses()) {
+          final BytesRef bytes = ((TermQuery) clause.getQuery()).getTerm().bytes();
+          assertTrue(query + " " + bytes.utf8ToString(), actual.add(bytes.utf8ToString()));
+        }
+      } else {
+        actual.add(((TermQuery) rewritten).getTerm().text());
+      }
+      // terms of deleted documents may or may not have been merged away
+      for (String term : actual) {
+        assertTrue(query + " " + term, allTerms.contains(term) && model.accept(term));
+      }
+      for (String term : liveTerms) {
+        if (model.accept(term)) {
+          assertTrue(query + " " + term, actual.contains(term));
+        }
+      }
+    }
+  }
+}
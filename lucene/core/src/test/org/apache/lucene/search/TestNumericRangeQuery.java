@@ -0,0 +1,364 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleField;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares {@link NumericRangeQuery} and {@link NumericRangeFilter} against a
+ * brute-force check of every document's value, for inclusive and exclusive
+ * bounds at and next to indexed values and at the limits of each type, and
+ * for precision steps that split ranges into many or no sub-ranges.
+ */
+public class TestNumericRangeQuery extends CoreTestCase {
+  private static final int[] STEPS = new int[] {1, 3, 4, 8, 16, Integer.MAX_VALUE};
+
+  private Directory dir;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+  private long[] longs;
+  private int[] ints;
+  private double[] doubles;
+  // top-level docID -> index of the document's values:
+  private NumericDocValues ids;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = newDirectory();
+    IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig());
+    final int numDocs = atLeast(200);
+    longs = new long[numDocs];
+    ints = new int[numDocs];
+    doubles = new double[numDocs];
+    final FieldType[] longTypes = new FieldType[STEPS.length];
+    final FieldType[] intTypes = new FieldType[STEPS.length];
+    final FieldType[] doubleTypes = new FieldType[STEPS.length];
+    for (int i = 0; i < STEPS.length; i++) {
+      longTypes[i] = numericType(LongField.TYPE_NOT_STORED, STEPS[i]);
+      intTypes[i] = numericType(IntField.TYPE_NOT_STORED, STEPS[i]);
+      doubleTypes[i] = numericType(DoubleField.TYPE_NOT_STORED, STEPS[i]);
+    }
+    for (int id = 0; id < numDocs; id++) {
+      // make sure the limits of each type are indexed
+      switch (id) {
+        case 0:
+          longs[id] = Long.MIN_VALUE;
+          ints[id] = Integer.MIN_VALUE;
+          doubles[id] = Double.NEGATIVE_INFINITY;
+          break;
+        case 1:
+          longs[id] = Long.MAX_VALUE;
+          ints[id] = Integer.MAX_VALUE;
+          doubles[id] = Double.POSITIVE_INFINITY;
+          break;
+        case 2:
+          longs[id] = 0L;
+          ints[id] = 0;
+          doubles[id] = Double.NaN;
+          break;
+        default:
+          longs[id] = randomLong(id);
+          ints[id] = randomInt(id);
+          doubles[id] = randomDouble(id);
+      }
+      Document doc = new Document();
+      doc.add(new NumericDocValuesField("id", id));
+      for (int i = 0; i < STEPS.length; i++) {
+        doc.add(new LongField("long" + STEPS[i], longs[id], longTypes[i]));
+        doc.add(new IntField("int" + STEPS[i], ints[id], intTypes[i]));
+        doc.add(new DoubleField("double" + STEPS[i], doubles[id], doubleTypes[i]));
+      }
+      iw.addDocument(doc);
+      if (random().nextInt(50) == 0) {
+        iw.commit();
+      }
+    }
+    reader = DirectoryReader.open(iw, true);
+    iw.close();
+    searcher = new IndexSearcher(reader);
+    ids = MultiDocValues.getNumericValues(reader, "id");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+  }
+
+  private static FieldType numericType(FieldType ref, int precisionStep) {
+    final FieldType type = new FieldType(ref);
+    type.setNumericPrecisionStep(precisionStep);
+    type.freeze();
+    return type;
+  }
+
+  // values cluster around powers of two, where the ranges are split, and
+  // often repeat an earlier value:
+  private long randomLong(int id) {
+    switch (random().nextInt(5)) {
+      case 0:
+        return random().nextLong();
+      case 1:
+        return nextInt(-100, 100);
+      case 2:
+        final long pow = 1L << random().nextInt(63);
+        return (random().nextBoolean() ? pow : -pow) + nextInt(-2, 2);
+      case 3:
+        return random().nextBoolean() ? Long.MIN_VALUE + random().nextInt(3) : Long.MAX_VALUE - random().nextInt(3);
+      default:
+        return longs[random().nextInt(id)];
+    }
+  }
+
+  private int randomInt(int id) {
+    switch (random().nextInt(5)) {
+      case 0:
+        return random().nextInt();
+      case 1:
+        return nextInt(-100, 100);
+      case 2:
+        final int pow = 1 << random().nextInt(31);
+        return (random().nextBoolean() ? pow : -pow) + nextInt(-2, 2);
+      case 3:
+        return random().nextBoolean() ? Integer.MIN_VALUE + random().nextInt(3) : Integer.MAX_VALUE - random().nextInt(3);
+      default:
+        return ints[random().nextInt(id)];
+    }
+  }
+
+  private double randomDouble(int id) {
+    switch (random().nextInt(5)) {
+      case 0:
+        return (random().nextDouble() - 0.5) * Math.pow(10, nextInt(-10, 10));
+      case 1:
+        return nextInt(-100, 100);
+      case 2:
+        final double[] special = new double[] {
+          0.0, -0.0, Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+          Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NaN
+        };
+        return special[random().nextInt(special.length)];
+      default:
+        return doubles[random().nextInt(id)];
+    }
+  }
+
+  @Test
+  public void testLongRanges() throws Exception {
+    final int iters = atLeast(100);
+    for (int iter = 0; iter < iters; iter++) {
+      final int step = STEPS[random().nextInt(STEPS.length)];
+      final Long min = longBound();
+      final Long max = longBound();
+      final boolean minInclusive = random().nextBoolean();
+      final boolean maxInclusive = random().nextBoolean();
+      final boolean[] expected = new boolean[longs.length];
+      for (int id = 0; id < longs.length; id++) {
+        final long value = longs[id];
+        expected[id] = (min == null || (minInclusive ? value >= min : value > min))
+            && (max == null || (maxInclusive ? value <= max : value < max));
+      }
+      assertRange(NumericRangeQuery.newLongRange("long" + step, step, min, max, minInclusive, maxInclusive),
+                  NumericRangeFilter.newLongRange("long" + step, step, min, max, minInclusive, maxInclusive),
+                  expected);
+    }
+  }
+
+  @Test
+  public void testIntRanges() throws Exception {
+    final int iters = atLeast(100);
+    for (int iter = 0; iter < iters; iter++) {
+      final int step = STEPS[random().nextInt(STEPS.length)];
+      final Integer min = intBound();
+      final Integer max = intBound();
+      final boolean minInclusive = random().nextBoolean();
+      final boolean maxInclusive = random().nextBoolean();
+      final boolean[] expected = new boolean[ints.length];
+      for (int id = 0; id < ints.length; id++) {
+        final int value = ints[id];
+        expected[id] = (min == null || (minInclusive ? value >= min : value > min))
+            && (max == null || (maxInclusive ? value <= max : value < max));
+      }
+      assertRange(NumericRangeQuery.newIntRange("int" + step, step, min, max, minInclusive, maxInclusive),
+                  NumericRangeFilter.newIntRange("int" + step, step, min, max, minInclusive, maxInclusive),
+                  expected);
+    }
+  }
+
+  @Test
+  public void testDoubleRanges() throws Exception {
+    final int iters = atLeast(100);
+    for (int iter = 0; iter < iters; iter++) {
+      final int step = STEPS[random().nextInt(STEPS.length)];
+      final Double min = doubleBound();
+      final Double max = doubleBound();
+      final boolean minInclusive = random().nextBoolean();
+      final boolean maxInclusive = random().nextBoolean();
+      // open ends are infinite, so that NaN, which sorts above
+      // infinity, never matches a half-open range:
+      final double lower = min == null ? Double.NEGATIVE_INFINITY : min;
+      final double upper = max == null ? Double.POSITIVE_INFINITY : max;
+      final boolean[] expected = new boolean[doubles.length];
+      for (int id = 0; id < doubles.length; id++) {
+        final int cmpMin = Double.compare(doubles[id], lower);
+        final int cmpMax = Double.compare(doubles[id], upper);
+        expected[id] = (minInclusive || min == null ? cmpMin >= 0 : cmpMin > 0)
+            && (maxInclusive || max == null ? cmpMax <= 0 : cmpMax < 0);
+      }
+      assertRange(NumericRangeQuery.newDoubleRange("double" + step, step, min, max, minInclusive, maxInclusive),
+                  NumericRangeFilter.newDoubleRange("double" + step, step, min, max, minInclusive, maxInclusive),
+                  expected);
+    }
+  }
+
+  @Test
+  public void testLimits() throws Exception {
+    for (int step : STEPS) {
+      final String field = "long" + step;
+      // nothing is above the maximum or below the minimum:
+      assertCount(0, NumericRangeQuery.newLongRange(field, step, Long.MAX_VALUE, null, false, true));
+      assertCount(0, NumericRangeQuery.newLongRange(field, step, null, Long.MIN_VALUE, true, false));
+      assertCount(0, NumericRangeQuery.newLongRange(field, step, Long.MAX_VALUE, Long.MAX_VALUE, true, false));
+      assertCount(0, NumericRangeQuery.newLongRange(field, step, 1L, 0L, true, true));
+      assertCount(count(longs, Long.MAX_VALUE), NumericRangeQuery.newLongRange(field, step, Long.MAX_VALUE, null, true, true));
+      assertCount(count(longs, Long.MIN_VALUE), NumericRangeQuery.newLongRange(field, step, null, Long.MIN_VALUE, true, true));
+      assertCount(longs.length, NumericRangeQuery.newLongRange(field, step, null, null, true, true));
+      assertCount(longs.length, NumericRangeQuery.newLongRange(field, step, Long.MIN_VALUE, Long.MAX_VALUE, true, true));
+
+      final String intField = "int" + step;
+      assertCount(0, NumericRangeQuery.newIntRange(intField, step, Integer.MAX_VALUE, null, false, true));
+      assertCount(0, NumericRangeQuery.newIntRange(intField, step, null, Integer.MIN_VALUE, true, false));
+      assertCount(ints.length, NumericRangeQuery.newIntRange(intField, step, null, null, false, false));
+
+      // NaN only matches a range on NaN:
+      final String doubleField = "double" + step;
+      int nans = 0;
+      for (double value : doubles) {
+        if (Double.isNaN(value)) {
+          nans++;
+        }
+      }
+      assertCount(nans, NumericRangeQuery.newDoubleRange(doubleField, step, Double.NaN, Double.NaN, true, true));
+      assertCount(doubles.length - nans, NumericRangeQuery.newDoubleRange(doubleField, step, null, null, true, true));
+    }
+  }
+
+  private static int count(long[] values, long value) {
+    int count = 0;
+    for (long v : values) {
+      if (v == value) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  // bounds are mostly indexed values or their neighbours:
+  private Long longBound() {
+    switch (random().nextInt(10)) {
+      case 0:
+        return null;
+      case 1:
+        return randomLong(longs.length);
+      default:
+        return longs[random().nextInt(longs.length)] + nextInt(-1, 1);
+    }
+  }
+
+  private Integer intBound() {
+    switch (random().nextInt(10)) {
+      case 0:
+        return null;
+      case 1:
+        return randomInt(ints.length);
+      default:
+        return ints[random().nextInt(ints.length)] + nextInt(-1, 1);
+    }
+  }
+
+  private Double doubleBound() {
+    switch (random().nextInt(10)) {
+      case 0:
+        return null;
+      case 1:
+        return randomDouble(doubles.length);
+      default:
+        final double value = doubles[random().nextInt(doubles.length)];
+        switch (random().nextInt(3)) {
+          case 0:
+            return Math.nextUp(value);
+          case 1:
+            return Math.nextAfter(value, Double.NEGATIVE_INFINITY);
+          default:
+            return value;
+        }
+    }
+  }
+
+  private void assertRange(NumericRangeQuery<?> query, NumericRangeFilter<?> filter, boolean[] expected) throws Exception {
+    final MultiTermQuery.RewriteMethod[] methods = new MultiTermQuery.RewriteMethod[] {
+      MultiTermQuery.CONSTANT_SCORE_FILTER_REWRITE,
+      MultiTermQuery.CONSTANT_SCORE_BOOLEAN_QUERY_REWRITE,
+      MultiTermQuery.CONSTANT_SCORE_AUTO_REWRITE_DEFAULT
+    };
+    query.setRewriteMethod(methods[random().nextInt(methods.length)]);
+    assertHits(query.toString() + " rewrite=" + query.getRewriteMethod(), query, expected);
+    assertHits(filter.toString(), new ConstantScoreQuery(filter), expected);
+  }
+
+  private void assertHits(String message, Query query, boolean[] expected) throws Exception {
+    final TopDocs hits = searcher.search(query, reader.maxDoc());
+    final boolean[] actual = new boolean[expected.length];
+    for (ScoreDoc hit : hits.scoreDocs) {
+      final int id = (int) ids.get(hit.doc);
+      assertFalse(message + ": id=" + id + " hit twice", actual[id]);
+      actual[id] = true;
+    }
+    int count = 0;
+    for (int id = 0; id < expected.length; id++) {
+      assertEquals(message + ": id=" + id + " value=" + describe(id), expected[id], actual[id]);
+      if (expected[id]) {
+        count++;
+      }
+    }
+    assertEquals(message, count, hits.totalHits);
+  }
+
+  private String describe(int id) {
+    return longs[id] + "/" + ints[id] + "/" + doubles[id];
+  }
+
+  private void assertCount(int expected, Query query) throws Exception {
+    assertEquals(query.toString(), expected, searcher.search(query, 1).totalHits);
+  }
+}
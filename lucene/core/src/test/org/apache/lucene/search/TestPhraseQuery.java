@@ -0,0 +1,250 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks exact and sloppy {@link PhraseQuery}s and {@link MultiPhraseQuery}s
+ * against a brute-force search of the phrase in the tokens of each document.
+ */
+public class TestPhraseQuery extends CoreTestCase {
+  private RandomTextIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    index = new RandomTextIndex(random(), atLeast(1000));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  @Test
+  public void testExactPhrases() throws Exception {
+    final int iters = atLeast(100);
+    for (int iter = 0; iter < iters; iter++) {
+      // words may repeat in an exact phrase:
+      final String[][] words = randomWords(nextInt(1, 4), 1, false);
+      final int[] positions = randomPositions(words.length);
+      final PhraseQuery query = new PhraseQuery();
+      for (int i = 0; i < words.length; i++) {
+        query.add(new Term(RandomTextIndex.FIELD, words[i][0]), positions[i]);
+      }
+      assertExact(query, words, positions);
+    }
+  }
+
+  @Test
+  public void testExactMultiPhrases() throws Exception {
+    final int iters = atLeast(100);
+    for (int iter = 0; iter < iters; iter++) {
+      final String[][] words = randomWords(nextInt(1, 4), 3, false);
+      final int[] positions = randomPositions(words.length);
+      final MultiPhraseQuery query = new MultiPhraseQuery();
+      for (int i = 0; i < words.length; i++) {
+        query.add(terms(words[i]), positions[i]);
+      }
+      assertExact(query, words, positions);
+    }
+  }
+
+  @Test
+  public void testSloppyPhrases() throws Exception {
+    final int iters = atLeast(100);
+    for (int iter = 0; iter < iters; iter++) {
+      // repeated words are matched by the sloppy scorer with
+      // heuristics, so the phrase only has distinct words:
+      final String[][] words = randomWords(nextInt(2, 4), 1, true);
+      final int[] positions = randomPositions(words.length);
+      final int slop = nextInt(1, 6);
+      final PhraseQuery query = new PhraseQuery();
+      query.setSlop(slop);
+      for (int i = 0; i < words.length; i++) {
+        query.add(new Term(RandomTextIndex.FIELD, words[i][0]), positions[i]);
+      }
+      index.assertMatches(query, sloppyMatches(words, positions, slop));
+    }
+  }
+
+  @Test
+  public void testSloppyMultiPhrases() throws Exception {
+    final int iters = atLeast(100);
+    for (int iter = 0; iter < iters; iter++) {
+      final String[][] words = randomWords(nextInt(2, 4), 2, true);
+      final int[] positions = randomPositions(words.length);
+      final int slop = nextInt(1, 6);
+      final MultiPhraseQuery query = new MultiPhraseQuery();
+      query.setSlop(slop);
+      for (int i = 0; i < words.length; i++) {
+        query.add(terms(words[i]), positions[i]);
+      }
+      index.assertMatches(query, sloppyMatches(words, positions, slop));
+    }
+  }
+
+  @Test
+  public void testSlopAddsMatches() throws Exception {
+    for (String first : RandomTextIndex.VOCABULARY) {
+      final String second = RandomTextIndex.randomWord(random());
+      final PhraseQuery exact = new PhraseQuery();
+      exact.add(new Term(RandomTextIndex.FIELD, first));
+      exact.add(new Term(RandomTextIndex.FIELD, second));
+      final PhraseQuery sloppy = new PhraseQuery();
+      sloppy.add(new Term(RandomTextIndex.FIELD, first));
+      sloppy.add(new Term(RandomTextIndex.FIELD, second));
+      sloppy.setSlop(1);
+      // a slop allows more matches, never fewer:
+      assertTrue(index.search(sloppy).keySet().containsAll(index.search(exact).keySet()));
+      // reversing the words of a phrase costs a slop of 2:
+      final PhraseQuery reversed = new PhraseQuery();
+      reversed.add(new Term(RandomTextIndex.FIELD, second));
+      reversed.add(new Term(RandomTextIndex.FIELD, first));
+      reversed.setSlop(2);
+      if (!first.equals(second)) {
+        assertTrue(index.search(reversed).keySet().containsAll(index.search(exact).keySet()));
+      }
+    }
+  }
+
+  /** Picks the words of each phrase position, <code>maxAlternatives</code> at
+   *  most per position, all distinct if <code>distinct</code> is set. */
+  private String[][] randomWords(int length, int maxAlternatives, boolean distinct) {
+    final List<String> vocabulary = new ArrayList<>(Arrays.asList(RandomTextIndex.VOCABULARY));
+    Collections.shuffle(vocabulary, random());
+    int next = 0;
+    final String[][] words = new String[length][];
+    for (int i = 0; i < length; i++) {
+      words[i] = new String[nextInt(1, maxAlternatives)];
+      for (int j = 0; j < words[i].length; j++) {
+        words[i][j] = distinct ? vocabulary.get(next++) : RandomTextIndex.randomWord(random());
+      }
+    }
+    return words;
+  }
+
+  // increasing positions, sometimes with gaps:
+  private int[] randomPositions(int length) {
+    final int[] positions = new int[length];
+    positions[0] = random().nextInt(3);
+    for (int i = 1; i < length; i++) {
+      positions[i] = positions[i - 1] + (random().nextInt(4) == 0 ? 2 : 1);
+    }
+    return positions;
+  }
+
+  private static Term[] terms(String[] words) {
+    final Term[] terms = new Term[words.length];
+    for (int i = 0; i < words.length; i++) {
+      terms[i] = new Term(RandomTextIndex.FIELD, words[i]);
+    }
+    return terms;
+  }
+
+  private static boolean contains(String[] words, String token) {
+    return Arrays.asList(words).contains(token);
+  }
+
+  /** Returns the number of exact occurrences of the phrase in the document.
+   *  Positions are relative to the start of the phrase, which cannot be
+   *  before the first token, so leading holes must fit in the document;
+   *  a single position is rewritten to term queries, that ignore it. */
+  private int exactFreq(int id, String[][] words, int[] positions) {
+    final String[] tokens = index.docs[id];
+    final int offset = positions.length == 1 ? positions[0] : 0;
+    int freq = 0;
+    for (int start = 0; start + positions[positions.length - 1] - offset < tokens.length; start++) {
+      boolean match = true;
+      for (int i = 0; i < words.length && match; i++) {
+        match = contains(words[i], tokens[start + positions[i] - offset]);
+      }
+      if (match) {
+        freq++;
+      }
+    }
+    return freq;
+  }
+
+  /** Checks matches and, on every leaf, that the scorer's freq is the number of occurrences. */
+  private void assertExact(Query query, String[][] words, int[] positions) throws Exception {
+    final int[] freqs = new int[index.docs.length];
+    final boolean[] expected = new boolean[index.docs.length];
+    for (int id = 0; id < expected.length; id++) {
+      freqs[id] = exactFreq(id, words, positions);
+      expected[id] = freqs[id] > 0;
+    }
+    index.assertMatches(query, expected);
+    if (words.length == 1 && words[0].length > 1) {
+      // rewritten to a disjunction, whose freq is the number of matching words
+      return;
+    }
+
+    final Weight weight = index.searcher.createNormalizedWeight(query);
+    for (AtomicReaderContext context : index.reader.leaves()) {
+      final Scorer scorer = weight.scorer(context, context.reader().getLiveDocs());
+      if (scorer == null) {
+        continue;
+      }
+      for (int doc = scorer.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = scorer.nextDoc()) {
+        final int id = index.id(context.docBase + doc);
+        assertEquals(query + ": id=" + id + " " + index.describe(id), freqs[id], scorer.freq());
+      }
+    }
+  }
+
+  /**
+   * Returns whether each document has the words at positions whose
+   * distances to the query positions differ by at most <code>slop</code>.
+   */
+  private boolean[] sloppyMatches(String[][] words, int[] positions, int slop) {
+    final boolean[] expected = new boolean[index.docs.length];
+    for (int id = 0; id < expected.length; id++) {
+      final String[] tokens = index.docs[id];
+      // try every window [min, min+slop] of distances, starting at a distance
+      // of the first word:
+      for (int pos = 0; pos < tokens.length && !expected[id]; pos++) {
+        if (!contains(words[0], tokens[pos])) {
+          continue;
+        }
+        for (int min = pos - positions[0] - slop; min <= pos - positions[0] && !expected[id]; min++) {
+          boolean match = true;
+          for (int i = 0; i < words.length && match; i++) {
+            match = false;
+            for (int d = min; d <= min + slop && !match; d++) {
+              final int p = d + positions[i];
+              match = p >= 0 && p < tokens.length && contains(words[i], tokens[p]);
+            }
+          }
+          expected[id] = match;
+        }
+      }
+    }
+    return expected;
+  }
+}
@@ -0,0 +1,141 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.CoreTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that paging through all hits with searchAfter returns
+ * exactly the hits of a single search, in the same order.
+ */
+public class TestSearchAfter extends CoreTestCase {
+  private Directory dir;
+  private IndexReader reader;
+  private ExecutorService service;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = newDirectory();
+    IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig());
+    final int numDocs = atLeast(300);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(new StringField("english", random().nextInt(4) == 0 ? "one" : "two", Field.Store.NO));
+      doc.add(new StringField("oddeven", (i % 2 == 0) ? "even" : "odd", Field.Store.NO));
+      // few distinct values, so that many hits tie on the sort value
+      doc.add(new NumericDocValuesField("long", random().nextInt(10)));
+      iw.addDocument(doc);
+      if (random().nextInt(50) == 0) {
+        iw.commit();
+      }
+    }
+    reader = DirectoryReader.open(iw, true);
+    iw.close();
+    service = new ThreadPoolExecutor(4, 4, 0L, TimeUnit.MILLISECONDS,
+                                     new LinkedBlockingQueue<Runnable>(),
+                                     new NamedThreadFactory("TestSearchAfter"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+    service.shutdown();
+    service.awaitTermination(1000, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void testQueries() throws Exception {
+    IndexSearcher[] searchers = new IndexSearcher[] {
+      new IndexSearcher(reader),
+      new IndexSearcher(reader, service)
+    };
+    BooleanQuery bq = new BooleanQuery();
+    bq.add(new TermQuery(new Term("english", "one")), Occur.SHOULD);
+    bq.add(new TermQuery(new Term("oddeven", "even")), Occur.SHOULD);
+    Query[] queries = new Query[] {
+      new TermQuery(new Term("english", "two")),
+      bq
+    };
+    Sort[] sorts = new Sort[] {
+      Sort.RELEVANCE,
+      Sort.INDEXORDER,
+      new Sort(new SortField("long", SortField.Type.LONG)),
+      new Sort(new SortField("long", SortField.Type.LONG, true)),
+      new Sort(new SortField("long", SortField.Type.LONG), SortField.FIELD_SCORE)
+    };
+    for (IndexSearcher searcher : searchers) {
+      for (Query query : queries) {
+        assertPages(searcher, query, null);
+        for (Sort sort : sorts) {
+          assertPages(searcher, query, sort);
+        }
+      }
+    }
+  }
+
+  /** Pages through all hits of <code>query</code> and checks them
+   *  against a single search for all hits. */
+  private void assertPages(IndexSearcher searcher, Query query, Sort sort) throws Exception {
+    final int maxDoc = reader.maxDoc();
+    final TopDocs all = sort == null
+        ? searcher.search(query, maxDoc)
+        : searcher.search(query, null, maxDoc, sort, true, false);
+    final int pageSize = nextInt(1, maxDoc * 2);
+    ScoreDoc lastBottom = null;
+    int pageStart = 0;
+    while (true) {
+      final TopDocs page = sort == null
+          ? searcher.searchAfter(lastBottom, query, pageSize)
+          : searcher.searchAfter(lastBottom, query, null, pageSize, sort, true, false);
+      assertEquals(all.totalHits, page.totalHits);
+      if (page.scoreDocs.length == 0) {
+        break;
+      }
+      assertTrue(page.scoreDocs.length <= pageSize);
+      for (int i = 0; i < page.scoreDocs.length; i++) {
+        final ScoreDoc expected = all.scoreDocs[pageStart + i];
+        final ScoreDoc actual = page.scoreDocs[i];
+        assertEquals("query=" + query + " sort=" + sort + " hit " + (pageStart + i), expected.doc, actual.doc);
+        assertEquals(expected.score, actual.score, 0f);
+      }
+      pageStart += page.scoreDocs.length;
+      lastBottom = page.scoreDocs[page.scoreDocs.length - 1];
+    }
+    assertEquals(all.scoreDocs.length, pageStart);
+  }
+}
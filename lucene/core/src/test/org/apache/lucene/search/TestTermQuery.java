@@ -0,0 +1,124 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks {@link TermQuery} matches, freqs and scores against the tokens of
+ * each document, and that a {@link TermContext} passed to the query is only
+ * used for the reader it was built on.
+ */
+public class TestTermQuery extends CoreTestCase {
+  private RandomTextIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    index = new RandomTextIndex(random(), atLeast(1000));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  @Test
+  public void testMatches() throws Exception {
+    for (String word : RandomTextIndex.VOCABULARY) {
+      final boolean[] expected = new boolean[index.docs.length];
+      for (int id = 0; id < expected.length; id++) {
+        expected[id] = index.freq(id, word) > 0;
+      }
+      index.assertMatches(new TermQuery(new Term(RandomTextIndex.FIELD, word)), expected);
+    }
+    final boolean[] none = new boolean[index.docs.length];
+    index.assertMatches(new TermQuery(new Term(RandomTextIndex.FIELD, "missing")), none);
+    index.assertMatches(new TermQuery(new Term("missing", "a")), none);
+  }
+
+  @Test
+  public void testScores() throws Exception {
+    for (String word : RandomTextIndex.VOCABULARY) {
+      final TermQuery query = new TermQuery(new Term(RandomTextIndex.FIELD, word));
+      final Weight weight = index.searcher.createNormalizedWeight(query);
+      final Map<Integer,Float> hits = index.search(query);
+      for (int doc = 0; doc < index.reader.maxDoc(); doc++) {
+        final int id = index.id(doc);
+        final Explanation explanation = index.searcher.explain(query, doc);
+        if (hits.containsKey(id)) {
+          assertTrue(explanation.isMatch());
+          assertEquals(explanation.toString(), hits.get(id), explanation.getValue(), 1e-6f);
+          assertTrue(explanation.toString(), explanation.toString().contains("termFreq=" + (float) index.freq(id, word)));
+        } else {
+          assertFalse(explanation.isMatch());
+        }
+      }
+      // for one term, a higher freq over the same length scores higher:
+      for (int id1 : hits.keySet()) {
+        final int id2 = index.id(random().nextInt(index.reader.maxDoc()));
+        if (hits.containsKey(id2) && index.docs[id1].length == index.docs[id2].length) {
+          final int cmpFreq = Integer.compare(index.freq(id1, word), index.freq(id2, word));
+          assertEquals(weight + " id1=" + id1 + " id2=" + id2, cmpFreq, Float.compare(hits.get(id1), hits.get(id2)));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTermContext() throws Exception {
+    for (String word : RandomTextIndex.VOCABULARY) {
+      final Term term = new Term(RandomTextIndex.FIELD, word);
+      final TermContext context = TermContext.build(index.reader.getContext(), term);
+      assertEquals(index.search(new TermQuery(term)), index.search(new TermQuery(term, context)));
+    }
+
+    // a context built on another reader is not used:
+    final Term term = new Term(RandomTextIndex.FIELD, RandomTextIndex.VOCABULARY[0]);
+    try (RandomTextIndex other = new RandomTextIndex(random(), atLeast(100))) {
+      final TermContext otherContext = TermContext.build(other.reader.getContext(), term);
+      assertEquals(index.search(new TermQuery(term)), index.search(new TermQuery(term, otherContext)));
+    }
+  }
+
+  @Test
+  public void testDocFreq() throws Exception {
+    final IndexReader reader = index.reader;
+    for (String word : RandomTextIndex.VOCABULARY) {
+      final Term term = new Term(RandomTextIndex.FIELD, word);
+      final int docFreq = reader.docFreq(term);
+      if (docFreq < 2) {
+        continue;
+      }
+      // a lower docFreq matches the same documents with higher scores:
+      final Map<Integer,Float> hits = index.search(new TermQuery(term));
+      final Map<Integer,Float> rareHits = index.search(new TermQuery(term, 1));
+      assertEquals(hits.keySet(), rareHits.keySet());
+      for (int id : hits.keySet()) {
+        assertTrue(term + " id=" + id, rareHits.get(id) > hits.get(id));
+      }
+    }
+  }
+}
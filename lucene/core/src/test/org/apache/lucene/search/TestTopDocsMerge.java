@@ -0,0 +1,183 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that merging the hits of each segment, with {@link TopDocs#merge}
+ * and {@link TopDocs.StreamingMerge}, returns the same page as a single
+ * search over the whole index.
+ */
+public class TestTopDocsMerge extends CoreTestCase {
+  private static final String[] WORDS = new String[] {"a", "b", "c", "d", "e"};
+
+  private Directory dir;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = newDirectory();
+    IndexWriter iw = new IndexWriter(dir, newIndexWriterConfig());
+    final int numDocs = atLeast(300);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      final StringBuilder text = new StringBuilder();
+      final int numWords = nextInt(1, 6);
+      for (int j = 0; j < numWords; j++) {
+        text.append(WORDS[random().nextInt(WORDS.length)]).append(' ');
+      }
+      doc.add(new TextField("text", text.toString(), Field.Store.NO));
+      // few distinct values, so that many hits tie on the sort value
+      doc.add(new NumericDocValuesField("long", random().nextInt(10)));
+      doc.add(new SortedDocValuesField("string", new BytesRef(WORDS[random().nextInt(WORDS.length)])));
+      iw.addDocument(doc);
+      if (random().nextInt(40) == 0) {
+        iw.commit();
+      }
+    }
+    reader = DirectoryReader.open(iw, true);
+    iw.close();
+    searcher = new IndexSearcher(reader);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+  }
+
+  @Test
+  public void testMerge() throws Exception {
+    BooleanQuery bq = new BooleanQuery();
+    bq.add(new TermQuery(new Term("text", "a")), Occur.SHOULD);
+    bq.add(new TermQuery(new Term("text", "b")), Occur.SHOULD);
+    Query[] queries = new Query[] {
+      new TermQuery(new Term("text", "c")),
+      bq,
+      new TermQuery(new Term("text", "missing"))
+    };
+    Sort[] sorts = new Sort[] {
+      null,
+      Sort.INDEXORDER,
+      new Sort(new SortField("long", SortField.Type.LONG)),
+      new Sort(new SortField("long", SortField.Type.LONG, true)),
+      new Sort(new SortField("string", SortField.Type.STRING)),
+      new Sort(new SortField("string", SortField.Type.STRING, true), new SortField("long", SortField.Type.LONG)),
+      new Sort(new SortField("long", SortField.Type.LONG), SortField.FIELD_SCORE)
+    };
+    final int iters = atLeast(10);
+    for (int iter = 0; iter < iters; iter++) {
+      for (Query query : queries) {
+        for (Sort sort : sorts) {
+          final int maxDoc = reader.maxDoc();
+          // pages may start past the last hit and end past maxDoc
+          final int start = random().nextInt(maxDoc + 10);
+          final int size = random().nextInt(maxDoc + 10);
+          assertMerge(query, sort, start, size);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFirstPage() throws Exception {
+    final Query query = new TermQuery(new Term("text", "a"));
+    assertMerge(query, null, 0, 10);
+    assertMerge(query, new Sort(new SortField("long", SortField.Type.LONG)), 0, 10);
+    assertMerge(query, null, 0, 0);
+  }
+
+  /** Merges the hits of each segment for the page <code>[start, start+size)</code>
+   *  and checks it against the same page of a single search. */
+  private void assertMerge(Query query, Sort sort, int start, int size) throws Exception {
+    final String message = "query=" + query + " sort=" + sort + " start=" + start + " size=" + size;
+    final Weight weight = searcher.createNormalizedWeight(query);
+    final List<AtomicReaderContext> leaves = reader.leaves();
+    final TopDocs all = search(leaves, weight, sort, reader.maxDoc());
+
+    final int numHits = Math.max(1, start + size);
+    final TopDocs[] shardHits = new TopDocs[leaves.size()];
+    for (int shardIDX = 0; shardIDX < shardHits.length; shardIDX++) {
+      shardHits[shardIDX] = search(Collections.singletonList(leaves.get(shardIDX)), weight, sort, numHits);
+    }
+    final TopDocs merged = TopDocs.merge(sort, start, size, shardHits);
+    assertPage(message, all, start, size, merged, leaves);
+
+    // add the shards in random order:
+    final List<Integer> order = new ArrayList<>();
+    for (int shardIDX = 0; shardIDX < shardHits.length; shardIDX++) {
+      order.add(shardIDX);
+    }
+    Collections.shuffle(order, random());
+    final TopDocs.StreamingMerge streaming = new TopDocs.StreamingMerge(sort, start, size);
+    for (int shardIDX : order) {
+      streaming.add(shardIDX, shardHits[shardIDX]);
+    }
+    assertPage(message + " (streaming)", all, start, size, streaming.merge(), leaves);
+  }
+
+  private TopDocs search(List<AtomicReaderContext> leaves, Weight weight, Sort sort, int numHits) throws Exception {
+    if (sort == null) {
+      return searcher.search(leaves, weight, numHits);
+    } else {
+      return searcher.search(leaves, weight, numHits, sort, true, true, true);
+    }
+  }
+
+  private static void assertPage(String message, TopDocs all, int start, int size,
+                                 TopDocs page, List<AtomicReaderContext> leaves) {
+    assertEquals(message, all.totalHits, page.totalHits);
+    if (all.scoreDocs.length == 0) {
+      assertTrue(message, Float.isNaN(page.getMaxScore()));
+    } else {
+      assertEquals(message, all.getMaxScore(), page.getMaxScore(), 0f);
+    }
+    final int expectedLength = Math.max(0, Math.min(size, all.scoreDocs.length - start));
+    assertEquals(message, expectedLength, page.scoreDocs.length);
+    for (int i = 0; i < expectedLength; i++) {
+      final ScoreDoc expected = all.scoreDocs[start + i];
+      final ScoreDoc actual = page.scoreDocs[i];
+      assertEquals(message + " hit " + (start + i), expected.doc, actual.doc);
+      assertEquals(message + " hit " + (start + i), expected.score, actual.score, 0f);
+      assertEquals(message + " hit " + (start + i), ReaderUtil.subIndex(actual.doc, leaves), actual.shardIndex);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene41.Lucene41BlockMaxPostingsFormat;
+import org.apache.lucene.codecs.lucene41.Lucene41PostingsFormat;
+import org.apache.lucene.codecs.lucene410.Lucene410Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.Test;
+
+/**
+ * Tests that top hits found while skipping non-competitive documents with
+ * {@link WANDScorer} are those of exhaustive scoring.
+ */
+public class TestWANDScorer extends CoreTestCase {
+
+  private static final int NUM_TERMS = 200;
+
+  @Test
+  public void testSameTopHitsAsExhaustiveScoring() throws Exception {
+    for (Similarity similarity : new Similarity[] {new BM25Similarity(), new DefaultSimilarity()}) {
+      for (final PostingsFormat format : new PostingsFormat[] {new Lucene41BlockMaxPostingsFormat(), new Lucene41PostingsFormat()}) {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig();
+        iwc.setSimilarity(similarity);
+        iwc.setCodec(new Lucene410Codec() {
+          @Override
+          public PostingsFormat getPostingsFormatForField(String field) {
+            return format;
+          }
+        });
+        IndexWriter iw = new IndexWriter(dir, iwc);
+        final int numDocs = atLeast(3000);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numDocs; i++) {
+          sb.setLength(0);
+          final int length = nextInt(1, 50);
+          for (int j = 0; j < length; j++) {
+            // skewed term frequencies: term k occurs with a probability of about 1/k
+            final int term = (int) Math.exp(random().nextDouble() * Math.log(NUM_TERMS));
+            sb.append('t').append(term).append(' ');
+          }
+          Document doc = new Document();
+          doc.add(new TextField("body", sb.toString(), Field.Store.NO));
+          iw.addDocument(doc);
+          if (random().nextInt(1000) == 0) {
+            iw.commit();
+          }
+        }
+        IndexReader reader = DirectoryReader.open(iw, true);
+        iw.close();
+
+        IndexSearcher searcher = new IndexSearcher(reader);
+        searcher.setSimilarity(similarity);
+        for (int iter = 0; iter < 50; iter++) {
+          assertSameTopHits(searcher, randomQuery());
+        }
+
+        reader.close();
+        dir.close();
+      }
+    }
+  }
+
+  private Query randomQuery() {
+    BooleanQuery query = new BooleanQuery(random().nextBoolean());
+    final int numClauses = nextInt(2, 8);
+    for (int i = 0; i < numClauses; i++) {
+      TermQuery clause = new TermQuery(new Term("body", "t" + nextInt(1, NUM_TERMS)));
+      if (random().nextBoolean()) {
+        clause.setBoost(1 + random().nextInt(5));
+      }
+      query.add(clause, Occur.SHOULD);
+    }
+    if (random().nextInt(5) == 0) {
+      query.add(new TermQuery(new Term("body", "t" + nextInt(1, NUM_TERMS))), Occur.MUST_NOT);
+    }
+    return query;
+  }
+
+  private void assertSameTopHits(IndexSearcher searcher, Query query) throws Exception {
+    final int maxDoc = searcher.getIndexReader().maxDoc();
+    searcher.setTrackTotalHits(true);
+    final TopDocs all = searcher.search(query, maxDoc);
+    final Map<Integer,Float> scores = new HashMap<>();
+    for (ScoreDoc scoreDoc : all.scoreDocs) {
+      scores.put(scoreDoc.doc, scoreDoc.score);
+    }
+
+    searcher.setTrackTotalHits(false);
+    for (int n : new int[] {1, 10, nextInt(1, 200)}) {
+      final TopDocs top = searcher.search(query, n);
+      assertEquals(Math.min(n, all.scoreDocs.length), top.scoreDocs.length);
+      assertTrue(top.totalHits <= all.totalHits);
+      for (int i = 0; i < top.scoreDocs.length; i++) {
+        final ScoreDoc hit = top.scoreDocs[i];
+        // clauses may be summed in a different order than by the exhaustive scorers
+        final float delta = 1e-5f * all.scoreDocs[i].score;
+        assertNotNull(query + ": doc " + hit.doc + " does not match", scores.get(hit.doc));
+        assertEquals(query.toString(), scores.get(hit.doc), hit.score, delta);
+        assertEquals(query + ": hit " + i, all.scoreDocs[i].score, hit.score, delta);
+      }
+    }
+  }
+}
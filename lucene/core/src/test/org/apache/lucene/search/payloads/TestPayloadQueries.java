@@ -0,0 +1,227 @@
+package org.apache.lucene.search.payloads;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.RandomTextIndex;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the scores of {@link PayloadTermQuery} and {@link PayloadNearQuery}
+ * against the payloads of the matching positions of each document, folded
+ * by every {@link PayloadFunction}.
+ */
+public class TestPayloadQueries extends CoreTestCase {
+  private static final PayloadFunction[] FUNCTIONS = new PayloadFunction[] {
+    new MinPayloadFunction(), new MaxPayloadFunction(), new AveragePayloadFunction()
+  };
+
+  private RandomTextIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    index = new RandomTextIndex(random(), atLeast(1000), new PayloadAnalyzer());
+    index.searcher.setSimilarity(new PayloadSimilarity());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  /** Returns the payload of the word at the given position, or null if it has none. */
+  static byte[] payload(String word, int position) {
+    if (position % 5 == 4) {
+      return null;
+    }
+    return new byte[] {(byte) (1 + (word.charAt(0) * 31 + position) % 9)};
+  }
+
+  /** Indexes the {@link #payload} of each token. */
+  static final class PayloadAnalyzer extends Analyzer {
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+      final Tokenizer tokenizer = new WhitespaceTokenizer(reader);
+      return new TokenStreamComponents(tokenizer, new PayloadFilter(tokenizer));
+    }
+  }
+
+  static final class PayloadFilter extends TokenFilter {
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final PayloadAttribute payloadAtt = addAttribute(PayloadAttribute.class);
+    private int position;
+
+    PayloadFilter(TokenStream input) {
+      super(input);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+      if (!input.incrementToken()) {
+        return false;
+      }
+      final byte[] payload = payload(termAtt.toString(), position++);
+      payloadAtt.setPayload(payload == null ? null : new BytesRef(payload));
+      return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+      super.reset();
+      position = 0;
+    }
+  }
+
+  /** Scores a payload with its byte value. */
+  static final class PayloadSimilarity extends DefaultSimilarity {
+    @Override
+    public float scorePayload(int doc, int start, int end, BytesRef payload) {
+      return payload.bytes[payload.offset];
+    }
+  }
+
+  /** Folds the payloads of the given positions of a document like the queries do. */
+  private float payloadScore(PayloadFunction function, String[] tokens, int[] positions) {
+    float score = 0;
+    int seen = 0;
+    for (int position : positions) {
+      final byte[] payload = payload(tokens[position], position);
+      if (payload != null) {
+        score = function.currentScore(0, RandomTextIndex.FIELD, position, position + 1, seen, score, payload[0]);
+        seen++;
+      }
+    }
+    return function.docScore(0, RandomTextIndex.FIELD, seen, score);
+  }
+
+  @Test
+  public void testPayloadTermQuery() throws Exception {
+    for (String word : RandomTextIndex.VOCABULARY) {
+      final Term term = new Term(RandomTextIndex.FIELD, word);
+      final Map<Integer,Float> spanScores = index.search(new SpanTermQuery(term));
+      for (PayloadFunction function : FUNCTIONS) {
+        final PayloadTermQuery payloadOnly = new PayloadTermQuery(term, function, false);
+        final PayloadTermQuery withSpanScore = new PayloadTermQuery(term, function, true);
+        final Map<Integer,Float> payloadScores = index.search(payloadOnly);
+        final Map<Integer,Float> scores = index.search(withSpanScore);
+        assertEquals(spanScores.keySet(), payloadScores.keySet());
+        assertEquals(spanScores.keySet(), scores.keySet());
+        for (int id : spanScores.keySet()) {
+          final String[] tokens = index.docs[id];
+          int count = 0;
+          final int[] positions = new int[index.freq(id, word)];
+          for (int pos = 0; pos < tokens.length; pos++) {
+            if (tokens[pos].equals(word)) {
+              positions[count++] = pos;
+            }
+          }
+          final float expected = payloadScore(function, tokens, positions);
+          final String message = payloadOnly + " " + function.getClass().getSimpleName() + ": id=" + id + " " + index.describe(id);
+          assertEquals(message, expected, payloadScores.get(id), 1e-5f * expected);
+          assertEquals(message, expected * spanScores.get(id), scores.get(id), 1e-5f * scores.get(id));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPayloadNearQuery() throws Exception {
+    final int iters = atLeast(50);
+    for (int iter = 0; iter < iters; iter++) {
+      final String[] words = new String[nextInt(2, 3)];
+      final SpanQuery[] clauses = new SpanQuery[words.length];
+      for (int i = 0; i < words.length; i++) {
+        words[i] = RandomTextIndex.randomWord(random());
+        clauses[i] = new SpanTermQuery(new Term(RandomTextIndex.FIELD, words[i]));
+      }
+      final int slop = random().nextInt(3);
+      final PayloadFunction function = FUNCTIONS[random().nextInt(FUNCTIONS.length)];
+      final Map<Integer,Float> spanScores = index.search(new SpanNearQuery(clauses, slop, true));
+      final PayloadNearQuery query = new PayloadNearQuery(clauses, slop, true, function);
+      final Map<Integer,Float> scores = index.search(query);
+      assertEquals(spanScores.keySet(), scores.keySet());
+      for (int id : scores.keySet()) {
+        final float expected = spanScores.get(id) * payloadScore(function, index.docs[id], matchPositions(words, slop, index.docs[id]));
+        final String message = query + " " + function.getClass().getSimpleName() + ": id=" + id + " " + index.describe(id);
+        assertEquals(message, expected, scores.get(id), 1e-5f * expected);
+      }
+    }
+  }
+
+  /**
+   * Returns the positions whose payloads are read by the ordered matches of
+   * the words: each position of the first word starts at most one match,
+   * whose other words are at their first positions after the previous one.
+   * A clause that stays on the same position for the next match does not
+   * return its payload again.
+   */
+  private static int[] matchPositions(String[] words, int slop, String[] tokens) {
+    int[] positions = new int[0];
+    final int[] match = new int[words.length];
+    final int[] previous = new int[words.length];
+    Arrays.fill(previous, -1);
+    for (int first = 0; first < tokens.length; first++) {
+      if (!tokens[first].equals(words[0])) {
+        continue;
+      }
+      match[0] = first;
+      int width = 0;
+      int i = 1;
+      for (; i < words.length; i++) {
+        int next = match[i - 1] + 1;
+        while (next < tokens.length && !tokens[next].equals(words[i])) {
+          next++;
+        }
+        if (next == tokens.length) {
+          break;
+        }
+        width += next - match[i - 1] - 1;
+        match[i] = next;
+      }
+      if (i == words.length && width <= slop) {
+        for (int j = 0; j < match.length; j++) {
+          if (match[j] != previous[j]) {
+            positions = Arrays.copyOf(positions, positions.length + 1);
+            positions[positions.length - 1] = match[j];
+            previous[j] = match[j];
+          }
+        }
+      }
+    }
+    return positions;
+  }
+}
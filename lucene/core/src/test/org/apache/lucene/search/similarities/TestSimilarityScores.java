@@ -0,0 +1,225 @@
+package org.apache.lucene.search.similarities;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.RandomTextIndex;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.similarities.Similarity.SimScorer;
+import org.apache.lucene.search.similarities.Similarity.SimWeight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.CoreTestCase;
+import org.apache.lucene.util.SmallFloat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the scores of {@link DefaultSimilarity} and {@link BM25Similarity},
+ * which read precomputed tables by norm byte, against their formulas
+ * evaluated on the length of each document, and that
+ * {@link SimScorer#maxScore(float)} bounds every score.
+ */
+public class TestSimilarityScores extends CoreTestCase {
+  private RandomTextIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    index = new RandomTextIndex(random(), atLeast(500));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  /** A similarity with random boosts, and its formula evaluated without norm tables. */
+  private static abstract class Model {
+    final Similarity similarity;
+    final float queryBoost;
+    final float queryNorm;
+    final float topLevelBoost;
+
+    Model(Similarity similarity, Random random) {
+      this.similarity = similarity;
+      this.queryBoost = 0.1f + 10 * random.nextFloat();
+      this.queryNorm = 0.1f + random.nextFloat();
+      this.topLevelBoost = 0.1f + 10 * random.nextFloat();
+    }
+
+    SimScorer scorer(CollectionStatistics collectionStats, TermStatistics termStats,
+        AtomicReaderContext context) throws IOException {
+      final SimWeight weight = similarity.computeWeight(queryBoost, collectionStats, termStats);
+      weight.getValueForNormalization();
+      weight.normalize(queryNorm, topLevelBoost);
+      return similarity.simScorer(weight, context);
+    }
+
+    /**
+     * Returns the score of a document with the given frequency and norm
+     * byte, or without norms if <code>norm</code> is negative.
+     */
+    abstract double score(double freq, int norm);
+  }
+
+  private Model randomModel(CollectionStatistics collectionStats, TermStatistics termStats) {
+    final long docFreq = termStats.docFreq();
+    final long maxDoc = collectionStats.maxDoc();
+    if (random().nextBoolean()) {
+      return new Model(new DefaultSimilarity(), random()) {
+        @Override
+        double score(double freq, int norm) {
+          final double idf = Math.log(maxDoc / (double) (docFreq + 1)) + 1;
+          final double weight = idf * queryBoost * queryNorm * topLevelBoost * idf;
+          return Math.sqrt(freq) * weight * (norm < 0 ? 1 : SmallFloat.byte315ToFloat((byte) norm));
+        }
+      };
+    }
+    final float k1 = 0.1f + 3 * random().nextFloat();
+    final float b = random().nextFloat();
+    final long sumTotalTermFreq = collectionStats.sumTotalTermFreq();
+    return new Model(new BM25Similarity(k1, b), random()) {
+      @Override
+      double score(double freq, int norm) {
+        final double idf = Math.log(1 + (maxDoc - docFreq + 0.5) / (docFreq + 0.5));
+        final double weight = idf * queryBoost * topLevelBoost;
+        double lengthNorm = 1;
+        if (norm >= 0) {
+          final double f = SmallFloat.byte315ToFloat((byte) norm);
+          final double avgdl = sumTotalTermFreq / (double) maxDoc;
+          lengthNorm = 1 - b + b * (1 / (f * f)) / avgdl;
+        }
+        return weight * (k1 + 1) * freq / (freq + k1 * lengthNorm);
+      }
+    };
+  }
+
+  private static void assertScore(String message, double expected, float actual) {
+    assertEquals(message, expected, actual, 1e-5 * Math.max(1, Math.abs(expected)));
+  }
+
+  /**
+   * Scores every live document for frequencies up to <code>maxFreq</code>,
+   * checking each score against a random model, that scores grow with the
+   * frequency, and that {@link SimScorer#maxScore(float)} is the score of
+   * the best norm byte.
+   */
+  private void assertScorer(Term term, int maxFreq) throws Exception {
+    final CollectionStatistics collectionStats = index.searcher.collectionStatistics(term.field());
+    final TermStatistics termStats = index.searcher.termStatistics(term,
+        TermContext.build(index.reader.getContext(), term));
+    final Model model = randomModel(collectionStats, termStats);
+    for (AtomicReaderContext context : index.reader.leaves()) {
+      final SimScorer scorer = model.scorer(collectionStats, termStats, context);
+      final NumericDocValues norms = context.reader().getNormValues(term.field());
+      final Bits liveDocs = context.reader().getLiveDocs();
+      double expectedMax = model.score(maxFreq, -1);
+      if (norms != null) {
+        expectedMax = 0;
+        for (int norm = 0; norm < 256; norm++) {
+          expectedMax = Math.max(expectedMax, model.score(maxFreq, norm));
+        }
+      }
+      final float maxScore = scorer.maxScore(maxFreq);
+      assertScore(model.similarity + " maxScore", expectedMax, maxScore);
+      for (int doc = 0; doc < context.reader().maxDoc(); doc++) {
+        if (liveDocs != null && liveDocs.get(doc) == false) {
+          continue;
+        }
+        final int id = index.id(context.docBase + doc);
+        int norm = -1;
+        if (norms != null) {
+          norm = SmallFloat.floatToByte315((float) (1.0 / Math.sqrt(index.docs[id].length))) & 0xFF;
+          assertEquals(index.describe(id), norm, norms.get(doc) & 0xFF);
+        }
+        float previous = 0;
+        for (int freq = 1; freq <= maxFreq; freq++) {
+          final float score = scorer.score(doc, freq);
+          final String message = model.similarity + " " + index.describe(id) + " freq=" + freq;
+          assertScore(message, model.score(freq, norm), score);
+          assertTrue(message, score >= previous);
+          assertTrue(message + ": " + score + " > " + maxScore, score <= maxScore);
+          previous = score;
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testScorerWithNorms() throws Exception {
+    for (String word : RandomTextIndex.VOCABULARY) {
+      assertScorer(new Term(RandomTextIndex.FIELD, word), 1 + random().nextInt(20));
+    }
+  }
+
+  @Test
+  public void testScorerWithoutNorms() throws Exception {
+    // the id field omits norms
+    for (int i = 0; i < 10; i++) {
+      final int id = random().nextInt(index.docs.length);
+      assertScorer(new Term("id", Integer.toString(id)), 1 + random().nextInt(20));
+    }
+  }
+
+  @Test
+  public void testTermQueryScores() throws Exception {
+    final Similarity[] similarities = { new DefaultSimilarity(), new BM25Similarity() };
+    for (Similarity similarity : similarities) {
+      index.searcher.setSimilarity(similarity);
+      for (String word : RandomTextIndex.VOCABULARY) {
+        final Term term = new Term(RandomTextIndex.FIELD, word);
+        final double idf;
+        final long docFreq = index.reader.docFreq(term);
+        final long maxDoc = index.reader.maxDoc();
+        if (similarity instanceof DefaultSimilarity) {
+          idf = Math.log(maxDoc / (double) (docFreq + 1)) + 1;
+        } else {
+          idf = Math.log(1 + (maxDoc - docFreq + 0.5) / (docFreq + 0.5));
+        }
+        final double avgdl = index.reader.getSumTotalTermFreq(RandomTextIndex.FIELD) / (double) maxDoc;
+        final Map<Integer,Float> hits = index.search(new TermQuery(term));
+        for (int id = 0; id < index.docs.length; id++) {
+          final int freq = index.freq(id, word);
+          if (freq == 0 || index.deleted[id]) {
+            assertFalse(hits.containsKey(id));
+            continue;
+          }
+          final byte norm = SmallFloat.floatToByte315((float) (1.0 / Math.sqrt(index.docs[id].length)));
+          final double f = SmallFloat.byte315ToFloat(norm);
+          final double expected;
+          if (similarity instanceof DefaultSimilarity) {
+            // a single term query normalizes its weight to idf
+            expected = Math.sqrt(freq) * idf * f;
+          } else {
+            expected = idf * 2.2 * freq / (freq + 1.2 * (0.25 + 0.75 * (1 / (f * f)) / avgdl));
+          }
+          assertScore(similarity + " " + word + " " + index.describe(id), expected, hits.get(id));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,333 @@
+package org.apache.lucene.search.spans;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.RandomTextIndex;
+import org.apache.lucene.util.CoreTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks random span queries against a brute-force evaluation of their
+ * spans over the tokens of each document: the matching documents of every
+ * query, and the spans themselves for the queries whose spans are fully
+ * determined (terms, or, first, position range and not).
+ */
+public class TestSpanQueries extends CoreTestCase {
+  private RandomTextIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    index = new RandomTextIndex(random(), atLeast(1000));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  /** A span query together with the spans it must produce for a document. */
+  private static abstract class Model {
+    final SpanQuery query;
+
+    Model(SpanQuery query) {
+      this.query = query;
+    }
+
+    /** Returns the spans of the document, as {start, end} pairs in the order of the query's spans. */
+    abstract List<int[]> spans(String[] tokens);
+  }
+
+  @Test
+  public void testSpans() throws Exception {
+    final int iters = atLeast(100);
+    for (int iter = 0; iter < iters; iter++) {
+      final Model model = randomModel(1);
+      final boolean[] expected = new boolean[index.docs.length];
+      for (int id = 0; id < expected.length; id++) {
+        expected[id] = !model.spans(index.docs[id]).isEmpty();
+      }
+      index.assertMatches(model.query, expected);
+      assertSpans(model);
+    }
+  }
+
+  @Test
+  public void testOrderedNear() throws Exception {
+    final int iters = atLeast(50);
+    for (int iter = 0; iter < iters; iter++) {
+      // words may repeat, each clause matching at a later position:
+      final Model[] clauses = new Model[nextInt(1, 4)];
+      final SpanQuery[] queries = new SpanQuery[clauses.length];
+      for (int i = 0; i < clauses.length; i++) {
+        clauses[i] = random().nextInt(3) == 0 ? or(distinctWords(nextInt(1, 3))) : term(RandomTextIndex.randomWord(random()));
+        queries[i] = clauses[i].query;
+      }
+      final int slop = random().nextInt(4);
+      final SpanNearQuery query = new SpanNearQuery(queries, slop, true);
+      final boolean[] expected = new boolean[index.docs.length];
+      for (int id = 0; id < expected.length; id++) {
+        expected[id] = orderedMatch(clauses, slop, index.docs[id]);
+      }
+      index.assertMatches(query, expected);
+    }
+  }
+
+  @Test
+  public void testUnorderedNear() throws Exception {
+    final int iters = atLeast(50);
+    for (int iter = 0; iter < iters; iter++) {
+      // clauses never match the same position:
+      final List<String> words = distinctWords(nextInt(2, 6));
+      final List<Model> clauses = new ArrayList<>();
+      for (int i = 0; i < words.size(); i++) {
+        if (i + 1 < words.size() && random().nextInt(3) == 0) {
+          clauses.add(or(words.subList(i, i + 2)));
+          i++;
+        } else {
+          clauses.add(term(words.get(i)));
+        }
+      }
+      final SpanQuery[] queries = new SpanQuery[clauses.size()];
+      for (int i = 0; i < queries.length; i++) {
+        queries[i] = clauses.get(i).query;
+      }
+      final int slop = random().nextInt(4);
+      final SpanNearQuery query = new SpanNearQuery(queries, slop, false);
+      final boolean[] expected = new boolean[index.docs.length];
+      for (int id = 0; id < expected.length; id++) {
+        expected[id] = unorderedMatch(clauses, slop, index.docs[id]);
+      }
+      index.assertMatches(query, expected);
+    }
+  }
+
+  // distinct words, drawn like the indexed ones so that clauses often match together:
+  private List<String> distinctWords(int count) {
+    final List<String> words = new ArrayList<>();
+    while (words.size() < count) {
+      final String word = RandomTextIndex.randomWord(random());
+      if (!words.contains(word)) {
+        words.add(word);
+      }
+    }
+    return words;
+  }
+
+  private Model randomModel(int depth) {
+    final int choice = depth == 0 ? random().nextInt(2) : random().nextInt(5);
+    switch (choice) {
+      case 0:
+        return term(random().nextInt(20) == 0 ? "missing" : RandomTextIndex.randomWord(random()));
+      case 1:
+        return or(distinctWords(nextInt(1, 3)));
+      case 2:
+        return first(randomModel(depth - 1), random().nextInt(6));
+      case 3:
+        final int start = random().nextInt(6);
+        return range(randomModel(depth - 1), start, start + random().nextInt(6));
+      default:
+        return not(randomModel(depth - 1), randomModel(0), random().nextInt(3), random().nextInt(3));
+    }
+  }
+
+  private static Model term(final String word) {
+    return new Model(new SpanTermQuery(new Term(RandomTextIndex.FIELD, word))) {
+      @Override
+      List<int[]> spans(String[] tokens) {
+        final List<int[]> spans = new ArrayList<>();
+        for (int pos = 0; pos < tokens.length; pos++) {
+          if (tokens[pos].equals(word)) {
+            spans.add(new int[] {pos, pos + 1});
+          }
+        }
+        return spans;
+      }
+    };
+  }
+
+  private static Model or(final List<String> words) {
+    final SpanQuery[] clauses = new SpanQuery[words.size()];
+    for (int i = 0; i < clauses.length; i++) {
+      clauses[i] = new SpanTermQuery(new Term(RandomTextIndex.FIELD, words.get(i)));
+    }
+    return new Model(new SpanOrQuery(clauses)) {
+      @Override
+      List<int[]> spans(String[] tokens) {
+        final List<int[]> spans = new ArrayList<>();
+        for (int pos = 0; pos < tokens.length; pos++) {
+          if (words.contains(tokens[pos])) {
+            spans.add(new int[] {pos, pos + 1});
+          }
+        }
+        return spans;
+      }
+    };
+  }
+
+  private static Model first(final Model match, final int end) {
+    return new Model(new SpanFirstQuery(match.query, end)) {
+      @Override
+      List<int[]> spans(String[] tokens) {
+        final List<int[]> spans = new ArrayList<>();
+        for (int[] span : match.spans(tokens)) {
+          if (span[1] <= end) {
+            spans.add(span);
+          }
+        }
+        return spans;
+      }
+    };
+  }
+
+  private static Model range(final Model match, final int start, final int end) {
+    return new Model(new SpanPositionRangeQuery(match.query, start, end)) {
+      @Override
+      List<int[]> spans(String[] tokens) {
+        final List<int[]> spans = new ArrayList<>();
+        for (int[] span : match.spans(tokens)) {
+          if (span[0] >= start && span[1] <= end) {
+            spans.add(span);
+          }
+        }
+        return spans;
+      }
+    };
+  }
+
+  private static Model not(final Model include, final Model exclude, final int pre, final int post) {
+    return new Model(new SpanNotQuery(include.query, exclude.query, pre, post)) {
+      @Override
+      List<int[]> spans(String[] tokens) {
+        final List<int[]> excluded = exclude.spans(tokens);
+        final List<int[]> spans = new ArrayList<>();
+        for (int[] span : include.spans(tokens)) {
+          boolean overlaps = false;
+          for (int[] e : excluded) {
+            // the include span, widened by pre and post, overlaps e:
+            overlaps |= e[1] > span[0] - pre && e[0] < span[1] + post;
+          }
+          if (!overlaps) {
+            spans.add(span);
+          }
+        }
+        return spans;
+      }
+    };
+  }
+
+  /**
+   * Returns whether the clauses match at increasing positions with at most
+   * <code>slop</code> positions between them: for every position of the
+   * first clause, the closest later positions of the next clauses give the
+   * smallest distance.
+   */
+  private static boolean orderedMatch(Model[] clauses, int slop, String[] tokens) {
+    for (int[] first : clauses[0].spans(tokens)) {
+      int end = first[1];
+      int gaps = 0;
+      for (int i = 1; i < clauses.length && end >= 0; i++) {
+        int next = -1;
+        for (int[] span : clauses[i].spans(tokens)) {
+          if (span[0] >= end) {
+            next = span[0];
+            break;
+          }
+        }
+        if (next == -1) {
+          end = -1;
+        } else {
+          gaps += next - end;
+          end = next + 1;
+        }
+      }
+      if (end >= 0 && gaps <= slop) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns whether each clause has a position in a window of
+   * <code>clauses + slop</code> positions.
+   */
+  private static boolean unorderedMatch(List<Model> clauses, int slop, String[] tokens) {
+    final int width = clauses.size() + slop;
+    for (int start = 0; start < tokens.length; start++) {
+      boolean match = true;
+      for (Model clause : clauses) {
+        boolean inWindow = false;
+        for (int[] span : clause.spans(tokens)) {
+          inWindow |= span[0] >= start && span[1] <= start + width;
+        }
+        match &= inWindow;
+      }
+      if (match) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Checks the spans of every live document of every leaf against the model. */
+  private void assertSpans(Model model) throws Exception {
+    final Map<Term,TermContext> termContexts = new HashMap<>();
+    final TreeSet<Term> terms = new TreeSet<>();
+    model.query.extractTerms(terms);
+    for (Term term : terms) {
+      termContexts.put(term, TermContext.build(index.reader.getContext(), term));
+    }
+    for (AtomicReaderContext context : index.reader.leaves()) {
+      final Spans spans = model.query.getSpans(context, context.reader().getLiveDocs(), termContexts);
+      final boolean[] matched = new boolean[context.reader().maxDoc()];
+      if (spans != null) {
+        for (int doc = spans.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = spans.nextDoc()) {
+          final int id = index.id(context.docBase + doc);
+          final List<int[]> expected = model.spans(index.docs[id]);
+          final String message = model.query + ": id=" + id + " " + index.describe(id);
+          assertEquals(-1, spans.startPosition());
+          for (int[] span : expected) {
+            assertEquals(message, span[0], spans.nextStartPosition());
+            assertEquals(message, span[0], spans.startPosition());
+            assertEquals(message, span[1], spans.endPosition());
+          }
+          assertEquals(message, Spans.NO_MORE_POSITIONS, spans.nextStartPosition());
+          matched[doc] = true;
+        }
+      }
+      for (int doc = 0; doc < context.reader().maxDoc(); doc++) {
+        final int id = index.id(context.docBase + doc);
+        if (!index.deleted[id] && !matched[doc]) {
+          assertTrue(model.query + ": id=" + id + " " + index.describe(id), model.spans(index.docs[id]).isEmpty());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package org.apache.lucene.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Random;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
+
+/**
+ * Base class for tests that only depend on lucene-core and JUnit, so that
+ * they build and run without the randomized test-framework module.
+ * <p>
+ * Randomness is seeded from the <code>tests.seed</code> system property, or
+ * from a random seed that is printed when a test fails.
+ */
+public abstract class CoreTestCase extends Assert {
+
+  private static final long SEED = Long.getLong("tests.seed", new Random().nextLong());
+
+  /** Prints the seed to reproduce a failure with. */
+  @Rule
+  public final TestRule seedReporter = new TestWatcher() {
+    @Override
+    protected void failed(Throwable e, Description description) {
+      System.err.println("NOTE: reproduce " + description + " with -Dtests.seed=" + SEED);
+    }
+  };
+
+  private Random random;
+
+  @Before
+  public void setUpRandom() {
+    random = new Random(SEED);
+  }
+
+  /** Returns the random source of the current test. */
+  public Random random() {
+    return random;
+  }
+
+  /** Returns a number between <code>i</code> and <code>2*i</code>. */
+  public int atLeast(int i) {
+    return i + random.nextInt(i + 1);
+  }
+
+  /** Returns a number between <code>min</code> and <code>max</code>, inclusive. */
+  public int nextInt(int min, int max) {
+    return min + random.nextInt(max - min + 1);
+  }
+
+  /** Returns a new in-memory directory. */
+  public static Directory newDirectory() {
+    return new RAMDirectory();
+  }
+
+  /** Returns a config using {@link WhitespaceAnalyzer}. */
+  public IndexWriterConfig newIndexWriterConfig() {
+    return new IndexWriterConfig(Version.LATEST, new WhitespaceAnalyzer());
+  }
+
+  /** Splits text on spaces; tokens get offsets and consecutive positions. */
+  public static class WhitespaceAnalyzer extends Analyzer {
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+      return new TokenStreamComponents(new WhitespaceTokenizer(reader));
+    }
+  }
+
+  /** Tokenizer of {@link WhitespaceAnalyzer}. */
+  public static final class WhitespaceTokenizer extends Tokenizer {
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+    private int offset;
+    
+    public WhitespaceTokenizer(Reader input) {
+      super(input);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+      clearAttributes();
+      int c;
+      while ((c = input.read()) == ' ') {
+        offset++;
+      }
+      if (c == -1) {
+        return false;
+      }
+      final int start = offset;
+      do {
+        termAtt.append((char) c);
+        offset++;
+      } while ((c = input.read()) != -1 && c != ' ');
+      if (c == ' ') {
+        offset++;
+      }
+      offsetAtt.setOffset(correctOffset(start), correctOffset(start + termAtt.length()));
+      return true;
+    }
+
+    @Override
+    public void end() throws IOException {
+      super.end();
+      final int finalOffset = correctOffset(offset);
+      offsetAtt.setOffset(finalOffset, finalOffset);
+    }
+
+    @Override
+    public void reset() throws IOException {
+      super.reset();
+      offset = 0;
+    }
+  }
+}